@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.panpf.sketch.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import me.panpf.sketch.SLog;
+import me.panpf.sketch.util.DiskLruCache;
+import me.panpf.sketch.util.SketchMD5Utils;
+
+/**
+ * {@link DiskLruCache} 在多线程竞争下的读写性能，包括 journal 的写入和超过容量后的清理
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DiskLruCacheBenchmark {
+    private static final int KEY_COUNT = 512;
+    private static final int VALUE_SIZE = 8 * 1024;
+
+    private File directory;
+    private DiskLruCache cache;
+    private String[] keys;
+    private byte[] value;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, DiskLruCache.ClosedException, DiskLruCache.EditorChangedException, DiskLruCache.FileNotExistException {
+        SLog.setLevel(SLog.LEVEL_NONE);
+
+        directory = File.createTempFile("sketch-benchmark", "");
+        if (!directory.delete() || !directory.mkdirs()) {
+            throw new IOException("Unable create dir: " + directory.getPath());
+        }
+        // 容量只能放下一半的 key，这样写入时会不断触发清理
+        cache = DiskLruCache.open(directory, 1, 1, (long) KEY_COUNT * VALUE_SIZE / 2);
+
+        value = new byte[VALUE_SIZE];
+        ThreadLocalRandom.current().nextBytes(value);
+        keys = new String[KEY_COUNT];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = SketchMD5Utils.md5("http://img.panpf.me/" + i + ".jpg");
+            if (i % 2 == 0) {
+                write(keys[i]);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        cache.delete();
+    }
+
+    private String nextKey() {
+        return keys[ThreadLocalRandom.current().nextInt(keys.length)];
+    }
+
+    private void write(String key) throws IOException, DiskLruCache.ClosedException, DiskLruCache.EditorChangedException, DiskLruCache.FileNotExistException {
+        DiskLruCache.Editor editor = cache.edit(key);
+        if (editor == null) {
+            // 别的线程正在写同一个 key
+            return;
+        }
+        OutputStream outputStream = null;
+        try {
+            outputStream = editor.newOutputStream(0);
+            outputStream.write(value);
+        } catch (IOException e) {
+            editor.abort();
+            throw e;
+        } finally {
+            if (outputStream != null) {
+                outputStream.close();
+            }
+        }
+        editor.commit();
+    }
+
+    private int read(String key) throws IOException, DiskLruCache.ClosedException {
+        DiskLruCache.SimpleSnapshot snapshot = cache.getSimpleSnapshot(key);
+        if (snapshot == null) {
+            return -1;
+        }
+        InputStream inputStream = snapshot.newInputStream(0);
+        try {
+            return inputStream.read();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int get() throws IOException, DiskLruCache.ClosedException {
+        return read(nextKey());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int getOrPut() throws IOException, DiskLruCache.ClosedException, DiskLruCache.EditorChangedException, DiskLruCache.FileNotExistException {
+        String key = nextKey();
+        int result = read(key);
+        if (result == -1) {
+            write(key);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.panpf.sketch.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import me.panpf.sketch.SLog;
+import me.panpf.sketch.util.ExifInterface;
+
+/**
+ * 读取图片方向时 {@link ExifInterface} 的解析性能，sample 里的 jpg 没有 EXIF，所以 exif 这组数据是在它的 SOI 后面插入一个带方向的 APP1 段生成的
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExifInterfaceBenchmark {
+    private static final String SAMPLE_IMAGE = "/mei_nv.jpg";
+
+    @Param({"plain", "exif"})
+    public String image;
+
+    private byte[] data;
+
+    @Setup
+    public void setup() throws IOException {
+        SLog.setLevel(SLog.LEVEL_NONE);
+
+        byte[] sampleData = readSampleImage();
+        data = "exif".equals(image) ? insertExifSegment(sampleData) : sampleData;
+    }
+
+    @Benchmark
+    public int readOrientation() throws IOException {
+        return new ExifInterface(new ByteArrayInputStream(data))
+                .getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_UNDEFINED);
+    }
+
+    private static byte[] readSampleImage() throws IOException {
+        InputStream inputStream = ExifInterfaceBenchmark.class.getResourceAsStream(SAMPLE_IMAGE);
+        if (inputStream == null) {
+            throw new IOException("Not found sample image: " + SAMPLE_IMAGE);
+        }
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8 * 1024];
+            int length;
+            while ((length = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, length);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * 生成一个大端序的 APP1 段，IFD0 里有 Make、Model、Orientation 三个标签，插入到 SOI 的后面
+     */
+    private static byte[] insertExifSegment(byte[] jpegData) throws IOException {
+        Charset ascii = Charset.forName("US-ASCII");
+        byte[] make = "Sketch\0".getBytes(ascii);
+        byte[] model = "Benchmark\0".getBytes(ascii);
+        int entryCount = 3;
+        int dataOffset = 8 + 2 + entryCount * 12 + 4;
+
+        ByteArrayOutputStream tiffBytes = new ByteArrayOutputStream();
+        DataOutputStream tiff = new DataOutputStream(tiffBytes);
+        tiff.writeBytes("MM");
+        tiff.writeShort(0x002A);
+        tiff.writeInt(8);
+        tiff.writeShort(entryCount);
+        // Make, ASCII
+        tiff.writeShort(0x010F);
+        tiff.writeShort(2);
+        tiff.writeInt(make.length);
+        tiff.writeInt(dataOffset);
+        // Model, ASCII
+        tiff.writeShort(0x0110);
+        tiff.writeShort(2);
+        tiff.writeInt(model.length);
+        tiff.writeInt(dataOffset + make.length);
+        // Orientation, SHORT，值放在左边两个字节
+        tiff.writeShort(0x0112);
+        tiff.writeShort(3);
+        tiff.writeInt(1);
+        tiff.writeShort(ExifInterface.ORIENTATION_ROTATE_90);
+        tiff.writeShort(0);
+        // 没有下一个 IFD
+        tiff.writeInt(0);
+        tiff.write(make);
+        tiff.write(model);
+        tiff.flush();
+
+        byte[] exifHeader = "Exif\0\0".getBytes(ascii);
+        ByteArrayOutputStream resultBytes = new ByteArrayOutputStream(jpegData.length + tiffBytes.size() + 16);
+        DataOutputStream result = new DataOutputStream(resultBytes);
+        result.write(jpegData, 0, 2);
+        result.writeShort(0xFFE1);
+        result.writeShort(2 + exifHeader.length + tiffBytes.size());
+        result.write(exifHeader);
+        tiffBytes.writeTo(result);
+        result.write(jpegData, 2, jpegData.length - 2);
+        result.flush();
+        return resultBytes.toByteArray();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.panpf.sketch.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import me.panpf.sketch.process.GaussianBlurImageProcessor;
+
+/**
+ * {@link GaussianBlurImageProcessor#fastGaussianBlur(int[], int, int, int)} 的像素处理部分，不需要 Bitmap
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GaussianBlurBenchmark {
+
+    @Param({"360"})
+    public int size;
+
+    @Param({"5", "25"})
+    public int radius;
+
+    private int[] source;
+    private int[] pixels;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        source = new int[size * size];
+        Random random = new Random(size);
+        for (int i = 0; i < source.length; i++) {
+            source[i] = 0xFF000000 | random.nextInt(0xFFFFFF);
+        }
+        pixels = new int[source.length];
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() {
+        System.arraycopy(source, 0, pixels, 0, source.length);
+    }
+
+    @Benchmark
+    public int[] fastGaussianBlur() {
+        GaussianBlurImageProcessor.fastGaussianBlur(pixels, size, size, radius);
+        return pixels;
+    }
+}
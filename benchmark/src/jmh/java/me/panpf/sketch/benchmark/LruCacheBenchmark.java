@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.panpf.sketch.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import me.panpf.sketch.SLog;
+import me.panpf.sketch.util.LruCache;
+
+/**
+ * {@link LruCache} 在多线程竞争下的读写性能，key 的数量是容量的两倍，所以大约一半的 get 会未命中
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LruCacheBenchmark {
+
+    @Param({"256"})
+    public int maxSize;
+
+    private LruCache<String, Object> cache;
+    private String[] keys;
+
+    @Setup
+    public void setup() {
+        SLog.setLevel(SLog.LEVEL_NONE);
+
+        cache = new LruCache<String, Object>(maxSize);
+        keys = new String[maxSize * 2];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "http://img.panpf.me/" + i + ".jpg?maxSize=1080x1920-resize=360x360";
+            if (i % 2 == 0) {
+                cache.put(keys[i], new Object());
+            }
+        }
+    }
+
+    private String nextKey() {
+        return keys[ThreadLocalRandom.current().nextInt(keys.length)];
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object get() {
+        return cache.get(nextKey());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object getOrPut() {
+        String key = nextKey();
+        Object value = cache.get(key);
+        if (value == null) {
+            value = new Object();
+            cache.put(key, value);
+        }
+        return value;
+    }
+}
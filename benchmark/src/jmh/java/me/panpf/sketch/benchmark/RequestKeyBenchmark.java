@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.panpf.sketch.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import me.panpf.sketch.SLog;
+import me.panpf.sketch.process.GaussianBlurImageProcessor;
+import me.panpf.sketch.request.LoadOptions;
+import me.panpf.sketch.request.MaxSize;
+import me.panpf.sketch.request.Resize;
+import me.panpf.sketch.uri.Base64UriModel;
+import me.panpf.sketch.uri.HttpUriModel;
+import me.panpf.sketch.uri.UriModel;
+import me.panpf.sketch.util.SketchMD5Utils;
+import me.panpf.sketch.util.SketchUtils;
+
+/**
+ * 每个请求都要执行一次的 key 生成：{@link LoadOptions#makeKey()}、{@link SketchUtils#makeRequestKey(String, UriModel, String)}
+ * 以及 base64 这类长 uri 用到的 {@link SketchMD5Utils#md5(String)}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RequestKeyBenchmark {
+
+    private LoadOptions options;
+    private String optionsKey;
+    private String httpUri;
+    private UriModel httpUriModel;
+    private String base64Uri;
+    private UriModel base64UriModel;
+
+    @Setup
+    public void setup() {
+        SLog.setLevel(SLog.LEVEL_NONE);
+
+        options = new LoadOptions();
+        options.setMaxSize(new MaxSize(1080, 1920));
+        options.setResize(new Resize(360, 360));
+        options.setProcessor(GaussianBlurImageProcessor.makeRadius(15));
+        optionsKey = options.makeKey();
+
+        httpUri = "http://img.panpf.me/sample/0a3e8f3b1c2d4e5f.jpg";
+        httpUriModel = new HttpUriModel();
+
+        StringBuilder builder = new StringBuilder(Base64UriModel.SCHEME).append("jpeg;base64,");
+        for (int i = 0; i < 2048; i++) {
+            builder.append((char) ('A' + i % 26));
+        }
+        base64Uri = builder.toString();
+        base64UriModel = new Base64UriModel();
+    }
+
+    @Benchmark
+    public String optionsMakeKey() {
+        return options.makeKey();
+    }
+
+    @Benchmark
+    public String makeRequestKey() {
+        return SketchUtils.makeRequestKey(httpUri, httpUriModel, optionsKey);
+    }
+
+    @Benchmark
+    public String makeRequestKeyWithOptions() {
+        return SketchUtils.makeRequestKey(httpUri, httpUriModel, options.makeKey());
+    }
+
+    @Benchmark
+    public String makeBase64RequestKey() {
+        return SketchUtils.makeRequestKey(base64Uri, base64UriModel, optionsKey);
+    }
+
+    @Benchmark
+    public String md5ShortUri() {
+        return SketchMD5Utils.md5(httpUri);
+    }
+
+    @Benchmark
+    public String md5Base64Uri() {
+        return SketchMD5Utils.md5(base64Uri);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.panpf.sketch.cache.recycle;
+
+import android.graphics.Bitmap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import me.panpf.sketch.SLog;
+import me.panpf.sketch.util.SketchUtils;
+
+/**
+ * {@link GroupedLinkedMap} 和 {@link SizeConfigStrategy} 的查找性能，因为都是包内可见的，所以这个类放在同一个包里
+ * <p>
+ * JVM 上无法创建 {@link Bitmap}，所以 {@link GroupedLinkedMap} 的值用普通对象代替，{@link SizeConfigStrategy} 只测未命中的路径，
+ * 也就是 BitmapPool 为空时每次解码都会走的路径
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GroupedLinkedMapBenchmark {
+    private static final int[][] SIZES = {{100, 100}, {360, 360}, {720, 1280}, {1080, 1920}, {200, 300}, {480, 800}, {64, 64}, {256, 256}};
+    private static final Bitmap.Config[] CONFIGS = {Bitmap.Config.ARGB_8888, Bitmap.Config.RGB_565};
+
+    private SizeConfigStrategy.KeyPool keyPool;
+    private GroupedLinkedMap<SizeConfigStrategy.Key, Object> groupedMap;
+    private SizeConfigStrategy strategy;
+    private int index;
+
+    @Setup
+    public void setup() {
+        SLog.setLevel(SLog.LEVEL_NONE);
+
+        keyPool = new SizeConfigStrategy.KeyPool();
+        groupedMap = new GroupedLinkedMap<SizeConfigStrategy.Key, Object>();
+        for (int[] size : SIZES) {
+            for (Bitmap.Config config : CONFIGS) {
+                for (int i = 0; i < 4; i++) {
+                    groupedMap.put(newKey(size, config), new Object());
+                }
+            }
+        }
+        strategy = new SizeConfigStrategy();
+    }
+
+    private SizeConfigStrategy.Key newKey(int[] size, Bitmap.Config config) {
+        return keyPool.get(SketchUtils.computeByteCount(size[0], size[1], config), config);
+    }
+
+    /**
+     * 命中后再放回去，保持 map 的大小不变
+     */
+    @Benchmark
+    public Object groupedMapGetAndPut() {
+        int next = index++;
+        int[] size = SIZES[next % SIZES.length];
+        Bitmap.Config config = CONFIGS[(next / SIZES.length) % CONFIGS.length];
+        Object value = groupedMap.get(newKey(size, config));
+        groupedMap.put(newKey(size, config), value);
+        return value;
+    }
+
+    @Benchmark
+    public Object groupedMapMiss() {
+        return groupedMap.get(keyPool.get(index++ & 0xFF, Bitmap.Config.ALPHA_8));
+    }
+
+    @Benchmark
+    public Bitmap strategyMiss() {
+        int next = index++;
+        int[] size = SIZES[next % SIZES.length];
+        return strategy.get(size[0], size[1], CONFIGS[(next / SIZES.length) % CONFIGS.length]);
+    }
+}
@@ -41,6 +41,7 @@ object AppConfig {
         SUPPORT_ZOOM("PREFERENCE_SUPPORT_ZOOM", true),
         READ_MODE("PREFERENCE_READ_MODE", true),
         THUMBNAIL_MODE("PREFERENCE_THUMBNAIL_MODE", true),
+        EXIF_THUMBNAIL_MODE("PREFERENCE_EXIF_THUMBNAIL_MODE", false),
         LOCATION_ANIMATE("PREFERENCE_LOCATION_ANIMATE", true),
         CACHE_PROCESSED_IMAGE("PREFERENCE_CACHE_PROCESSED_IMAGE", true),
         DISABLE_CORRECT_IMAGE_ORIENTATION("PREFERENCE_DISABLE_CORRECT_IMAGE_ORIENTATION", false),
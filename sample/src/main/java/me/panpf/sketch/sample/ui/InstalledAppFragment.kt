@@ -14,6 +14,8 @@ import me.panpf.sketch.sample.item.AppItemFactory
 import me.panpf.sketch.sample.item.AppListHeaderItemFactory
 import me.panpf.sketch.sample.bean.AppInfo
 import me.panpf.sketch.sample.util.ScrollingPauseLoadManager
+import me.panpf.sketch.uri.AbsIconAtlasUriModel
+import me.panpf.sketch.uri.AppIconUriModel
 import net.sourceforge.pinyin4j.PinyinHelper
 import java.io.File
 import java.lang.ref.WeakReference
@@ -87,6 +89,11 @@ class InstalledAppFragment : BaseFragment(), AppItemFactory.AppItemListener {
 
             appInfoList.sortWith(Comparator { lhs, rhs -> (lhs.sortName ?: "").compareTo((rhs.sortName ?: ""))})
 
+            // 一次性读取所有图标，列表显示时就可以直接从图标集中读取
+            val appContext = context.applicationContext
+            val iconUris = appInfoList.map { AppIconUriModel.makeUri(it.packageName ?: "", it.versionCode) }
+            Thread({ AbsIconAtlasUriModel.prefetch(appContext, iconUris) }, "AppIconPrefetch").start()
+
             return appInfoList
         }
 
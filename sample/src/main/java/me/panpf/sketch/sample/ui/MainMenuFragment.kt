@@ -16,6 +16,8 @@ import me.panpf.adapter.AssemblyRecyclerAdapter
 import me.panpf.androidxkt.view.isOrientationPortrait
 import me.panpf.sketch.SLog
 import me.panpf.sketch.Sketch
+import me.panpf.sketch.cache.CacheStats
+import me.panpf.sketch.cache.CacheStatsProvider
 import me.panpf.sketch.sample.AppConfig
 import me.panpf.sketch.sample.ImageOptions
 import me.panpf.sketch.sample.R
@@ -93,6 +95,15 @@ class MainMenuFragment : BaseFragment() {
         menuList.add(CacheInfoMenu(appContext, "Memory", "Memory Cache (Click Clean)", menuClickListener))
         menuList.add(CacheInfoMenu(appContext, "BitmapPool", "Bitmap Pool (Click Clean)", menuClickListener))
         menuList.add(CacheInfoMenu(appContext, "Disk", "Disk Cache (Click Clean)", menuClickListener))
+        menuList.add(object : InfoMenu("Cache Stats (Click Show)") {
+            override fun onClick(adapter: AssemblyAdapter?) {
+                AlertDialog.Builder(activity).apply {
+                    setTitle("Cache Stats")
+                    setMessage(dumpCacheStats(appContext))
+                    setPositiveButton("OK", null)
+                }.show()
+            }
+        })
         menuList.add(CheckMenu(appContext, "Disable Memory Cache", AppConfig.Key.GLOBAL_DISABLE_CACHE_IN_MEMORY, null, menuClickListener))
         menuList.add(CheckMenu(appContext, "Disable Bitmap Pool", AppConfig.Key.GLOBAL_DISABLE_BITMAP_POOL, null, menuClickListener))
         menuList.add(CheckMenu(appContext, "Disable Disk Cache", AppConfig.Key.GLOBAL_DISABLE_CACHE_IN_DISK, null, menuClickListener))
@@ -113,6 +124,7 @@ class MainMenuFragment : BaseFragment() {
         menuList.add(CheckMenu(appContext, "In Prefer Quality Over Speed", AppConfig.Key.GLOBAL_IN_PREFER_QUALITY_OVER_SPEED, null, menuClickListener))
         menuList.add(CheckMenu(appContext, "Low Quality Bitmap", AppConfig.Key.GLOBAL_LOW_QUALITY_IMAGE, null, menuClickListener))
         menuList.add(CheckMenu(appContext, "Enabled Thumbnail Mode In List", AppConfig.Key.THUMBNAIL_MODE, null, menuClickListener))
+        menuList.add(CheckMenu(appContext, "Enabled Exif Thumbnail Mode In List", AppConfig.Key.EXIF_THUMBNAIL_MODE, null, menuClickListener))
         menuList.add(CheckMenu(appContext, "Cache Processed Image In Disk", AppConfig.Key.CACHE_PROCESSED_IMAGE, null, menuClickListener))
         menuList.add(CheckMenu(appContext, "Disabled Correct Image Orientation", AppConfig.Key.DISABLE_CORRECT_IMAGE_ORIENTATION, null, menuClickListener))
 
@@ -185,6 +197,29 @@ class MainMenuFragment : BaseFragment() {
     }
 }
 
+private fun dumpCacheStats(context: Context): String {
+    val configuration = Sketch.with(context).configuration
+    val statsList = listOf(
+            configuration.memoryCache,
+            configuration.bitmapPool,
+            configuration.diskCache,
+            configuration.encodedMemoryCache,
+            configuration.processedImageCache,
+            configuration.regionDecoderCache,
+            configuration.stateImageCache,
+            configuration.appIconAtlas)
+            .mapNotNull { (it as? CacheStatsProvider)?.stats }
+    return statsList.joinToString(separator = "\n\n") { stats ->
+        val snapshot = stats.snapshot()
+        "${snapshot.name}\n" +
+                "hit/miss: ${snapshot.hitCount}/${snapshot.missCount} (${String.format("%.1f%%", snapshot.hitRate * 100)})\n" +
+                "put: ${snapshot.putCount}, average ${Formatter.formatFileSize(context, snapshot.averagePutSize)}, reject ${snapshot.rejectCount}\n" +
+                "evict capacity/trim/clear/remove: ${snapshot.getEvictionCount(CacheStats.EVICTION_CAPACITY)}/" +
+                "${snapshot.getEvictionCount(CacheStats.EVICTION_TRIM)}/${snapshot.getEvictionCount(CacheStats.EVICTION_CLEAR)}/" +
+                "${snapshot.getEvictionCount(CacheStats.EVICTION_REMOVE)}, ${Formatter.formatFileSize(context, snapshot.evictedBytes)}"
+    } + "\n\nRequestMetrics\n" + configuration.requestMetrics.dump()
+}
+
 class CacheInfoMenu(val context: Context, val type: String, title: String, val menuClickListener: View.OnClickListener) : InfoMenu(title) {
     override fun getInfo(): String {
         when (type) {
@@ -81,7 +81,8 @@ class MyPhotosFragment : BaseFragment(), MyPhotoItemFactory.OnImageClickListener
         // 含有这些信息时，说明这张图片不仅仅是缩小，而是会被改变，因此不能用作loading图了
         if (finalOptionsKey!!.contains("Resize")
                 || finalOptionsKey.contains("ImageProcessor")
-                || finalOptionsKey.contains("thumbnailMode")) {
+                || finalOptionsKey.contains("thumbnailMode")
+                || finalOptionsKey.contains("exifThumbnail")) {
             finalOptionsKey = null
         }
 
@@ -60,6 +60,7 @@ class SampleImageView @JvmOverloads constructor(context: Context, attrs: Attribu
         onEvent(AppConfigChangedEvent(AppConfig.Key.DISABLE_CORRECT_IMAGE_ORIENTATION))
         onEvent(AppConfigChangedEvent(AppConfig.Key.PLAY_GIF_ON_LIST))
         onEvent(AppConfigChangedEvent(AppConfig.Key.THUMBNAIL_MODE))
+        onEvent(AppConfigChangedEvent(AppConfig.Key.EXIF_THUMBNAIL_MODE))
         onEvent(AppConfigChangedEvent(AppConfig.Key.CACHE_PROCESSED_IMAGE))
         disabledRedisplay = false
     }
@@ -136,6 +137,12 @@ class SampleImageView @JvmOverloads constructor(context: Context, attrs: Attribu
                     }
                 }
             }
+            AppConfig.Key.EXIF_THUMBNAIL_MODE -> if (page == Page.PHOTO_LIST) {
+                val exifThumbnailMode = AppConfig.getBoolean(context, event.key)
+                options.isExifThumbnailMode = exifThumbnailMode
+
+                redisplay { _, cacheOptions -> cacheOptions.isExifThumbnailMode = exifThumbnailMode }
+            }
             AppConfig.Key.CACHE_PROCESSED_IMAGE -> {
                 val cacheProcessedImageInDisk = AppConfig.getBoolean(context, event.key)
                 options.isCacheProcessedImageInDisk = cacheProcessedImageInDisk
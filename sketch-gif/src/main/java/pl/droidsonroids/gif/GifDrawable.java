@@ -40,6 +40,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import pl.droidsonroids.gif.transforms.CornerRadiusTransform;
 import pl.droidsonroids.gif.transforms.Transform;
@@ -57,6 +58,11 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 
 	volatile boolean mIsRunning = true;
 	long mNextFrameRenderTime = Long.MIN_VALUE;
+	/**
+	 * Time at which pending render task is expected to run, used to measure scheduling lateness.
+	 */
+	volatile long mRenderDeadline = Long.MIN_VALUE;
+	final AtomicLong mDroppedFrameCount = new AtomicLong();
 
 	private final Rect mDstRect = new Rect();
 	/**
@@ -261,6 +267,16 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 		return Bitmap.createBitmap(width, height, config);
 	}
 
+	/**
+	 * Renders next frame into {@link #mBuffer}. Called from rendering thread.
+	 * Subclasses may serve frames from their own cache instead of decoding them again.
+	 *
+	 * @return duration of the rendered frame in milliseconds or -1 if animation has ended
+	 */
+	protected long renderNextFrame() {
+		return mNativeInfoHandle.renderFrame(mBuffer);
+	}
+
 	/**
 	 * Frees any memory allocated native way.
 	 * Operation is irreversible. After this call, nothing will be drawn.
@@ -348,7 +364,7 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 			mInvalidationHandler.sendEmptyMessageAtTime(MSG_TYPE_INVALIDATION, 0);
 		} else {
 			cancelPendingRenderTask();
-			mRenderTaskSchedule = mExecutor.schedule(mRenderTask, Math.max(lastFrameRemainder, 0), TimeUnit.MILLISECONDS);
+			scheduleRenderTask(Math.max(lastFrameRemainder, 0));
 		}
 	}
 
@@ -385,10 +401,16 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 		mNativeInfoHandle.saveRemainder();
 	}
 
+	private void scheduleRenderTask(long renderDelay) {
+		mRenderDeadline = SystemClock.uptimeMillis() + renderDelay;
+		mRenderTaskSchedule = mExecutor.schedule(mRenderTask, renderDelay, TimeUnit.MILLISECONDS);
+	}
+
 	private void cancelPendingRenderTask() {
 		if (mRenderTaskSchedule != null) {
 			mRenderTaskSchedule.cancel(false);
 		}
+		mRenderDeadline = Long.MIN_VALUE;
 		mInvalidationHandler.removeMessages(MSG_TYPE_INVALIDATION);
 	}
 
@@ -780,7 +802,7 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 			final long renderDelay = Math.max(0, mNextFrameRenderTime - SystemClock.uptimeMillis());
 			mNextFrameRenderTime = Long.MIN_VALUE;
 			mExecutor.remove(mRenderTask);
-			mRenderTaskSchedule = mExecutor.schedule(mRenderTask, renderDelay, TimeUnit.MILLISECONDS);
+			scheduleRenderTask(renderDelay);
 		}
 	}
 
@@ -912,10 +934,29 @@ public class GifDrawable extends Drawable implements Animatable, MediaPlayerCont
 			} else if (changed) {
 				stop();
 			}
+		} else if (changed && mIsRunning) {
+			if (visible) {
+				// Next draw picks up the rendering chain again
+				mInvalidationHandler.sendEmptyMessageAtTime(MSG_TYPE_INVALIDATION, 0);
+			} else if (mRenderTaskSchedule != null && mRenderTaskSchedule.cancel(false)) {
+				// Pending frame will not be seen, render it on the first draw after becoming visible
+				mNextFrameRenderTime = SystemClock.uptimeMillis();
+				mRenderDeadline = Long.MIN_VALUE;
+			}
 		}
 		return changed;
 	}
 
+	/**
+	 * Returns number of frames which were not shown on time because rendering thread was late by at least
+	 * one whole frame. Instead of catching up such frames are skipped and animation continues from now.
+	 *
+	 * @return number of dropped frames since this drawable was created
+	 */
+	public long getDroppedFrameCount() {
+		return mDroppedFrameCount.get();
+	}
+
 	/**
 	 * Returns zero-based index of recently rendered frame in given loop or -1 when drawable is recycled.
 	 *
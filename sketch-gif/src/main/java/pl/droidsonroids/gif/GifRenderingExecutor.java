@@ -4,20 +4,52 @@ import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 /**
  * Default executor for rendering tasks - {@link java.util.concurrent.ScheduledThreadPoolExecutor}
- * with 1 worker thread and {@link java.util.concurrent.ThreadPoolExecutor.DiscardPolicy}.
+ * with {@link #getWorkerCount()} worker threads and {@link java.util.concurrent.ThreadPoolExecutor.DiscardPolicy}.
+ * <p>
+ * Tasks are scheduled at the next-frame deadline of their drawable, so the delay queue always hands
+ * the drawable whose frame is due first to the next free worker.
  */
-final class GifRenderingExecutor extends ScheduledThreadPoolExecutor {
+public final class GifRenderingExecutor extends ScheduledThreadPoolExecutor {
+
+	public static final int DEFAULT_WORKER_COUNT = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+
+	private static volatile int sWorkerCount = DEFAULT_WORKER_COUNT;
 
 	// Lazy initialization via inner-class holder
 	private static final class InstanceHolder {
 		private static final GifRenderingExecutor INSTANCE = new GifRenderingExecutor();
 	}
 
-	static GifRenderingExecutor getInstance() {
+	/**
+	 * @return executor shared by all drawables using default executor, other animated drawables can schedule their rendering tasks on it too
+	 */
+	public static GifRenderingExecutor getInstance() {
 		return InstanceHolder.INSTANCE;
 	}
 
 	private GifRenderingExecutor() {
-		super(1, new DiscardPolicy());
+		super(sWorkerCount, new DiscardPolicy());
+	}
+
+	/**
+	 * Sets number of worker threads shared by all drawables using default executor.
+	 * Can be called at any time, takes effect immediately if executor is already created.
+	 *
+	 * @param workerCount number of worker threads, at least 1
+	 * @throws IllegalArgumentException if workerCount &lt; 1
+	 */
+	public static void setWorkerCount(int workerCount) {
+		if (workerCount < 1) {
+			throw new IllegalArgumentException("Worker count must be at least 1");
+		}
+		sWorkerCount = workerCount;
+		getInstance().setCorePoolSize(workerCount);
+	}
+
+	/**
+	 * @return number of worker threads shared by all drawables using default executor
+	 */
+	public static int getWorkerCount() {
+		return sWorkerCount;
 	}
 }
@@ -3,6 +3,7 @@ package pl.droidsonroids.gif;
 import android.os.SystemClock;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static pl.droidsonroids.gif.InvalidationHandler.MSG_TYPE_INVALIDATION;
 
@@ -14,22 +15,51 @@ class RenderTask extends SafeRunnable {
 
 	@Override
 	public void doWork() {
-		final long invalidationDelay = mGifDrawable.mNativeInfoHandle.renderFrame(mGifDrawable.mBuffer);
+		// Sample the time before rendering, so that rendering time is not counted as scheduling lateness
+		final long renderStartTime = SystemClock.uptimeMillis();
+		final long renderDeadline = mGifDrawable.mRenderDeadline;
+		final long lateness = renderDeadline != Long.MIN_VALUE ? renderStartTime - renderDeadline : 0;
+		final long invalidationDelay = mGifDrawable.renderNextFrame();
 		if (invalidationDelay >= 0) {
-			mGifDrawable.mNextFrameRenderTime = SystemClock.uptimeMillis() + invalidationDelay;
+			final long frameDelay = computeFrameDelay(lateness, invalidationDelay, mGifDrawable.mDroppedFrameCount);
+			mGifDrawable.mNextFrameRenderTime = renderStartTime + frameDelay;
 			if (mGifDrawable.isVisible() && mGifDrawable.mIsRunning && !mGifDrawable.mIsRenderingTriggeredOnDraw) {
+				final long scheduleDelay = Math.max(0, mGifDrawable.mNextFrameRenderTime - SystemClock.uptimeMillis());
 				mGifDrawable.mExecutor.remove(this);
-				mGifDrawable.mRenderTaskSchedule = mGifDrawable.mExecutor.schedule(this, invalidationDelay, TimeUnit.MILLISECONDS);
+				mGifDrawable.mRenderDeadline = mGifDrawable.mNextFrameRenderTime;
+				mGifDrawable.mRenderTaskSchedule = mGifDrawable.mExecutor.schedule(this, scheduleDelay, TimeUnit.MILLISECONDS);
 			}
 			if (!mGifDrawable.mListeners.isEmpty() && mGifDrawable.getCurrentFrameIndex() == mGifDrawable.mNativeInfoHandle.getNumberOfFrames() - 1) {
 				mGifDrawable.mInvalidationHandler.sendEmptyMessageAtTime(mGifDrawable.getCurrentLoop(), mGifDrawable.mNextFrameRenderTime);
 			}
 		} else {
 			mGifDrawable.mNextFrameRenderTime = Long.MIN_VALUE;
+			mGifDrawable.mRenderDeadline = Long.MIN_VALUE;
 			mGifDrawable.mIsRunning = false;
 		}
 		if (mGifDrawable.isVisible() && !mGifDrawable.mInvalidationHandler.hasMessages(MSG_TYPE_INVALIDATION)) {
 			mGifDrawable.mInvalidationHandler.sendEmptyMessageAtTime(MSG_TYPE_INVALIDATION, 0);
 		}
 	}
+
+	/**
+	 * Computes delay of the next frame measured from the start of current rendering.
+	 *
+	 * @param lateness          how late current rendering started compared to its deadline, in milliseconds
+	 * @param invalidationDelay duration of the frame which has just been rendered, in milliseconds
+	 * @param droppedFrameCount counter incremented by the number of whole frame slots which have been missed
+	 * @return delay of the next frame in milliseconds
+	 */
+	static long computeFrameDelay(long lateness, long invalidationDelay, AtomicLong droppedFrameCount) {
+		if (lateness <= 0) {
+			return invalidationDelay;
+		} else if (lateness < invalidationDelay) {
+			// Late within one frame, shorten this frame to stay on the original timeline
+			return invalidationDelay - lateness;
+		} else {
+			// Missed at least one whole frame slot, drop them and restart timeline from now instead of catching up
+			droppedFrameCount.addAndGet(invalidationDelay > 0 ? lateness / invalidationDelay : 1);
+			return invalidationDelay;
+		}
+	}
 }
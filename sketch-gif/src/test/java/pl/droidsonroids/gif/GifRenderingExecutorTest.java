@@ -0,0 +1,76 @@
+package pl.droidsonroids.gif;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class GifRenderingExecutorTest {
+
+	@After
+	public void tearDown() {
+		GifRenderingExecutor.setWorkerCount(GifRenderingExecutor.DEFAULT_WORKER_COUNT);
+	}
+
+	@Test
+	public void testDefaultWorkerCount() {
+		Assert.assertTrue(GifRenderingExecutor.DEFAULT_WORKER_COUNT >= 1);
+		Assert.assertTrue(GifRenderingExecutor.DEFAULT_WORKER_COUNT <= 4);
+	}
+
+	@Test
+	public void testSetWorkerCount() {
+		GifRenderingExecutor.setWorkerCount(3);
+		Assert.assertEquals(3, GifRenderingExecutor.getWorkerCount());
+		Assert.assertEquals(3, GifRenderingExecutor.getInstance().getCorePoolSize());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSetWorkerCountInvalid() {
+		GifRenderingExecutor.setWorkerCount(0);
+	}
+
+	@Test
+	public void testDeadlineOrder() throws InterruptedException {
+		GifRenderingExecutor.setWorkerCount(1);
+		GifRenderingExecutor executor = GifRenderingExecutor.getInstance();
+
+		// Occupy the only worker, so that all tasks below are overdue when it becomes free
+		final CountDownLatch blockLatch = new CountDownLatch(1);
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					blockLatch.await();
+				} catch (InterruptedException ignored) {
+				}
+			}
+		});
+
+		final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch doneLatch = new CountDownLatch(3);
+		int[] delays = {30, 10, 20};
+		for (final int delay : delays) {
+			executor.schedule(new Runnable() {
+				@Override
+				public void run() {
+					order.add(delay);
+					doneLatch.countDown();
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+
+		Thread.sleep(100);
+		blockLatch.countDown();
+		Assert.assertTrue(doneLatch.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(3, order.size());
+		Assert.assertEquals(10, (int) order.get(0));
+		Assert.assertEquals(20, (int) order.get(1));
+		Assert.assertEquals(30, (int) order.get(2));
+	}
+}
@@ -0,0 +1,72 @@
+package pl.droidsonroids.gif;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RenderTaskTest {
+
+	@Test
+	public void testOnTime() {
+		AtomicLong droppedFrameCount = new AtomicLong();
+		Assert.assertEquals(100, RenderTask.computeFrameDelay(0, 100, droppedFrameCount));
+		Assert.assertEquals(100, RenderTask.computeFrameDelay(-20, 100, droppedFrameCount));
+		Assert.assertEquals(0, droppedFrameCount.get());
+	}
+
+	@Test
+	public void testLateWithinOneFrame() {
+		AtomicLong droppedFrameCount = new AtomicLong();
+		Assert.assertEquals(70, RenderTask.computeFrameDelay(30, 100, droppedFrameCount));
+		Assert.assertEquals(1, RenderTask.computeFrameDelay(99, 100, droppedFrameCount));
+		Assert.assertEquals(0, droppedFrameCount.get());
+	}
+
+	@Test
+	public void testLateByWholeFrames() {
+		AtomicLong droppedFrameCount = new AtomicLong();
+		Assert.assertEquals(100, RenderTask.computeFrameDelay(100, 100, droppedFrameCount));
+		Assert.assertEquals(1, droppedFrameCount.get());
+		Assert.assertEquals(100, RenderTask.computeFrameDelay(350, 100, droppedFrameCount));
+		Assert.assertEquals(4, droppedFrameCount.get());
+	}
+
+	@Test
+	public void testZeroFrameDuration() {
+		AtomicLong droppedFrameCount = new AtomicLong();
+		Assert.assertEquals(0, RenderTask.computeFrameDelay(5, 0, droppedFrameCount));
+		Assert.assertEquals(1, droppedFrameCount.get());
+	}
+
+	@Test
+	public void testConcurrentDroppedFrames() throws InterruptedException {
+		final AtomicLong droppedFrameCount = new AtomicLong();
+		final int threadCount = 8;
+		final int callCount = 10000;
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		Thread[] threads = new Thread[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						startLatch.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int j = 0; j < callCount; j++) {
+						RenderTask.computeFrameDelay(200, 100, droppedFrameCount);
+					}
+				}
+			});
+			threads[i].start();
+		}
+		startLatch.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Assert.assertEquals(threadCount * callCount * 2L, droppedFrameCount.get());
+	}
+}
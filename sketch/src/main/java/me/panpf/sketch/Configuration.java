@@ -20,13 +20,21 @@ import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.graphics.Bitmap;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import me.panpf.sketch.cache.BitmapPool;
+import me.panpf.sketch.cache.AppIconAtlas;
+import me.panpf.sketch.cache.BitmapPoolWarmer;
+import me.panpf.sketch.cache.RegionDecoderCache;
+import me.panpf.sketch.cache.StateImageCache;
 import me.panpf.sketch.cache.DiskCache;
+import me.panpf.sketch.cache.EncodedMemoryCache;
+import me.panpf.sketch.cache.FrameCacheBudget;
 import me.panpf.sketch.cache.LruBitmapPool;
 import me.panpf.sketch.cache.LruDiskCache;
 import me.panpf.sketch.cache.LruMemoryCache;
 import me.panpf.sketch.cache.MemoryCache;
+import me.panpf.sketch.cache.MemoryPressureGovernor;
 import me.panpf.sketch.cache.MemorySizeCalculator;
 import me.panpf.sketch.decode.ImageDecoder;
 import me.panpf.sketch.decode.ImageOrientationCorrector;
@@ -47,6 +55,8 @@ import me.panpf.sketch.request.HelperFactory;
 import me.panpf.sketch.request.LoadListener;
 import me.panpf.sketch.request.RequestExecutor;
 import me.panpf.sketch.request.RequestFactory;
+import me.panpf.sketch.request.RequestMetrics;
+import me.panpf.sketch.request.RequestMetricsListener;
 import me.panpf.sketch.request.Resize;
 import me.panpf.sketch.uri.UriModel;
 import me.panpf.sketch.uri.UriModelManager;
@@ -65,7 +75,16 @@ public final class Configuration {
     private DiskCache diskCache;
     private BitmapPool bitmapPool;
     private MemoryCache memoryCache;
+    private EncodedMemoryCache encodedMemoryCache;
     private ProcessedImageCache processedImageCache;
+    private FrameCacheBudget frameCacheBudget;
+    private BitmapPoolWarmer bitmapPoolWarmer;
+    private AppIconAtlas appIconAtlas;
+    private RegionDecoderCache regionDecoderCache;
+    private StateImageCache stateImageCache;
+    private MemoryPressureGovernor memoryPressureGovernor;
+    private RequestMetrics requestMetrics;
+    private RequestMetricsListener requestMetricsListener;
 
     private HttpStack httpStack;
     private ImageDecoder decoder;
@@ -95,6 +114,17 @@ public final class Configuration {
         MemorySizeCalculator memorySizeCalculator = new MemorySizeCalculator(context);
         this.bitmapPool = new LruBitmapPool(context, memorySizeCalculator.getBitmapPoolSize());
         this.memoryCache = new LruMemoryCache(context, memorySizeCalculator.getMemoryCacheSize());
+        // 原始数据比解码后的 Bitmap 小得多，1/4 的容量就能多放不少图片
+        this.encodedMemoryCache = new EncodedMemoryCache(context, memorySizeCalculator.getMemoryCacheSize() / 4);
+        wireEncodedMemoryCache();
+        this.frameCacheBudget = new FrameCacheBudget(context, memorySizeCalculator.getBitmapPoolSize() / 2,
+                memorySizeCalculator.getBitmapPoolSize() / 8);
+        this.bitmapPoolWarmer = new BitmapPoolWarmer(context);
+        this.appIconAtlas = new AppIconAtlas(context);
+        this.regionDecoderCache = new RegionDecoderCache(context);
+        this.stateImageCache = new StateImageCache(context);
+        this.memoryPressureGovernor = new MemoryPressureGovernor(context);
+        this.requestMetrics = new RequestMetrics();
 
         this.decoder = new ImageDecoder();
         this.executor = new RequestExecutor();
@@ -167,6 +197,7 @@ public final class Configuration {
         if (newDiskCache != null) {
             DiskCache oldDiskCache = diskCache;
             diskCache = newDiskCache;
+            wireEncodedMemoryCache();
             if (oldDiskCache != null) {
                 oldDiskCache.close();
             }
@@ -230,6 +261,7 @@ public final class Configuration {
         if (memoryCache != null) {
             MemoryCache oldMemoryCache = this.memoryCache;
             this.memoryCache = memoryCache;
+            wireEncodedMemoryCache();
             if (oldMemoryCache != null) {
                 oldMemoryCache.close();
             }
@@ -238,6 +270,49 @@ public final class Configuration {
         return this;
     }
 
+    /**
+     * 获取二级内存缓存，保存最近被 {@link MemoryCache} 释放的图片的原始数据
+     *
+     * @return {@link EncodedMemoryCache}. 二级内存缓存
+     */
+    @NonNull
+    public EncodedMemoryCache getEncodedMemoryCache() {
+        return encodedMemoryCache;
+    }
+
+    /**
+     * 设置二级内存缓存
+     *
+     * @param encodedMemoryCache {@link EncodedMemoryCache}. 二级内存缓存
+     * @return {@link Configuration}. 为了支持链式调用
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public Configuration setEncodedMemoryCache(@NonNull EncodedMemoryCache encodedMemoryCache) {
+        //noinspection ConstantConditions
+        if (encodedMemoryCache != null) {
+            EncodedMemoryCache oldEncodedMemoryCache = this.encodedMemoryCache;
+            this.encodedMemoryCache = encodedMemoryCache;
+            wireEncodedMemoryCache();
+            if (oldEncodedMemoryCache != null) {
+                oldEncodedMemoryCache.close();
+            }
+            SLog.w(NAME, "encodedMemoryCache=%s", encodedMemoryCache.toString());
+        }
+        return this;
+    }
+
+    /**
+     * 把 {@link EncodedMemoryCache} 和它的数据来源以及 {@link LruMemoryCache} 连起来，缓存内部不直接访问 {@link Sketch} 单例
+     */
+    private void wireEncodedMemoryCache() {
+        encodedMemoryCache.setDiskCache(diskCache);
+        encodedMemoryCache.setUriModelManager(uriModelManager);
+        if (memoryCache instanceof LruMemoryCache) {
+            ((LruMemoryCache) memoryCache).setEncodedMemoryCache(encodedMemoryCache);
+        }
+    }
+
     /**
      * 获取已处理图片缓存器
      *
@@ -266,6 +341,240 @@ public final class Configuration {
         return this;
     }
 
+    /**
+     * 获取动图帧缓存的全局内存预算
+     *
+     * @return {@link FrameCacheBudget}. 动图帧缓存的全局内存预算
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public FrameCacheBudget getFrameCacheBudget() {
+        return frameCacheBudget;
+    }
+
+    /**
+     * 设置动图帧缓存的全局内存预算
+     *
+     * @param frameCacheBudget {@link FrameCacheBudget}. 动图帧缓存的全局内存预算
+     * @return {@link Configuration}. 为了支持链式调用
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public Configuration setFrameCacheBudget(@NonNull FrameCacheBudget frameCacheBudget) {
+        //noinspection ConstantConditions
+        if (frameCacheBudget != null) {
+            this.frameCacheBudget = frameCacheBudget;
+            SLog.w(NAME, "frameCacheBudget=%s", frameCacheBudget.toString());
+        }
+        return this;
+    }
+
+    /**
+     * 获取 {@link BitmapPool} 预热器
+     *
+     * @return {@link BitmapPoolWarmer}. {@link BitmapPool} 预热器
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public BitmapPoolWarmer getBitmapPoolWarmer() {
+        return bitmapPoolWarmer;
+    }
+
+    /**
+     * 设置 {@link BitmapPool} 预热器，需要在 {@link Initializer} 中设置才会生效
+     *
+     * @param bitmapPoolWarmer {@link BitmapPoolWarmer}. {@link BitmapPool} 预热器
+     * @return {@link Configuration}. 为了支持链式调用
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public Configuration setBitmapPoolWarmer(@NonNull BitmapPoolWarmer bitmapPoolWarmer) {
+        //noinspection ConstantConditions
+        if (bitmapPoolWarmer != null) {
+            this.bitmapPoolWarmer = bitmapPoolWarmer;
+            SLog.w(NAME, "bitmapPoolWarmer=%s", bitmapPoolWarmer.toString());
+        }
+        return this;
+    }
+
+    /**
+     * 获取 app 和 apk 图标集
+     *
+     * @return {@link AppIconAtlas}. app 和 apk 图标集
+     */
+    @NonNull
+    public AppIconAtlas getAppIconAtlas() {
+        return appIconAtlas;
+    }
+
+    /**
+     * 设置 app 和 apk 图标集
+     *
+     * @param appIconAtlas {@link AppIconAtlas}. app 和 apk 图标集
+     * @return {@link Configuration}. 为了支持链式调用
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public Configuration setAppIconAtlas(@NonNull AppIconAtlas appIconAtlas) {
+        //noinspection ConstantConditions
+        if (appIconAtlas != null) {
+            AppIconAtlas oldAppIconAtlas = this.appIconAtlas;
+            this.appIconAtlas = appIconAtlas;
+            if (oldAppIconAtlas != null) {
+                oldAppIconAtlas.close();
+            }
+            SLog.w(NAME, "appIconAtlas=%s", appIconAtlas.toString());
+        }
+        return this;
+    }
+
+    /**
+     * 获取 {@link android.graphics.BitmapRegionDecoder} 缓存，缩略图模式和分块显示共用
+     *
+     * @return {@link RegionDecoderCache}. {@link android.graphics.BitmapRegionDecoder} 缓存
+     */
+    @NonNull
+    public RegionDecoderCache getRegionDecoderCache() {
+        return regionDecoderCache;
+    }
+
+    /**
+     * 设置 {@link android.graphics.BitmapRegionDecoder} 缓存
+     *
+     * @param regionDecoderCache {@link RegionDecoderCache}. {@link android.graphics.BitmapRegionDecoder} 缓存
+     * @return {@link Configuration}. 为了支持链式调用
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public Configuration setRegionDecoderCache(@NonNull RegionDecoderCache regionDecoderCache) {
+        //noinspection ConstantConditions
+        if (regionDecoderCache != null) {
+            RegionDecoderCache oldRegionDecoderCache = this.regionDecoderCache;
+            this.regionDecoderCache = regionDecoderCache;
+            if (oldRegionDecoderCache != null) {
+                oldRegionDecoderCache.clear();
+            }
+            SLog.w(NAME, "regionDecoderCache=%s", regionDecoderCache.toString());
+        }
+        return this;
+    }
+
+    /**
+     * 获取占位图片缓存，{@link me.panpf.sketch.state.MakerStateImage} 处理后的图片放在这里
+     *
+     * @return {@link StateImageCache}. 占位图片缓存
+     */
+    @NonNull
+    public StateImageCache getStateImageCache() {
+        return stateImageCache;
+    }
+
+    /**
+     * 设置占位图片缓存
+     *
+     * @param stateImageCache {@link StateImageCache}. 占位图片缓存
+     * @return {@link Configuration}. 为了支持链式调用
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public Configuration setStateImageCache(@NonNull StateImageCache stateImageCache) {
+        //noinspection ConstantConditions
+        if (stateImageCache != null) {
+            StateImageCache oldStateImageCache = this.stateImageCache;
+            this.stateImageCache = stateImageCache;
+            if (oldStateImageCache != null) {
+                oldStateImageCache.clear();
+            }
+            SLog.w(NAME, "stateImageCache=%s", stateImageCache.toString());
+        }
+        return this;
+    }
+
+    /**
+     * 获取内存压力调节器
+     *
+     * @return {@link MemoryPressureGovernor}. 内存压力调节器，根据剩余内存调整 {@link MemoryCache} 和 {@link BitmapPool} 的容量
+     */
+    @NonNull
+    public MemoryPressureGovernor getMemoryPressureGovernor() {
+        return memoryPressureGovernor;
+    }
+
+    /**
+     * 设置内存压力调节器
+     *
+     * @param memoryPressureGovernor {@link MemoryPressureGovernor}. 内存压力调节器，根据剩余内存调整 {@link MemoryCache} 和 {@link BitmapPool} 的容量
+     * @return {@link Configuration}. 为了支持链式调用
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public Configuration setMemoryPressureGovernor(@NonNull MemoryPressureGovernor memoryPressureGovernor) {
+        //noinspection ConstantConditions
+        if (memoryPressureGovernor != null) {
+            MemoryPressureGovernor oldMemoryPressureGovernor = this.memoryPressureGovernor;
+            this.memoryPressureGovernor = memoryPressureGovernor;
+            if (oldMemoryPressureGovernor != null) {
+                // 旧的调节器可能缩小过容量，关闭时会恢复
+                oldMemoryPressureGovernor.setDisabled(true);
+            }
+            SLog.w(NAME, "memoryPressureGovernor=%s", memoryPressureGovernor.toString());
+        }
+        return this;
+    }
+
+    /**
+     * 获取请求耗时统计
+     *
+     * @return {@link RequestMetrics}. 请求耗时统计
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public RequestMetrics getRequestMetrics() {
+        return requestMetrics;
+    }
+
+    /**
+     * 设置请求耗时统计
+     *
+     * @param requestMetrics {@link RequestMetrics}. 请求耗时统计
+     * @return {@link Configuration}. 为了支持链式调用
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public Configuration setRequestMetrics(@NonNull RequestMetrics requestMetrics) {
+        //noinspection ConstantConditions
+        if (requestMetrics != null) {
+            this.requestMetrics = requestMetrics;
+            SLog.w(NAME, "requestMetrics=%s", requestMetrics.toString());
+        }
+        return this;
+    }
+
+    /**
+     * 获取请求结束监听器
+     *
+     * @return {@link RequestMetricsListener}. 请求结束监听器
+     */
+    @Nullable
+    @SuppressWarnings("unused")
+    public RequestMetricsListener getRequestMetricsListener() {
+        return requestMetricsListener;
+    }
+
+    /**
+     * 设置请求结束监听器，每个请求结束时都会收到请求的执行轨迹
+     *
+     * @param requestMetricsListener {@link RequestMetricsListener}. 请求结束监听器，null 表示不监听
+     * @return {@link Configuration}. 为了支持链式调用
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public Configuration setRequestMetricsListener(@Nullable RequestMetricsListener requestMetricsListener) {
+        this.requestMetricsListener = requestMetricsListener;
+        SLog.w(NAME, "requestMetricsListener=%s", requestMetricsListener != null ? requestMetricsListener.toString() : null);
+        return this;
+    }
+
 
     /**
      * 获取 HTTP 请求执行器
@@ -753,7 +1062,15 @@ public final class Configuration {
                 "\n" + "diskCache：" + diskCache.toString() +
                 "\n" + "bitmapPool：" + bitmapPool.toString() +
                 "\n" + "memoryCache：" + memoryCache.toString() +
+                "\n" + "encodedMemoryCache：" + encodedMemoryCache.toString() +
                 "\n" + "processedImageCache：" + processedImageCache.toString() +
+                "\n" + "frameCacheBudget：" + frameCacheBudget.toString() +
+                "\n" + "bitmapPoolWarmer：" + bitmapPoolWarmer.toString() +
+                "\n" + "appIconAtlas：" + appIconAtlas.toString() +
+                "\n" + "regionDecoderCache：" + regionDecoderCache.toString() +
+                "\n" + "stateImageCache：" + stateImageCache.toString() +
+                "\n" + "memoryPressureGovernor：" + memoryPressureGovernor.toString() +
+                "\n" + "requestMetrics：" + requestMetrics.toString() +
 
                 "\n" + "httpStack：" + httpStack.toString() +
                 "\n" + "decoder：" + decoder.toString() +
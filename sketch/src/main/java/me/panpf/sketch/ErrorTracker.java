@@ -46,6 +46,21 @@ public class ErrorTracker {
                 e.getClass().getSimpleName(), e.getMessage(), Environment.getExternalStorageState(), cacheDir.getPath());
     }
 
+    /**
+     * 磁盘缓存安装完成，可以在这里统计安装耗时
+     *
+     * @param cacheDir 缓存目录
+     * @param costTime 安装耗时，单位毫秒，包括创建和检查缓存目录、读取日志文件
+     * @param async    是否是在后台线程中安装的
+     */
+    public void onDiskCacheInstalled(@NonNull File cacheDir, long costTime, boolean async) {
+        if (costTime >= 500) {
+            SLog.w(NAME, "onDiskCacheInstalled. slow. costTime: %dms. async: %s. cacheDir: %s", costTime, async, cacheDir.getPath());
+        } else if (SLog.isLoggable(SLog.LEVEL_DEBUG | SLog.TYPE_TIME)) {
+            SLog.d(NAME, "onDiskCacheInstalled. costTime: %dms. async: %s. cacheDir: %s", costTime, async, cacheDir.getPath());
+        }
+    }
+
     /**
      * 找不到libpl_droidsonroids_gif.so文件错误
      *
@@ -29,6 +29,8 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import android.widget.ImageView;
 
+import me.panpf.sketch.cache.DiskCache;
+import me.panpf.sketch.cache.LruDiskCache;
 import me.panpf.sketch.request.CancelCause;
 import me.panpf.sketch.request.DisplayHelper;
 import me.panpf.sketch.request.DisplayRequest;
@@ -78,6 +80,11 @@ public class Sketch {
                     if (initializer != null) {
                         initializer.onInitialize(context.getApplicationContext(), newInstance.configuration);
                     }
+                    newInstance.configuration.getBitmapPoolWarmer().warm(newInstance.configuration.getBitmapPool());
+                    DiskCache diskCache = newInstance.configuration.getDiskCache();
+                    if (diskCache instanceof LruDiskCache) {
+                        ((LruDiskCache) diskCache).installAsync();
+                    }
                     instance = newInstance;
                 }
             }
@@ -238,7 +245,12 @@ public class Sketch {
         SLog.w(null, "Trim of memory, level= %s", SketchUtils.getTrimLevelName(level));
 
         configuration.getMemoryCache().trimMemory(level);
+        configuration.getEncodedMemoryCache().trimMemory(level);
         configuration.getBitmapPool().trimMemory(level);
+        configuration.getProcessedImageCache().trimMemory(level);
+        configuration.getRegionDecoderCache().trimMemory(level);
+        configuration.getMemoryPressureGovernor().trimMemory(level, configuration.getMemoryCache(), configuration.getBitmapPool());
+        configuration.getBitmapPoolWarmer().save();
     }
 
     /**
@@ -249,6 +261,10 @@ public class Sketch {
         SLog.w(null, "Memory is very low, clean memory cache and bitmap pool");
 
         configuration.getMemoryCache().clear();
+        configuration.getEncodedMemoryCache().clear();
         configuration.getBitmapPool().clear();
+        configuration.getProcessedImageCache().clearPendingWrites();
+        configuration.getRegionDecoderCache().clear();
+        configuration.getBitmapPoolWarmer().save();
     }
 }
\ No newline at end of file
@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.cache;
+
+import android.content.Context;
+import android.text.format.Formatter;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import me.panpf.sketch.SLog;
+import me.panpf.sketch.util.SketchUtils;
+
+/**
+ * 把 app 和 apk 的图标打包存放在一个文件里，不再每个图标单独占用一个磁盘缓存文件
+ * <p>
+ * 文件是只追加的，由文件头和一条条记录组成，每条记录是 key 的长度、key（UTF-8）、数据长度和 PNG 数据。第一次使用时只读取所有记录的 key 和位置，
+ * 之后读取图标只需要一次定位读取。key 中包含了版本号或修改时间，所以 app 升级后旧的图标不会再被读到，文件超过最大容量时整个清空重建。
+ * 清空磁盘缓存时也会一起清空
+ */
+public class AppIconAtlas implements CacheStatsProvider {
+    private static final String NAME = "AppIconAtlas";
+    private static final String FILE_NAME = "sketch_app_icon_atlas";
+    private static final int MAGIC = 0x534B4941;
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 8;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * 默认最大容量
+     */
+    public static final long DEFAULT_MAX_SIZE = 16 * 1024 * 1024;
+
+    private final CacheStats stats = new CacheStats(NAME);
+    private Context context;
+    private File file;
+    private long maxSize;
+
+    private RandomAccessFile randomAccessFile;
+    private Map<String, Entry> index;
+    private boolean closed;
+
+    public AppIconAtlas(@NonNull Context context, @NonNull File file, long maxSize) {
+        this.context = context.getApplicationContext();
+        this.file = file;
+        this.maxSize = maxSize;
+    }
+
+    public AppIconAtlas(@NonNull Context context) {
+        this(context, new File(SketchUtils.getAppCacheDir(context), FILE_NAME), DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * 第一次使用时才打开文件并读取索引，所以不要在主线程中调用任何读写方法
+     */
+    private boolean open() {
+        if (closed) {
+            return false;
+        }
+        if (index != null) {
+            return true;
+        }
+
+        index = new HashMap<String, Entry>();
+        try {
+            long validLength = readIndex();
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            if (validLength < HEADER_LENGTH) {
+                reset();
+            } else if (randomAccessFile.length() != validLength) {
+                // 上次写到一半就退出了，丢掉不完整的记录
+                randomAccessFile.setLength(validLength);
+            }
+            return true;
+        } catch (IOException e) {
+            SLog.e(NAME, e, String.format("open failed. %s", file.getPath()));
+            SketchUtils.close(randomAccessFile);
+            randomAccessFile = null;
+            index.clear();
+            closed = true;
+            return false;
+        }
+    }
+
+    /**
+     * 读取所有记录的 key 和位置
+     *
+     * @return 有效数据的长度，文件不存在或文件头不对返回 0
+     */
+    private long readIndex() throws IOException {
+        if (!file.exists()) {
+            File parentFile = file.getParentFile();
+            if (parentFile != null && !parentFile.exists() && !parentFile.mkdirs()) {
+                throw new IOException("Unable create dir " + parentFile.getPath());
+            }
+            return 0;
+        }
+
+        DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 8 * 1024));
+        long position = 0;
+        try {
+            if (inputStream.readInt() != MAGIC || inputStream.readInt() != VERSION) {
+                return 0;
+            }
+            position = HEADER_LENGTH;
+
+            long fileLength = file.length();
+            while (position < fileLength) {
+                byte[] keyBytes = new byte[inputStream.readUnsignedShort()];
+                inputStream.readFully(keyBytes);
+                String key = new String(keyBytes, UTF_8);
+                int length = inputStream.readInt();
+                long dataOffset = position + 2 + keyBytes.length + 4;
+                if (length < 0 || dataOffset + length > fileLength) {
+                    break;
+                }
+                long skipped = 0;
+                while (skipped < length) {
+                    long count = inputStream.skip(length - skipped);
+                    if (count <= 0) {
+                        throw new EOFException();
+                    }
+                    skipped += count;
+                }
+                index.put(key, new Entry(dataOffset, length));
+                position = dataOffset + length;
+            }
+        } catch (EOFException e) {
+            // 最后一条记录不完整，忽略
+        } finally {
+            SketchUtils.close(inputStream);
+        }
+        return position;
+    }
+
+    private void reset() throws IOException {
+        index.clear();
+        randomAccessFile.setLength(0);
+        randomAccessFile.writeInt(MAGIC);
+        randomAccessFile.writeInt(VERSION);
+    }
+
+    /**
+     * 是否包含指定 key 的图标
+     */
+    public synchronized boolean contains(@NonNull String key) {
+        return open() && index.containsKey(key);
+    }
+
+    /**
+     * 读取指定 key 的图标
+     *
+     * @return PNG 数据，没有返回 null
+     */
+    @Nullable
+    public synchronized byte[] get(@NonNull String key) {
+        if (!open()) {
+            return null;
+        }
+
+        Entry entry = index.get(key);
+        if (entry == null) {
+            stats.recordMiss();
+            return null;
+        }
+
+        byte[] data = new byte[entry.length];
+        try {
+            randomAccessFile.seek(entry.offset);
+            randomAccessFile.readFully(data);
+        } catch (IOException e) {
+            SLog.e(NAME, e, String.format("read failed. %s", key));
+            index.remove(key);
+            stats.recordMiss();
+            return null;
+        }
+        stats.recordHit();
+        return data;
+    }
+
+    /**
+     * 保存一个图标
+     */
+    public void put(@NonNull String key, @NonNull byte[] data) {
+        Map<String, byte[]> icons = new HashMap<String, byte[]>(1);
+        icons.put(key, data);
+        putAll(icons);
+    }
+
+    /**
+     * 一次写入多个图标，所有记录先在内存中拼好再一次写入文件。已经有的 key 会跳过，清空后仍然放不下的图标会被丢弃
+     */
+    public synchronized void putAll(@NonNull Map<String, byte[]> icons) {
+        if (icons.isEmpty() || !open()) {
+            return;
+        }
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        DataOutputStream outputStream = new DataOutputStream(byteArrayOutputStream);
+        long fileLength = -1;
+        try {
+            fileLength = randomAccessFile.length();
+            Map<String, Entry> newEntries = new HashMap<String, Entry>(icons.size());
+            for (Map.Entry<String, byte[]> icon : icons.entrySet()) {
+                // 多个线程同时读取同一个图标时会重复保存，只保留第一次的
+                if (index.containsKey(icon.getKey())) {
+                    continue;
+                }
+                byte[] keyBytes = icon.getKey().getBytes(UTF_8);
+                // 即使清空重建也放不下的直接丢弃，保证文件不会超过最大容量
+                long recordLength = 2 + keyBytes.length + 4 + icon.getValue().length;
+                if (keyBytes.length > 0xFFFF || HEADER_LENGTH + outputStream.size() + recordLength > maxSize) {
+                    stats.recordReject();
+                    continue;
+                }
+                outputStream.writeShort(keyBytes.length);
+                outputStream.write(keyBytes);
+                outputStream.writeInt(icon.getValue().length);
+                newEntries.put(icon.getKey(), new Entry(outputStream.size(), icon.getValue().length));
+                outputStream.write(icon.getValue());
+                stats.recordPut(icon.getValue().length);
+            }
+            int recordsLength = outputStream.size();
+            if (recordsLength == 0) {
+                return;
+            }
+
+            if (fileLength + recordsLength > maxSize) {
+                SLog.w(NAME, "Out of max size, reset. fileLength=%s",
+                        Formatter.formatFileSize(context, fileLength));
+                stats.recordEviction(CacheStats.EVICTION_CAPACITY, index.size(), fileLength - HEADER_LENGTH);
+                reset();
+                fileLength = HEADER_LENGTH;
+            }
+
+            randomAccessFile.seek(fileLength);
+            randomAccessFile.write(byteArrayOutputStream.toByteArray());
+            for (Map.Entry<String, Entry> newEntry : newEntries.entrySet()) {
+                Entry entry = newEntry.getValue();
+                index.put(newEntry.getKey(), new Entry(fileLength + entry.offset, entry.length));
+            }
+        } catch (IOException e) {
+            SLog.e(NAME, e, String.format("write failed. %d icons", icons.size()));
+            // 丢掉写了一半的记录，否则下次追加的记录会接在不完整的数据后面
+            if (fileLength >= HEADER_LENGTH) {
+                try {
+                    randomAccessFile.setLength(fileLength);
+                } catch (IOException e1) {
+                    SLog.e(NAME, e1, "truncate failed");
+                }
+            }
+        }
+    }
+
+    /**
+     * 清空所有图标
+     */
+    public synchronized void clear() {
+        if (!open()) {
+            return;
+        }
+
+        try {
+            long fileLength = randomAccessFile.length();
+            stats.recordEviction(CacheStats.EVICTION_CLEAR, index.size(), Math.max(0, fileLength - HEADER_LENGTH));
+            reset();
+        } catch (IOException e) {
+            SLog.e(NAME, e, "clear failed");
+        }
+    }
+
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        SketchUtils.close(randomAccessFile);
+        randomAccessFile = null;
+        index = null;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 获取图标数量
+     */
+    public synchronized int getCount() {
+        return open() ? index.size() : 0;
+    }
+
+    @NonNull
+    public File getFile() {
+        return file;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    @NonNull
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format("%s(maxSize=%s,file=%s)", NAME, Formatter.formatFileSize(context, maxSize), file.getPath());
+    }
+
+    private static class Entry {
+        private final long offset;
+        private final int length;
+
+        Entry(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
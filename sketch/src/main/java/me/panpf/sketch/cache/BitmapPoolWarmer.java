@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.cache;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.os.Process;
+import android.text.TextUtils;
+import android.text.format.Formatter;
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import me.panpf.sketch.SLog;
+import me.panpf.sketch.util.SketchUtils;
+
+/**
+ * {@link BitmapPool} 预热器，记录解码出的 {@link Bitmap} 的尺寸分布，在修整内存时保存出现次数最多的几种尺寸，
+ * 下次启动时在后台线程中按这些尺寸提前创建一些 {@link Bitmap} 放进 {@link BitmapPool}，这样第一屏的图片也能复用 {@link Bitmap}
+ * <p>
+ * 默认关闭，需要在 {@link me.panpf.sketch.Initializer} 中通过 {@link #setWarmCount(int)} 开启
+ */
+public class BitmapPoolWarmer {
+    private static final String NAME = "BitmapPoolWarmer";
+    private static final String PREFERENCES_NAME = "me.panpf.sketch.BitmapPoolWarmer";
+    private static final String KEY_HISTOGRAM = "histogram";
+
+    /**
+     * 最多记录多少种尺寸，超过后新的尺寸不再记录
+     */
+    private static final int MAX_RECORD_SIZE_COUNT = 64;
+    /**
+     * 最多保存多少种尺寸
+     */
+    private static final int MAX_SAVE_SIZE_COUNT = 16;
+
+    private Context context;
+    private int warmCount;
+    private float maxSizeRatio = 0.5f;
+    private boolean warmed;
+
+    private final Map<String, SizeRecord> histogram = new HashMap<>();
+
+    public BitmapPoolWarmer(@NonNull Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * 记录一次解码出的 {@link Bitmap} 的尺寸
+     */
+    public void record(@NonNull Bitmap bitmap) {
+        if (warmCount <= 0 || bitmap.getConfig() == null || !bitmap.isMutable()) {
+            return;
+        }
+
+        String key = SizeRecord.makeKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        synchronized (histogram) {
+            SizeRecord record = histogram.get(key);
+            if (record != null) {
+                record.count++;
+            } else if (histogram.size() < MAX_RECORD_SIZE_COUNT) {
+                histogram.put(key, new SizeRecord(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig(), 1));
+            }
+        }
+    }
+
+    /**
+     * 保存出现次数最多的几种尺寸，{@link me.panpf.sketch.Sketch#onTrimMemory(int)} 时会自动调用
+     */
+    public void save() {
+        if (warmCount <= 0) {
+            return;
+        }
+
+        List<SizeRecord> records;
+        synchronized (histogram) {
+            if (histogram.isEmpty()) {
+                return;
+            }
+            records = sortRecords(new ArrayList<>(histogram.values()));
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (int index = 0; index < records.size() && index < MAX_SAVE_SIZE_COUNT; index++) {
+            if (builder.length() > 0) {
+                builder.append(";");
+            }
+            builder.append(records.get(index).toString());
+        }
+        getPreferences().edit().putString(KEY_HISTOGRAM, builder.toString()).apply();
+    }
+
+    /**
+     * 在后台线程中按上次保存的尺寸分布预热 {@link BitmapPool}，只会执行一次，{@link me.panpf.sketch.Sketch} 初始化完成后会自动调用
+     */
+    public void warm(@NonNull final BitmapPool bitmapPool) {
+        synchronized (this) {
+            if (warmed || warmCount <= 0) {
+                return;
+            }
+            warmed = true;
+        }
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                warmInternal(bitmapPool);
+            }
+        }, NAME);
+        thread.start();
+    }
+
+    private void warmInternal(@NonNull BitmapPool bitmapPool) {
+        List<SizeRecord> records = loadRecords();
+        if (records.isEmpty()) {
+            return;
+        }
+
+        // 上次的分布作为本次的基数，但是减半，这样旧的尺寸会慢慢被淘汰
+        int totalCount = 0;
+        synchronized (histogram) {
+            for (SizeRecord record : records) {
+                String key = SizeRecord.makeKey(record.width, record.height, record.config);
+                if (!histogram.containsKey(key)) {
+                    histogram.put(key, new SizeRecord(record.width, record.height, record.config, Math.max(1, record.count / 2)));
+                }
+                totalCount += record.count;
+            }
+        }
+
+        // 按出现次数的比例分配要创建的数量，最多用掉 BitmapPool 容量的一部分
+        long budget = (long) (bitmapPool.getMaxSize() * maxSizeRatio);
+        long usedSize = 0;
+        int createdCount = 0;
+        for (SizeRecord record : records) {
+            int count = Math.max(1, Math.round((float) warmCount * record.count / totalCount));
+            int byteCount = SketchUtils.computeByteCount(record.width, record.height, record.config);
+            for (int index = 0; index < count && createdCount < warmCount; index++) {
+                if (usedSize + byteCount > budget || bitmapPool.isClosed()) {
+                    break;
+                }
+
+                Bitmap bitmap;
+                try {
+                    bitmap = Bitmap.createBitmap(record.width, record.height, record.config);
+                } catch (OutOfMemoryError e) {
+                    SLog.w(NAME, "Create bitmap failed. %s. %dx%d,%s", e.toString(), record.width, record.height, record.config);
+                    return;
+                }
+                if (!bitmapPool.put(bitmap)) {
+                    bitmap.recycle();
+                    break;
+                }
+                usedSize += byteCount;
+                createdCount++;
+            }
+        }
+
+        SLog.w(NAME, "warm finished. bitmapCount=%d, size=%s", createdCount, Formatter.formatFileSize(context, usedSize));
+    }
+
+    @NonNull
+    private List<SizeRecord> loadRecords() {
+        List<SizeRecord> records = new ArrayList<>();
+        String histogramText = getPreferences().getString(KEY_HISTOGRAM, null);
+        if (TextUtils.isEmpty(histogramText)) {
+            return records;
+        }
+
+        for (String recordText : histogramText.split(";")) {
+            SizeRecord record = SizeRecord.parse(recordText);
+            if (record != null) {
+                records.add(record);
+            }
+        }
+        return sortRecords(records);
+    }
+
+    @NonNull
+    private static List<SizeRecord> sortRecords(@NonNull List<SizeRecord> records) {
+        Collections.sort(records, new Comparator<SizeRecord>() {
+            @Override
+            public int compare(SizeRecord lhs, SizeRecord rhs) {
+                return rhs.count - lhs.count;
+            }
+        });
+        return records;
+    }
+
+    private SharedPreferences getPreferences() {
+        return context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * 获取启动时最多提前创建的 {@link Bitmap} 数量
+     */
+    public int getWarmCount() {
+        return warmCount;
+    }
+
+    /**
+     * 设置启动时最多提前创建的 {@link Bitmap} 数量，0 表示关闭预热，同时也不再记录尺寸分布。需要在 {@link me.panpf.sketch.Initializer} 中设置才会生效
+     */
+    public void setWarmCount(int warmCount) {
+        this.warmCount = warmCount;
+    }
+
+    /**
+     * 获取预热最多使用 {@link BitmapPool} 容量的比例
+     */
+    public float getMaxSizeRatio() {
+        return maxSizeRatio;
+    }
+
+    /**
+     * 设置预热最多使用 {@link BitmapPool} 容量的比例，默认 0.5
+     */
+    public void setMaxSizeRatio(float maxSizeRatio) {
+        this.maxSizeRatio = maxSizeRatio;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format("%s(warmCount=%d,maxSizeRatio=%s)", NAME, warmCount, maxSizeRatio);
+    }
+
+    private static class SizeRecord {
+        private int width;
+        private int height;
+        private Bitmap.Config config;
+        private int count;
+
+        SizeRecord(int width, int height, Bitmap.Config config, int count) {
+            this.width = width;
+            this.height = height;
+            this.config = config;
+            this.count = count;
+        }
+
+        static String makeKey(int width, int height, Bitmap.Config config) {
+            return width + "x" + height + "," + config.name();
+        }
+
+        static SizeRecord parse(String text) {
+            String[] items = text.split(",");
+            if (items.length != 4) {
+                return null;
+            }
+            try {
+                Bitmap.Config config = Bitmap.Config.valueOf(items[2]);
+                int width = Integer.parseInt(items[0]);
+                int height = Integer.parseInt(items[1]);
+                int count = Integer.parseInt(items[3]);
+                return width > 0 && height > 0 && count > 0 ? new SizeRecord(width, height, config, count) : null;
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return width + "," + height + "," + config.name() + "," + count;
+        }
+    }
+}
@@ -0,0 +1,554 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.cache;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Build;
+import android.text.format.Formatter;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import me.panpf.sketch.SLog;
+import me.panpf.sketch.util.SketchUtils;
+
+/**
+ * 按固定的尺寸级别分桶的 {@link Bitmap} 复用池，读写都不需要加锁，适合多个解码线程、分块显示和 gif 渲染同时使用的场景
+ * <p>
+ * 每种 {@link Bitmap.Config} 各有一组桶，最小的桶从 4KB 开始，相邻两个桶的字节数相差 √2 倍，每个桶是一个无锁栈，小于 4KB 的 {@link Bitmap} 不值得复用，不会放进来。
+ * 取的时候只会从字节数一定够用的桶里取，然后通过 {@link Bitmap#reconfigure(int, int, Bitmap.Config)} 调整成需要的尺寸，
+ * 4.4 以下不支持 reconfigure，只能复用宽、高、{@link Bitmap.Config} 都一样的 {@link Bitmap}，按字节数分桶几乎不会命中，
+ * 所以直接交给 {@link LruBitmapPool} 按宽、高、{@link Bitmap.Config} 精确匹配
+ * <p>
+ * 达到最大容量时优先释放最久没有用过的桶里的 {@link Bitmap}，是近似的 LRU。命中、放入、释放等统计数据记录在 {@link #getStats()} 中
+ */
+public class BucketedBitmapPool implements BitmapPool, CacheStatsProvider {
+    private static final String NAME = "BucketedBitmapPool";
+    private static final Bitmap.Config DEFAULT_CONFIG = Bitmap.Config.ARGB_8888;
+
+    /**
+     * 最小的桶的下限，4KB，也就是 32x32 的 ARGB_8888
+     */
+    private static final int MIN_BUCKET_SIZE_SHIFT = 12;
+    private static final int MIN_BUCKET_SIZE = 1 << MIN_BUCKET_SIZE_SHIFT;
+    /**
+     * 桶的数量，最大的桶的下限是 4KB 乘以 √2 的 37 次方（约 1.5G），足够覆盖所有 Bitmap 的字节数
+     */
+    private static final int BUCKET_COUNT = 38;
+    /**
+     * 最多往上找几个桶，6 个桶就是 8 倍，跟 {@link me.panpf.sketch.cache.recycle.SizeConfigStrategy} 一致
+     */
+    private static final int MAX_BUCKET_STEPS = 6;
+    /**
+     * 每个桶里的 {@link Bitmap} 字节数的下限，也就是 4KB 乘以 √2 的 n 次方向上取整。
+     * 偶数次方直接用 2 的幂，避免浮点误差。从 4KB 开始，奇数次方向上取整后不会和下一个 2 的幂重合，所以每个桶的下限都严格递增
+     */
+    private static final long[] BUCKET_LOWER_BOUNDS = new long[BUCKET_COUNT];
+
+    static {
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            long power = (long) MIN_BUCKET_SIZE << (index / 2);
+            BUCKET_LOWER_BOUNDS[index] = index % 2 == 0 ? power : (long) Math.ceil(power * Math.sqrt(2));
+        }
+    }
+
+    private final Context context;
+    private final int initialMaxSize;
+    private final boolean reconfigureSupported;
+    private final Bucket[][] buckets;
+    private final CacheStats stats = new CacheStats(NAME);
+    /**
+     * 4.4 以下使用的复用池，不为 null 时所有操作都交给它
+     */
+    @Nullable
+    private final LruBitmapPool fallbackPool;
+
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicBoolean trimming = new AtomicBoolean();
+
+    private volatile int maxSize;
+    private volatile boolean closed;
+    private volatile boolean disabled;
+
+    /**
+     * 创建按尺寸级别分桶的 {@link Bitmap} 复用池
+     *
+     * @param maxSize 最大容量
+     */
+    public BucketedBitmapPool(@NonNull Context context, int maxSize) {
+        this.context = context.getApplicationContext();
+        this.initialMaxSize = maxSize;
+        this.maxSize = maxSize;
+        this.reconfigureSupported = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+        this.fallbackPool = reconfigureSupported ? null : new LruBitmapPool(context, maxSize);
+
+        Bitmap.Config[] configs = Bitmap.Config.values();
+        this.buckets = new Bucket[configs.length][fallbackPool == null ? BUCKET_COUNT : 0];
+        for (Bitmap.Config config : configs) {
+            for (int index = 0; index < buckets[config.ordinal()].length; index++) {
+                buckets[config.ordinal()][index] = new Bucket(config, index);
+            }
+        }
+    }
+
+    /**
+     * 放入时使用下限不超过字节数的最大的桶，保证桶里每一个 {@link Bitmap} 的字节数都不小于桶的下限
+     *
+     * @return -1：比最小的桶的下限还小，不能放入
+     */
+    static int getPutBucketIndex(int byteCount) {
+        if (byteCount < MIN_BUCKET_SIZE) {
+            return -1;
+        }
+        int log2 = 31 - Integer.numberOfLeadingZeros(byteCount);
+        int index = Math.min(BUCKET_COUNT - 1, 2 * (log2 - MIN_BUCKET_SIZE_SHIFT) + 1);
+        while (index > 0 && BUCKET_LOWER_BOUNDS[index] > byteCount) {
+            index--;
+        }
+        return index;
+    }
+
+    /**
+     * 桶里 {@link Bitmap} 字节数的下限
+     */
+    static long getBucketLowerBound(int index) {
+        return BUCKET_LOWER_BOUNDS[index];
+    }
+
+    static int getBucketCount() {
+        return BUCKET_COUNT;
+    }
+
+    /**
+     * 取出时使用下限不小于所需字节数的最小的桶，这个桶里的 {@link Bitmap} 一定够用
+     */
+    static int getGetBucketIndex(int byteCount) {
+        if (byteCount <= MIN_BUCKET_SIZE) {
+            return 0;
+        }
+        int index = getPutBucketIndex(byteCount);
+        return BUCKET_LOWER_BOUNDS[index] < byteCount ? index + 1 : index;
+    }
+
+    @NonNull
+    private static Bitmap.Config nonNullConfig(Bitmap.Config config) {
+        // 某些环境下解码 gif 得到的 Bitmap 的 config 为 null，它实际是 ARGB_8888
+        return config != null ? config : DEFAULT_CONFIG;
+    }
+
+    @Override
+    public boolean put(@NonNull Bitmap bitmap) {
+        if (fallbackPool != null) {
+            return fallbackPool.put(bitmap);
+        }
+        if (closed) {
+            return false;
+        }
+
+        if (disabled) {
+            if (SLog.isLoggable(SLog.LEVEL_DEBUG | SLog.TYPE_CACHE)) {
+                SLog.d(NAME, "Disabled. Unable put, bitmap=%s", SketchUtils.toHexString(bitmap));
+            }
+            return false;
+        }
+
+        //noinspection ConstantConditions
+        if (bitmap == null) {
+            throw new NullPointerException("Bitmap must not be null");
+        }
+        int byteCount = SketchUtils.getByteCount(bitmap);
+        if (bitmap.isRecycled() || !bitmap.isMutable() || byteCount < MIN_BUCKET_SIZE || byteCount > maxSize) {
+            SLog.w(NAME, "Reject bitmap from pool, bitmap: %dx%d,%s, is recycled: %s, is mutable: %s, %s",
+                    bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig(), bitmap.isRecycled(), bitmap.isMutable(),
+                    SketchUtils.toHexString(bitmap));
+            stats.recordReject();
+            return false;
+        }
+
+        Bucket bucket = buckets[nonNullConfig(bitmap.getConfig()).ordinal()][getPutBucketIndex(byteCount)];
+        bucket.push(bitmap, byteCount);
+        size.addAndGet(byteCount);
+        stats.recordPut(byteCount);
+
+        if (SLog.isLoggable(SLog.LEVEL_DEBUG | SLog.TYPE_CACHE)) {
+            SLog.d(NAME, "Put bitmap in pool=%dx%d,%s,%s. bucket=%s",
+                    bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig(), SketchUtils.toHexString(bitmap), bucket);
+        }
+
+        if (size.get() > maxSize) {
+            trimToSize(maxSize, false, CacheStats.EVICTION_CAPACITY);
+        }
+        return true;
+    }
+
+    @Override
+    public Bitmap getDirty(int width, int height, @NonNull Bitmap.Config config) {
+        if (fallbackPool != null) {
+            return fallbackPool.getDirty(width, height, config);
+        }
+        if (closed) {
+            return null;
+        }
+
+        if (disabled) {
+            if (SLog.isLoggable(SLog.LEVEL_DEBUG | SLog.TYPE_CACHE)) {
+                SLog.d(NAME, "Disabled. Unable get, bitmap=%dx%d,%s", width, height, config);
+            }
+            return null;
+        }
+
+        //noinspection ConstantConditions
+        config = nonNullConfig(config);
+        int byteCount = SketchUtils.computeByteCount(width, height, config);
+        if (byteCount <= 0 || byteCount > maxSize) {
+            return null;
+        }
+
+        Bucket[] configBuckets = buckets[config.ordinal()];
+        int startIndex = Math.min(BUCKET_COUNT - 1, getGetBucketIndex(byteCount));
+        int endIndex = Math.min(BUCKET_COUNT - 1, startIndex + MAX_BUCKET_STEPS);
+        Bitmap result = null;
+        for (int index = startIndex; index <= endIndex && result == null; index++) {
+            Bucket bucket = configBuckets[index];
+            Node node = bucket.pop(true);
+            if (node == null) {
+                continue;
+            }
+
+            size.addAndGet(-node.byteCount);
+            if (reuse(node.bitmap, width, height, config)) {
+                result = node.bitmap;
+            } else {
+                // 放回去让别人用
+                bucket.push(node.bitmap, node.byteCount);
+                size.addAndGet(node.byteCount);
+            }
+        }
+
+        Bucket requestBucket = configBuckets[startIndex];
+        if (result == null) {
+            stats.recordMiss();
+            if (SLog.isLoggable(SLog.LEVEL_DEBUG | SLog.TYPE_CACHE)) {
+                SLog.d(NAME, "Missing bitmap=%dx%d,%s. bucket=%s", width, height, config, requestBucket);
+            }
+        } else {
+            stats.recordHit();
+            result.setHasAlpha(true);
+            if (SLog.isLoggable(SLog.LEVEL_DEBUG | SLog.TYPE_CACHE)) {
+                SLog.d(NAME, "Get bitmap=%dx%d,%s,%s. bucket=%s", width, height, config, SketchUtils.toHexString(result), requestBucket);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 把 {@link Bitmap} 调整成需要的尺寸
+     *
+     * @return false：无法复用
+     */
+    @SuppressLint("NewApi")
+    private boolean reuse(@NonNull Bitmap bitmap, int width, int height, @NonNull Bitmap.Config config) {
+        if (bitmap.getWidth() == width && bitmap.getHeight() == height && nonNullConfig(bitmap.getConfig()) == config) {
+            return true;
+        }
+
+        try {
+            bitmap.reconfigure(width, height, config);
+            return true;
+        } catch (IllegalArgumentException e) {
+            // Bitmap.cpp Bitmap_reconfigure method may throw "IllegalArgumentException: Bitmap not large enough to support new configuration" exception
+            SLog.w(NAME, "Reconfigure failed. %s. %dx%d,%s", e.toString(), width, height, config);
+            return false;
+        }
+    }
+
+    @Override
+    public Bitmap get(int width, int height, @NonNull Bitmap.Config config) {
+        Bitmap result = getDirty(width, height, config);
+        if (result != null) {
+            result.eraseColor(Color.TRANSPARENT);
+        }
+        return result;
+    }
+
+    @NonNull
+    @Override
+    public Bitmap getOrMake(int width, int height, @NonNull Bitmap.Config config) {
+        Bitmap result = get(width, height, config);
+        if (result == null) {
+            result = Bitmap.createBitmap(width, height, config);
+
+            if (SLog.isLoggable(SLog.LEVEL_DEBUG | SLog.TYPE_CACHE)) {
+                StackTraceElement[] elements = new Exception().getStackTrace();
+                StackTraceElement element = elements.length > 1 ? elements[1] : elements[0];
+                SLog.d(NAME, "Make bitmap. info:%dx%d,%s,%s - %s.%s:%d",
+                        result.getWidth(), result.getHeight(), result.getConfig(), SketchUtils.toHexString(result),
+                        element.getClassName(), element.getMethodName(), element.getLineNumber());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 释放 {@link Bitmap} 直到已用容量不超过指定容量，每次释放最久没有用过的桶里的 {@link Bitmap}
+     *
+     * @param force          false：已经有其它线程在释放时直接返回，已用容量暂时超出一点没关系
+     * @param evictionReason 释放原因，记录到 {@link CacheStats} 中
+     */
+    private void trimToSize(int targetSize, boolean force, int evictionReason) {
+        if (!trimming.compareAndSet(false, true)) {
+            if (!force) {
+                return;
+            }
+            while (!trimming.compareAndSet(false, true)) {
+                Thread.yield();
+            }
+        }
+
+        try {
+            while (size.get() > targetSize) {
+                Bucket oldestBucket = null;
+                for (Bucket[] configBuckets : buckets) {
+                    for (Bucket bucket : configBuckets) {
+                        if (bucket.head.get() != null && (oldestBucket == null || bucket.lastUsedTime < oldestBucket.lastUsedTime)) {
+                            oldestBucket = bucket;
+                        }
+                    }
+                }
+                if (oldestBucket == null) {
+                    // 其它线程已经把 Bitmap 都取走了
+                    return;
+                }
+
+                Node node = oldestBucket.pop(false);
+                if (node != null) {
+                    size.addAndGet(-node.byteCount);
+                    stats.recordEviction(evictionReason, 1, node.byteCount);
+                    if (SLog.isLoggable(SLog.LEVEL_DEBUG | SLog.TYPE_CACHE)) {
+                        SLog.d(NAME, "Evicting bitmap=%dx%d,%s,%s. bucket=%s", node.bitmap.getWidth(), node.bitmap.getHeight(),
+                                node.bitmap.getConfig(), SketchUtils.toHexString(node.bitmap), oldestBucket);
+                    }
+                    node.bitmap.recycle();
+                }
+            }
+        } finally {
+            trimming.set(false);
+        }
+    }
+
+    @Override
+    public int getMaxSize() {
+        return fallbackPool != null ? fallbackPool.getMaxSize() : maxSize;
+    }
+
+    @Override
+    public int getSize() {
+        return fallbackPool != null ? fallbackPool.getSize() : size.get();
+    }
+
+    @Override
+    public void setSizeMultiplier(float sizeMultiplier) {
+        if (fallbackPool != null) {
+            fallbackPool.setSizeMultiplier(sizeMultiplier);
+            return;
+        }
+        if (closed) {
+            return;
+        }
+
+        int oldMaxSize = maxSize;
+        maxSize = Math.round(initialMaxSize * sizeMultiplier);
+        stats.recordResize(oldMaxSize, maxSize);
+        trimToSize(maxSize, true, CacheStats.EVICTION_CAPACITY);
+    }
+
+    @Override
+    public boolean isDisabled() {
+        return fallbackPool != null ? fallbackPool.isDisabled() : disabled;
+    }
+
+    @Override
+    public void setDisabled(boolean disabled) {
+        if (fallbackPool != null) {
+            fallbackPool.setDisabled(disabled);
+            return;
+        }
+        if (this.disabled != disabled) {
+            this.disabled = disabled;
+            SLog.w(NAME, "setDisabled. %s", disabled);
+        }
+    }
+
+    @SuppressLint("InlinedApi")
+    @Override
+    public void trimMemory(int level) {
+        if (fallbackPool != null) {
+            fallbackPool.trimMemory(level);
+            return;
+        }
+        long oldSize = getSize();
+
+        if (level >= android.content.ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            trimToSize(0, true, CacheStats.EVICTION_TRIM);
+        } else if (level >= android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            trimToSize(maxSize / 2, true, CacheStats.EVICTION_TRIM);
+        }
+
+        String releasedSize = Formatter.formatFileSize(context, oldSize - getSize());
+        SLog.w(NAME, "trimMemory. level=%s, released: %s", SketchUtils.getTrimLevelName(level), releasedSize);
+    }
+
+    @Override
+    public void clear() {
+        if (fallbackPool != null) {
+            fallbackPool.clear();
+            return;
+        }
+        SLog.w(NAME, "clear. before size %s", Formatter.formatFileSize(context, getSize()));
+
+        trimToSize(0, true, CacheStats.EVICTION_CLEAR);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return fallbackPool != null ? fallbackPool.isClosed() : closed;
+    }
+
+    @Override
+    public void close() {
+        if (fallbackPool != null) {
+            fallbackPool.close();
+            return;
+        }
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        trimToSize(0, true, CacheStats.EVICTION_CLEAR);
+    }
+
+    /**
+     * 获取命中率、释放次数等统计数据，4.4 以下返回 {@link LruBitmapPool} 的统计数据
+     */
+    @Override
+    @NonNull
+    public CacheStats getStats() {
+        return fallbackPool != null ? fallbackPool.getStats() : stats;
+    }
+
+    /**
+     * 获取每个不为空的桶的字节数范围和当前数量，一个桶一行，4.4 以下没有桶，返回空字符串
+     */
+    @NonNull
+    public String getBucketStats() {
+        StringBuilder builder = new StringBuilder();
+        for (Bucket[] configBuckets : buckets) {
+            for (Bucket bucket : configBuckets) {
+                if (bucket.count.get() != 0) {
+                    if (builder.length() > 0) {
+                        builder.append("\n");
+                    }
+                    builder.append(bucket.toString());
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        if (fallbackPool != null) {
+            return String.format("%s(fallback=%s)", NAME, fallbackPool.toString());
+        }
+        return String.format("%s(maxSize=%s,bucketCount=%d,reconfigure=%s)",
+                NAME, Formatter.formatFileSize(context, getMaxSize()), BUCKET_COUNT, reconfigureSupported);
+    }
+
+    private static class Node {
+        final Bitmap bitmap;
+        final int byteCount;
+        Node next;
+
+        Node(Bitmap bitmap, int byteCount) {
+            this.bitmap = bitmap;
+            this.byteCount = byteCount;
+        }
+    }
+
+    /**
+     * 一个尺寸级别的桶，内部是一个无锁栈
+     */
+    private class Bucket {
+        final Bitmap.Config config;
+        final int index;
+        final AtomicReference<Node> head = new AtomicReference<>();
+        final AtomicInteger count = new AtomicInteger();
+        volatile long lastUsedTime;
+
+        Bucket(Bitmap.Config config, int index) {
+            this.config = config;
+            this.index = index;
+        }
+
+        void push(@NonNull Bitmap bitmap, int byteCount) {
+            Node node = new Node(bitmap, byteCount);
+            Node oldHead;
+            do {
+                oldHead = head.get();
+                node.next = oldHead;
+            } while (!head.compareAndSet(oldHead, node));
+            count.incrementAndGet();
+            lastUsedTime = clock.incrementAndGet();
+        }
+
+        /**
+         * @param touch 是否更新最后使用时间，释放时不更新，否则刚释放过一个的桶就变成了最近用过的
+         */
+        Node pop(boolean touch) {
+            Node oldHead;
+            do {
+                oldHead = head.get();
+                if (oldHead == null) {
+                    return null;
+                }
+            } while (!head.compareAndSet(oldHead, oldHead.next));
+            oldHead.next = null;
+            count.decrementAndGet();
+            if (touch) {
+                lastUsedTime = clock.incrementAndGet();
+            }
+            return oldHead;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            long upperBound = index + 1 < BUCKET_COUNT ? BUCKET_LOWER_BOUNDS[index + 1] : Integer.MAX_VALUE;
+            return String.format("%s[%d,%d)(count=%d)", config, BUCKET_LOWER_BOUNDS[index], upperBound, count.get());
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.cache;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 缓存的命中、未命中、放入、拒绝、各种原因的释放次数以及调整容量的次数统计
+ * <p>
+ * 计数器按线程分成多个条带，记录时只在当前线程对应的条带上做一次原子加法，不加锁也不创建对象，读取时再把所有条带加起来，
+ * 通过 {@link #snapshot()} 获取某一时刻的快照，两个快照相减就是这段时间内的变化
+ */
+public class CacheStats {
+
+    /**
+     * 超过最大容量被释放
+     */
+    public static final int EVICTION_CAPACITY = 0;
+    /**
+     * 修整内存时被释放
+     */
+    public static final int EVICTION_TRIM = 1;
+    /**
+     * 清空缓存时被释放
+     */
+    public static final int EVICTION_CLEAR = 2;
+    /**
+     * 被主动删除或被替换
+     */
+    public static final int EVICTION_REMOVE = 3;
+    private static final int EVICTION_REASON_COUNT = 4;
+
+    private static final int HIT = 0;
+    private static final int MISS = 1;
+    private static final int PUT = 2;
+    private static final int PUT_BYTES = 3;
+    private static final int REJECT = 4;
+    private static final int EVICTED_BYTES = 5;
+    private static final int SHRINK = 6;
+    private static final int GROW = 7;
+    private static final int EVICTION = 8;
+    private static final int COUNTER_COUNT = EVICTION + EVICTION_REASON_COUNT;
+
+    /**
+     * 每个条带后面再空出 8 个 long，避免不同条带落在同一个缓存行上
+     */
+    private static final int STRIPE_STRIDE = COUNTER_COUNT + 8;
+    private static final int STRIPE_COUNT = computeStripeCount();
+
+    @NonNull
+    private final String name;
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPE_COUNT * STRIPE_STRIDE);
+
+    public CacheStats(@NonNull String name) {
+        this.name = name;
+    }
+
+    private static int computeStripeCount() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int stripeCount = 1;
+        while (stripeCount < processors * 2 && stripeCount < 16) {
+            stripeCount <<= 1;
+        }
+        return stripeCount;
+    }
+
+    private void add(int counter, long value) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPE_COUNT - 1);
+        cells.addAndGet(stripe * STRIPE_STRIDE + counter, value);
+    }
+
+    private long sum(int counter) {
+        long sum = 0;
+        for (int stripe = 0; stripe < STRIPE_COUNT; stripe++) {
+            sum += cells.get(stripe * STRIPE_STRIDE + counter);
+        }
+        return sum;
+    }
+
+    public void recordHit() {
+        add(HIT, 1);
+    }
+
+    public void recordMiss() {
+        add(MISS, 1);
+    }
+
+    /**
+     * 记录一次放入
+     *
+     * @param byteCount 放入的字节数
+     */
+    public void recordPut(long byteCount) {
+        add(PUT, 1);
+        add(PUT_BYTES, byteCount);
+    }
+
+    /**
+     * 记录一次拒绝放入，例如不可复用或已存在
+     */
+    public void recordReject() {
+        add(REJECT, 1);
+    }
+
+    /**
+     * 记录释放
+     *
+     * @param reason    释放原因，{@link #EVICTION_CAPACITY}、{@link #EVICTION_TRIM}、{@link #EVICTION_CLEAR}、{@link #EVICTION_REMOVE}
+     * @param count     释放的数量
+     * @param byteCount 释放的字节数
+     */
+    public void recordEviction(int reason, int count, long byteCount) {
+        add(EVICTION + reason, count);
+        add(EVICTED_BYTES, byteCount);
+    }
+
+    /**
+     * 记录一次调整最大容量，例如 {@link MemoryPressureGovernor} 根据内存压力缩小或恢复容量
+     *
+     * @param oldMaxSize 调整前的最大容量
+     * @param newMaxSize 调整后的最大容量
+     */
+    public void recordResize(long oldMaxSize, long newMaxSize) {
+        if (newMaxSize < oldMaxSize) {
+            add(SHRINK, 1);
+        } else if (newMaxSize > oldMaxSize) {
+            add(GROW, 1);
+        }
+    }
+
+    /**
+     * 获取当前的快照
+     */
+    @NonNull
+    public Snapshot snapshot() {
+        long[] values = new long[COUNTER_COUNT];
+        for (int counter = 0; counter < COUNTER_COUNT; counter++) {
+            values[counter] = sum(counter);
+        }
+        return new Snapshot(name, values);
+    }
+
+    @NonNull
+    public String getName() {
+        return name;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /**
+     * 统计数据的快照
+     */
+    public static class Snapshot {
+        @NonNull
+        private final String name;
+        private final long[] values;
+
+        private Snapshot(@NonNull String name, long[] values) {
+            this.name = name;
+            this.values = values;
+        }
+
+        @NonNull
+        public String getName() {
+            return name;
+        }
+
+        public long getHitCount() {
+            return values[HIT];
+        }
+
+        public long getMissCount() {
+            return values[MISS];
+        }
+
+        /**
+         * 获取命中率，没有请求过返回 0
+         */
+        public float getHitRate() {
+            long requestCount = values[HIT] + values[MISS];
+            return requestCount > 0 ? (float) values[HIT] / requestCount : 0f;
+        }
+
+        public long getPutCount() {
+            return values[PUT];
+        }
+
+        public long getPutBytes() {
+            return values[PUT_BYTES];
+        }
+
+        /**
+         * 获取放入的平均大小，没有放入过返回 0
+         */
+        public long getAveragePutSize() {
+            return values[PUT] > 0 ? values[PUT_BYTES] / values[PUT] : 0;
+        }
+
+        public long getRejectCount() {
+            return values[REJECT];
+        }
+
+        /**
+         * 获取指定原因的释放次数
+         */
+        public long getEvictionCount(int reason) {
+            return values[EVICTION + reason];
+        }
+
+        /**
+         * 获取所有原因的释放次数
+         */
+        public long getEvictionCount() {
+            long count = 0;
+            for (int reason = 0; reason < EVICTION_REASON_COUNT; reason++) {
+                count += values[EVICTION + reason];
+            }
+            return count;
+        }
+
+        public long getEvictedBytes() {
+            return values[EVICTED_BYTES];
+        }
+
+        /**
+         * 获取缩小最大容量的次数
+         */
+        public long getShrinkCount() {
+            return values[SHRINK];
+        }
+
+        /**
+         * 获取扩大最大容量的次数
+         */
+        public long getGrowCount() {
+            return values[GROW];
+        }
+
+        /**
+         * 减去之前的快照，得到这段时间内的变化
+         */
+        @NonNull
+        public Snapshot minus(@NonNull Snapshot previous) {
+            long[] delta = new long[COUNTER_COUNT];
+            for (int counter = 0; counter < COUNTER_COUNT; counter++) {
+                delta[counter] = values[counter] - previous.values[counter];
+            }
+            return new Snapshot(name, delta);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s(hit=%d,miss=%d,hitRate=%.2f,put=%d,putBytes=%d,averagePutSize=%d,reject=%d," +
+                            "evictCapacity=%d,evictTrim=%d,evictClear=%d,evictRemove=%d,evictedBytes=%d,shrink=%d,grow=%d)",
+                    name, getHitCount(), getMissCount(), getHitRate(), getPutCount(), getPutBytes(), getAveragePutSize(), getRejectCount(),
+                    getEvictionCount(EVICTION_CAPACITY), getEvictionCount(EVICTION_TRIM), getEvictionCount(EVICTION_CLEAR),
+                    getEvictionCount(EVICTION_REMOVE), getEvictedBytes(), getShrinkCount(), getGrowCount());
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.cache;
+
+import androidx.annotation.NonNull;
+
+/**
+ * 可以提供 {@link CacheStats} 的缓存，查看统计数据时只需要判断是否实现了这个接口，不用关心具体是哪一种实现
+ */
+public interface CacheStatsProvider {
+
+    /**
+     * 获取命中率、释放次数等统计数据
+     */
+    @NonNull
+    CacheStats getStats();
+}
@@ -0,0 +1,546 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.cache;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.MemoryFile;
+import android.os.Process;
+import android.text.format.Formatter;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import me.panpf.sketch.SLog;
+import me.panpf.sketch.uri.AbsDiskCacheUriModel;
+import me.panpf.sketch.uri.UriModel;
+import me.panpf.sketch.uri.UriModelManager;
+import me.panpf.sketch.util.SketchUtils;
+
+/**
+ * 位于 {@link MemoryCache} 和 {@link DiskCache} 之间的二级内存缓存，保存最近被 {@link MemoryCache} 挤出去的图片的原始数据
+ * <p>
+ * 数据放在一块匿名共享内存（{@link MemoryFile}）里，不占用 Java 堆，也不计入 {@link MemoryCache} 的容量。这块内存按环形日志使用，
+ * 新数据总是写在上一次写入的后面，写到末尾后回到开头，覆盖到的旧数据会被释放，所以释放顺序就是放入顺序。
+ * <p>
+ * {@link MemoryCache} 因为超过容量释放图片时会调用 {@link #offer(String)}，在后台线程中从 {@link DiskCache} 读取原始数据放进来，
+ * 下次加载同一张图片时直接从这里取数据解码，不用再读磁盘，也不用再竞争 {@link DiskCache} 的锁。只支持数据来自 {@link DiskCache} 的图片，
+ * 也就是网络图片和 {@link AbsDiskCacheUriModel} 的子类。数据来源需要通过 {@link #setDiskCache(DiskCache)} 和
+ * {@link #setUriModelManager(UriModelManager)} 设置，{@link me.panpf.sketch.Configuration} 会自动设置
+ * <p>
+ * 索引由对象锁保护，共享内存的读写由共享内存自己的锁保护，读取时只在查找和校验索引时持有对象锁，拷贝数据不会阻塞其它操作。
+ * 写入时先从索引中删除要被覆盖的数据再写，写完才放进索引，所以拷贝完成后数据还在索引中就说明拷贝期间没有被覆盖。
+ * {@link DiskCache} 清空或改写、删除某个 key 时需要调用 {@link #clear()} 或 {@link #remove(String)}，否则会继续使用旧数据
+ */
+public class EncodedMemoryCache implements CacheStatsProvider {
+    private static final String NAME = "EncodedMemoryCache";
+
+    private final CacheStats stats = new CacheStats(NAME);
+    /**
+     * 按放入顺序排列，也就是在环形日志中的顺序，最前面的是最旧的
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    /**
+     * 等待后台线程读取的图片 uri，避免同一张图片的多个尺寸被挤出去时重复读取
+     */
+    private final Set<String> pendingUris = new HashSet<>();
+    /**
+     * 正在读取或写入的 key 和这次放入的标记，{@link #remove(String)} 和清空时删掉标记，写完发现标记变了就不放进索引了，
+     * 只影响同一个 key，不会让其它图片的放入也失效
+     */
+    private final Map<String, Object> inFlightTokens = new HashMap<>();
+    /**
+     * 同一时间只允许一个线程写入，保证写入期间预留的那段共享内存不会被其它写入覆盖
+     */
+    private final Object writeLock = new Object();
+
+    private Context context;
+    private int maxSize;
+    private int maxEntrySize;
+    private MemoryFile arena;
+    private int writePosition;
+    private long size;
+    private boolean disabled;
+    private boolean closed;
+    @Nullable
+    private DiskCache diskCache;
+    @Nullable
+    private UriModelManager uriModelManager;
+
+    private HandlerThread handlerThread;
+    private Handler handler;
+
+    /**
+     * @param context {@link Context}
+     * @param maxSize 最大容量，单位字节，共享内存在第一次放入时才会创建
+     */
+    public EncodedMemoryCache(@NonNull Context context, int maxSize) {
+        this.context = context.getApplicationContext();
+        this.maxSize = maxSize;
+        this.maxEntrySize = maxSize / 8;
+    }
+
+    /**
+     * 设置原始数据的来源
+     */
+    public synchronized void setDiskCache(@Nullable DiskCache diskCache) {
+        this.diskCache = diskCache;
+    }
+
+    /**
+     * 设置用来把图片 uri 转成磁盘缓存 key 的 {@link UriModelManager}
+     */
+    public synchronized void setUriModelManager(@Nullable UriModelManager uriModelManager) {
+        this.uriModelManager = uriModelManager;
+    }
+
+    /**
+     * 判断指定 {@link UriModel} 的图片数据是否来自 {@link DiskCache}，只有这样的图片才能缓存
+     */
+    public static boolean isSupported(@NonNull UriModel uriModel) {
+        return uriModel.isFromNet() || uriModel instanceof AbsDiskCacheUriModel;
+    }
+
+    /**
+     * {@link MemoryCache} 释放了一张图片，稍后在后台线程中从 {@link DiskCache} 读取它的原始数据放进来
+     *
+     * @param uri 图片 uri
+     */
+    public void offer(@NonNull String uri) {
+        synchronized (this) {
+            if (closed || disabled || maxEntrySize <= 0 || diskCache == null || uriModelManager == null || !pendingUris.add(uri)) {
+                return;
+            }
+
+            // 用到时才创建后台线程
+            if (handler == null) {
+                handlerThread = new HandlerThread(NAME, Process.THREAD_PRIORITY_BACKGROUND);
+                handlerThread.start();
+                handler = new Handler(handlerThread.getLooper());
+            }
+        }
+
+        final String finalUri = uri;
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                admit(finalUri);
+            }
+        });
+    }
+
+    private void admit(@NonNull String uri) {
+        DiskCache diskCache;
+        UriModelManager uriModelManager;
+        synchronized (this) {
+            pendingUris.remove(uri);
+            if (closed || disabled) {
+                return;
+            }
+            diskCache = this.diskCache;
+            uriModelManager = this.uriModelManager;
+        }
+        if (diskCache == null || uriModelManager == null) {
+            return;
+        }
+
+        UriModel uriModel = uriModelManager.match(uri);
+        if (uriModel == null || !isSupported(uriModel)) {
+            return;
+        }
+
+        String key = uriModel.getDiskCacheKey(uri);
+        Object token = beginPut(key);
+        if (token == null) {
+            return;
+        }
+        try {
+            byte[] data = readDiskCache(diskCache, key, uri);
+            if (data != null) {
+                put(key, data, data.length, token);
+            }
+        } finally {
+            endPut(key, token);
+        }
+    }
+
+    @Nullable
+    private byte[] readDiskCache(@NonNull DiskCache diskCache, @NonNull String key, @NonNull String uri) {
+        DiskCache.Entry diskCacheEntry = diskCache.get(key);
+        if (diskCacheEntry == null) {
+            return null;
+        }
+
+        File file = diskCacheEntry.getFile();
+        long length = file.length();
+        if (length <= 0 || length > getMaxEntrySize()) {
+            stats.recordReject();
+            return null;
+        }
+
+        // 不复用缓冲区，放入后就可以回收，不会一直在 Java 堆上占着 maxEntrySize 那么大的内存
+        int byteCount = (int) length;
+        byte[] data = new byte[byteCount];
+
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            int offset = 0;
+            int readLength;
+            while (offset < byteCount && (readLength = inputStream.read(data, offset, byteCount - offset)) != -1) {
+                offset += readLength;
+            }
+            return offset == byteCount ? data : null;
+        } catch (IOException e) {
+            SLog.w(NAME, "Read disk cache failed. %s. %s", e.toString(), uri);
+            return null;
+        } finally {
+            SketchUtils.close(inputStream);
+        }
+    }
+
+    /**
+     * 登记一次放入，已经缓存了或者同一个 key 正在放入就返回 null
+     */
+    @Nullable
+    private synchronized Object beginPut(@NonNull String key) {
+        if (closed || disabled || entries.containsKey(key) || inFlightTokens.containsKey(key)) {
+            return null;
+        }
+        Object token = new Object();
+        inFlightTokens.put(key, token);
+        return token;
+    }
+
+    private synchronized void endPut(@NonNull String key, @NonNull Object token) {
+        if (inFlightTokens.get(key) == token) {
+            inFlightTokens.remove(key);
+        }
+    }
+
+    /**
+     * 放入原始数据，会覆盖掉环形日志中接下来的一段数据
+     *
+     * @param key       磁盘缓存 key，参考 {@link UriModel#getDiskCacheKey(String)}
+     * @param data      原始数据
+     * @param byteCount 数据长度
+     */
+    public void put(@NonNull String key, @NonNull byte[] data, int byteCount) {
+        Object token = beginPut(key);
+        if (token == null) {
+            return;
+        }
+        try {
+            put(key, data, byteCount, token);
+        } finally {
+            endPut(key, token);
+        }
+    }
+
+    private void put(@NonNull String key, @NonNull byte[] data, int byteCount, @NonNull Object token) {
+        synchronized (writeLock) {
+            MemoryFile memoryFile;
+            int start;
+            synchronized (this) {
+                if (closed || disabled || inFlightTokens.get(key) != token || entries.containsKey(key)) {
+                    return;
+                }
+                if (byteCount <= 0 || byteCount > maxEntrySize) {
+                    stats.recordReject();
+                    return;
+                }
+
+                if (arena == null) {
+                    try {
+                        arena = new MemoryFile(NAME, maxSize);
+                    } catch (IOException e) {
+                        SLog.e(NAME, e, "Create memory file failed");
+                        stats.recordReject();
+                        return;
+                    }
+                }
+                memoryFile = arena;
+
+                // 剩下的空间放不下就回到开头，末尾那一段空着
+                start = writePosition + byteCount <= maxSize ? writePosition : 0;
+                long consumed = start >= writePosition ? start + byteCount - writePosition : (long) maxSize - writePosition + start + byteCount;
+
+                // 从 writePosition 开始被跳过或覆盖的数据一定是最旧的那些，按放入顺序释放就可以了，写入之前就要从索引中删除
+                Iterator<Entry> iterator = entries.values().iterator();
+                while (iterator.hasNext()) {
+                    Entry entry = iterator.next();
+                    long distance = ((long) entry.offset - writePosition + maxSize) % maxSize;
+                    if (distance >= consumed) {
+                        break;
+                    }
+                    iterator.remove();
+                    size -= entry.byteCount;
+                    stats.recordEviction(CacheStats.EVICTION_CAPACITY, 1, entry.byteCount);
+                }
+                writePosition = start + byteCount;
+            }
+
+            // 写入时不持有对象锁，读取其它数据不受影响
+            try {
+                //noinspection SynchronizationOnLocalVariableOrMethodParameter
+                synchronized (memoryFile) {
+                    memoryFile.writeBytes(data, 0, start, byteCount);
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    // 写入期间共享内存被释放了不算错误
+                    if (arena == memoryFile) {
+                        SLog.e(NAME, e, "Write memory file failed");
+                        stats.recordReject();
+                    }
+                }
+                return;
+            }
+
+            synchronized (this) {
+                // 写入期间被清空或删除了就不能再放进索引了
+                if (arena != memoryFile || inFlightTokens.get(key) != token || entries.containsKey(key)) {
+                    return;
+                }
+                entries.put(key, new Entry(start, byteCount));
+                size += byteCount;
+                stats.recordPut(byteCount);
+
+                if (SLog.isLoggable(SLog.LEVEL_DEBUG | SLog.TYPE_CACHE)) {
+                    SLog.d(NAME, "put. byteCount=%d, size=%s. %s", byteCount, Formatter.formatFileSize(context, size), key);
+                }
+            }
+        }
+    }
+
+    /**
+     * 取出原始数据的拷贝，拷贝时不持有对象锁
+     *
+     * @param key 磁盘缓存 key，参考 {@link UriModel#getDiskCacheKey(String)}
+     * @return null：没有缓存
+     */
+    @Nullable
+    public byte[] get(@NonNull String key) {
+        Entry entry;
+        MemoryFile memoryFile;
+        synchronized (this) {
+            if (closed || disabled) {
+                return null;
+            }
+
+            entry = entries.get(key);
+            if (entry == null) {
+                stats.recordMiss();
+                return null;
+            }
+            memoryFile = arena;
+        }
+
+        byte[] data = new byte[entry.byteCount];
+        try {
+            //noinspection SynchronizationOnLocalVariableOrMethodParameter
+            synchronized (memoryFile) {
+                memoryFile.readBytes(data, entry.offset, 0, entry.byteCount);
+            }
+        } catch (IOException e) {
+            // 拷贝期间共享内存被释放了也会走到这里
+            synchronized (this) {
+                if (entries.get(key) == entry) {
+                    SLog.e(NAME, e, "Read memory file failed");
+                    entries.remove(key);
+                    size -= entry.byteCount;
+                    stats.recordEviction(CacheStats.EVICTION_REMOVE, 1, entry.byteCount);
+                }
+                stats.recordMiss();
+            }
+            return null;
+        }
+
+        synchronized (this) {
+            // 写入前会先从索引中删除要被覆盖的数据，拷贝完还在索引中就说明拷贝的数据是完整的
+            if (entries.get(key) != entry) {
+                stats.recordMiss();
+                return null;
+            }
+            stats.recordHit();
+        }
+        return data;
+    }
+
+    /**
+     * 删除指定 key 的数据，{@link DiskCache} 中的数据被改写或删除时调用
+     *
+     * @param key 磁盘缓存 key，参考 {@link UriModel#getDiskCacheKey(String)}
+     */
+    public synchronized void remove(@NonNull String key) {
+        if (closed) {
+            return;
+        }
+
+        // 只让这个 key 正在进行的放入失效
+        inFlightTokens.remove(key);
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            size -= entry.byteCount;
+            stats.recordEviction(CacheStats.EVICTION_REMOVE, 1, entry.byteCount);
+        }
+    }
+
+    /**
+     * 修整内存，进入后台或者更严重的级别时释放共享内存。只删除索引不会减少共享内存的占用，所以不会只释放一部分
+     *
+     * @param level 修剪级别，对应 APP 的不同状态，对应 {@link ComponentCallbacks2} 里的常量
+     */
+    public synchronized void trimMemory(int level) {
+        if (closed) {
+            return;
+        }
+
+        long oldSize = size;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            releaseArena(CacheStats.EVICTION_TRIM);
+        }
+
+        SLog.w(NAME, "trimMemory. level=%s, released: %s",
+                SketchUtils.getTrimLevelName(level), Formatter.formatFileSize(context, oldSize - size));
+    }
+
+    /**
+     * 清空缓存并释放共享内存
+     */
+    public synchronized void clear() {
+        if (closed) {
+            return;
+        }
+
+        SLog.w(NAME, "clear. before size: %s", Formatter.formatFileSize(context, size));
+        releaseArena(CacheStats.EVICTION_CLEAR);
+    }
+
+    private void releaseArena(int reason) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            iterator.remove();
+            size -= entry.byteCount;
+            stats.recordEviction(reason, 1, entry.byteCount);
+        }
+        pendingUris.clear();
+        inFlightTokens.clear();
+        writePosition = 0;
+        if (arena != null) {
+            // 等正在进行的拷贝完成后再关闭
+            synchronized (arena) {
+                arena.close();
+            }
+            arena = null;
+        }
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 关闭，关闭后不能再使用
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        releaseArena(CacheStats.EVICTION_CLEAR);
+        closed = true;
+        if (handlerThread != null) {
+            handlerThread.quit();
+        }
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized int getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    /**
+     * 设置单张图片的最大长度，超过的不缓存，默认是最大容量的 1/8，避免一张大图把其它的都挤出去。设置为 0 相当于关闭
+     */
+    public synchronized void setMaxEntrySize(int maxEntrySize) {
+        this.maxEntrySize = Math.min(maxEntrySize, maxSize);
+    }
+
+    public synchronized boolean isDisabled() {
+        return disabled;
+    }
+
+    /**
+     * 设置是否禁用，禁用后会清空缓存并释放共享内存
+     */
+    public void setDisabled(boolean disabled) {
+        synchronized (this) {
+            if (this.disabled == disabled) {
+                return;
+            }
+            this.disabled = disabled;
+            if (disabled && !closed) {
+                releaseArena(CacheStats.EVICTION_CLEAR);
+            }
+        }
+        SLog.w(NAME, "setDisabled. %s", disabled);
+    }
+
+    @Override
+    @NonNull
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format("%s(maxSize=%s,maxEntrySize=%s)", NAME,
+                Formatter.formatFileSize(context, maxSize), Formatter.formatFileSize(context, getMaxEntrySize()));
+    }
+
+    private static class Entry {
+        private final int offset;
+        private final int byteCount;
+
+        Entry(int offset, int byteCount) {
+            this.offset = offset;
+            this.byteCount = byteCount;
+        }
+    }
+}
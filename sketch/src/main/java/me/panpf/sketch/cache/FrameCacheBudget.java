@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.cache;
+
+import android.content.Context;
+import android.text.format.Formatter;
+import androidx.annotation.NonNull;
+
+import me.panpf.sketch.SLog;
+
+/**
+ * 动图帧缓存的全局内存预算，所有开启了帧缓存的 gif 共用，帧缓存的 {@link android.graphics.Bitmap} 来自 {@link BitmapPool}，释放后也回到 {@link BitmapPool}
+ */
+public class FrameCacheBudget {
+    private static final String NAME = "FrameCacheBudget";
+
+    private Context context;
+    private int maxSize;
+    private int drawableMaxSize;
+    private int size;
+
+    /**
+     * @param context         {@link Context}
+     * @param maxSize         所有动图的帧缓存加起来的最大容量
+     * @param drawableMaxSize 单个动图的帧缓存的最大容量，超过的动图不缓存帧
+     */
+    public FrameCacheBudget(@NonNull Context context, int maxSize, int drawableMaxSize) {
+        this.context = context.getApplicationContext();
+        this.maxSize = maxSize;
+        this.drawableMaxSize = drawableMaxSize;
+    }
+
+    /**
+     * 申请指定大小的容量
+     *
+     * @param byteCount 需要的容量
+     * @return false：超过了单个动图的最大容量或剩余容量不足
+     */
+    public synchronized boolean reserve(int byteCount) {
+        if (byteCount <= 0 || byteCount > drawableMaxSize || size + byteCount > maxSize) {
+            if (SLog.isLoggable(SLog.LEVEL_DEBUG | SLog.TYPE_CACHE)) {
+                SLog.d(NAME, "reserve refused. byteCount=%s, size=%s",
+                        Formatter.formatFileSize(context, byteCount), Formatter.formatFileSize(context, size));
+            }
+            return false;
+        }
+        size += byteCount;
+        return true;
+    }
+
+    /**
+     * 归还通过 {@link #reserve(int)} 申请的容量
+     */
+    public synchronized void release(int byteCount) {
+        size = Math.max(0, size - byteCount);
+    }
+
+    /**
+     * 获取已用容量
+     */
+    public synchronized int getSize() {
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 设置所有动图的帧缓存加起来的最大容量，不影响已经申请到的容量
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public int getDrawableMaxSize() {
+        return drawableMaxSize;
+    }
+
+    /**
+     * 设置单个动图的帧缓存的最大容量
+     */
+    public void setDrawableMaxSize(int drawableMaxSize) {
+        this.drawableMaxSize = drawableMaxSize;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format("%s(maxSize=%s,drawableMaxSize=%s)", NAME,
+                Formatter.formatFileSize(context, maxSize), Formatter.formatFileSize(context, drawableMaxSize));
+    }
+}
@@ -22,7 +22,7 @@ import me.panpf.sketch.util.SketchUtils;
 /**
  * 根据最少使用规则释放缓存的 {@link Bitmap} 复用池
  */
-public class LruBitmapPool implements BitmapPool {
+public class LruBitmapPool implements BitmapPool, CacheStatsProvider {
     private static final Bitmap.Config DEFAULT_CONFIG = Bitmap.Config.ARGB_8888;
     private static final String NAME = "LruBitmapPool";
 
@@ -32,6 +32,7 @@ public class LruBitmapPool implements BitmapPool {
     private final Set<Bitmap.Config> allowedConfigs;
     private final int initialMaxSize;
     private final BitmapTracker tracker;
+    private final CacheStats stats = new CacheStats(NAME);
 
     private int maxSize;
     private int currentSize;
@@ -113,6 +114,7 @@ public class LruBitmapPool implements BitmapPool {
             SLog.w(NAME, "Reject bitmap from pool, bitmap: %s, is recycled: %s, is mutable: %s, is allowed config: %s, %s",
                     strategy.logBitmap(bitmap), bitmap.isRecycled(), bitmap.isMutable(),
                     allowedConfigs.contains(bitmap.getConfig()), SketchUtils.toHexString(bitmap));
+            stats.recordReject();
             return false;
         }
 
@@ -122,6 +124,7 @@ public class LruBitmapPool implements BitmapPool {
 
         puts++;
         currentSize += size;
+        stats.recordPut(size);
 
         if (SLog.isLoggable(SLog.LEVEL_DEBUG | SLog.TYPE_CACHE)) {
             SLog.d(NAME, "Put bitmap in pool=%s,%s", strategy.logBitmap(bitmap), SketchUtils.toHexString(bitmap));
@@ -154,11 +157,13 @@ public class LruBitmapPool implements BitmapPool {
                 SLog.d(NAME, "Missing bitmap=%s", strategy.logBitmap(width, height, config));
             }
             misses++;
+            stats.recordMiss();
         } else {
             if (SLog.isLoggable(SLog.LEVEL_DEBUG | SLog.TYPE_CACHE)) {
                 SLog.d(NAME, "Get bitmap=%s,%s", strategy.logBitmap(width, height, config), SketchUtils.toHexString(result));
             }
             hits++;
+            stats.recordHit();
             currentSize -= strategy.getSize(result);
             tracker.remove(result);
             result.setHasAlpha(true);
@@ -205,7 +210,7 @@ public class LruBitmapPool implements BitmapPool {
             return;
         }
 
-        trimToSize(maxSize);
+        trimToSize(maxSize, CacheStats.EVICTION_CAPACITY);
     }
 
     @Override
@@ -224,7 +229,9 @@ public class LruBitmapPool implements BitmapPool {
             return;
         }
 
+        int oldMaxSize = maxSize;
         maxSize = Math.round(initialMaxSize * sizeMultiplier);
+        stats.recordResize(oldMaxSize, maxSize);
         evict();
     }
 
@@ -251,9 +258,9 @@ public class LruBitmapPool implements BitmapPool {
         long size = getSize();
 
         if (level >= android.content.ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
-            trimToSize(0);
+            trimToSize(0, CacheStats.EVICTION_TRIM);
         } else if (level >= android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
-            trimToSize(maxSize / 2);
+            trimToSize(maxSize / 2, CacheStats.EVICTION_TRIM);
         }
 
         String releasedSize = Formatter.formatFileSize(context, size - getSize());
@@ -264,7 +271,7 @@ public class LruBitmapPool implements BitmapPool {
     public synchronized void clear() {
         SLog.w(NAME, "clear. before size %s", Formatter.formatFileSize(context, getSize()));
 
-        trimToSize(0);
+        trimToSize(0, CacheStats.EVICTION_CLEAR);
     }
 
     @Override
@@ -279,10 +286,10 @@ public class LruBitmapPool implements BitmapPool {
         }
 
         closed = true;
-        trimToSize(0);
+        trimToSize(0, CacheStats.EVICTION_CLEAR);
     }
 
-    private synchronized void trimToSize(int size) {
+    private synchronized void trimToSize(int size, int evictionReason) {
         while (currentSize > size) {
             final Bitmap removed = strategy.removeLast();
             if (removed == null) {
@@ -296,9 +303,11 @@ public class LruBitmapPool implements BitmapPool {
                 SLog.d(NAME, "Evicting bitmap=%s,%s", strategy.logBitmap(removed), SketchUtils.toHexString(removed));
             }
             tracker.remove(removed);
-            currentSize -= strategy.getSize(removed);
+            int removedSize = strategy.getSize(removed);
+            currentSize -= removedSize;
             removed.recycle();
             evictions++;
+            stats.recordEviction(evictionReason, 1, removedSize);
             dump();
         }
     }
@@ -314,6 +323,12 @@ public class LruBitmapPool implements BitmapPool {
         }
     }
 
+    @Override
+    @NonNull
+    public CacheStats getStats() {
+        return stats;
+    }
+
     @NonNull
     @Override
     public String toString() {
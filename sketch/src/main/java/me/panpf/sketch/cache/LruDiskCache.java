@@ -40,7 +40,7 @@ import me.panpf.sketch.util.UnableCreateFileException;
 /**
  * 根据最少使用规则释放缓存的磁盘缓存管理器
  */
-public class LruDiskCache implements DiskCache {
+public class LruDiskCache implements DiskCache, CacheStatsProvider {
     private static final String NAME = "LruDiskCache";
 
     private int maxSize;
@@ -52,6 +52,12 @@ public class LruDiskCache implements DiskCache {
     private boolean closed;
     private boolean disabled;
     private Map<String, ReentrantLock> editLockMap;
+    private final CacheStats stats = new CacheStats(NAME);
+    /**
+     * 正在后台线程中安装，此时主线程中的查询不等待
+     */
+    private volatile boolean installing;
+    private volatile long installTime = -1;
 
     /**
      * 创建根据最少使用规则释放缓存的磁盘缓存管理器
@@ -84,14 +90,65 @@ public class LruDiskCache implements DiskCache {
         return cacheDir != null && cacheDir.exists();
     }
 
+    /**
+     * 在后台线程中安装磁盘缓存，{@link me.panpf.sketch.Sketch} 初始化完成后会自动调用。
+     * 安装期间其它线程的读写会排队等待安装完成，主线程中的 {@link #get(String)} 和 {@link #exist(String)} 不等待，交给后台线程再检查一次
+     */
+    public void installAsync() {
+        synchronized (this) {
+            if (closed || installing || checkDiskCache()) {
+                return;
+            }
+            installing = true;
+        }
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // 等锁期间工作线程可能已经安装好了，不能再关掉重新安装，否则会重放两遍 journal，已经给出去的 Editor 也会失效
+                    installDiskCacheIfNeed(true);
+                } finally {
+                    installing = false;
+                }
+            }
+        }, "InstallDiskCacheThread");
+        thread.start();
+    }
+
+    /**
+     * 是否正在后台线程中安装
+     */
+    public boolean isInstalling() {
+        return installing;
+    }
+
+    /**
+     * 获取最近一次安装的耗时，单位毫秒，还没有安装过返回 -1
+     */
+    public long getInstallTime() {
+        return installTime;
+    }
+
     /**
      * 安装磁盘缓存
      */
     protected synchronized void installDiskCache() {
+        installDiskCache(false);
+    }
+
+    /**
+     * 安装磁盘缓存
+     *
+     * @param async 是否是 {@link #installAsync()} 的后台线程安装的
+     */
+    private synchronized void installDiskCache(boolean async) {
         if (closed) {
             return;
         }
 
+        long startTime = System.currentTimeMillis();
+
         // 旧的要关闭
         if (cache != null) {
             try {
@@ -117,10 +174,31 @@ public class LruDiskCache implements DiskCache {
 
         try {
             cache = DiskLruCache.open(cacheDir, appVersionCode, 1, maxSize);
+            cache.setCacheStats(stats);
         } catch (IOException e) {
             e.printStackTrace();
             configuration.getErrorTracker().onInstallDiskCacheError(e, cacheDir);
+            return;
         }
+
+        installTime = System.currentTimeMillis() - startTime;
+        configuration.getErrorTracker().onDiskCacheInstalled(cacheDir, installTime, async);
+    }
+
+    /**
+     * 拿到锁之后再检查一次，可能在等锁的时候后台线程已经安装好了
+     */
+    private synchronized void installDiskCacheIfNeed(boolean async) {
+        if (!checkDiskCache()) {
+            installDiskCache(async);
+        }
+    }
+
+    /**
+     * 主线程中不等待后台线程安装完成
+     */
+    private boolean skipWaitInstall() {
+        return installing && !checkDiskCache() && SketchUtils.isMainThread();
     }
 
     // 这个方法性能优先，因此不加synchronized
@@ -137,9 +215,14 @@ public class LruDiskCache implements DiskCache {
             return false;
         }
 
+        // 还在安装中，不确定有没有，返回 true 交给后台线程再检查一次
+        if (skipWaitInstall()) {
+            return true;
+        }
+
         // 这个方法性能优先，因此不检查缓存目录
         if (!checkDiskCache()) {
-            installDiskCache();
+            installDiskCacheIfNeed(false);
             if (!checkDiskCache()) {
                 return false;
             }
@@ -157,7 +240,19 @@ public class LruDiskCache implements DiskCache {
     }
 
     @Override
-    public synchronized Entry get(@NonNull String key) {
+    public Entry get(@NonNull String key) {
+        // 还在安装中，当作没有，交给后台线程再检查一次
+        if (skipWaitInstall()) {
+            if (SLog.isLoggable(SLog.LEVEL_DEBUG | SLog.TYPE_CACHE)) {
+                SLog.d(NAME, "Installing. Skip get in main thread, key=%s", key);
+            }
+            return null;
+        }
+
+        return getInternal(key);
+    }
+
+    private synchronized Entry getInternal(@NonNull String key) {
         if (closed) {
             return null;
         }
@@ -182,7 +277,13 @@ public class LruDiskCache implements DiskCache {
         } catch (IOException | DiskLruCache.ClosedException e) {
             e.printStackTrace();
         }
-        return snapshot != null ? new LruDiskCacheEntry(key, snapshot) : null;
+        if (snapshot != null) {
+            stats.recordHit();
+            return new LruDiskCacheEntry(key, snapshot, configuration);
+        } else {
+            stats.recordMiss();
+            return null;
+        }
     }
 
     @Override
@@ -237,6 +338,10 @@ public class LruDiskCache implements DiskCache {
                 e1.printStackTrace();
             }
         }
+        if (diskEditor != null) {
+            // 要改写了，二级内存缓存里的旧数据不能再用了
+            configuration.getEncodedMemoryCache().remove(key);
+        }
         return diskEditor != null ? new LruDiskCacheEditor(diskEditor) : null;
     }
 
@@ -307,6 +412,11 @@ public class LruDiskCache implements DiskCache {
         }
 
         installDiskCache();
+
+        // 图标集也是磁盘上的缓存，一起清空
+        configuration.getAppIconAtlas().clear();
+        // 二级内存缓存里的数据来自磁盘缓存，也要一起清空
+        configuration.getEncodedMemoryCache().clear();
     }
 
     @Override
@@ -351,20 +461,32 @@ public class LruDiskCache implements DiskCache {
         return lock;
     }
 
+    @Override
+    @NonNull
+    public CacheStats getStats() {
+        return stats;
+    }
+
     @NonNull
     @Override
     public String toString() {
-        return String.format("%s(maxSize=%s,appVersionCode=%d,cacheDir=%s)",
-                NAME, Formatter.formatFileSize(context, maxSize), appVersionCode, cacheDir.getPath());
+        return String.format("%s(maxSize=%s,appVersionCode=%d,cacheDir=%s,installTime=%dms)",
+                NAME, Formatter.formatFileSize(context, maxSize), appVersionCode, cacheDir.getPath(), installTime);
     }
 
     public static class LruDiskCacheEntry implements Entry {
         private String key;
         private DiskLruCache.SimpleSnapshot snapshot;
+        private Configuration configuration;
 
         public LruDiskCacheEntry(String key, DiskLruCache.SimpleSnapshot snapshot) {
+            this(key, snapshot, null);
+        }
+
+        public LruDiskCacheEntry(String key, DiskLruCache.SimpleSnapshot snapshot, Configuration configuration) {
             this.key = key;
             this.snapshot = snapshot;
+            this.configuration = configuration;
         }
 
         @NonNull
@@ -389,6 +511,9 @@ public class LruDiskCache implements DiskCache {
         public boolean delete() {
             try {
                 snapshot.getDiskLruCache().remove(snapshot.getKey());
+                if (configuration != null) {
+                    configuration.getEncodedMemoryCache().remove(key);
+                }
                 return true;
             } catch (IOException e) {
                 e.printStackTrace();
@@ -18,6 +18,7 @@ package me.panpf.sketch.cache;
 
 import android.content.Context;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import android.text.format.Formatter;
 
 import me.panpf.sketch.SLog;
@@ -28,13 +29,21 @@ import me.panpf.sketch.util.SketchUtils;
 /**
  * 根据最少使用规则释放缓存的内存缓存管理器
  */
-public class LruMemoryCache implements MemoryCache {
+public class LruMemoryCache implements MemoryCache, ResizableCache, CacheStatsProvider {
     private static final String NAME = "LruMemoryCache";
 
     private final LruCache<String, SketchRefBitmap> cache;
+    private final int initialMaxSize;
+    private final CacheStats stats = new CacheStats(NAME);
+    /**
+     * 当前释放的原因，在 trimMemory() 和 clear() 中临时修改，其它情况下都是因为超过了最大容量
+     */
+    private int evictionReason = CacheStats.EVICTION_CAPACITY;
     private Context context;
     private boolean closed;
     private boolean disabled;
+    @Nullable
+    private EncodedMemoryCache encodedMemoryCache;
 
     /**
      * 创建根据最少使用规则释放缓存的内存缓存管理器
@@ -45,7 +54,15 @@ public class LruMemoryCache implements MemoryCache {
     public LruMemoryCache(Context context, int maxSize) {
         context = context.getApplicationContext();
         this.context = context;
-        this.cache = new RefBitmapLruCache(maxSize);
+        this.initialMaxSize = maxSize;
+        this.cache = new RefBitmapLruCache(maxSize, this);
+    }
+
+    /**
+     * 设置二级内存缓存，超过容量被挤出去的图片会交给它，{@link me.panpf.sketch.Configuration} 会自动设置
+     */
+    public synchronized void setEncodedMemoryCache(@Nullable EncodedMemoryCache encodedMemoryCache) {
+        this.encodedMemoryCache = encodedMemoryCache;
     }
 
     @Override
@@ -63,6 +80,7 @@ public class LruMemoryCache implements MemoryCache {
 
         if (cache.get(key) != null) {
             SLog.w(NAME, String.format("Exist. key=%s", key));
+            stats.recordReject();
             return;
         }
 
@@ -71,6 +89,7 @@ public class LruMemoryCache implements MemoryCache {
             oldCacheSize = cache.size();
         }
 
+        stats.recordPut(refBitmap.getByteCount());
         cache.put(key, refBitmap);
 
         if (SLog.isLoggable(SLog.LEVEL_DEBUG | SLog.TYPE_CACHE)) {
@@ -93,7 +112,13 @@ public class LruMemoryCache implements MemoryCache {
             return null;
         }
 
-        return cache.get(key);
+        SketchRefBitmap refBitmap = cache.get(key);
+        if (refBitmap != null) {
+            stats.recordHit();
+        } else {
+            stats.recordMiss();
+        }
+        return refBitmap;
     }
 
     @Override
@@ -131,6 +156,21 @@ public class LruMemoryCache implements MemoryCache {
         return cache.maxSize();
     }
 
+    @Override
+    public synchronized void setSizeMultiplier(float sizeMultiplier) {
+        if (closed) {
+            return;
+        }
+
+        // LruCache 的最大容量不能为 0，最少保留 1 个字节，相当于什么也不缓存
+        int oldMaxSize = cache.maxSize();
+        int newMaxSize = Math.max(1, Math.round(initialMaxSize * sizeMultiplier));
+        evictionReason = CacheStats.EVICTION_TRIM;
+        cache.resize(newMaxSize);
+        evictionReason = CacheStats.EVICTION_CAPACITY;
+        stats.recordResize(oldMaxSize, newMaxSize);
+    }
+
     @Override
     public synchronized void trimMemory(int level) {
         if (closed) {
@@ -139,11 +179,13 @@ public class LruMemoryCache implements MemoryCache {
 
         long memoryCacheSize = getSize();
 
+        evictionReason = CacheStats.EVICTION_TRIM;
         if (level >= android.content.ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
             cache.evictAll();
         } else if (level >= android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
             cache.trimToSize(cache.maxSize() / 2);
         }
+        evictionReason = CacheStats.EVICTION_CAPACITY;
 
         long releasedSize = memoryCacheSize - getSize();
         SLog.w(NAME, "trimMemory. level=%s, released: %s",
@@ -174,7 +216,9 @@ public class LruMemoryCache implements MemoryCache {
         }
 
         SLog.w(NAME, "clear. before size: %s", Formatter.formatFileSize(context, cache.size()));
+        evictionReason = CacheStats.EVICTION_CLEAR;
         cache.evictAll();
+        evictionReason = CacheStats.EVICTION_CAPACITY;
     }
 
     @Override
@@ -189,7 +233,15 @@ public class LruMemoryCache implements MemoryCache {
         }
         closed = true;
 
+        evictionReason = CacheStats.EVICTION_CLEAR;
         cache.evictAll();
+        evictionReason = CacheStats.EVICTION_CAPACITY;
+    }
+
+    @Override
+    @NonNull
+    public CacheStats getStats() {
+        return stats;
     }
 
     @NonNull
@@ -199,9 +251,11 @@ public class LruMemoryCache implements MemoryCache {
     }
 
     private static class RefBitmapLruCache extends LruCache<String, SketchRefBitmap> {
+        private final LruMemoryCache memoryCache;
 
-        public RefBitmapLruCache(int maxSize) {
+        public RefBitmapLruCache(int maxSize, LruMemoryCache memoryCache) {
             super(maxSize);
+            this.memoryCache = memoryCache;
         }
 
         @Override
@@ -218,7 +272,17 @@ public class LruMemoryCache implements MemoryCache {
 
         @Override
         protected void entryRemoved(boolean evicted, String key, SketchRefBitmap oldRefBitmap, SketchRefBitmap newRefBitmap) {
+            // 先取大小，取消缓存标记后可能就被回收了
+            int byteCount = oldRefBitmap.getByteCount();
             oldRefBitmap.setIsCached(NAME + ":entryRemoved", false);
+            memoryCache.stats.recordEviction(evicted ? memoryCache.evictionReason : CacheStats.EVICTION_REMOVE, 1, byteCount);
+
+            // 只有正常挤出去的才交给二级缓存，修整内存和清空时说明内存紧张，就不要再占用了
+            EncodedMemoryCache encodedMemoryCache = memoryCache.encodedMemoryCache;
+            if (evicted && memoryCache.evictionReason == CacheStats.EVICTION_CAPACITY && encodedMemoryCache != null
+                    && oldRefBitmap.getUri() != null) {
+                encodedMemoryCache.offer(oldRefBitmap.getUri());
+            }
         }
     }
 }
\ No newline at end of file
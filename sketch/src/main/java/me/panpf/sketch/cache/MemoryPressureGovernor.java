@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.cache;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.text.format.Formatter;
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.panpf.sketch.SLog;
+import me.panpf.sketch.util.SketchUtils;
+
+/**
+ * 内存压力调节器，根据剩余内存和解码分配内存的速度持续调整 {@link MemoryCache} 和 {@link BitmapPool} 的容量
+ * <p>
+ * 每次解码成功时只累加分配的字节数，最多每秒在后台线程中检查一次剩余内存，剩余内存减去按分配速度预计马上要用掉的内存后低于 {@link #getLowHeadroomRatio()}
+ * 就缩小容量，先缩小 {@link BitmapPool}，缩到最小后再缩小 {@link MemoryCache}；高于 {@link #getHighHeadroomRatio()} 并且一段时间内没有再缩小过就反过来逐步恢复。
+ * 两个阈值中间的区域什么也不做，避免容量来回震荡。{@link MemoryCache} 需要实现 {@link ResizableCache} 才会被调整
+ * <p>
+ * 8.0 以下 {@link Bitmap} 在 Java 堆中，剩余内存指的是 Java 堆的剩余空间；8.0 及以上 {@link Bitmap} 在 native 堆中，
+ * 用 Java 堆已用的内存加上 {@link MemoryCache} 和 {@link BitmapPool} 中的 {@link Bitmap} 和应用的内存预算（{@link ActivityManager#getMemoryClass()}）比较，
+ * 系统处于低内存状态时也会缩小
+ */
+public class MemoryPressureGovernor {
+    private static final String NAME = "MemoryPressureGovernor";
+
+    /**
+     * 最多缩小到初始容量的多少倍
+     */
+    private static final float MIN_MULTIPLIER = 0.2f;
+    private static final float SHRINK_FACTOR = 0.7f;
+    private static final float GROW_FACTOR = 1.2f;
+    private static final long CHECK_INTERVAL_MILLIS = 1000;
+    /**
+     * 缩小后至少过多久才能恢复，两次恢复之间也至少间隔一半的时间
+     */
+    private static final long GROW_DELAY_MILLIS = 10 * 1000;
+    /**
+     * 按分配速度预留多少秒的内存
+     */
+    private static final float PROJECTION_SECONDS = 2f;
+    private static final float RATE_SMOOTHING = 0.3f;
+
+    @NonNull
+    private final Context context;
+    private final ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicBoolean checkPending = new AtomicBoolean();
+    private float lowHeadroomRatio = 0.15f;
+    private float highHeadroomRatio = 0.3f;
+    private volatile boolean disabled;
+    private volatile long nextCheckTime;
+    private ExecutorService checkExecutor;
+    private long memoryClassBytes;
+    /**
+     * 最近一次调整的缓存，关闭时用来恢复容量
+     */
+    private MemoryCache lastMemoryCache;
+    private BitmapPool lastBitmapPool;
+
+    private float memoryCacheMultiplier = 1f;
+    private float bitmapPoolMultiplier = 1f;
+    private long lastCheckTime;
+    private long lastShrinkTime;
+    private long lastGrowTime;
+    private float allocationRate;
+    private float lastHeadroomRatio = 1f;
+    private boolean lastLowMemory;
+    private int shrinkCount;
+    private int growCount;
+
+    public MemoryPressureGovernor(@NonNull Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * 记录一次解码分配的内存，到了检查的时间就在后台线程中检查剩余内存并调整容量。在解码线程中调用，不加锁也不会阻塞
+     */
+    public void record(@NonNull Bitmap bitmap, @NonNull MemoryCache memoryCache, @NonNull BitmapPool bitmapPool) {
+        if (disabled) {
+            return;
+        }
+
+        allocatedBytes.addAndGet(SketchUtils.getByteCount(bitmap));
+        if (SystemClock.uptimeMillis() < nextCheckTime || !checkPending.compareAndSet(false, true)) {
+            return;
+        }
+        getCheckExecutor().execute(new CheckRunnable(memoryCache, bitmapPool));
+    }
+
+    private synchronized ExecutorService getCheckExecutor() {
+        // 懒加载，用不到就不创建线程，空闲一段时间后线程也会退出
+        if (checkExecutor == null) {
+            checkExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    return new Thread(runnable, "MemoryPressureCheckThread");
+                }
+            });
+            ((ThreadPoolExecutor) checkExecutor).allowCoreThreadTimeOut(true);
+        }
+        return checkExecutor;
+    }
+
+    private synchronized void check(@NonNull MemoryCache memoryCache, @NonNull BitmapPool bitmapPool) {
+        long now = SystemClock.uptimeMillis();
+        nextCheckTime = now + CHECK_INTERVAL_MILLIS;
+        if (disabled) {
+            return;
+        }
+        lastMemoryCache = memoryCache;
+        lastBitmapPool = bitmapPool;
+
+        long bytes = allocatedBytes.getAndSet(0);
+        if (lastCheckTime == 0) {
+            lastCheckTime = now;
+            return;
+        }
+
+        // 分配速度做一下平滑，偶尔一张大图不至于马上缩小容量
+        float currentRate = bytes * 1000f / Math.max(1, now - lastCheckTime);
+        allocationRate = allocationRate == 0 ? currentRate : allocationRate + RATE_SMOOTHING * (currentRate - allocationRate);
+        lastCheckTime = now;
+
+        long capacity;
+        long headroom;
+        Runtime runtime = Runtime.getRuntime();
+        long javaHeapUsed = runtime.totalMemory() - runtime.freeMemory();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+            if (activityManager == null) {
+                return;
+            }
+            // 系统的可用内存是整个设备的，不能代表这个应用还能用多少，只用低内存状态作为额外的信号
+            activityManager.getMemoryInfo(memoryInfo);
+            lastLowMemory = memoryInfo.lowMemory;
+            capacity = getMemoryClassBytes(activityManager);
+            headroom = capacity - javaHeapUsed - memoryCache.getSize() - bitmapPool.getSize();
+        } else {
+            capacity = runtime.maxMemory();
+            headroom = capacity - javaHeapUsed;
+        }
+        if (capacity <= 0) {
+            return;
+        }
+
+        lastHeadroomRatio = (headroom - allocationRate * PROJECTION_SECONDS) / capacity;
+        if (lastLowMemory || lastHeadroomRatio < lowHeadroomRatio) {
+            shrink(now, memoryCache, bitmapPool, false);
+        } else if (lastHeadroomRatio > highHeadroomRatio
+                && now - lastShrinkTime >= GROW_DELAY_MILLIS && now - lastGrowTime >= GROW_DELAY_MILLIS / 2) {
+            grow(now, memoryCache, bitmapPool);
+        }
+    }
+
+    /**
+     * 应用的内存预算，声明了 largeHeap 的用 {@link ActivityManager#getLargeMemoryClass()}
+     */
+    private long getMemoryClassBytes(@NonNull ActivityManager activityManager) {
+        if (memoryClassBytes == 0) {
+            boolean largeHeap = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_LARGE_HEAP) != 0;
+            int memoryClass = largeHeap ? activityManager.getLargeMemoryClass() : activityManager.getMemoryClass();
+            memoryClassBytes = memoryClass * 1024L * 1024L;
+        }
+        return memoryClassBytes;
+    }
+
+    /**
+     * @param toFloor true：直接缩小到最小容量
+     */
+    private void shrink(long now, @NonNull MemoryCache memoryCache, @NonNull BitmapPool bitmapPool, boolean toFloor) {
+        lastShrinkTime = now;
+
+        // 先缩小 BitmapPool，它里面的 Bitmap 都没在用，释放了也不影响显示
+        boolean resizableMemoryCache = memoryCache instanceof ResizableCache;
+        boolean changed = false;
+        if (bitmapPoolMultiplier > MIN_MULTIPLIER) {
+            bitmapPoolMultiplier = toFloor ? MIN_MULTIPLIER : Math.max(MIN_MULTIPLIER, bitmapPoolMultiplier * SHRINK_FACTOR);
+            bitmapPool.setSizeMultiplier(bitmapPoolMultiplier);
+            changed = true;
+        }
+        if ((toFloor || !changed) && resizableMemoryCache && memoryCacheMultiplier > MIN_MULTIPLIER) {
+            memoryCacheMultiplier = toFloor ? MIN_MULTIPLIER : Math.max(MIN_MULTIPLIER, memoryCacheMultiplier * SHRINK_FACTOR);
+            ((ResizableCache) memoryCache).setSizeMultiplier(memoryCacheMultiplier);
+            changed = true;
+        }
+        if (!changed) {
+            return;
+        }
+
+        shrinkCount++;
+        SLog.w(NAME, "shrink. headroom=%s, lowMemory=%s, allocationRate=%s/s, memoryCache=%s, bitmapPool=%s",
+                formatRatio(lastHeadroomRatio), lastLowMemory, Formatter.formatFileSize(context, (long) allocationRate),
+                formatRatio(memoryCacheMultiplier), formatRatio(bitmapPoolMultiplier));
+    }
+
+    private void grow(long now, @NonNull MemoryCache memoryCache, @NonNull BitmapPool bitmapPool) {
+        // 和缩小的顺序相反，先恢复 MemoryCache
+        if (memoryCacheMultiplier < 1f && memoryCache instanceof ResizableCache) {
+            memoryCacheMultiplier = Math.min(1f, memoryCacheMultiplier * GROW_FACTOR);
+            ((ResizableCache) memoryCache).setSizeMultiplier(memoryCacheMultiplier);
+        } else if (bitmapPoolMultiplier < 1f) {
+            bitmapPoolMultiplier = Math.min(1f, bitmapPoolMultiplier * GROW_FACTOR);
+            bitmapPool.setSizeMultiplier(bitmapPoolMultiplier);
+        } else {
+            return;
+        }
+
+        lastGrowTime = now;
+        growCount++;
+        SLog.w(NAME, "grow. headroom=%s, allocationRate=%s/s, memoryCache=%s, bitmapPool=%s",
+                formatRatio(lastHeadroomRatio), Formatter.formatFileSize(context, (long) allocationRate),
+                formatRatio(memoryCacheMultiplier), formatRatio(bitmapPoolMultiplier));
+    }
+
+    /**
+     * 系统要求修整内存时推迟恢复容量，运行中内存紧张或进入后台时再缩小一级，内存严重不足或快要被杀时直接缩小到最小容量，
+     * {@link me.panpf.sketch.Sketch#onTrimMemory(int)} 时会自动调用
+     */
+    public synchronized void trimMemory(int level, @NonNull MemoryCache memoryCache, @NonNull BitmapPool bitmapPool) {
+        if (disabled) {
+            return;
+        }
+
+        lastMemoryCache = memoryCache;
+        lastBitmapPool = bitmapPool;
+
+        long now = SystemClock.uptimeMillis();
+        if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL || level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            shrink(now, memoryCache, bitmapPool, true);
+        } else if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW || level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            shrink(now, memoryCache, bitmapPool, false);
+        }
+        lastShrinkTime = now;
+    }
+
+    /**
+     * 获取 {@link MemoryCache} 当前的容量倍数
+     */
+    public synchronized float getMemoryCacheMultiplier() {
+        return memoryCacheMultiplier;
+    }
+
+    /**
+     * 获取 {@link BitmapPool} 当前的容量倍数
+     */
+    public synchronized float getBitmapPoolMultiplier() {
+        return bitmapPoolMultiplier;
+    }
+
+    /**
+     * 获取最近一次检查时扣除预计分配后的剩余内存比例
+     */
+    public synchronized float getLastHeadroomRatio() {
+        return lastHeadroomRatio;
+    }
+
+    /**
+     * 获取平滑后的解码分配速度，单位字节每秒
+     */
+    public synchronized float getAllocationRate() {
+        return allocationRate;
+    }
+
+    /**
+     * 获取缩小容量的次数
+     */
+    public synchronized int getShrinkCount() {
+        return shrinkCount;
+    }
+
+    /**
+     * 获取恢复容量的次数
+     */
+    public synchronized int getGrowCount() {
+        return growCount;
+    }
+
+    public float getLowHeadroomRatio() {
+        return lowHeadroomRatio;
+    }
+
+    public float getHighHeadroomRatio() {
+        return highHeadroomRatio;
+    }
+
+    /**
+     * 设置剩余内存比例的两个阈值，低于 lowHeadroomRatio 时缩小容量，高于 highHeadroomRatio 时恢复容量，默认 0.15 和 0.3
+     */
+    public synchronized void setHeadroomRatio(float lowHeadroomRatio, float highHeadroomRatio) {
+        if (lowHeadroomRatio < 0 || highHeadroomRatio <= lowHeadroomRatio) {
+            throw new IllegalArgumentException(String.format("Invalid headroom ratio. low=%s, high=%s", lowHeadroomRatio, highHeadroomRatio));
+        }
+        this.lowHeadroomRatio = lowHeadroomRatio;
+        this.highHeadroomRatio = highHeadroomRatio;
+    }
+
+    public boolean isDisabled() {
+        return disabled;
+    }
+
+    /**
+     * 设置是否关闭调节，关闭后会立即把容量恢复到初始值
+     */
+    public synchronized void setDisabled(boolean disabled) {
+        if (this.disabled == disabled) {
+            return;
+        }
+
+        this.disabled = disabled;
+        if (disabled) {
+            restore();
+        }
+        SLog.w(NAME, "setDisabled. %s", disabled);
+    }
+
+    private void restore() {
+        if (memoryCacheMultiplier < 1f && lastMemoryCache instanceof ResizableCache) {
+            ((ResizableCache) lastMemoryCache).setSizeMultiplier(1f);
+        }
+        if (bitmapPoolMultiplier < 1f && lastBitmapPool != null) {
+            lastBitmapPool.setSizeMultiplier(1f);
+        }
+        lastMemoryCache = null;
+        lastBitmapPool = null;
+        memoryCacheMultiplier = 1f;
+        bitmapPoolMultiplier = 1f;
+        allocatedBytes.set(0);
+        lastCheckTime = 0;
+    }
+
+    /**
+     * 输出当前的容量倍数、剩余内存比例、分配速度以及调整次数，方便打印日志
+     */
+    @NonNull
+    public synchronized String dump() {
+        return String.format(Locale.US, "memoryCache=%s, bitmapPool=%s, headroom=%s, allocationRate=%s/s, shrink=%d, grow=%d",
+                formatRatio(memoryCacheMultiplier), formatRatio(bitmapPoolMultiplier), formatRatio(lastHeadroomRatio),
+                Formatter.formatFileSize(context, (long) allocationRate), shrinkCount, growCount);
+    }
+
+    private static String formatRatio(float ratio) {
+        return String.format(Locale.US, "%.2f", ratio);
+    }
+
+    private class CheckRunnable implements Runnable {
+        @NonNull
+        private MemoryCache memoryCache;
+        @NonNull
+        private BitmapPool bitmapPool;
+
+        CheckRunnable(@NonNull MemoryCache memoryCache, @NonNull BitmapPool bitmapPool) {
+            this.memoryCache = memoryCache;
+            this.bitmapPool = bitmapPool;
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            try {
+                check(memoryCache, bitmapPool);
+            } finally {
+                checkPending.set(false);
+            }
+        }
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format("%s(disabled=%s,lowHeadroomRatio=%s,highHeadroomRatio=%s)", NAME, disabled, lowHeadroomRatio, highHeadroomRatio);
+    }
+}
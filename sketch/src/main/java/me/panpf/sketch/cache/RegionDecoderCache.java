@@ -0,0 +1,366 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.cache;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.BitmapRegionDecoder;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.format.Formatter;
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import me.panpf.sketch.SLog;
+import me.panpf.sketch.datasource.DataSource;
+import me.panpf.sketch.util.SketchUtils;
+
+/**
+ * 缓存打开的 {@link BitmapRegionDecoder}，同一张图片再次按区域解码时不用再解析一遍文件头和霍夫曼表
+ * <p>
+ * 使用引用计数，{@link #acquire(String, DataSource)} 和 {@link #release(Ref)} 必须成对调用，只有没人使用的才会被释放。
+ * 没人使用超过 {@link #getIdleTimeout()} 或总大小超过 {@link #getMaxSize()} 时释放最久没用的，大小按图片数据的长度估算
+ */
+public class RegionDecoderCache implements CacheStatsProvider {
+    private static final String NAME = "RegionDecoderCache";
+
+    /**
+     * 默认空闲超时时间，单位毫秒
+     */
+    public static final int DEFAULT_IDLE_TIMEOUT = 10 * 1000;
+    /**
+     * 默认最大容量
+     */
+    public static final long DEFAULT_MAX_SIZE = 8 * 1024 * 1024;
+
+    private final CacheStats stats = new CacheStats(NAME);
+    private final LinkedHashMap<String, Ref> refs = new LinkedHashMap<String, Ref>(16, 0.75f, true);
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable sweepRunnable = new Runnable() {
+        @Override
+        public void run() {
+            sweep();
+        }
+    };
+
+    private Context context;
+    private long maxSize;
+    private int idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private long size;
+    private boolean disabled;
+
+    /**
+     * @param context {@link Context}
+     * @param maxSize 最大容量，按图片数据的长度估算
+     */
+    public RegionDecoderCache(@NonNull Context context, long maxSize) {
+        this.context = context.getApplicationContext();
+        this.maxSize = maxSize;
+    }
+
+    public RegionDecoderCache(@NonNull Context context) {
+        this(context, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * 生成缓存 key，key 相同表示是同一份数据。本地文件可能被同样大小的新内容覆盖，所以有文件的话还要带上修改时间
+     *
+     * @param diskCacheKey 图片 uri 的磁盘缓存 key，参考 {@link me.panpf.sketch.uri.UriModel#getDiskCacheKey(String)}
+     * @param dataSource   图片数据
+     */
+    @NonNull
+    public static String makeKey(@NonNull String diskCacheKey, @NonNull DataSource dataSource) {
+        long length;
+        long lastModified = 0;
+        try {
+            length = dataSource.getLength();
+            File file = dataSource.getFile(null, null);
+            if (file != null) {
+                lastModified = file.lastModified();
+            }
+        } catch (IOException e) {
+            length = -1;
+        }
+        return diskCacheKey + "#" + length + "#" + lastModified;
+    }
+
+    /**
+     * 获取一个 {@link BitmapRegionDecoder}，没有的话就创建一个，用完后必须调用 {@link #release(Ref)}
+     *
+     * @param key        通过 {@link #makeKey(String, DataSource)} 生成
+     * @param dataSource 创建时使用的数据
+     */
+    @NonNull
+    public Ref acquire(@NonNull String key, @NonNull DataSource dataSource) throws IOException {
+        synchronized (this) {
+            Ref ref = !disabled ? refs.get(key) : null;
+            if (ref != null && !ref.regionDecoder.isRecycled()) {
+                ref.refCount++;
+                stats.recordHit();
+                return ref;
+            }
+            stats.recordMiss();
+        }
+
+        // 创建比较耗时，不要占着锁，同一张图片同时创建了两个也没关系，只会缓存一个
+        BitmapRegionDecoder regionDecoder = newRegionDecoder(dataSource);
+        long byteCount;
+        try {
+            byteCount = Math.max(0, dataSource.getLength());
+        } catch (IOException e) {
+            byteCount = 0;
+        }
+        Ref newRef = new Ref(key, regionDecoder, byteCount);
+
+        synchronized (this) {
+            Ref ref = !disabled ? refs.get(key) : null;
+            if (ref != null && !ref.regionDecoder.isRecycled()) {
+                // 别人已经创建好了，用别人的
+                newRef.regionDecoder.recycle();
+                ref.refCount++;
+                return ref;
+            }
+            if (!disabled && byteCount <= maxSize) {
+                refs.put(key, newRef);
+                newRef.cached = true;
+                size += byteCount;
+                stats.recordPut(byteCount);
+                trim(maxSize, CacheStats.EVICTION_CAPACITY);
+            } else {
+                stats.recordReject();
+            }
+            return newRef;
+        }
+    }
+
+    @NonNull
+    private static BitmapRegionDecoder newRegionDecoder(@NonNull DataSource dataSource) throws IOException {
+        // 有文件的话直接用文件创建，不用把整个文件读到内存里
+        File file = dataSource.getFile(null, null);
+        if (file != null) {
+            return BitmapRegionDecoder.newInstance(file.getPath(), false);
+        }
+
+        InputStream inputStream = dataSource.getInputStream();
+        try {
+            return BitmapRegionDecoder.newInstance(inputStream, false);
+        } finally {
+            SketchUtils.close(inputStream);
+        }
+    }
+
+    /**
+     * 已经持有引用时再增加一次引用，保证在调用对应的 {@link #release(Ref)} 之前不会被释放，例如在锁外解码的时候
+     *
+     * @return false：已经没人持有了，不能再使用
+     */
+    public synchronized boolean retain(@NonNull Ref ref) {
+        if (ref.refCount <= 0 || ref.regionDecoder.isRecycled()) {
+            return false;
+        }
+        ref.refCount++;
+        return true;
+    }
+
+    /**
+     * 用完了，没人使用后超过空闲超时时间就会被释放
+     */
+    public void release(@NonNull Ref ref) {
+        synchronized (this) {
+            if (ref.refCount <= 0) {
+                return;
+            }
+            ref.refCount--;
+            if (ref.refCount > 0) {
+                return;
+            }
+
+            if (!ref.cached) {
+                ref.regionDecoder.recycle();
+                return;
+            }
+            ref.lastUseTime = SystemClock.uptimeMillis();
+            trim(maxSize, CacheStats.EVICTION_CAPACITY);
+        }
+
+        handler.removeCallbacks(sweepRunnable);
+        handler.postDelayed(sweepRunnable, idleTimeout);
+    }
+
+    /**
+     * 释放所有空闲超时的
+     */
+    private void sweep() {
+        long nextSweepDelay = -1;
+        synchronized (this) {
+            long now = SystemClock.uptimeMillis();
+            Iterator<Map.Entry<String, Ref>> iterator = refs.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Ref ref = iterator.next().getValue();
+                if (ref.refCount > 0) {
+                    continue;
+                }
+                long idleTime = now - ref.lastUseTime;
+                if (idleTime >= idleTimeout) {
+                    iterator.remove();
+                    evict(ref, CacheStats.EVICTION_TRIM);
+                } else {
+                    long delay = idleTimeout - idleTime;
+                    nextSweepDelay = nextSweepDelay == -1 ? delay : Math.min(nextSweepDelay, delay);
+                }
+            }
+        }
+
+        if (nextSweepDelay != -1) {
+            handler.postDelayed(sweepRunnable, nextSweepDelay);
+        }
+    }
+
+    /**
+     * 释放最久没用并且没人使用的，直到总大小不超过 maxSize
+     */
+    private void trim(long maxSize, int reason) {
+        Iterator<Map.Entry<String, Ref>> iterator = refs.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Ref ref = iterator.next().getValue();
+            if (ref.refCount <= 0) {
+                iterator.remove();
+                evict(ref, reason);
+            }
+        }
+    }
+
+    private void evict(@NonNull Ref ref, int reason) {
+        ref.cached = false;
+        size -= ref.byteCount;
+        ref.regionDecoder.recycle();
+        stats.recordEviction(reason, 1, ref.byteCount);
+    }
+
+    /**
+     * 修整内存，内存紧张时释放所有没人使用的
+     *
+     * @param level 修剪级别，对应 APP 的不同状态，对应 {@link ComponentCallbacks2} 里的常量
+     */
+    public synchronized void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW && level < ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN)) {
+            trim(0, CacheStats.EVICTION_TRIM);
+        }
+    }
+
+    /**
+     * 释放所有没人使用的，正在使用的会在用完后释放
+     */
+    public synchronized void clear() {
+        trim(0, CacheStats.EVICTION_CLEAR);
+        for (Ref ref : refs.values()) {
+            ref.cached = false;
+            size -= ref.byteCount;
+            stats.recordEviction(CacheStats.EVICTION_CLEAR, 1, ref.byteCount);
+        }
+        refs.clear();
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * 设置空闲超时时间，单位毫秒，默认 {@link #DEFAULT_IDLE_TIMEOUT}
+     */
+    public void setIdleTimeout(int idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public synchronized boolean isDisabled() {
+        return disabled;
+    }
+
+    /**
+     * 设置是否禁用，禁用后每次都创建新的 {@link BitmapRegionDecoder}，用完就释放
+     */
+    public void setDisabled(boolean disabled) {
+        synchronized (this) {
+            if (this.disabled == disabled) {
+                return;
+            }
+            this.disabled = disabled;
+        }
+        if (disabled) {
+            clear();
+        }
+        SLog.w(NAME, "setDisabled. %s", disabled);
+    }
+
+    @Override
+    @NonNull
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format("%s(maxSize=%s,idleTimeout=%dms)", NAME, Formatter.formatFileSize(context, maxSize), idleTimeout);
+    }
+
+    /**
+     * 对 {@link BitmapRegionDecoder} 的一次引用，{@link BitmapRegionDecoder#decodeRegion} 内部有锁，可以在多个线程中同时使用
+     */
+    public static class Ref {
+        @NonNull
+        private final String key;
+        @NonNull
+        private final BitmapRegionDecoder regionDecoder;
+        private final long byteCount;
+        private int refCount = 1;
+        private long lastUseTime;
+        private boolean cached;
+
+        Ref(@NonNull String key, @NonNull BitmapRegionDecoder regionDecoder, long byteCount) {
+            this.key = key;
+            this.regionDecoder = regionDecoder;
+            this.byteCount = byteCount;
+        }
+
+        @NonNull
+        public String getKey() {
+            return key;
+        }
+
+        @NonNull
+        public BitmapRegionDecoder getRegionDecoder() {
+            return regionDecoder;
+        }
+    }
+}
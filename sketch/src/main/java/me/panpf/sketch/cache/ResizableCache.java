@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.cache;
+
+/**
+ * 支持在运行时调整最大容量的缓存，{@link MemoryPressureGovernor} 只会调整实现了这个接口的 {@link MemoryCache}，
+ * 自定义的 {@link MemoryCache} 不实现也没关系，只是不会随内存压力调整容量
+ */
+public interface ResizableCache {
+
+    /**
+     * 调整最大容量，用初始的最大容量乘以 sizeMultiplier，如果调整后已用容量超过新的最大容量会立即释放
+     *
+     * @param sizeMultiplier 取值范围 0 到 1
+     */
+    void setSizeMultiplier(float sizeMultiplier);
+}
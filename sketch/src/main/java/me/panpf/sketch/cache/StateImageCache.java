@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.cache;
+
+import android.content.Context;
+import android.os.Process;
+import android.text.format.Formatter;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import me.panpf.sketch.SLog;
+import me.panpf.sketch.Sketch;
+import me.panpf.sketch.drawable.SketchRefBitmap;
+import me.panpf.sketch.request.DisplayOptions;
+import me.panpf.sketch.state.MakerStateImage;
+import me.panpf.sketch.state.StateImage;
+
+/**
+ * 专门存放 {@link MakerStateImage} 处理后的占位图片（loading、error、pauseDownload），和 {@link MemoryCache} 分开，
+ * 修整内存时不会被释放，这样列表滑动时占位图片不会因为内存紧张被回收后又在主线程中重新解码和处理
+ * <p>
+ * 第一次显示某个占位图片没有命中时会在后台线程中创建，也可以在创建 {@link DisplayOptions} 时通过
+ * {@link #prepare(Sketch, DisplayOptions)} 提前创建。容量很小，超过 {@link #getMaxSize()} 时释放最久没用的
+ */
+public class StateImageCache implements CacheStatsProvider {
+    private static final String NAME = "StateImageCache";
+
+    /**
+     * 默认最大容量
+     */
+    public static final int DEFAULT_MAX_SIZE = 4 * 1024 * 1024;
+
+    private final CacheStats stats = new CacheStats(NAME);
+    private final LinkedHashMap<String, SketchRefBitmap> refBitmaps = new LinkedHashMap<String, SketchRefBitmap>(16, 0.75f, true);
+    /**
+     * 已经提交或创建过的 key，避免重复创建，被释放后会移除
+     */
+    private final Set<String> preparedKeys = new HashSet<>();
+    /**
+     * 已经调用过 {@link #prepare(Sketch, DisplayOptions)} 的 options，按对象区分
+     */
+    private final Map<DisplayOptions, Boolean> preparedOptions = Collections.synchronizedMap(new WeakHashMap<DisplayOptions, Boolean>());
+
+    private Context context;
+    private int maxSize;
+    private int size;
+    private boolean disabled;
+    private ExecutorService prepareExecutor;
+
+    /**
+     * @param context {@link Context}
+     * @param maxSize 最大容量
+     */
+    public StateImageCache(@NonNull Context context, int maxSize) {
+        this.context = context.getApplicationContext();
+        this.maxSize = maxSize;
+    }
+
+    public StateImageCache(@NonNull Context context) {
+        this(context, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * 取出缓存的占位图片
+     */
+    @Nullable
+    public SketchRefBitmap get(@NonNull String key) {
+        synchronized (this) {
+            SketchRefBitmap refBitmap = !disabled ? refBitmaps.get(key) : null;
+            if (refBitmap != null && refBitmap.isRecycled()) {
+                refBitmaps.remove(key);
+                preparedKeys.remove(key);
+                size -= refBitmap.getByteCount();
+                stats.recordEviction(CacheStats.EVICTION_REMOVE, 1, refBitmap.getByteCount());
+                refBitmap = null;
+            }
+            if (refBitmap != null) {
+                stats.recordHit();
+            } else {
+                stats.recordMiss();
+            }
+            return refBitmap;
+        }
+    }
+
+    /**
+     * 放入占位图片，超过最大容量的不会放入
+     *
+     * @return false：没有放入，需要调用者自己处理 refBitmap
+     */
+    public boolean put(@NonNull String key, @NonNull SketchRefBitmap refBitmap) {
+        int byteCount = refBitmap.getByteCount();
+        synchronized (this) {
+            if (disabled || byteCount > maxSize || refBitmap.isRecycled()) {
+                stats.recordReject();
+                return false;
+            }
+
+            refBitmap.setIsCached(NAME + ":put", true);
+            SketchRefBitmap oldRefBitmap = refBitmaps.put(key, refBitmap);
+            size += byteCount;
+            preparedKeys.add(key);
+            stats.recordPut(byteCount);
+            if (oldRefBitmap != null) {
+                size -= oldRefBitmap.getByteCount();
+                stats.recordEviction(CacheStats.EVICTION_REMOVE, 1, oldRefBitmap.getByteCount());
+                oldRefBitmap.setIsCached(NAME + ":replace", false);
+            }
+            trim(maxSize, CacheStats.EVICTION_CAPACITY);
+            return true;
+        }
+    }
+
+    /**
+     * 释放最久没用的，直到总大小不超过 maxSize
+     */
+    private void trim(int maxSize, int reason) {
+        Iterator<Map.Entry<String, SketchRefBitmap>> iterator = refBitmaps.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<String, SketchRefBitmap> entry = iterator.next();
+            iterator.remove();
+            preparedKeys.remove(entry.getKey());
+
+            SketchRefBitmap refBitmap = entry.getValue();
+            size -= refBitmap.getByteCount();
+            stats.recordEviction(reason, 1, refBitmap.getByteCount());
+            refBitmap.setIsCached(NAME + ":evict", false);
+        }
+    }
+
+    /**
+     * 在后台线程中创建 {@link DisplayOptions} 里的 loading、error、pauseDownload 占位图片，已经创建过的会跳过，可以在主线程中调用
+     * <p>
+     * 同一个 {@link DisplayOptions} 对象只会处理一次。显示时 resize 等属性可能还会根据 view 修改，这时生成的 key 对不上，
+     * 不用担心，第一次显示时 {@link MakerStateImage} 会用最终的 options 再创建
+     */
+    public void prepare(@NonNull Sketch sketch, @NonNull DisplayOptions options) {
+        if (disabled) {
+            return;
+        }
+
+        // 先按对象判断，避免每次都复制 options、执行过滤器和生成 key
+        if (preparedOptions.put(options, Boolean.TRUE) != null) {
+            return;
+        }
+
+        // 复制一份，避免后台线程执行时 options 已经被修改了
+        DisplayOptions finalOptions = new DisplayOptions(options);
+        // 和 DisplayHelper 保持一致，这样才能生成一样的 key
+        if (finalOptions.getProcessor() == null && finalOptions.getResize() != null) {
+            finalOptions.setProcessor(sketch.getConfiguration().getResizeProcessor());
+        }
+        sketch.getConfiguration().getOptionsFilterManager().filter(finalOptions);
+        prepare(sketch, finalOptions, false);
+    }
+
+    /**
+     * 和 {@link #prepare(Sketch, DisplayOptions)} 一样，只是 options 已经是显示时最终使用的，不再过滤，只有需要创建时才会复制
+     */
+    public void prepareResolved(@NonNull Sketch sketch, @NonNull DisplayOptions resolvedOptions) {
+        if (disabled) {
+            return;
+        }
+        prepare(sketch, resolvedOptions, true);
+    }
+
+    private void prepare(@NonNull Sketch sketch, @NonNull DisplayOptions options, boolean copyOptions) {
+        DisplayOptions finalOptions = copyOptions ? null : options;
+        StateImage[] stateImages = {options.getLoadingImage(), options.getErrorImage(), options.getPauseDownloadImage()};
+        for (StateImage stateImage : stateImages) {
+            if (!(stateImage instanceof MakerStateImage)) {
+                continue;
+            }
+
+            MakerStateImage makerStateImage = (MakerStateImage) stateImage;
+            String key = makerStateImage.makeCacheKey(sketch, options);
+            if (key == null) {
+                continue;
+            }
+            synchronized (this) {
+                if (!preparedKeys.add(key)) {
+                    continue;
+                }
+            }
+
+            // 复制一份，避免后台线程执行时 options 已经被修改了
+            if (finalOptions == null) {
+                finalOptions = new DisplayOptions(options);
+            }
+            getPrepareExecutor().execute(new PrepareRunnable(sketch, makerStateImage, finalOptions, key));
+        }
+    }
+
+    private synchronized ExecutorService getPrepareExecutor() {
+        // 懒加载，用不到就不创建线程
+        if (prepareExecutor == null) {
+            prepareExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    return new Thread(runnable, "PrepareStateImageThread");
+                }
+            });
+            ((ThreadPoolExecutor) prepareExecutor).allowCoreThreadTimeOut(true);
+        }
+        return prepareExecutor;
+    }
+
+    /**
+     * 释放所有占位图片
+     */
+    public synchronized void clear() {
+        int count = refBitmaps.size();
+        int byteCount = size;
+        for (SketchRefBitmap refBitmap : refBitmaps.values()) {
+            refBitmap.setIsCached(NAME + ":clear", false);
+        }
+        refBitmaps.clear();
+        preparedKeys.clear();
+        preparedOptions.clear();
+        size = 0;
+        if (count > 0) {
+            stats.recordEviction(CacheStats.EVICTION_CLEAR, count, byteCount);
+        }
+    }
+
+    public synchronized int getSize() {
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized boolean isDisabled() {
+        return disabled;
+    }
+
+    /**
+     * 设置是否禁用，禁用后占位图片每次都重新创建并且不缓存
+     */
+    public void setDisabled(boolean disabled) {
+        synchronized (this) {
+            if (this.disabled == disabled) {
+                return;
+            }
+            this.disabled = disabled;
+        }
+        if (disabled) {
+            clear();
+        }
+        SLog.w(NAME, "setDisabled. %s", disabled);
+    }
+
+    @Override
+    @NonNull
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format("%s(maxSize=%s)", NAME, Formatter.formatFileSize(context, maxSize));
+    }
+
+    private class PrepareRunnable implements Runnable {
+        @NonNull
+        private Sketch sketch;
+        @NonNull
+        private MakerStateImage makerStateImage;
+        @NonNull
+        private DisplayOptions options;
+        @NonNull
+        private String key;
+
+        PrepareRunnable(@NonNull Sketch sketch, @NonNull MakerStateImage makerStateImage,
+                        @NonNull DisplayOptions options, @NonNull String key) {
+            this.sketch = sketch;
+            this.makerStateImage = makerStateImage;
+            this.options = options;
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+            synchronized (StateImageCache.this) {
+                if (disabled || refBitmaps.containsKey(key)) {
+                    return;
+                }
+            }
+
+            SketchRefBitmap refBitmap = makerStateImage.makeBitmap(sketch, options, key);
+            if (refBitmap != null) {
+                // 放不进去说明太大了，标记为等待使用再取消就会被回收
+                if (!put(key, refBitmap)) {
+                    refBitmap.setIsWaitingUse(NAME + ":reject", true);
+                    refBitmap.setIsWaitingUse(NAME + ":reject", false);
+                }
+            }
+        }
+    }
+}
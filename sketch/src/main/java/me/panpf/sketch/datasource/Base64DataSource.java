@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.datasource;
+
+import androidx.annotation.NonNull;
+import android.text.TextUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import me.panpf.sketch.cache.BitmapPool;
+import me.panpf.sketch.decode.ImageAttrs;
+import me.panpf.sketch.decode.NotFoundGifLibraryException;
+import me.panpf.sketch.drawable.SketchGifDrawable;
+import me.panpf.sketch.drawable.SketchGifFactory;
+import me.panpf.sketch.request.ImageFrom;
+import me.panpf.sketch.util.SketchUtils;
+
+/**
+ * 用于读取 base64 格式的图片，每次 {@link #getInputStream()} 都是边读边解码，不会先把整个内容解码成字节数组，也不会写到磁盘缓存
+ */
+public class Base64DataSource implements DataSource {
+
+    private static final int INVALID = -1;
+    private static final int WHITESPACE = -2;
+    private static final int PADDING = -3;
+    private static final int[] DECODE_TABLE = new int[128];
+
+    static {
+        Arrays.fill(DECODE_TABLE, INVALID);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int index = 0; index < alphabet.length(); index++) {
+            DECODE_TABLE[alphabet.charAt(index)] = index;
+        }
+        DECODE_TABLE['\n'] = WHITESPACE;
+        DECODE_TABLE['\r'] = WHITESPACE;
+        DECODE_TABLE['\t'] = WHITESPACE;
+        DECODE_TABLE[' '] = WHITESPACE;
+        DECODE_TABLE['='] = PADDING;
+    }
+
+    @NonNull
+    private String source;
+    private int start;
+    private ImageFrom imageFrom;
+    private long length = -1;
+
+    /**
+     * @param source 包含 base64 内容的字符串，通常就是图片 uri，这样不用再截取一个新的字符串
+     * @param start  base64 内容在 source 中的起始位置
+     */
+    public Base64DataSource(@NonNull String source, int start, ImageFrom imageFrom) {
+        this.source = source;
+        this.start = start;
+        this.imageFrom = imageFrom;
+    }
+
+    @NonNull
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return new DecodeInputStream(source, start, source.length());
+    }
+
+    /**
+     * 根据有效字符的数量计算解码后的长度，只计算一次
+     */
+    @Override
+    public long getLength() throws IOException {
+        if (length == -1) {
+            int charCount = 0;
+            for (int index = start, end = source.length(); index < end; index++) {
+                char c = source.charAt(index);
+                int value = c < DECODE_TABLE.length ? DECODE_TABLE[c] : INVALID;
+                if (value >= 0) {
+                    charCount++;
+                } else if (value != WHITESPACE) {
+                    break;
+                }
+            }
+            length = charCount * 3L / 4;
+        }
+        return length;
+    }
+
+    @Override
+    public File getFile(File outDir, String outName) throws IOException {
+        if (outDir == null) {
+            return null;
+        }
+
+        if (!outDir.exists() && !outDir.getParentFile().mkdirs()) {
+            return null;
+        }
+
+        File outFile;
+        if (!TextUtils.isEmpty(outName)) {
+            outFile = new File(outDir, outName);
+        } else {
+            outFile = new File(outDir, SketchUtils.generatorTempFileName(this, String.valueOf(System.currentTimeMillis())));
+        }
+
+        InputStream inputStream = getInputStream();
+
+        OutputStream outputStream;
+        try {
+            outputStream = new FileOutputStream(outFile);
+        } catch (IOException e) {
+            SketchUtils.close(inputStream);
+            throw e;
+        }
+
+        byte[] data = new byte[8 * 1024];
+        int length;
+        try {
+            while ((length = inputStream.read(data)) != -1) {
+                outputStream.write(data, 0, length);
+            }
+        } finally {
+            SketchUtils.close(outputStream);
+            SketchUtils.close(inputStream);
+        }
+
+        return outFile;
+    }
+
+    @NonNull
+    @Override
+    public ImageFrom getImageFrom() {
+        return imageFrom;
+    }
+
+    @NonNull
+    @Override
+    public SketchGifDrawable makeGifDrawable(@NonNull String key, @NonNull String uri, @NonNull ImageAttrs imageAttrs,
+                                             @NonNull BitmapPool bitmapPool) throws IOException, NotFoundGifLibraryException {
+        // gif 需要随机读取，只能完整解码出来
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream((int) getLength());
+        InputStream inputStream = getInputStream();
+        try {
+            byte[] buffer = new byte[8 * 1024];
+            int length;
+            while ((length = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, length);
+            }
+        } finally {
+            SketchUtils.close(inputStream);
+        }
+        return SketchGifFactory.createGifDrawable(key, uri, imageAttrs, getImageFrom(), bitmapPool, outputStream.toByteArray());
+    }
+
+    /**
+     * 边读边解码 base64 的输入流，每次把 4 个字符解码成 3 个字节，忽略空白字符，遇到 '=' 结束
+     */
+    private static class DecodeInputStream extends InputStream {
+        @NonNull
+        private final String source;
+        private final int end;
+        private int position;
+
+        private final byte[] pending = new byte[3];
+        private int pendingOffset;
+        private int pendingCount;
+        private boolean finished;
+
+        DecodeInputStream(@NonNull String source, int start, int end) {
+            this.source = source;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            while (pendingOffset >= pendingCount) {
+                if (finished) {
+                    return -1;
+                }
+                decodeQuantum();
+            }
+            return pending[pendingOffset++] & 0xff;
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+
+            int count = 0;
+            while (count < length) {
+                if (pendingOffset < pendingCount) {
+                    int copyCount = Math.min(pendingCount - pendingOffset, length - count);
+                    System.arraycopy(pending, pendingOffset, buffer, offset + count, copyCount);
+                    pendingOffset += copyCount;
+                    count += copyCount;
+                } else if (finished) {
+                    break;
+                } else {
+                    decodeQuantum();
+                }
+            }
+            return count > 0 ? count : -1;
+        }
+
+        @Override
+        public int available() {
+            return (pendingCount - pendingOffset) + (end - position) / 4 * 3;
+        }
+
+        /**
+         * 读取 4 个有效字符解码成最多 3 个字节放进 pending 中
+         */
+        private void decodeQuantum() throws IOException {
+            int bits = 0;
+            int charCount = 0;
+            while (charCount < 4 && position < end) {
+                char c = source.charAt(position++);
+                int value = c < DECODE_TABLE.length ? DECODE_TABLE[c] : INVALID;
+                if (value >= 0) {
+                    bits = (bits << 6) | value;
+                    charCount++;
+                } else if (value == PADDING) {
+                    finished = true;
+                    break;
+                } else if (value != WHITESPACE) {
+                    throw new IOException("Bad base64 character '" + c + "' at " + (position - 1));
+                }
+            }
+            if (position >= end) {
+                finished = true;
+            }
+
+            pendingOffset = 0;
+            switch (charCount) {
+                case 4:
+                    pending[0] = (byte) (bits >> 16);
+                    pending[1] = (byte) (bits >> 8);
+                    pending[2] = (byte) bits;
+                    pendingCount = 3;
+                    break;
+                case 3:
+                    pending[0] = (byte) (bits >> 10);
+                    pending[1] = (byte) (bits >> 2);
+                    pendingCount = 2;
+                    break;
+                case 2:
+                    pending[0] = (byte) (bits >> 4);
+                    pendingCount = 1;
+                    break;
+                case 0:
+                    pendingCount = 0;
+                    break;
+                default:
+                    throw new IOException("Bad base64 length at " + position);
+            }
+        }
+    }
+}
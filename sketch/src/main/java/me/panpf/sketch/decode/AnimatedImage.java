@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.decode;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import me.panpf.sketch.cache.BitmapPool;
+import me.panpf.sketch.cache.BitmapPoolUtils;
+
+/**
+ * 动图 webp 或 apng 的结构信息。原始数据会一直保存在内存中，每一帧播放时都会被封装成一张独立的静态图片交给 {@link BitmapFactory} 解码，
+ * 因此不需要额外的 native 库
+ */
+public abstract class AnimatedImage {
+    /**
+     * 下一帧绘制前不做处理
+     */
+    public static final int DISPOSE_NONE = 0;
+    /**
+     * 下一帧绘制前把当前帧的区域清空成透明
+     */
+    public static final int DISPOSE_BACKGROUND = 1;
+    /**
+     * 下一帧绘制前把当前帧的区域恢复成绘制当前帧之前的样子
+     */
+    public static final int DISPOSE_PREVIOUS = 2;
+
+    /**
+     * 帧的持续时间小于等于这个值时改用 {@link #DEFAULT_FRAME_DURATION}，跟浏览器的处理方式一致
+     */
+    private static final int MIN_FRAME_DURATION = 10;
+    private static final int DEFAULT_FRAME_DURATION = 100;
+
+    @NonNull
+    protected final byte[] data;
+    private int width;
+    private int height;
+    private int loopCount;
+    @NonNull
+    private List<Frame> frames = new ArrayList<>();
+    /**
+     * 封装帧图片用的缓冲区，所有帧共用一个，只会变大不会变小，避免每解码一帧都分配一个新数组
+     */
+    @Nullable
+    private byte[] frameBuffer;
+
+    AnimatedImage(@NonNull byte[] data, int width, int height, int loopCount) {
+        this.data = data;
+        this.width = width;
+        this.height = height;
+        this.loopCount = loopCount;
+    }
+
+    /**
+     * 只读取头部信息判断是不是动图
+     *
+     * @param inputStream 图片数据
+     * @param imageType   图片类型，只支持 {@link ImageType#WEBP} 和 {@link ImageType#PNG}
+     * @return true：是动图
+     */
+    public static boolean isAnimated(@NonNull InputStream inputStream, @Nullable ImageType imageType) throws IOException {
+        if (imageType == ImageType.WEBP) {
+            return AnimatedWebpImage.isAnimated(inputStream);
+        } else if (imageType == ImageType.PNG) {
+            return ApngImage.isAnimated(inputStream);
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * 解析动图
+     *
+     * @param data      图片数据
+     * @param imageType 图片类型，只支持 {@link ImageType#WEBP} 和 {@link ImageType#PNG}
+     * @return null：不是动图、只有一帧或者数据有误
+     */
+    @Nullable
+    public static AnimatedImage read(@NonNull byte[] data, @Nullable ImageType imageType) {
+        AnimatedImage image = null;
+        if (imageType == ImageType.WEBP) {
+            image = AnimatedWebpImage.read(data);
+        } else if (imageType == ImageType.PNG) {
+            image = ApngImage.read(data);
+        }
+        return image != null && image.getFrameCount() > 1 ? image : null;
+    }
+
+    /**
+     * 指定帧封装成静态图片后的长度
+     */
+    protected abstract int getFrameImageLength(@NonNull Frame frame);
+
+    /**
+     * 把指定帧封装成一张独立的静态图片，写在 buffer 的开头
+     *
+     * @param buffer 长度不小于 {@link #getFrameImageLength(Frame)}
+     * @return 静态图片的长度
+     */
+    protected abstract int makeFrameImage(@NonNull Frame frame, @NonNull byte[] buffer);
+
+    @NonNull
+    public abstract String getMimeType();
+
+    /**
+     * 解码指定帧，优先从 {@link BitmapPool} 中复用 {@link Bitmap}，用完后应当还给 {@link BitmapPool}
+     *
+     * @param index      帧的位置
+     * @param bitmapPool 从这个池子里找可复用的 {@link Bitmap}
+     * @return null：解码失败
+     */
+    @Nullable
+    public synchronized Bitmap decodeFrame(int index, @NonNull BitmapPool bitmapPool) {
+        Frame frame = frames.get(index);
+        int frameImageLength = getFrameImageLength(frame);
+        if (frameBuffer == null || frameBuffer.length < frameImageLength) {
+            frameBuffer = new byte[frameImageLength];
+        }
+        byte[] frameImage = frameBuffer;
+        frameImageLength = makeFrameImage(frame, frameImage);
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        BitmapPoolUtils.setInBitmapFromPool(options, frame.width, frame.height, getMimeType(), bitmapPool);
+        try {
+            return BitmapFactory.decodeByteArray(frameImage, 0, frameImageLength, options);
+        } catch (IllegalArgumentException e) {
+            if (!ImageDecodeUtils.isInBitmapDecodeError(e, options, false)) {
+                throw e;
+            }
+            BitmapPoolUtils.freeBitmapToPool(options.inBitmap, bitmapPool);
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(frameImage, 0, frameImageLength, options);
+        }
+    }
+
+    void addFrame(@NonNull Frame frame) {
+        frames.add(frame);
+    }
+
+    @NonNull
+    public Frame getFrame(int index) {
+        return frames.get(index);
+    }
+
+    public int getFrameCount() {
+        return frames.size();
+    }
+
+    /**
+     * 画布宽
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * 画布高
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 循环次数，0 表示无限循环
+     */
+    public int getLoopCount() {
+        return loopCount;
+    }
+
+    /**
+     * 原始数据的长度
+     */
+    public int getByteCount() {
+        return data.length;
+    }
+
+    /**
+     * 原始数据和帧缓冲区占用的内存
+     */
+    public synchronized int getAllocationByteCount() {
+        return data.length + (frameBuffer != null ? frameBuffer.length : 0);
+    }
+
+    /**
+     * 所有帧的持续时间之和
+     */
+    public int getDuration() {
+        int duration = 0;
+        for (Frame frame : frames) {
+            duration += frame.duration;
+        }
+        return duration;
+    }
+
+    /**
+     * 一帧的位置、持续时间、处理方式以及数据在原始数据中的位置
+     */
+    public static class Frame {
+        private int x;
+        private int y;
+        private int width;
+        private int height;
+        private int duration;
+        private int dispose;
+        private boolean blend;
+
+        /**
+         * 帧数据在原始数据中的位置，apng 的一帧可能由多个数据块组成
+         */
+        int[] dataOffsets;
+        int[] dataLengths;
+
+        Frame(int x, int y, int width, int height, int duration, int dispose, boolean blend, int[] dataOffsets, int[] dataLengths) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.duration = duration <= MIN_FRAME_DURATION ? DEFAULT_FRAME_DURATION : duration;
+            this.dispose = dispose;
+            this.blend = blend;
+            this.dataOffsets = dataOffsets;
+            this.dataLengths = dataLengths;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * 持续时间，单位毫秒
+         */
+        public int getDuration() {
+            return duration;
+        }
+
+        /**
+         * 下一帧绘制前如何处理当前帧的区域，{@link #DISPOSE_NONE}、{@link #DISPOSE_BACKGROUND} 或 {@link #DISPOSE_PREVIOUS}
+         */
+        public int getDispose() {
+            return dispose;
+        }
+
+        /**
+         * true：跟画布上已有的内容混合；false：直接替换画布上对应区域的内容
+         */
+        public boolean isBlend() {
+            return blend;
+        }
+    }
+}
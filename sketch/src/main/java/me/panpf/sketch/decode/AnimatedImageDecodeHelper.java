@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.decode;
+
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import me.panpf.sketch.ErrorTracker;
+import me.panpf.sketch.SLog;
+import me.panpf.sketch.cache.BitmapPool;
+import me.panpf.sketch.datasource.DataSource;
+import me.panpf.sketch.drawable.SketchGifDrawable;
+import me.panpf.sketch.drawable.SketchGifFactory;
+import me.panpf.sketch.request.ErrorCause;
+import me.panpf.sketch.request.LoadRequest;
+import me.panpf.sketch.util.SketchUtils;
+
+/**
+ * 解码动图 webp 和 apng，跟 gif 一样需要开启 {@link me.panpf.sketch.request.LoadOptions#setDecodeGifImage(boolean)}，并且需要集成 sketch-gif
+ */
+public class AnimatedImageDecodeHelper extends DecodeHelper {
+    private static final String NAME = "AnimatedImageDecodeHelper";
+
+    @Override
+    public boolean match(@NonNull LoadRequest request, @NonNull DataSource dataSource, @Nullable ImageType imageType, @NonNull BitmapFactory.Options boundOptions) {
+        if (!request.getOptions().isDecodeGifImage()) {
+            return false;
+        }
+
+        // 4.2 以下 BitmapFactory 不支持带透明度的 webp
+        boolean supportedType = imageType == ImageType.PNG
+                || (imageType == ImageType.WEBP && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1);
+        if (!supportedType || !SketchGifFactory.isExistGifLibrary()) {
+            return false;
+        }
+
+        InputStream inputStream = null;
+        try {
+            inputStream = dataSource.getInputStream();
+            return AnimatedImage.isAnimated(inputStream, imageType);
+        } catch (IOException e) {
+            SLog.w(NAME, "Unable read header. %s. %s", e.toString(), request.getKey());
+            return false;
+        } finally {
+            SketchUtils.close(inputStream);
+        }
+    }
+
+    @NonNull
+    @Override
+    public DecodeResult decode(@NonNull LoadRequest request, @NonNull DataSource dataSource, @Nullable ImageType imageType, @NonNull BitmapFactory.Options boundOptions,
+                               @NonNull BitmapFactory.Options decodeOptions, int exifOrientation) throws DecodeException {
+        try {
+            AnimatedImage image = AnimatedImage.read(readBytes(dataSource), imageType);
+            if (image == null) {
+                throw new DecodeException("Unable parse animated image", ErrorCause.DECODE_UNABLE_CREATE_GIF_DRAWABLE);
+            }
+
+            ImageAttrs imageAttrs = new ImageAttrs(boundOptions.outMimeType, boundOptions.outWidth, boundOptions.outHeight, exifOrientation);
+            BitmapPool bitmapPool = request.getConfiguration().getBitmapPool();
+            SketchGifDrawable drawable = SketchGifFactory.createAnimatedImageDrawable(request.getKey(), request.getUri(),
+                    imageAttrs, dataSource.getImageFrom(), bitmapPool, image);
+
+            return new GifDecodeResult(imageAttrs, drawable).setBanProcess(true);
+        } catch (DecodeException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new DecodeException(e, ErrorCause.DECODE_FILE_IO_EXCEPTION);
+        } catch (NotFoundGifLibraryException e) {
+            throw new DecodeException(e, ErrorCause.DECODE_NOT_FOUND_GIF_LIBRARY);
+        } catch (Throwable e) {
+            ErrorTracker errorTracker = request.getConfiguration().getErrorTracker();
+            errorTracker.onDecodeGifImageError(e, request, boundOptions.outWidth, boundOptions.outHeight, boundOptions.outMimeType);
+            throw new DecodeException(e, ErrorCause.DECODE_UNABLE_CREATE_GIF_DRAWABLE);
+        }
+    }
+
+    /**
+     * 长度已知时直接读进一个同样大小的数组，避免先写进 {@link ByteArrayOutputStream} 再 toByteArray() 复制一份，
+     * 动图动辄好几 MB，这样堆上同一时刻只有一份。长度未知或者不准时才用 {@link ByteArrayOutputStream}
+     */
+    @NonNull
+    private static byte[] readBytes(@NonNull DataSource dataSource) throws IOException {
+        long length = dataSource.getLength();
+        InputStream inputStream = null;
+        try {
+            inputStream = dataSource.getInputStream();
+            if (length <= 0 || length >= Integer.MAX_VALUE) {
+                return readRemaining(inputStream, new ByteArrayOutputStream(32 * 1024));
+            }
+
+            byte[] data = new byte[(int) length];
+            int offset = 0;
+            int readLength;
+            while (offset < data.length && (readLength = inputStream.read(data, offset, data.length - offset)) != -1) {
+                offset += readLength;
+            }
+            if (offset < data.length) {
+                return Arrays.copyOf(data, offset);
+            }
+
+            int nextByte = inputStream.read();
+            if (nextByte == -1) {
+                return data;
+            }
+
+            // 实际长度比 getLength() 返回的长，只能接着读完
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(data.length + 32 * 1024);
+            outputStream.write(data);
+            outputStream.write(nextByte);
+            return readRemaining(inputStream, outputStream);
+        } finally {
+            SketchUtils.close(inputStream);
+        }
+    }
+
+    @NonNull
+    private static byte[] readRemaining(@NonNull InputStream inputStream, @NonNull ByteArrayOutputStream outputStream) throws IOException {
+        byte[] buffer = new byte[8 * 1024];
+        int readLength;
+        while ((readLength = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, readLength);
+        }
+        return outputStream.toByteArray();
+    }
+}
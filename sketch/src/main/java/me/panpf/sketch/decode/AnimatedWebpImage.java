@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.decode;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 动图 webp，每一帧的 VP8/VP8L 数据（以及 ALPH 数据）会被重新封装成一张静态 webp
+ * <p>
+ * 格式参考 https://developers.google.com/speed/webp/docs/riff_container
+ */
+class AnimatedWebpImage extends AnimatedImage {
+    private static final int HEADER_LENGTH = 12;
+    private static final int VP8X_PAYLOAD_LENGTH = 10;
+    private static final int ANMF_HEADER_LENGTH = 16;
+    private static final int FLAG_ANIMATION = 0x02;
+    private static final int FLAG_ALPHA = 0x10;
+
+    private AnimatedWebpImage(@NonNull byte[] data, int width, int height, int loopCount) {
+        super(data, width, height, loopCount);
+    }
+
+    static boolean isAnimated(@NonNull InputStream inputStream) throws IOException {
+        byte[] header = new byte[HEADER_LENGTH + 8 + 1];
+        return readFully(inputStream, header) && isRiffWebp(header) && isChunk(header, HEADER_LENGTH, "VP8X")
+                && (header[HEADER_LENGTH + 8] & FLAG_ANIMATION) != 0;
+    }
+
+    @Nullable
+    static AnimatedWebpImage read(@NonNull byte[] data) {
+        if (data.length < HEADER_LENGTH + 8 + VP8X_PAYLOAD_LENGTH || !isRiffWebp(data) || !isChunk(data, HEADER_LENGTH, "VP8X")) {
+            return null;
+        }
+
+        int vp8xPayload = HEADER_LENGTH + 8;
+        if ((data[vp8xPayload] & FLAG_ANIMATION) == 0) {
+            return null;
+        }
+        int width = readUInt24(data, vp8xPayload + 4) + 1;
+        int height = readUInt24(data, vp8xPayload + 7) + 1;
+
+        AnimatedWebpImage image = null;
+        int offset = HEADER_LENGTH;
+        while (offset + 8 <= data.length) {
+            int payloadLength = readInt32(data, offset + 4);
+            int payload = offset + 8;
+            if (payloadLength < 0 || payload + payloadLength > data.length) {
+                break;
+            }
+
+            if (isChunk(data, offset, "ANIM") && payloadLength >= 6) {
+                image = new AnimatedWebpImage(data, width, height, readUInt16(data, payload + 4));
+            } else if (isChunk(data, offset, "ANMF") && payloadLength > ANMF_HEADER_LENGTH && image != null) {
+                int flags = data[payload + 15] & 0xFF;
+                image.addFrame(new Frame(
+                        readUInt24(data, payload) * 2,
+                        readUInt24(data, payload + 3) * 2,
+                        readUInt24(data, payload + 6) + 1,
+                        readUInt24(data, payload + 9) + 1,
+                        readUInt24(data, payload + 12),
+                        (flags & 0x01) != 0 ? DISPOSE_BACKGROUND : DISPOSE_NONE,
+                        (flags & 0x02) == 0,
+                        new int[]{payload + ANMF_HEADER_LENGTH},
+                        new int[]{payloadLength - ANMF_HEADER_LENGTH}));
+            }
+
+            // 块的长度是奇数时后面会补一个字节
+            offset = payload + payloadLength + (payloadLength & 1);
+        }
+        return image;
+    }
+
+    @Override
+    protected int getFrameImageLength(@NonNull Frame frame) {
+        return HEADER_LENGTH + getVp8xLength(frame) + frame.dataLengths[0];
+    }
+
+    @Override
+    protected int makeFrameImage(@NonNull Frame frame, @NonNull byte[] image) {
+        int dataOffset = frame.dataOffsets[0];
+        int dataLength = frame.dataLengths[0];
+        int vp8xLength = getVp8xLength(frame);
+        boolean alpha = vp8xLength > 0;
+        int length = HEADER_LENGTH + vp8xLength + dataLength;
+
+        writeFourCC(image, 0, "RIFF");
+        writeInt32(image, 4, length - 8);
+        writeFourCC(image, 8, "WEBP");
+        if (alpha) {
+            writeFourCC(image, HEADER_LENGTH, "VP8X");
+            writeInt32(image, HEADER_LENGTH + 4, VP8X_PAYLOAD_LENGTH);
+            image[HEADER_LENGTH + 8] = FLAG_ALPHA;
+            writeUInt24(image, HEADER_LENGTH + 12, frame.getWidth() - 1);
+            writeUInt24(image, HEADER_LENGTH + 15, frame.getHeight() - 1);
+        }
+        System.arraycopy(data, dataOffset, image, HEADER_LENGTH + vp8xLength, dataLength);
+        return length;
+    }
+
+    /**
+     * 有 ALPH 块时必须用扩展格式，否则透明度会丢失
+     */
+    private int getVp8xLength(@NonNull Frame frame) {
+        return isChunk(data, frame.dataOffsets[0], "ALPH") ? 8 + VP8X_PAYLOAD_LENGTH : 0;
+    }
+
+    @NonNull
+    @Override
+    public String getMimeType() {
+        return ImageType.WEBP.getMimeType();
+    }
+
+    private static boolean isRiffWebp(byte[] data) {
+        return isChunk(data, 0, "RIFF") && isChunk(data, 8, "WEBP");
+    }
+
+    private static boolean isChunk(byte[] data, int offset, String fourCC) {
+        if (offset + 4 > data.length) {
+            return false;
+        }
+        for (int i = 0; i < 4; i++) {
+            if (data[offset + i] != fourCC.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean readFully(InputStream inputStream, byte[] buffer) throws IOException {
+        int count = 0;
+        while (count < buffer.length) {
+            int readLength = inputStream.read(buffer, count, buffer.length - count);
+            if (readLength == -1) {
+                return false;
+            }
+            count += readLength;
+        }
+        return true;
+    }
+
+    private static int readUInt16(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8;
+    }
+
+    private static int readUInt24(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8 | (data[offset + 2] & 0xFF) << 16;
+    }
+
+    private static int readInt32(byte[] data, int offset) {
+        return readUInt24(data, offset) | (data[offset + 3] & 0xFF) << 24;
+    }
+
+    private static void writeFourCC(byte[] data, int offset, String fourCC) {
+        for (int i = 0; i < 4; i++) {
+            data[offset + i] = (byte) fourCC.charAt(i);
+        }
+    }
+
+    private static void writeUInt24(byte[] data, int offset, int value) {
+        data[offset] = (byte) value;
+        data[offset + 1] = (byte) (value >> 8);
+        data[offset + 2] = (byte) (value >> 16);
+    }
+
+    private static void writeInt32(byte[] data, int offset, int value) {
+        writeUInt24(data, offset, value);
+        data[offset + 3] = (byte) (value >> 24);
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.decode;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * apng，每一帧的 IDAT/fdAT 数据会跟 IHDR 以及调色板等公共块一起重新封装成一张静态 png
+ * <p>
+ * 格式参考 https://wiki.mozilla.org/APNG_Specification
+ */
+class ApngImage extends AnimatedImage {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] IEND = {0, 0, 0, 0, 'I', 'E', 'N', 'D', (byte) 0xAE, 0x42, 0x60, (byte) 0x82};
+    private static final int IHDR_PAYLOAD_LENGTH = 13;
+    private static final int FCTL_PAYLOAD_LENGTH = 26;
+
+    private static final int TYPE_IHDR = fourCC("IHDR");
+    private static final int TYPE_ACTL = fourCC("acTL");
+    private static final int TYPE_FCTL = fourCC("fcTL");
+    private static final int TYPE_IDAT = fourCC("IDAT");
+    private static final int TYPE_FDAT = fourCC("fdAT");
+    private static final int TYPE_IEND = fourCC("IEND");
+
+    /**
+     * IHDR 块的数据在原始数据中的位置
+     */
+    private int ihdrPayload;
+    /**
+     * 出现在第一个 IDAT 之前的公共块（PLTE、tRNS、gAMA 等），每一帧都要带上
+     */
+    private int[] sharedChunkOffsets;
+    private int[] sharedChunkLengths;
+
+    private ApngImage(@NonNull byte[] data, int width, int height, int loopCount) {
+        super(data, width, height, loopCount);
+    }
+
+    static boolean isAnimated(@NonNull InputStream inputStream) throws IOException {
+        DataInputStream dataInputStream = new DataInputStream(inputStream);
+        try {
+            for (byte signatureByte : SIGNATURE) {
+                if (dataInputStream.readByte() != signatureByte) {
+                    return false;
+                }
+            }
+
+            // acTL 块必须出现在第一个 IDAT 块之前
+            while (true) {
+                int length = dataInputStream.readInt();
+                int type = dataInputStream.readInt();
+                if (type == TYPE_ACTL) {
+                    return true;
+                } else if (type == TYPE_IDAT || type == TYPE_IEND || length < 0) {
+                    return false;
+                }
+
+                long skipLength = length + 4L;
+                while (skipLength > 0) {
+                    long skipped = dataInputStream.skip(skipLength);
+                    if (skipped <= 0) {
+                        return false;
+                    }
+                    skipLength -= skipped;
+                }
+            }
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    @Nullable
+    static ApngImage read(@NonNull byte[] data) {
+        if (data.length < SIGNATURE.length + 8 + IHDR_PAYLOAD_LENGTH) {
+            return null;
+        }
+        for (int i = 0; i < SIGNATURE.length; i++) {
+            if (data[i] != SIGNATURE[i]) {
+                return null;
+            }
+        }
+
+        int ihdrPayload = -1;
+        int loopCount = -1;
+        boolean idatFound = false;
+        List<Integer> sharedChunks = new ArrayList<>();
+
+        List<Frame> frames = new ArrayList<>();
+        int fctlPayload = -1;
+        List<Integer> frameData = new ArrayList<>();
+
+        int offset = SIGNATURE.length;
+        while (offset + 12 <= data.length) {
+            int length = readInt(data, offset);
+            int type = readInt(data, offset + 4);
+            int payload = offset + 8;
+            if (length < 0 || payload + length + 4 > data.length) {
+                break;
+            }
+
+            if (type == TYPE_IHDR && length == IHDR_PAYLOAD_LENGTH) {
+                ihdrPayload = payload;
+            } else if (type == TYPE_ACTL && length >= 8) {
+                loopCount = readInt(data, payload + 4);
+            } else if (type == TYPE_FCTL && length >= FCTL_PAYLOAD_LENGTH) {
+                if (fctlPayload != -1 && !frameData.isEmpty()) {
+                    frames.add(makeFrame(data, fctlPayload, frameData, frames.isEmpty()));
+                }
+                fctlPayload = payload;
+                frameData.clear();
+            } else if (type == TYPE_IDAT) {
+                idatFound = true;
+                // 第一个 fcTL 出现在 IDAT 之前时默认图片才是第一帧，否则默认图片不参与播放
+                if (fctlPayload != -1) {
+                    frameData.add(payload);
+                    frameData.add(length);
+                }
+            } else if (type == TYPE_FDAT && length > 4) {
+                if (fctlPayload != -1) {
+                    frameData.add(payload + 4);
+                    frameData.add(length - 4);
+                }
+            } else if (type == TYPE_IEND) {
+                break;
+            } else if (!idatFound && type != TYPE_IHDR) {
+                sharedChunks.add(offset);
+                sharedChunks.add(length + 12);
+            }
+
+            offset = payload + length + 4;
+        }
+        if (fctlPayload != -1 && !frameData.isEmpty()) {
+            frames.add(makeFrame(data, fctlPayload, frameData, frames.isEmpty()));
+        }
+
+        if (ihdrPayload == -1 || loopCount == -1 || frames.isEmpty()) {
+            return null;
+        }
+
+        ApngImage image = new ApngImage(data, readInt(data, ihdrPayload), readInt(data, ihdrPayload + 4), loopCount);
+        image.ihdrPayload = ihdrPayload;
+        image.sharedChunkOffsets = new int[sharedChunks.size() / 2];
+        image.sharedChunkLengths = new int[sharedChunks.size() / 2];
+        for (int i = 0; i < image.sharedChunkOffsets.length; i++) {
+            image.sharedChunkOffsets[i] = sharedChunks.get(i * 2);
+            image.sharedChunkLengths[i] = sharedChunks.get(i * 2 + 1);
+        }
+        for (Frame frame : frames) {
+            image.addFrame(frame);
+        }
+        return image;
+    }
+
+    /**
+     * @param fctlPayload fcTL 块的数据在原始数据中的位置
+     * @param frameData   帧数据块的位置和长度，两个一组
+     * @param first       是不是第一帧，第一帧的 {@link #DISPOSE_PREVIOUS} 按 {@link #DISPOSE_BACKGROUND} 处理
+     */
+    private static Frame makeFrame(byte[] data, int fctlPayload, List<Integer> frameData, boolean first) {
+        int delayNum = readUInt16(data, fctlPayload + 20);
+        int delayDen = readUInt16(data, fctlPayload + 22);
+        int duration = delayNum * 1000 / (delayDen != 0 ? delayDen : 100);
+
+        int dispose;
+        switch (data[fctlPayload + 24]) {
+            case 1:
+                dispose = DISPOSE_BACKGROUND;
+                break;
+            case 2:
+                dispose = first ? DISPOSE_BACKGROUND : DISPOSE_PREVIOUS;
+                break;
+            default:
+                dispose = DISPOSE_NONE;
+                break;
+        }
+
+        int[] dataOffsets = new int[frameData.size() / 2];
+        int[] dataLengths = new int[frameData.size() / 2];
+        for (int i = 0; i < dataOffsets.length; i++) {
+            dataOffsets[i] = frameData.get(i * 2);
+            dataLengths[i] = frameData.get(i * 2 + 1);
+        }
+
+        return new Frame(readInt(data, fctlPayload + 12), readInt(data, fctlPayload + 16),
+                readInt(data, fctlPayload + 4), readInt(data, fctlPayload + 8),
+                duration, dispose, data[fctlPayload + 25] == 1, dataOffsets, dataLengths);
+    }
+
+    @Override
+    protected int getFrameImageLength(@NonNull Frame frame) {
+        int length = SIGNATURE.length + 12 + IHDR_PAYLOAD_LENGTH + IEND.length;
+        for (int sharedChunkLength : sharedChunkLengths) {
+            length += sharedChunkLength;
+        }
+        for (int dataLength : frame.dataLengths) {
+            length += 12 + dataLength;
+        }
+        return length;
+    }
+
+    @Override
+    protected int makeFrameImage(@NonNull Frame frame, @NonNull byte[] image) {
+        CRC32 crc32 = new CRC32();
+        int offset = 0;
+
+        System.arraycopy(SIGNATURE, 0, image, offset, SIGNATURE.length);
+        offset += SIGNATURE.length;
+
+        // IHDR 里的宽高要换成帧的宽高
+        writeInt(image, offset, IHDR_PAYLOAD_LENGTH);
+        System.arraycopy(data, ihdrPayload - 4, image, offset + 4, 4 + IHDR_PAYLOAD_LENGTH);
+        writeInt(image, offset + 8, frame.getWidth());
+        writeInt(image, offset + 12, frame.getHeight());
+        offset = writeCrc(image, offset, IHDR_PAYLOAD_LENGTH, crc32);
+
+        for (int i = 0; i < sharedChunkOffsets.length; i++) {
+            System.arraycopy(data, sharedChunkOffsets[i], image, offset, sharedChunkLengths[i]);
+            offset += sharedChunkLengths[i];
+        }
+
+        for (int i = 0; i < frame.dataOffsets.length; i++) {
+            writeInt(image, offset, frame.dataLengths[i]);
+            writeInt(image, offset + 4, TYPE_IDAT);
+            System.arraycopy(data, frame.dataOffsets[i], image, offset + 8, frame.dataLengths[i]);
+            offset = writeCrc(image, offset, frame.dataLengths[i], crc32);
+        }
+
+        System.arraycopy(IEND, 0, image, offset, IEND.length);
+        return offset + IEND.length;
+    }
+
+    @NonNull
+    @Override
+    public String getMimeType() {
+        return ImageType.PNG.getMimeType();
+    }
+
+    /**
+     * 计算块的类型和数据的 CRC 并写在数据后面
+     *
+     * @return 下一个块的位置
+     */
+    private static int writeCrc(byte[] image, int chunkOffset, int payloadLength, CRC32 crc32) {
+        crc32.reset();
+        crc32.update(image, chunkOffset + 4, 4 + payloadLength);
+        int crcOffset = chunkOffset + 8 + payloadLength;
+        writeInt(image, crcOffset, (int) crc32.getValue());
+        return crcOffset + 4;
+    }
+
+    private static int fourCC(String type) {
+        return type.charAt(0) << 24 | type.charAt(1) << 16 | type.charAt(2) << 8 | type.charAt(3);
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16 | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+    }
+
+    private static int readUInt16(byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 8 | (data[offset + 1] & 0xFF);
+    }
+
+    private static void writeInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >> 24);
+        data[offset + 1] = (byte) (value >> 16);
+        data[offset + 2] = (byte) (value >> 8);
+        data[offset + 3] = (byte) value;
+    }
+}
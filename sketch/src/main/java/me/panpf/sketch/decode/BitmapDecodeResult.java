@@ -22,6 +22,7 @@ import androidx.annotation.NonNull;
 import me.panpf.sketch.cache.BitmapPool;
 import me.panpf.sketch.cache.BitmapPoolUtils;
 import me.panpf.sketch.request.ImageFrom;
+import me.panpf.sketch.util.ExifInterface;
 
 public class BitmapDecodeResult implements DecodeResult {
     private Bitmap bitmap;
@@ -30,6 +31,7 @@ public class BitmapDecodeResult implements DecodeResult {
 
     private boolean banProcess;
     private boolean processed;
+    private int pendingExifOrientation = ExifInterface.ORIENTATION_UNDEFINED;
 
     public BitmapDecodeResult(@NonNull ImageAttrs imageAttrs, @NonNull Bitmap bitmap) {
         this.imageAttrs = imageAttrs;
@@ -88,4 +90,15 @@ public class BitmapDecodeResult implements DecodeResult {
     public void setBitmap(Bitmap bitmap) {
         this.bitmap = bitmap;
     }
+
+    /**
+     * 获取还没有纠正的图片方向，解码时没有纠正方向，留到处理图片或者绘制的时候再纠正，这样可以省掉一张同样大的图片
+     */
+    public int getPendingExifOrientation() {
+        return pendingExifOrientation;
+    }
+
+    public void setPendingExifOrientation(int pendingExifOrientation) {
+        this.pendingExifOrientation = pendingExifOrientation;
+    }
 }
@@ -23,6 +23,7 @@ import androidx.annotation.Nullable;
 
 import me.panpf.sketch.cache.BitmapPoolUtils;
 import me.panpf.sketch.datasource.DataSource;
+import me.panpf.sketch.request.DisplayRequest;
 import me.panpf.sketch.request.LoadRequest;
 
 /**
@@ -52,15 +53,16 @@ public abstract class DecodeHelper {
      * @param decodeOptions   {@link BitmapFactory.Options}. 图片解码选项，在这之前会配置好
      *                        {@link BitmapFactory.Options#inPreferredConfig} 和 {@link BitmapFactory.Options#inPreferQualityOverSpeed} 属性
      * @param exifOrientation 图片方向
-     * @return {@link DecodeResult} 解码结果
+     * @return {@link DecodeResult} 解码结果，返回 null 表示放弃解码，交给后面匹配的 {@link DecodeHelper}，
+     * 这时不能修改 boundOptions 和 decodeOptions
      * @throws DecodeException 解码失败
      */
-    @NonNull
+    @Nullable
     abstract DecodeResult decode(@NonNull LoadRequest request, @NonNull DataSource dataSource, @Nullable ImageType imageType,
                                  @NonNull BitmapFactory.Options boundOptions, @NonNull BitmapFactory.Options decodeOptions, int exifOrientation) throws DecodeException;
 
     /**
-     * 共子类纠正图片方向
+     * 共子类纠正图片方向，能推迟的话只是记下图片方向，参考 {@link BitmapDecodeResult#getPendingExifOrientation()}
      *
      * @param orientationCorrector {@link ImageOrientationCorrector} 图片方向纠正器
      * @param decodeResult         {@link DecodeResult} 解码结果
@@ -75,6 +77,15 @@ public abstract class DecodeHelper {
         }
 
         BitmapDecodeResult bitmapDecodeResult = (BitmapDecodeResult) decodeResult;
+        if (!orientationCorrector.hasRotate(exifOrientation)) {
+            return;
+        }
+
+        // 有 ImageProcessor 时留到处理图片时和处理合并成一次绘制，只显示不处理时留到绘制时通过 Matrix 纠正，都可以省掉一张同样大的图片
+        if (request.getOptions().getProcessor() != null || request instanceof DisplayRequest) {
+            bitmapDecodeResult.setPendingExifOrientation(exifOrientation);
+            return;
+        }
 
         Bitmap bitmap = bitmapDecodeResult.getBitmap();
         Bitmap newBitmap = orientationCorrector.rotate(bitmap, exifOrientation, request.getConfiguration().getBitmapPool());
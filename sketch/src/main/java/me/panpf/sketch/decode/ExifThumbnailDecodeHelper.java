@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.decode;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import me.panpf.sketch.SLog;
+import me.panpf.sketch.cache.BitmapPool;
+import me.panpf.sketch.cache.BitmapPoolUtils;
+import me.panpf.sketch.datasource.DataSource;
+import me.panpf.sketch.request.ErrorCause;
+import me.panpf.sketch.request.LoadOptions;
+import me.panpf.sketch.request.LoadRequest;
+import me.panpf.sketch.request.MaxSize;
+import me.panpf.sketch.request.Resize;
+import me.panpf.sketch.util.ExifReader;
+import me.panpf.sketch.util.SketchUtils;
+
+/**
+ * EXIF 缩略图解码协助器，开启 EXIF 缩略图模式后，如果 jpeg 图片的 EXIF 中内嵌了缩略图，并且目标尺寸不超过缩略图、
+ * 缩略图的宽高比和原图一致，就直接解码内嵌的缩略图，不再解码原图
+ * <p>
+ * 相机拍的照片通常内嵌一张 160x120 左右的缩略图，相册列表这种格子很小的场景用它比用 inSampleSize 解码原图快得多。
+ * 不满足条件时返回 null，交给后面的 {@link DecodeHelper} 按正常流程解码
+ */
+public class ExifThumbnailDecodeHelper extends DecodeHelper {
+    private static final String NAME = "ExifThumbnailDecodeHelper";
+
+    /**
+     * 缩略图和原图的宽高比最多相差多少，超过了说明缩略图加了黑边或被裁剪过，不能使用
+     */
+    private static final float ASPECT_RATIO_TOLERANCE = 0.05f;
+
+    /**
+     * 缩略图最大的字节数，EXIF 所在的 APP1 段最大只有 64KB
+     */
+    private static final int MAX_THUMBNAIL_LENGTH = 64 * 1024;
+
+    @Override
+    public boolean match(@NonNull LoadRequest request, @NonNull DataSource dataSource,
+                         @Nullable ImageType imageType, @NonNull BitmapFactory.Options boundOptions) {
+        LoadOptions loadOptions = request.getOptions();
+        return loadOptions.isExifThumbnailMode() && imageType == ImageType.JPEG
+                && (loadOptions.getResize() != null || loadOptions.getMaxSize() != null);
+    }
+
+    @Nullable
+    @Override
+    public DecodeResult decode(@NonNull LoadRequest request, @NonNull DataSource dataSource, @Nullable ImageType imageType,
+                               @NonNull BitmapFactory.Options boundOptions, @NonNull BitmapFactory.Options decodeOptions,
+                               int exifOrientation) throws DecodeException {
+        byte[] thumbnailData = readThumbnail(dataSource);
+        if (thumbnailData == null) {
+            return null;
+        }
+
+        BitmapFactory.Options thumbnailBoundOptions = new BitmapFactory.Options();
+        thumbnailBoundOptions.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(thumbnailData, 0, thumbnailData.length, thumbnailBoundOptions);
+        if (!isUsable(request, boundOptions, thumbnailBoundOptions.outWidth, thumbnailBoundOptions.outHeight, exifOrientation)) {
+            return null;
+        }
+
+        // 解码选项单独创建一份，放弃时不会影响后面的 DecodeHelper
+        BitmapFactory.Options thumbnailDecodeOptions = new BitmapFactory.Options();
+        thumbnailDecodeOptions.inPreferredConfig = decodeOptions.inPreferredConfig;
+        thumbnailDecodeOptions.inPreferQualityOverSpeed = decodeOptions.inPreferQualityOverSpeed;
+
+        MaxSize maxSize = request.getOptions().getMaxSize();
+        if (maxSize != null) {
+            boolean swapSize = ImageOrientationCorrector.isSwapSize(exifOrientation);
+            int thumbnailWidth = swapSize ? thumbnailBoundOptions.outHeight : thumbnailBoundOptions.outWidth;
+            int thumbnailHeight = swapSize ? thumbnailBoundOptions.outWidth : thumbnailBoundOptions.outHeight;
+            ImageSizeCalculator sizeCalculator = request.getConfiguration().getSizeCalculator();
+            thumbnailDecodeOptions.inSampleSize = sizeCalculator.calculateInSampleSize(thumbnailWidth, thumbnailHeight,
+                    maxSize.getWidth(), maxSize.getHeight(), false);
+        }
+
+        BitmapPool bitmapPool = request.getConfiguration().getBitmapPool();
+        if (!request.getOptions().isBitmapPoolDisabled()) {
+            BitmapPoolUtils.setInBitmapFromPool(thumbnailDecodeOptions, thumbnailBoundOptions.outWidth,
+                    thumbnailBoundOptions.outHeight, thumbnailBoundOptions.outMimeType, bitmapPool);
+        }
+
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeByteArray(thumbnailData, 0, thumbnailData.length, thumbnailDecodeOptions);
+        } catch (Throwable tr) {
+            SLog.w(NAME, "Decode thumbnail failed, fallback to normal decode. %s. %s", tr.toString(), request.getKey());
+            bitmap = null;
+        }
+        if (bitmap == null || bitmap.isRecycled() || bitmap.getWidth() <= 1 || bitmap.getHeight() <= 1) {
+            Bitmap unusedBitmap = bitmap != null ? bitmap : thumbnailDecodeOptions.inBitmap;
+            if (unusedBitmap != null) {
+                BitmapPoolUtils.freeBitmapToPool(unusedBitmap, bitmapPool);
+            }
+            return null;
+        }
+
+        ImageOrientationCorrector orientationCorrector = request.getConfiguration().getOrientationCorrector();
+        orientationCorrector.rotateSize(boundOptions, exifOrientation);
+
+        // 图片信息依然是原图的，这样在详情页等地方展示的尺寸是对的
+        ImageAttrs imageAttrs = new ImageAttrs(boundOptions.outMimeType, boundOptions.outWidth, boundOptions.outHeight, exifOrientation);
+        BitmapDecodeResult result = new BitmapDecodeResult(imageAttrs, bitmap);
+
+        try {
+            correctOrientation(orientationCorrector, result, exifOrientation, request);
+        } catch (CorrectOrientationException e) {
+            throw new DecodeException(e, ErrorCause.DECODE_CORRECT_ORIENTATION_FAIL);
+        }
+
+        ImageDecodeUtils.decodeSuccess(bitmap, boundOptions.outWidth, boundOptions.outHeight, thumbnailDecodeOptions.inSampleSize, request, NAME);
+        return result;
+    }
+
+    /**
+     * 读取 EXIF 中内嵌的缩略图，没有或读取失败时返回 null
+     */
+    @Nullable
+    private byte[] readThumbnail(@NonNull DataSource dataSource) {
+        InputStream inputStream = null;
+        try {
+            inputStream = dataSource.getInputStream();
+            ExifReader exifReader = ExifReader.read(inputStream, ExifReader.FLAG_THUMBNAIL);
+            if (!exifReader.hasThumbnail() || exifReader.getThumbnailLength() > MAX_THUMBNAIL_LENGTH) {
+                return null;
+            }
+            SketchUtils.close(inputStream);
+
+            // 重新打开一次再跳到缩略图的位置，不依赖 ExifReader 读到了哪里
+            inputStream = dataSource.getInputStream();
+            long remaining = exifReader.getThumbnailOffset();
+            while (remaining > 0) {
+                long skipped = inputStream.skip(remaining);
+                if (skipped <= 0) {
+                    if (inputStream.read() == -1) {
+                        return null;
+                    }
+                    skipped = 1;
+                }
+                remaining -= skipped;
+            }
+
+            byte[] thumbnailData = new byte[exifReader.getThumbnailLength()];
+            int offset = 0;
+            while (offset < thumbnailData.length) {
+                int count = inputStream.read(thumbnailData, offset, thumbnailData.length - offset);
+                if (count == -1) {
+                    return null;
+                }
+                offset += count;
+            }
+            return thumbnailData;
+        } catch (IOException e) {
+            SLog.w(NAME, "Read thumbnail failed. %s", e.toString());
+            return null;
+        } finally {
+            SketchUtils.close(inputStream);
+        }
+    }
+
+    /**
+     * 缩略图是否可以代替原图，目标尺寸不能超过缩略图，并且缩略图的宽高比要和原图一致
+     */
+    private boolean isUsable(@NonNull LoadRequest request, @NonNull BitmapFactory.Options boundOptions,
+                             int thumbnailWidth, int thumbnailHeight, int exifOrientation) {
+        if (thumbnailWidth <= 1 || thumbnailHeight <= 1) {
+            return false;
+        }
+
+        float imageRatio = (float) boundOptions.outWidth / boundOptions.outHeight;
+        float thumbnailRatio = (float) thumbnailWidth / thumbnailHeight;
+        if (Math.abs(thumbnailRatio - imageRatio) > imageRatio * ASPECT_RATIO_TOLERANCE) {
+            if (SLog.isLoggable(SLog.LEVEL_DEBUG | SLog.TYPE_FLOW)) {
+                SLog.d(NAME, "Aspect ratio not match. image=%dx%d, thumbnail=%dx%d. %s",
+                        boundOptions.outWidth, boundOptions.outHeight, thumbnailWidth, thumbnailHeight, request.getKey());
+            }
+            return false;
+        }
+
+        // 目标尺寸是按纠正后的方向算的，缩略图和原图一样还没纠正方向
+        int targetWidth;
+        int targetHeight;
+        Resize resize = request.getOptions().getResize();
+        if (resize != null) {
+            targetWidth = resize.getWidth();
+            targetHeight = resize.getHeight();
+        } else {
+            MaxSize maxSize = request.getOptions().getMaxSize();
+            //noinspection ConstantConditions
+            targetWidth = maxSize.getWidth();
+            targetHeight = maxSize.getHeight();
+        }
+        if (ImageOrientationCorrector.isSwapSize(exifOrientation)) {
+            int temp = targetWidth;
+            targetWidth = targetHeight;
+            targetHeight = temp;
+        }
+
+        if (targetWidth > thumbnailWidth || targetHeight > thumbnailHeight) {
+            if (SLog.isLoggable(SLog.LEVEL_DEBUG | SLog.TYPE_FLOW)) {
+                SLog.d(NAME, "Thumbnail too small. target=%dx%d, thumbnail=%dx%d. %s",
+                        targetWidth, targetHeight, thumbnailWidth, thumbnailHeight, request.getKey());
+            }
+            return false;
+        }
+        return true;
+    }
+}
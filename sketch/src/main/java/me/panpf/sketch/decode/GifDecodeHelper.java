@@ -25,6 +25,7 @@ import java.io.IOException;
 import me.panpf.sketch.ErrorTracker;
 import me.panpf.sketch.SLog;
 import me.panpf.sketch.cache.BitmapPool;
+import me.panpf.sketch.cache.FrameCacheBudget;
 import me.panpf.sketch.datasource.DataSource;
 import me.panpf.sketch.drawable.SketchGifDrawable;
 import me.panpf.sketch.drawable.SketchGifFactory;
@@ -53,6 +54,10 @@ public class GifDecodeHelper extends DecodeHelper {
             ImageAttrs imageAttrs = new ImageAttrs(boundOptions.outMimeType, boundOptions.outWidth, boundOptions.outHeight, exifOrientation);
             BitmapPool bitmapPool = request.getConfiguration().getBitmapPool();
             SketchGifDrawable gifDrawable = dataSource.makeGifDrawable(request.getKey(), request.getUri(), imageAttrs, bitmapPool);
+            if (request.getOptions().isCacheGifFrames()) {
+                FrameCacheBudget frameCacheBudget = request.getConfiguration().getFrameCacheBudget();
+                gifDrawable.enableFrameCache(frameCacheBudget, request.getOptions().isLowQualityImage());
+            }
 
             return new GifDecodeResult(imageAttrs, gifDrawable).setBanProcess(true);
         } catch (IOException e) {
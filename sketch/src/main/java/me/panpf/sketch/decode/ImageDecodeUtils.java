@@ -28,11 +28,13 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
+import me.panpf.sketch.Configuration;
 import me.panpf.sketch.ErrorTracker;
 import me.panpf.sketch.SLog;
 import me.panpf.sketch.cache.BitmapPool;
 import me.panpf.sketch.cache.BitmapPoolUtils;
 import me.panpf.sketch.cache.DiskCache;
+import me.panpf.sketch.cache.RegionDecoderCache;
 import me.panpf.sketch.datasource.DataSource;
 import me.panpf.sketch.datasource.DiskCacheDataSource;
 import me.panpf.sketch.datasource.FileDataSource;
@@ -82,7 +84,28 @@ public class ImageDecodeUtils {
         return bitmap;
     }
 
+    /**
+     * 通过 {@link RegionDecoderCache} 按区域解码，同一张图片再次解码时复用已经打开的 {@link BitmapRegionDecoder}
+     */
+    public static Bitmap decodeRegionBitmap(@NonNull LoadRequest request, @NonNull DataSource dataSource,
+                                            @NonNull Rect srcRect, @NonNull BitmapFactory.Options options) throws IOException {
+        RegionDecoderCache regionDecoderCache = request.getConfiguration().getRegionDecoderCache();
+        String key = RegionDecoderCache.makeKey(request.getDiskCacheKey(), dataSource);
+        RegionDecoderCache.Ref ref = regionDecoderCache.acquire(key, dataSource);
+        try {
+            return ref.getRegionDecoder().decodeRegion(srcRect, options);
+        } finally {
+            regionDecoderCache.release(ref);
+        }
+    }
+
     static void decodeSuccess(@NonNull Bitmap bitmap, int outWidth, int outHeight, int inSampleSize, LoadRequest loadRequest, String logName) {
+        Configuration configuration = loadRequest.getConfiguration();
+        if (!loadRequest.getOptions().isBitmapPoolDisabled()) {
+            configuration.getBitmapPoolWarmer().record(bitmap);
+        }
+        configuration.getMemoryPressureGovernor().record(bitmap, configuration.getMemoryCache(), configuration.getBitmapPool());
+
         if (SLog.isLoggable(SLog.LEVEL_DEBUG | SLog.TYPE_FLOW)) {
             if (loadRequest.getOptions().getMaxSize() != null) {
                 MaxSize maxSize = loadRequest.getOptions().getMaxSize();
@@ -24,8 +24,10 @@ import java.util.LinkedList;
 import java.util.List;
 
 import me.panpf.sketch.SLog;
+import me.panpf.sketch.cache.BitmapPoolUtils;
 import me.panpf.sketch.datasource.DataSource;
 import me.panpf.sketch.process.ImageProcessor;
+import me.panpf.sketch.request.DisplayRequest;
 import me.panpf.sketch.request.ErrorCause;
 import me.panpf.sketch.request.LoadRequest;
 import me.panpf.sketch.uri.GetDataSourceException;
@@ -39,7 +41,7 @@ import me.panpf.sketch.util.ExifInterface;
  * <li>计算采样比例、选择合适的 {@link Bitmap.Config}</li>
  * <li>解码图片</li>
  * <li>
- * 使用 {@link ImageProcessor} 处理图片
+ * 使用 {@link ImageProcessor} 处理图片，同时纠正图片方向
  * </li>
  * <li>缓存经过处理的图片</li>
  * </ol>
@@ -57,7 +59,10 @@ public class ImageDecoder {
 
         decodeHelperList.add(new ProcessedCacheDecodeHelper());
         decodeHelperList.add(new GifDecodeHelper());
+        decodeHelperList.add(new AnimatedImageDecodeHelper());
+        decodeHelperList.add(new ExifThumbnailDecodeHelper());
         decodeHelperList.add(new ThumbnailModeDecodeHelper());
+        decodeHelperList.add(new JpegDcDecodeHelper());
         decodeHelperList.add(new NormalDecodeHelper());
 
         resultProcessorList.add(new ProcessImageResultProcessor());
@@ -91,6 +96,8 @@ public class ImageDecoder {
                 throw new DecodeException(e, ErrorCause.DECODE_PROCESS_IMAGE_FAIL);
             }
 
+            correctPendingOrientation(request, result);
+
             return result;
         } catch (DecodeException e) {
             if (result != null) {
@@ -167,7 +174,9 @@ public class ImageDecoder {
         for (DecodeHelper decodeHelper : decodeHelperList) {
             if (decodeHelper.match(request, dataSource, imageType, boundOptions)) {
                 decodeResult = decodeHelper.decode(request, dataSource, imageType, boundOptions, decodeOptions, exifOrientation);
-                break;
+                if (decodeResult != null) {
+                    break;
+                }
             }
         }
 
@@ -197,6 +206,38 @@ public class ImageDecoder {
         }
     }
 
+    /**
+     * 只有显示的图片可以在绘制时纠正方向，其它的到这里还没纠正的话就要马上纠正
+     *
+     * @param request {@link LoadRequest}
+     * @param result  {@link DecodeResult}
+     * @throws DecodeException 纠正方向失败了
+     */
+    private void correctPendingOrientation(LoadRequest request, DecodeResult result) throws DecodeException {
+        if (!(result instanceof BitmapDecodeResult) || request instanceof DisplayRequest) {
+            return;
+        }
+
+        BitmapDecodeResult bitmapDecodeResult = (BitmapDecodeResult) result;
+        int exifOrientation = bitmapDecodeResult.getPendingExifOrientation();
+        ImageOrientationCorrector orientationCorrector = request.getConfiguration().getOrientationCorrector();
+        if (!orientationCorrector.hasRotate(exifOrientation)) {
+            return;
+        }
+
+        Bitmap bitmap = bitmapDecodeResult.getBitmap();
+        Bitmap newBitmap = orientationCorrector.rotate(bitmap, exifOrientation, request.getConfiguration().getBitmapPool());
+        if (newBitmap != null && newBitmap != bitmap) {
+            if (newBitmap.isRecycled()) {
+                throw new DecodeException("Bitmap recycled. exifOrientation=" + ImageOrientationCorrector.toName(exifOrientation),
+                        ErrorCause.DECODE_CORRECT_ORIENTATION_FAIL);
+            }
+            BitmapPoolUtils.freeBitmapToPool(bitmap, request.getConfiguration().getBitmapPool());
+            bitmapDecodeResult.setBitmap(newBitmap);
+        }
+        bitmapDecodeResult.setPendingExifOrientation(ExifInterface.ORIENTATION_UNDEFINED);
+    }
+
     @NonNull
     @Override
     public String toString() {
@@ -32,6 +32,7 @@ import java.io.InputStream;
 import me.panpf.sketch.cache.BitmapPool;
 import me.panpf.sketch.datasource.DataSource;
 import me.panpf.sketch.util.ExifInterface;
+import me.panpf.sketch.util.ExifReader;
 import me.panpf.sketch.util.SketchUtils;
 
 /**
@@ -135,6 +136,29 @@ public class ImageOrientationCorrector {
         }
     }
 
+    /**
+     * 初始化纠正图片方向的 {@link Matrix}，和 {@link #initializeMatrixForExifRotation(int, Matrix)} 不同的是纠正后的图片会从 (0, 0) 开始，
+     * 可以直接用来绘制
+     *
+     * @param exifOrientation 图片方向
+     * @param width           原图宽
+     * @param height          原图高
+     */
+    public static void initializeMatrixForExifOrientation(int exifOrientation, int width, int height, @NonNull Matrix matrix) {
+        matrix.reset();
+        initializeMatrixForExifRotation(exifOrientation, matrix);
+        RectF newRect = new RectF(0, 0, width, height);
+        matrix.mapRect(newRect);
+        matrix.postTranslate(-newRect.left, -newRect.top);
+    }
+
+    /**
+     * 纠正方向后宽高是否互换了
+     */
+    public static boolean isSwapSize(int exifOrientation) {
+        return getExifOrientationDegrees(exifOrientation) % 180 != 0;
+    }
+
     /**
      * 根据mimeType判断该类型的图片是否支持通过ExitInterface读取旋转角度
      *
@@ -155,14 +179,13 @@ public class ImageOrientationCorrector {
     }
 
     /**
-     * 读取图片方向
+     * 读取图片方向，通过 {@link ExifReader} 读取，只会读取文件开头的一小部分
      *
      * @param inputStream 文件输入流
      * @return exif 保存的原始方向
      */
     public int readExifOrientation(InputStream inputStream) throws IOException {
-        ExifInterface exifInterface = new ExifInterface(inputStream);
-        return exifInterface.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_UNDEFINED);
+        return ExifReader.readOrientation(inputStream);
     }
 
     /**
@@ -19,17 +19,20 @@ package me.panpf.sketch.decode;
 
 import android.content.Context;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import android.util.DisplayMetrics;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 
-import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import me.panpf.sketch.SketchView;
 import me.panpf.sketch.request.DisplayRequest;
 import me.panpf.sketch.request.FixedSize;
 import me.panpf.sketch.request.LoadRequest;
 import me.panpf.sketch.request.MaxSize;
+import me.panpf.sketch.request.Resize;
 import me.panpf.sketch.util.SketchUtils;
 
 /**
@@ -41,6 +44,11 @@ public class ImageSizeCalculator {
     private int openGLMaxTextureSize = -1;
     private float targetSizeScale = 1.1f;
 
+    /**
+     * 每个 view 最近一次计算出的 {@link MaxSize}、{@link FixedSize} 和 {@link Resize}，计算用到的值都没变时直接返回，不再创建新的对象。只在主线程中使用
+     */
+    private final Map<SketchView, ViewSizeCache> viewSizeCaches = new WeakHashMap<SketchView, ViewSizeCache>();
+
     private static int getWidth(SketchView sketchView, boolean checkMaxWidth, boolean acceptWrapContent, boolean subtractPadding) {
         if (sketchView == null) {
             return 0;
@@ -56,7 +64,7 @@ public class ImageSizeCalculator {
             }
         }
         if (width <= 0 && checkMaxWidth) {
-            width = getViewFieldValue(sketchView, "mMaxWidth");
+            width = getMaxWidth(sketchView);
         }
         if (width <= 0 && acceptWrapContent && params != null && params.width == ViewGroup.LayoutParams.WRAP_CONTENT) {
             width = -1;
@@ -79,7 +87,7 @@ public class ImageSizeCalculator {
             }
         }
         if (height <= 0 && checkMaxHeight) {
-            height = getViewFieldValue(sketchView, "mMaxHeight");
+            height = getMaxHeight(sketchView);
         }
         if (height <= 0 && acceptWrapContent && params != null && params.height == ViewGroup.LayoutParams.WRAP_CONTENT) {
             height = -1;
@@ -87,19 +95,40 @@ public class ImageSizeCalculator {
         return height;
     }
 
-    private static int getViewFieldValue(Object object, String fieldName) {
-        int value = 0;
-        try {
-            Field field = ImageView.class.getDeclaredField(fieldName);
-            field.setAccessible(true);
-            int fieldValue = (Integer) field.get(object);
-            if (fieldValue > 0 && fieldValue < Integer.MAX_VALUE) {
-                value = fieldValue;
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * 读取 {@link ImageView} 的 maxWidth，没有设置时返回 0
+     */
+    private static int getMaxWidth(SketchView sketchView) {
+        if (sketchView instanceof ImageView) {
+            int maxWidth = ((ImageView) sketchView).getMaxWidth();
+            return maxWidth > 0 && maxWidth < Integer.MAX_VALUE ? maxWidth : 0;
+        }
+        return 0;
+    }
+
+    /**
+     * 读取 {@link ImageView} 的 maxHeight，没有设置时返回 0
+     */
+    private static int getMaxHeight(SketchView sketchView) {
+        if (sketchView instanceof ImageView) {
+            int maxHeight = ((ImageView) sketchView).getMaxHeight();
+            return maxHeight > 0 && maxHeight < Integer.MAX_VALUE ? maxHeight : 0;
+        }
+        return 0;
+    }
+
+    @Nullable
+    private ViewSizeCache getViewSizeCache(@NonNull SketchView sketchView) {
+        if (!SketchUtils.isMainThread()) {
+            return null;
         }
-        return value;
+
+        ViewSizeCache viewSizeCache = viewSizeCaches.get(sketchView);
+        if (viewSizeCache == null) {
+            viewSizeCache = new ViewSizeCache();
+            viewSizeCaches.put(sketchView, viewSizeCache);
+        }
+        return viewSizeCache;
     }
 
     /**
@@ -135,8 +164,17 @@ public class ImageSizeCalculator {
             return null;
         }
 
-        // 因为OpenGL对图片的宽高有上限，因此要限制一下，这里就严格一点不能大于屏幕宽高的1.5倍
         DisplayMetrics displayMetrics = sketchView.getResources().getDisplayMetrics();
+        ViewSizeCache viewSizeCache = getViewSizeCache(sketchView);
+        if (viewSizeCache != null && viewSizeCache.maxSize != null
+                && viewSizeCache.maxSizeWidth == width && viewSizeCache.maxSizeHeight == height
+                && viewSizeCache.screenWidth == displayMetrics.widthPixels && viewSizeCache.screenHeight == displayMetrics.heightPixels) {
+            return viewSizeCache.maxSize;
+        }
+        int viewWidth = width;
+        int viewHeight = height;
+
+        // 因为OpenGL对图片的宽高有上限，因此要限制一下，这里就严格一点不能大于屏幕宽高的1.5倍
         int maxWidth = (int) (displayMetrics.widthPixels * 1.5f);
         int maxHeight = (int) (displayMetrics.heightPixels * 1.5f);
         if (width > maxWidth || height > maxHeight) {
@@ -147,7 +185,16 @@ public class ImageSizeCalculator {
             width /= finalScale;
             height /= finalScale;
         }
-        return new MaxSize(width, height);
+        MaxSize maxSize = new MaxSize(width, height);
+
+        if (viewSizeCache != null) {
+            viewSizeCache.maxSize = maxSize;
+            viewSizeCache.maxSizeWidth = viewWidth;
+            viewSizeCache.maxSizeHeight = viewHeight;
+            viewSizeCache.screenWidth = displayMetrics.widthPixels;
+            viewSizeCache.screenHeight = displayMetrics.heightPixels;
+        }
+        return maxSize;
     }
 
     /**
@@ -176,6 +223,14 @@ public class ImageSizeCalculator {
         int fixedWidth = layoutParams.width - (sketchView.getPaddingLeft() + sketchView.getPaddingRight());
         int fixedHeight = layoutParams.height - (sketchView.getPaddingTop() + sketchView.getPaddingBottom());
 
+        ViewSizeCache viewSizeCache = getViewSizeCache(sketchView);
+        if (viewSizeCache != null && viewSizeCache.fixedSize != null
+                && viewSizeCache.fixedSizeWidth == fixedWidth && viewSizeCache.fixedSizeHeight == fixedHeight) {
+            return viewSizeCache.fixedSize;
+        }
+        int viewWidth = fixedWidth;
+        int viewHeight = fixedHeight;
+
         // 限制不能超过OpenGL所允许的最大尺寸
         int maxSize = getOpenGLMaxTextureSize();
         if (fixedWidth > maxSize || fixedHeight > maxSize) {
@@ -184,7 +239,40 @@ public class ImageSizeCalculator {
             fixedWidth /= finalScale;
             fixedHeight /= finalScale;
         }
-        return new FixedSize(fixedWidth, fixedHeight);
+        FixedSize fixedSize = new FixedSize(fixedWidth, fixedHeight);
+
+        if (viewSizeCache != null) {
+            viewSizeCache.fixedSize = fixedSize;
+            viewSizeCache.fixedSizeWidth = viewWidth;
+            viewSizeCache.fixedSizeHeight = viewHeight;
+        }
+        return fixedSize;
+    }
+
+    /**
+     * 用 {@link FixedSize} 创建 {@link Resize}，用于 {@link Resize#byViewFixedSize()}，同一个 view 的尺寸和 {@link ImageView.ScaleType} 没变时返回同一个对象
+     *
+     * @param sketchView 你需要根据 {@link ImageView} 的宽高来计算
+     * @param fixedSize  {@link #calculateImageFixedSize(SketchView)} 的结果
+     * @param scaleType  {@link ImageView} 的 {@link ImageView.ScaleType}
+     * @param mode       {@link Resize.Mode}
+     * @return {@link Resize}
+     */
+    @NonNull
+    public Resize calculateImageResize(@NonNull SketchView sketchView, @NonNull FixedSize fixedSize,
+                                       @Nullable ImageView.ScaleType scaleType, @NonNull Resize.Mode mode) {
+        ViewSizeCache viewSizeCache = getViewSizeCache(sketchView);
+        Resize resize = viewSizeCache != null ? viewSizeCache.resize : null;
+        if (resize != null && resize.getWidth() == fixedSize.getWidth() && resize.getHeight() == fixedSize.getHeight()
+                && resize.getScaleType() == scaleType && resize.getMode() == mode && scaleType != null) {
+            return resize;
+        }
+
+        resize = new Resize(fixedSize.getWidth(), fixedSize.getHeight(), scaleType, mode);
+        if (viewSizeCache != null) {
+            viewSizeCache.resize = resize;
+        }
+        return resize;
     }
 
     /**
@@ -309,4 +397,18 @@ public class ImageSizeCalculator {
     public String toString() {
         return KEY;
     }
+
+    private static class ViewSizeCache {
+        private MaxSize maxSize;
+        private int maxSizeWidth;
+        private int maxSizeHeight;
+        private int screenWidth;
+        private int screenHeight;
+
+        private FixedSize fixedSize;
+        private int fixedSizeWidth;
+        private int fixedSizeHeight;
+
+        private Resize resize;
+    }
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.decode;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import me.panpf.sketch.SLog;
+import me.panpf.sketch.cache.BitmapPool;
+import me.panpf.sketch.datasource.DataSource;
+import me.panpf.sketch.request.ErrorCause;
+import me.panpf.sketch.request.LoadRequest;
+import me.panpf.sketch.request.MaxSize;
+import me.panpf.sketch.util.ExifInterface;
+import me.panpf.sketch.util.JpegDcDecoder;
+import me.panpf.sketch.util.SketchUtils;
+
+/**
+ * 渐进式 JPEG 的 DC 解码协助器，按 {@link MaxSize} 计算出的 inSampleSize 大于等于 8 时，用 {@link JpegDcDecoder} 只解码第一批 DC 扫描，
+ * 读完就停止，通常只需要读取文件的一小部分
+ * <p>
+ * 顺序式 JPEG 的 DC 系数和 AC 系数交织在一起，必须读完整个文件，而 {@link BitmapFactory} 在 inSampleSize 大于等于 8 时也只用 DC 系数，
+ * 所以顺序式的依然交给 {@link NormalDecodeHelper}。不支持或解码失败时返回 null，同样交给后面的 {@link DecodeHelper}
+ */
+public class JpegDcDecodeHelper extends DecodeHelper {
+    private static final String NAME = "JpegDcDecodeHelper";
+
+    /**
+     * DC 系数正好是 1/8 大小
+     */
+    private static final int DC_SAMPLE_SIZE = 8;
+
+    @Override
+    public boolean match(@NonNull LoadRequest request, @NonNull DataSource dataSource,
+                         @Nullable ImageType imageType, @NonNull BitmapFactory.Options boundOptions) {
+        // 这里还不知道方向，先按原始尺寸粗略判断一下，解码时会再按纠正后的尺寸确认
+        return imageType == ImageType.JPEG && request.getOptions().getMaxSize() != null
+                && calculateInSampleSize(request, imageType, boundOptions, ExifInterface.ORIENTATION_UNDEFINED) >= DC_SAMPLE_SIZE;
+    }
+
+    @Nullable
+    @Override
+    public DecodeResult decode(@NonNull LoadRequest request, @NonNull DataSource dataSource, @Nullable ImageType imageType,
+                               @NonNull BitmapFactory.Options boundOptions, @NonNull BitmapFactory.Options decodeOptions,
+                               int exifOrientation) throws DecodeException {
+        int inSampleSize = calculateInSampleSize(request, imageType, boundOptions, exifOrientation);
+        if (inSampleSize < DC_SAMPLE_SIZE) {
+            return null;
+        }
+        int sampleSize = inSampleSize / DC_SAMPLE_SIZE;
+
+        int[] pixels;
+        int width;
+        int height;
+        InputStream inputStream = null;
+        try {
+            inputStream = new BufferedInputStream(dataSource.getInputStream());
+            JpegDcDecoder decoder = new JpegDcDecoder(inputStream);
+            pixels = decoder.decodeProgressive(sampleSize);
+            if (pixels == null) {
+                // 顺序式、不支持或者数据损坏，交给 BitmapFactory 处理
+                if (SLog.isLoggable(SLog.LEVEL_DEBUG | SLog.TYPE_FLOW)) {
+                    SLog.d(NAME, "Not progressive or decode DC failed, fallback to normal decode. %s", request.getKey());
+                }
+                return null;
+            }
+            if (decoder.getImageWidth() != boundOptions.outWidth || decoder.getImageHeight() != boundOptions.outHeight) {
+                return null;
+            }
+            width = decoder.getOutputWidth(sampleSize);
+            height = decoder.getOutputHeight(sampleSize);
+        } catch (IOException e) {
+            SLog.w(NAME, "Open input stream failed, fallback to normal decode. %s. %s", e.toString(), request.getKey());
+            return null;
+        } finally {
+            SketchUtils.close(inputStream);
+        }
+
+        // 只有这两种格式能直接放得下像素，其它的都用 ARGB_8888
+        Bitmap.Config config = decodeOptions.inPreferredConfig == Bitmap.Config.RGB_565 ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        Bitmap bitmap;
+        try {
+            // 所有像素都会被覆盖，不需要抹除颜色
+            bitmap = null;
+            if (!request.getOptions().isBitmapPoolDisabled()) {
+                BitmapPool bitmapPool = request.getConfiguration().getBitmapPool();
+                bitmap = bitmapPool.getDirty(width, height, config);
+            }
+            if (bitmap == null) {
+                bitmap = Bitmap.createBitmap(width, height, config);
+            }
+        } catch (OutOfMemoryError e) {
+            request.getConfiguration().getErrorTracker().onDecodeNormalImageError(e, request, boundOptions.outWidth,
+                    boundOptions.outHeight, boundOptions.outMimeType);
+            throw new DecodeException(e, ErrorCause.DECODE_UNKNOWN_EXCEPTION);
+        }
+        bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+        bitmap.setHasAlpha(false);
+
+        ImageOrientationCorrector orientationCorrector = request.getConfiguration().getOrientationCorrector();
+        orientationCorrector.rotateSize(boundOptions, exifOrientation);
+
+        ProcessedImageCache processedImageCache = request.getConfiguration().getProcessedImageCache();
+        boolean processed = processedImageCache.canUseCacheProcessedImageInDisk(inSampleSize);
+
+        ImageAttrs imageAttrs = new ImageAttrs(boundOptions.outMimeType, boundOptions.outWidth, boundOptions.outHeight, exifOrientation);
+        BitmapDecodeResult result = new BitmapDecodeResult(imageAttrs, bitmap).setProcessed(processed);
+
+        try {
+            correctOrientation(orientationCorrector, result, exifOrientation, request);
+        } catch (CorrectOrientationException e) {
+            throw new DecodeException(e, ErrorCause.DECODE_CORRECT_ORIENTATION_FAIL);
+        }
+
+        ImageDecodeUtils.decodeSuccess(bitmap, boundOptions.outWidth, boundOptions.outHeight, inSampleSize, request, NAME);
+        return result;
+    }
+
+    /**
+     * 和 {@link NormalDecodeHelper} 一样按纠正方向后的尺寸计算 inSampleSize，但不修改 boundOptions
+     */
+    private int calculateInSampleSize(@NonNull LoadRequest request, @Nullable ImageType imageType,
+                                      @NonNull BitmapFactory.Options boundOptions, int exifOrientation) {
+        MaxSize maxSize = request.getOptions().getMaxSize();
+        if (maxSize == null) {
+            return 1;
+        }
+
+        boolean swapSize = ImageOrientationCorrector.isSwapSize(exifOrientation);
+        int imageWidth = swapSize ? boundOptions.outHeight : boundOptions.outWidth;
+        int imageHeight = swapSize ? boundOptions.outWidth : boundOptions.outHeight;
+        ImageSizeCalculator sizeCalculator = request.getConfiguration().getSizeCalculator();
+        boolean smallerThumbnail = sizeCalculator.canUseSmallerThumbnails(request, imageType);
+        return sizeCalculator.calculateInSampleSize(imageWidth, imageHeight, maxSize.getWidth(), maxSize.getHeight(), smallerThumbnail);
+    }
+}
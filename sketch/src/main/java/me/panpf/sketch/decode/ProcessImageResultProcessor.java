@@ -21,9 +21,12 @@ import android.graphics.Bitmap;
 import me.panpf.sketch.ErrorTracker;
 import me.panpf.sketch.cache.BitmapPoolUtils;
 import me.panpf.sketch.process.ImageProcessor;
+import me.panpf.sketch.process.ResizeImageProcessor;
+import me.panpf.sketch.process.WrappedImageProcessor;
 import me.panpf.sketch.request.BaseRequest;
 import me.panpf.sketch.request.LoadOptions;
 import me.panpf.sketch.request.LoadRequest;
+import me.panpf.sketch.util.ExifInterface;
 
 public class ProcessImageResultProcessor implements ResultProcessor {
 
@@ -51,9 +54,32 @@ public class ProcessImageResultProcessor implements ResultProcessor {
 
         request.setStatus(BaseRequest.Status.PROCESSING);
 
+        // 解码时没有纠正方向的话，ResizeImageProcessor 可以在修改尺寸时一起纠正，其它处理器只能先纠正方向再处理
+        int exifOrientation = bitmapDecodeResult.getPendingExifOrientation();
+        boolean correctWhenResize = imageProcessor.getClass() == ResizeImageProcessor.class || imageProcessor instanceof WrappedImageProcessor;
+        ImageOrientationCorrector orientationCorrector = request.getConfiguration().getOrientationCorrector();
+        if (orientationCorrector.hasRotate(exifOrientation) && !correctWhenResize) {
+            Bitmap rotateBitmap = orientationCorrector.rotate(bitmap, exifOrientation, request.getConfiguration().getBitmapPool());
+            if (rotateBitmap != null && rotateBitmap != bitmap) {
+                if (rotateBitmap.isRecycled()) {
+                    throw new ProcessException("Correct orientation result bitmap recycled. exifOrientation=" + ImageOrientationCorrector.toName(exifOrientation));
+                }
+                BitmapPoolUtils.freeBitmapToPool(bitmap, request.getConfiguration().getBitmapPool());
+                bitmapDecodeResult.setBitmap(rotateBitmap);
+                bitmap = rotateBitmap;
+            }
+            bitmapDecodeResult.setPendingExifOrientation(ExifInterface.ORIENTATION_UNDEFINED);
+            exifOrientation = ExifInterface.ORIENTATION_UNDEFINED;
+        }
+
         Bitmap newBitmap = null;
         try {
-            newBitmap = imageProcessor.process(request.getSketch(), bitmap, loadOptions.getResize(), loadOptions.isLowQualityImage());
+            if (correctWhenResize) {
+                newBitmap = ((ResizeImageProcessor) imageProcessor).process(request.getSketch(), bitmap,
+                        loadOptions.getResize(), loadOptions.isLowQualityImage(), exifOrientation);
+            } else {
+                newBitmap = imageProcessor.process(request.getSketch(), bitmap, loadOptions.getResize(), loadOptions.isLowQualityImage());
+            }
         } catch (Throwable e) {
             e.printStackTrace();
             ErrorTracker errorTracker = request.getConfiguration().getErrorTracker();
@@ -65,6 +91,7 @@ public class ProcessImageResultProcessor implements ResultProcessor {
                 BitmapPoolUtils.freeBitmapToPool(bitmap, request.getConfiguration().getBitmapPool());
                 bitmapDecodeResult.setBitmap(newBitmap);
             }
+            bitmapDecodeResult.setPendingExifOrientation(ExifInterface.ORIENTATION_UNDEFINED);
             result.setProcessed(true);
         } else {
             throw new ProcessException("Process result bitmap null or recycled");
@@ -33,6 +33,7 @@ import me.panpf.sketch.request.ErrorCause;
 import me.panpf.sketch.request.LoadRequest;
 import me.panpf.sketch.uri.GetDataSourceException;
 import me.panpf.sketch.util.ExifInterface;
+import me.panpf.sketch.util.SketchUtils;
 
 /**
  * 解码经过处理的缓存图片时只需原封不动读取，然后读取原图的类型、宽高信息即可
@@ -58,6 +59,7 @@ public class ProcessedCacheDecodeHelper extends DecodeHelper {
                     boundOptions.outWidth, boundOptions.outHeight, boundOptions.outMimeType, bitmapPool);
         }
 
+        long startTime = System.nanoTime();
         Bitmap bitmap;
         try {
             bitmap = ImageDecodeUtils.decodeBitmap(dataSource, decodeOptions);
@@ -95,6 +97,9 @@ public class ProcessedCacheDecodeHelper extends DecodeHelper {
             throw new DecodeException(cause, ErrorCause.DECODE_RESULT_BITMAP_SIZE_INVALID);
         }
 
+        ProcessedCachePolicy policy = request.getConfiguration().getProcessedImageCache().getPolicy();
+        policy.recordRead(System.nanoTime() - startTime, SketchUtils.getByteCount(bitmap));
+
         // 由于是读取的经过处理的缓存图片，因此要重新读取原图的类型、宽高信息
         DataSource originFileDataSource;
         try {
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.decode;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 根据实际耗时决定是否把处理过的图片缓存到磁盘
+ * <p>
+ * 按 {@link me.panpf.sketch.request.LoadOptions} 的 key 记录重新生成一张图片（读取原图、解码、处理）的平均耗时和平均大小，
+ * 同时记录从磁盘读取已处理图片时每个字节的平均耗时，只有重新生成的耗时超过读取耗时的 {@link #getCostRatio()} 倍时才缓存
+ */
+public class ProcessedCachePolicy {
+    private static final String NAME = "ProcessedCachePolicy";
+
+    /**
+     * 最多记录多少种 {@link me.panpf.sketch.request.LoadOptions}，超过后丢弃最久没用的
+     */
+    private static final int MAX_RECORD_COUNT = 128;
+    /**
+     * 还没有读取过已处理缓存时使用的默认读取耗时，单位纳秒每字节
+     */
+    public static final float DEFAULT_READ_NANOS_PER_BYTE = 8f;
+    /**
+     * 默认的耗时比例
+     */
+    public static final float DEFAULT_COST_RATIO = 1.5f;
+    /**
+     * 计算平均值时新数据的权重
+     */
+    private static final float WEIGHT = 0.25f;
+
+    private final LinkedHashMap<String, Record> records = new LinkedHashMap<String, Record>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Record> eldest) {
+            return size() > MAX_RECORD_COUNT;
+        }
+    };
+    private float readNanosPerByte = DEFAULT_READ_NANOS_PER_BYTE;
+    private long readCount;
+    private float costRatio = DEFAULT_COST_RATIO;
+    private boolean disabled;
+
+    /**
+     * 记录一次重新生成图片的耗时并判断是否应该缓存到磁盘
+     *
+     * @param optionsKey  {@link me.panpf.sketch.request.LoadOptions#makeKey()}
+     * @param createNanos 从开始解码到处理完成的耗时，单位纳秒，小于 0 表示没有统计到
+     * @param byteCount   处理后的图片占用的字节数
+     * @return true：应该缓存
+     */
+    public synchronized boolean shouldSave(@NonNull String optionsKey, long createNanos, int byteCount) {
+        if (disabled) {
+            return true;
+        }
+
+        Record record = records.get(optionsKey);
+        if (record == null) {
+            record = new Record();
+            records.put(optionsKey, record);
+        }
+        if (createNanos >= 0 && byteCount > 0) {
+            record.add(createNanos, byteCount);
+        }
+
+        // 一次也没统计到就按老规矩缓存
+        boolean save = record.sampleCount <= 0 || record.averageCreateNanos > getExpectedReadNanos(record.averageByteCount) * costRatio;
+        if (save) {
+            record.saveCount++;
+        } else {
+            record.skipCount++;
+        }
+        return save;
+    }
+
+    /**
+     * 记录一次从磁盘读取已处理图片的耗时
+     *
+     * @param readNanos 读取并解码的耗时，单位纳秒
+     * @param byteCount 读取到的图片占用的字节数
+     */
+    public synchronized void recordRead(long readNanos, int byteCount) {
+        if (readNanos < 0 || byteCount <= 0) {
+            return;
+        }
+
+        float nanosPerByte = (float) readNanos / byteCount;
+        readNanosPerByte = readCount == 0 ? nanosPerByte : readNanosPerByte + (nanosPerByte - readNanosPerByte) * WEIGHT;
+        readCount++;
+    }
+
+    private float getExpectedReadNanos(float byteCount) {
+        return byteCount * readNanosPerByte;
+    }
+
+    /**
+     * 获取指定 {@link me.panpf.sketch.request.LoadOptions} 的统计数据，没有记录过返回 null
+     */
+    @Nullable
+    public synchronized Decision getDecision(@NonNull String optionsKey) {
+        Record record = records.get(optionsKey);
+        if (record == null) {
+            return null;
+        }
+        float expectedReadNanos = getExpectedReadNanos(record.averageByteCount);
+        boolean save = record.sampleCount <= 0 || record.averageCreateNanos > expectedReadNanos * costRatio;
+        return new Decision(optionsKey, save, record.sampleCount, (long) record.averageCreateNanos, (long) expectedReadNanos,
+                (int) record.averageByteCount, record.saveCount, record.skipCount);
+    }
+
+    /**
+     * 获取所有 {@link me.panpf.sketch.request.LoadOptions} 的统计数据，最近用过的在后面
+     */
+    @NonNull
+    public synchronized Decision[] getDecisions() {
+        Decision[] decisions = new Decision[records.size()];
+        int index = 0;
+        for (String optionsKey : records.keySet().toArray(new String[records.size()])) {
+            decisions[index++] = getDecision(optionsKey);
+        }
+        return decisions;
+    }
+
+    /**
+     * 获取从磁盘读取已处理图片时每个字节的平均耗时，单位纳秒
+     */
+    public synchronized float getReadNanosPerByte() {
+        return readNanosPerByte;
+    }
+
+    /**
+     * 清空统计数据
+     */
+    public synchronized void reset() {
+        records.clear();
+        readNanosPerByte = DEFAULT_READ_NANOS_PER_BYTE;
+        readCount = 0;
+    }
+
+    public float getCostRatio() {
+        return costRatio;
+    }
+
+    /**
+     * 设置耗时比例，重新生成的耗时超过读取耗时的多少倍才缓存，默认 {@link #DEFAULT_COST_RATIO}
+     */
+    @NonNull
+    public ProcessedCachePolicy setCostRatio(float costRatio) {
+        this.costRatio = costRatio;
+        return this;
+    }
+
+    public boolean isDisabled() {
+        return disabled;
+    }
+
+    /**
+     * 设置是否关闭，关闭后只要处理过就缓存
+     */
+    @NonNull
+    public ProcessedCachePolicy setDisabled(boolean disabled) {
+        this.disabled = disabled;
+        return this;
+    }
+
+    /**
+     * 以 "key 次数 生成耗时/读取耗时 平均大小 缓存/跳过" 的格式输出所有记录，方便打印日志
+     */
+    @NonNull
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        for (Decision decision : getDecisions()) {
+            if (builder.length() > 0) {
+                builder.append("\n");
+            }
+            builder.append(decision.toString());
+        }
+        return builder.toString();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s(costRatio=%s,disabled=%s)", NAME, costRatio, disabled);
+    }
+
+    private static class Record {
+        private int sampleCount;
+        private float averageCreateNanos;
+        private float averageByteCount;
+        private int saveCount;
+        private int skipCount;
+
+        void add(long createNanos, int byteCount) {
+            if (sampleCount == 0) {
+                averageCreateNanos = createNanos;
+                averageByteCount = byteCount;
+            } else {
+                averageCreateNanos += (createNanos - averageCreateNanos) * WEIGHT;
+                averageByteCount += (byteCount - averageByteCount) * WEIGHT;
+            }
+            sampleCount++;
+        }
+    }
+
+    /**
+     * 某一种 {@link me.panpf.sketch.request.LoadOptions} 的统计数据和当前的决定
+     */
+    public static class Decision {
+        @NonNull
+        private final String optionsKey;
+        private final boolean save;
+        private final int sampleCount;
+        private final long averageCreateNanos;
+        private final long expectedReadNanos;
+        private final int averageByteCount;
+        private final int saveCount;
+        private final int skipCount;
+
+        private Decision(@NonNull String optionsKey, boolean save, int sampleCount, long averageCreateNanos, long expectedReadNanos,
+                         int averageByteCount, int saveCount, int skipCount) {
+            this.optionsKey = optionsKey;
+            this.save = save;
+            this.sampleCount = sampleCount;
+            this.averageCreateNanos = averageCreateNanos;
+            this.expectedReadNanos = expectedReadNanos;
+            this.averageByteCount = averageByteCount;
+            this.saveCount = saveCount;
+            this.skipCount = skipCount;
+        }
+
+        @NonNull
+        public String getOptionsKey() {
+            return optionsKey;
+        }
+
+        /**
+         * 按目前的统计数据是否应该缓存
+         */
+        public boolean isSave() {
+            return save;
+        }
+
+        public int getSampleCount() {
+            return sampleCount;
+        }
+
+        /**
+         * 获取重新生成的平均耗时，单位纳秒
+         */
+        public long getAverageCreateNanos() {
+            return averageCreateNanos;
+        }
+
+        /**
+         * 获取预计从磁盘读取的耗时，单位纳秒
+         */
+        public long getExpectedReadNanos() {
+            return expectedReadNanos;
+        }
+
+        public int getAverageByteCount() {
+            return averageByteCount;
+        }
+
+        public int getSaveCount() {
+            return saveCount;
+        }
+
+        public int getSkipCount() {
+            return skipCount;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s %d %.2f/%.2fms %d %d/%d%s", optionsKey.length() > 0 ? optionsKey : "<default>", sampleCount,
+                    averageCreateNanos / 1000000f, expectedReadNanos / 1000000f, averageByteCount, saveCount, skipCount, save ? "" : " skip");
+        }
+    }
+}
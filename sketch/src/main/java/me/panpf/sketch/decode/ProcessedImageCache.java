@@ -16,14 +16,30 @@
 
 package me.panpf.sketch.decode;
 
+import android.content.ComponentCallbacks2;
 import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Process;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
+import me.panpf.sketch.SLog;
+import me.panpf.sketch.cache.CacheStats;
+import me.panpf.sketch.cache.CacheStatsProvider;
 import me.panpf.sketch.cache.DiskCache;
 import me.panpf.sketch.datasource.DiskCacheDataSource;
 import me.panpf.sketch.request.ImageFrom;
@@ -34,8 +50,42 @@ import me.panpf.sketch.util.SketchUtils;
 
 /**
  * 对读到内存后又再次处理过的图片进行缓存，下次就不用再处理了，可加快加载速度
+ * <p>
+ * 保存是异步的，{@link #saveToDiskCache(LoadRequest, Bitmap)} 只是拷贝一份图片放进待写入队列，由后台线程依次压缩并写入磁盘缓存，加载线程不用等待压缩。
+ * 同一个 key 只保留最新的一次，队列中图片占用的内存有上限，超出时丢弃最早的，内存不足时整个清空。拷贝前先占用上限内的额度，上限同时也限制了拷贝的大小
+ * <p>
+ * 默认使用无损格式保存，有损格式需要通过 {@link #setCompressFormat(Bitmap.CompressFormat)} 主动开启
  */
-public class ProcessedImageCache {
+public class ProcessedImageCache implements CacheStatsProvider {
+    private static final String NAME = "ProcessedImageCache";
+
+    /**
+     * 默认的压缩质量，无损格式会忽略这个值
+     */
+    public static final int DEFAULT_QUALITY = 100;
+    /**
+     * 默认待写入队列中的图片最多占用的内存
+     */
+    public static final long DEFAULT_MAX_PENDING_BYTES = 8 * 1024 * 1024;
+
+    @Nullable
+    private static final Bitmap.CompressFormat WEBP_LOSSLESS = findWebpLossless();
+
+    private final CacheStats stats = new CacheStats(NAME);
+    @NonNull
+    private ProcessedCachePolicy policy = new ProcessedCachePolicy();
+
+    private Bitmap.CompressFormat compressFormat;
+    private int quality = DEFAULT_QUALITY;
+    private long maxPendingBytes = DEFAULT_MAX_PENDING_BYTES;
+
+    /**
+     * 待写入的图片，按加入顺序排列
+     */
+    private final LinkedHashMap<String, PendingWrite> pendingWrites = new LinkedHashMap<String, PendingWrite>();
+    private long pendingBytes;
+    private boolean writing;
+    private ExecutorService writeExecutor;
 
     /**
      * 判断是否可以使用此功能
@@ -66,10 +116,10 @@ public class ProcessedImageCache {
     }
 
     /**
-     * 此缩放比例是否可以使用缓存到本地磁盘功能
+     * 此缩放比例是否可以使用缓存到本地磁盘功能，只要缩小了就和原图不一样，值不值得缓存由 {@link ProcessedCachePolicy} 根据耗时决定
      */
     public boolean canUseCacheProcessedImageInDisk(int inSampleSize) {
-        return inSampleSize >= 8;
+        return inSampleSize > 1;
     }
 
     public boolean checkDiskCache(LoadRequest request) {
@@ -105,19 +155,101 @@ public class ProcessedImageCache {
         }
 
         if (diskCacheEntry == null) {
+            stats.recordMiss();
             return null;
         }
 
+        stats.recordHit();
         return new DiskCacheDataSource(diskCacheEntry, ImageFrom.DISK_CACHE).setFromProcessedCache(true);
     }
 
     /**
-     * 保存 {@link Bitmap} 到磁盘缓存
+     * 保存 {@link Bitmap} 到磁盘缓存，拷贝一份后放进待写入队列就返回，由后台线程压缩并写入
      */
     public void saveToDiskCache(LoadRequest request, Bitmap bitmap) {
-        DiskCache diskCache = request.getConfiguration().getDiskCache();
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+
         String processedImageDiskCacheKey = request.getProcessedDiskCacheKey();
+        int byteCount = SketchUtils.getByteCount(bitmap);
+        synchronized (pendingWrites) {
+            // 同一个 key 只保留最新的
+            removePendingWrite(processedImageDiskCacheKey);
+            if (byteCount > maxPendingBytes) {
+                stats.recordReject();
+                return;
+            }
+            trimPendingWrites(maxPendingBytes - byteCount);
+            // 剩下的是其它线程正在拷贝时占用的额度，不能丢弃
+            if (pendingBytes + byteCount > maxPendingBytes) {
+                stats.recordReject();
+                return;
+            }
+            // 拷贝前先占用额度，多个加载线程同时拷贝时总量也不会超过上限
+            pendingBytes += byteCount;
+        }
+
+        // 原图接下来会被显示、放进内存缓存甚至被回收复用，所以要拷贝一份不可变的给后台线程
+        Bitmap copy;
+        try {
+            copy = bitmap.copy(bitmap.getConfig() != null ? bitmap.getConfig() : Bitmap.Config.ARGB_8888, false);
+        } catch (OutOfMemoryError e) {
+            SLog.w(NAME, "Copy bitmap failed. %s. %s", e.toString(), processedImageDiskCacheKey);
+            copy = null;
+        }
+        if (copy == null) {
+            synchronized (pendingWrites) {
+                pendingBytes -= byteCount;
+            }
+            stats.recordReject();
+            return;
+        }
+
+        DiskCache diskCache = request.getConfiguration().getDiskCache();
+        boolean startWrite;
+        synchronized (pendingWrites) {
+            // 额度在拷贝前已经占用了
+            removePendingWrite(processedImageDiskCacheKey);
+            pendingWrites.put(processedImageDiskCacheKey, new PendingWrite(processedImageDiskCacheKey, diskCache, copy, byteCount));
+            startWrite = !writing;
+            writing = true;
+        }
 
+        if (startWrite) {
+            getWriteExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    writePendingWrites();
+                }
+            });
+        }
+    }
+
+    private void writePendingWrites() {
+        while (true) {
+            PendingWrite pendingWrite;
+            synchronized (pendingWrites) {
+                Iterator<Map.Entry<String, PendingWrite>> iterator = pendingWrites.entrySet().iterator();
+                if (!iterator.hasNext()) {
+                    writing = false;
+                    return;
+                }
+                pendingWrite = iterator.next().getValue();
+                iterator.remove();
+                pendingBytes -= pendingWrite.byteCount;
+            }
+
+            try {
+                write(pendingWrite.diskCache, pendingWrite.key, pendingWrite.bitmap);
+            } finally {
+                pendingWrite.bitmap.recycle();
+            }
+        }
+    }
+
+    private void write(@NonNull DiskCache diskCache, @NonNull String processedImageDiskCacheKey, @NonNull Bitmap bitmap) {
         ReentrantLock editLock = diskCache.getEditLock(processedImageDiskCacheKey);
         editLock.lock();
 
@@ -125,17 +257,25 @@ public class ProcessedImageCache {
             DiskCache.Entry diskCacheEntry = diskCache.get(processedImageDiskCacheKey);
 
             if (diskCacheEntry != null) {
-                diskCacheEntry.delete();
+                long oldLength = diskCacheEntry.getFile().length();
+                if (diskCacheEntry.delete()) {
+                    stats.recordEviction(CacheStats.EVICTION_REMOVE, 1, oldLength);
+                }
             }
 
             DiskCache.Editor diskCacheEditor = diskCache.edit(processedImageDiskCacheKey);
             if (diskCacheEditor != null) {
+                CountingOutputStream countingOutputStream = null;
                 BufferedOutputStream outputStream = null;
+                boolean success = false;
                 //noinspection TryWithIdenticalCatches
                 try {
-                    outputStream = new BufferedOutputStream(diskCacheEditor.newOutputStream(), 8 * 1024);
-                    bitmap.compress(SketchUtils.bitmapConfigToCompressFormat(bitmap.getConfig()), 100, outputStream);
+                    countingOutputStream = new CountingOutputStream(diskCacheEditor.newOutputStream());
+                    outputStream = new BufferedOutputStream(countingOutputStream, 8 * 1024);
+                    bitmap.compress(getCompressFormat(bitmap.getConfig()), quality, outputStream);
+                    outputStream.flush();
                     diskCacheEditor.commit();
+                    success = true;
                 } catch (DiskLruCache.EditorChangedException e) {
                     e.printStackTrace();
                     diskCacheEditor.abort();
@@ -151,15 +291,234 @@ public class ProcessedImageCache {
                 } finally {
                     SketchUtils.close(outputStream);
                 }
+
+                if (success) {
+                    stats.recordPut(countingOutputStream.count);
+                } else {
+                    stats.recordReject();
+                }
+            } else {
+                stats.recordReject();
             }
         } finally {
             editLock.unlock();
         }
     }
 
+    /**
+     * 获取保存时使用的压缩格式，没有设置时 RGB_565 用 JPEG，其它的在 11 及以上用 WEBP_LOSSLESS，以下用 PNG，都跟原来一样是无损的
+     */
+    @NonNull
+    private Bitmap.CompressFormat getCompressFormat(@Nullable Bitmap.Config config) {
+        if (compressFormat != null) {
+            return compressFormat;
+        }
+        if (config != Bitmap.Config.RGB_565 && WEBP_LOSSLESS != null) {
+            return WEBP_LOSSLESS;
+        }
+        return SketchUtils.bitmapConfigToCompressFormat(config);
+    }
+
+    /**
+     * 11 开始才有的无损 WEBP，编译用的 SDK 里还没有这个常量，只能按名字取
+     */
+    @Nullable
+    private static Bitmap.CompressFormat findWebpLossless() {
+        if (Build.VERSION.SDK_INT < 30) {
+            return null;
+        }
+        try {
+            return Bitmap.CompressFormat.valueOf("WEBP_LOSSLESS");
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void removePendingWrite(@NonNull String key) {
+        PendingWrite pendingWrite = pendingWrites.remove(key);
+        if (pendingWrite != null) {
+            pendingBytes -= pendingWrite.byteCount;
+            pendingWrite.bitmap.recycle();
+            stats.recordReject();
+        }
+    }
+
+    /**
+     * 丢弃最早的待写入图片直到占用的内存不超过 maxSize
+     */
+    private void trimPendingWrites(long maxSize) {
+        Iterator<Map.Entry<String, PendingWrite>> iterator = pendingWrites.entrySet().iterator();
+        while (pendingBytes > maxSize && iterator.hasNext()) {
+            PendingWrite pendingWrite = iterator.next().getValue();
+            iterator.remove();
+            pendingBytes -= pendingWrite.byteCount;
+            pendingWrite.bitmap.recycle();
+            stats.recordReject();
+        }
+    }
+
+    @NonNull
+    private ExecutorService getWriteExecutor() {
+        // 懒加载，用不到就不创建线程
+        synchronized (pendingWrites) {
+            if (writeExecutor == null) {
+                writeExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(@NonNull Runnable runnable) {
+                        return new Thread(runnable, "ProcessedImageWriteThread");
+                    }
+                });
+                ((ThreadPoolExecutor) writeExecutor).allowCoreThreadTimeOut(true);
+            }
+            return writeExecutor;
+        }
+    }
+
+    /**
+     * 修整内存，内存紧张时丢弃所有还没写入的图片
+     *
+     * @param level 修剪级别，对应 APP 的不同状态，对应 {@link ComponentCallbacks2} 里的常量
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW && level < ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN)) {
+            clearPendingWrites();
+        }
+    }
+
+    /**
+     * 丢弃所有还没写入的图片
+     */
+    public void clearPendingWrites() {
+        synchronized (pendingWrites) {
+            long size = pendingBytes;
+            trimPendingWrites(0);
+            if (size > 0) {
+                SLog.w(NAME, "clearPendingWrites. released: %d bytes", size);
+            }
+        }
+    }
+
+    /**
+     * 获取还没写入的图片占用的内存
+     */
+    public long getPendingBytes() {
+        synchronized (pendingWrites) {
+            return pendingBytes;
+        }
+    }
+
+    @Nullable
+    public Bitmap.CompressFormat getCompressFormat() {
+        return compressFormat;
+    }
+
+    /**
+     * 设置保存时使用的压缩格式，null 表示自动选择：RGB_565 用 JPEG，其它的在 11 及以上用 WEBP_LOSSLESS，以下用 PNG。
+     * 想用有损的 WEBP 换取更小的文件时设置成 {@link Bitmap.CompressFormat#WEBP} 并配合 {@link #setQuality(int)}，4.3 以下 WEBP 不支持透明度
+     */
+    @NonNull
+    public ProcessedImageCache setCompressFormat(@Nullable Bitmap.CompressFormat compressFormat) {
+        this.compressFormat = compressFormat;
+        return this;
+    }
+
+    public int getQuality() {
+        return quality;
+    }
+
+    /**
+     * 设置压缩质量，取值范围 0 到 100，默认 {@link #DEFAULT_QUALITY}，无损格式会忽略这个值
+     */
+    @NonNull
+    public ProcessedImageCache setQuality(int quality) {
+        this.quality = Math.max(0, Math.min(100, quality));
+        return this;
+    }
+
+    /**
+     * 获取决定是否缓存的策略，可以查询每一种 {@link LoadOptions} 的统计数据和当前的决定
+     */
+    @NonNull
+    public ProcessedCachePolicy getPolicy() {
+        return policy;
+    }
+
+    @NonNull
+    public ProcessedImageCache setPolicy(@NonNull ProcessedCachePolicy policy) {
+        //noinspection ConstantConditions
+        if (policy != null) {
+            this.policy = policy;
+        }
+        return this;
+    }
+
+    public long getMaxPendingBytes() {
+        return maxPendingBytes;
+    }
+
+    /**
+     * 设置待写入队列中的图片最多占用的内存，默认 {@link #DEFAULT_MAX_PENDING_BYTES}，超出时丢弃最早的
+     */
+    @NonNull
+    public ProcessedImageCache setMaxPendingBytes(long maxPendingBytes) {
+        this.maxPendingBytes = maxPendingBytes;
+        synchronized (pendingWrites) {
+            trimPendingWrites(maxPendingBytes);
+        }
+        return this;
+    }
+
+    /**
+     * 获取复用率、平均大小等统计数据，命中率就是已处理图片的复用率
+     */
+    @Override
+    @NonNull
+    public CacheStats getStats() {
+        return stats;
+    }
+
     @NonNull
     @Override
     public String toString() {
-        return "ProcessedImageCache";
+        return String.format("%s(compressFormat=%s,quality=%d,maxPendingBytes=%d,policy=%s)",
+                NAME, compressFormat != null ? compressFormat.name() : "auto", quality, maxPendingBytes, policy.toString());
+    }
+
+    private static class PendingWrite {
+        @NonNull
+        private final String key;
+        @NonNull
+        private final DiskCache diskCache;
+        @NonNull
+        private final Bitmap bitmap;
+        private final int byteCount;
+
+        PendingWrite(@NonNull String key, @NonNull DiskCache diskCache, @NonNull Bitmap bitmap, int byteCount) {
+            this.key = key;
+            this.diskCache = diskCache;
+            this.bitmap = bitmap;
+            this.byteCount = byteCount;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
     }
 }
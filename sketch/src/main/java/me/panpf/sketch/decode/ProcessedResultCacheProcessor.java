@@ -16,7 +16,11 @@
 
 package me.panpf.sketch.decode;
 
+import android.graphics.Bitmap;
+
+import me.panpf.sketch.request.BaseRequest;
 import me.panpf.sketch.request.LoadRequest;
+import me.panpf.sketch.util.SketchUtils;
 
 /**
  * 缓存经过处理的图片，方便下次直接读取，加快速度
@@ -43,6 +47,25 @@ public class ProcessedResultCacheProcessor implements ResultProcessor {
         }
 
         BitmapDecodeResult bitmapDecodeResult = (BitmapDecodeResult) result;
-        processedImageCache.saveToDiskCache(request, bitmapDecodeResult.getBitmap());
+        // 还没有纠正方向的图片不能缓存，读取缓存时会认为已经纠正过了
+        ImageOrientationCorrector orientationCorrector = request.getConfiguration().getOrientationCorrector();
+        if (orientationCorrector.hasRotate(bitmapDecodeResult.getPendingExifOrientation())) {
+            return;
+        }
+
+        Bitmap bitmap = bitmapDecodeResult.getBitmap();
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+
+        // 从进入解码状态到现在就是重新生成这张图片的耗时
+        long decodeStartTime = request.getTrace().getEnterTime(BaseRequest.Status.DECODING);
+        long createNanos = decodeStartTime != 0 ? System.nanoTime() - decodeStartTime : -1;
+        ProcessedCachePolicy policy = processedImageCache.getPolicy();
+        if (!policy.shouldSave(request.getOptions().makeKey(), createNanos, SketchUtils.getByteCount(bitmap))) {
+            return;
+        }
+
+        processedImageCache.saveToDiskCache(request, bitmap);
     }
 }
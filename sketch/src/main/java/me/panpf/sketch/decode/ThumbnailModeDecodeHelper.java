@@ -101,7 +101,7 @@ public class ThumbnailModeDecodeHelper extends DecodeHelper {
 
         Bitmap bitmap;
         try {
-            bitmap = ImageDecodeUtils.decodeRegionBitmap(dataSource, mapping.srcRect, decodeOptions);
+            bitmap = ImageDecodeUtils.decodeRegionBitmap(request, dataSource, mapping.srcRect, decodeOptions);
         } catch (Throwable tr) {
             ErrorTracker errorTracker = request.getConfiguration().getErrorTracker();
             BitmapPool bitmapPool = request.getConfiguration().getBitmapPool();
@@ -110,7 +110,7 @@ public class ThumbnailModeDecodeHelper extends DecodeHelper {
                         boundOptions.outWidth, boundOptions.outHeight, boundOptions.outMimeType, tr, decodeOptions, true);
 
                 try {
-                    bitmap = ImageDecodeUtils.decodeRegionBitmap(dataSource, mapping.srcRect, decodeOptions);
+                    bitmap = ImageDecodeUtils.decodeRegionBitmap(request, dataSource, mapping.srcRect, decodeOptions);
                 } catch (Throwable throwable1) {
                     errorTracker.onDecodeNormalImageError(throwable1, request, boundOptions.outWidth,
                             boundOptions.outHeight, boundOptions.outMimeType);
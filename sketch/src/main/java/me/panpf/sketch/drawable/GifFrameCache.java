@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.drawable;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import androidx.annotation.NonNull;
+
+import me.panpf.sketch.cache.BitmapPool;
+import me.panpf.sketch.cache.BitmapPoolUtils;
+import me.panpf.sketch.cache.FrameCacheBudget;
+
+/**
+ * 循环播放的 gif 的帧缓存，第一遍播放时把每一帧拷贝下来，之后直接从缓存里取帧，不再重复解码
+ * <p>
+ * 从缓存里取帧时解码器不会前进，所以当前是第几轮由这里自己记录，并按 loopCount 在最后一轮结束时停止
+ * <p>
+ * 所有方法都需要在持有当前对象锁的情况下调用，渲染线程和主线程会同时访问
+ */
+class GifFrameCache {
+    private FrameCacheBudget budget;
+    private BitmapPool bitmapPool;
+    private Bitmap.Config config;
+    private int width;
+    private int height;
+    private int byteCount;
+
+    private Bitmap[] frames;
+    private long[] durations;
+    private int cachedCount;
+    /**
+     * 当前显示的缓存帧，-1 表示还在跟随解码器
+     */
+    private int cursor = -1;
+    /**
+     * 最近一次显示的帧，用来判断是否进入了下一轮，-1 表示不知道（刚 seek 过）
+     */
+    private int lastFrameIndex;
+    /**
+     * 当前是第几轮，从 0 开始
+     */
+    private int loop;
+    private boolean completed;
+    private boolean released;
+
+    private Canvas canvas = new Canvas();
+    private Paint paint = new Paint();
+
+    private GifFrameCache(@NonNull FrameCacheBudget budget, @NonNull BitmapPool bitmapPool, @NonNull Bitmap.Config config,
+                          int width, int height, int frameCount, int byteCount, int frameIndex, int loop) {
+        this.budget = budget;
+        this.bitmapPool = bitmapPool;
+        this.config = config;
+        this.width = width;
+        this.height = height;
+        this.byteCount = byteCount;
+        this.lastFrameIndex = frameIndex;
+        this.loop = loop;
+        this.frames = new Bitmap[frameCount];
+        this.durations = new long[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            durations[i] = -1;
+        }
+        this.paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+    }
+
+    /**
+     * 创建帧缓存，只有会循环播放、帧数大于 1 并且能从 {@link FrameCacheBudget} 申请到足够容量的 gif 才可以
+     *
+     * @param frameBuffer gif 的帧缓冲区
+     * @param loopCount   循环次数，0 表示无限循环，只播放一遍的没必要缓存
+     * @param lowQuality  没有透明度的 gif 用 {@link Bitmap.Config#RGB_565} 存储帧
+     * @param frameIndex  解码器当前显示的帧
+     * @param loop        解码器当前是第几轮
+     * @return null：不符合条件
+     */
+    static GifFrameCache create(@NonNull FrameCacheBudget budget, @NonNull BitmapPool bitmapPool, @NonNull Bitmap frameBuffer,
+                                int frameCount, int loopCount, boolean lowQuality, int frameIndex, int loop) {
+        if (loopCount == 1 || frameCount <= 1) {
+            return null;
+        }
+
+        Bitmap.Config config = lowQuality && !frameBuffer.hasAlpha() ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        int width = frameBuffer.getWidth();
+        int height = frameBuffer.getHeight();
+        long byteCount = (long) width * height * (config == Bitmap.Config.RGB_565 ? 2 : 4) * frameCount;
+        if (byteCount > Integer.MAX_VALUE || !budget.reserve((int) byteCount)) {
+            return null;
+        }
+        return new GifFrameCache(budget, bitmapPool, config, width, height, frameCount, (int) byteCount, frameIndex, loop);
+    }
+
+    /**
+     * 解码器渲染完一帧后调用，缓存这一帧
+     *
+     * @param frameIndex  刚渲染的帧
+     * @param duration    这一帧的持续时间
+     * @param frameBuffer gif 的帧缓冲区
+     */
+    void onFrameDecoded(int frameIndex, long duration, @NonNull Bitmap frameBuffer) {
+        if (released || frameIndex < 0 || frameIndex >= frames.length || duration < 0) {
+            return;
+        }
+
+        if (lastFrameIndex >= 0 && frameIndex < lastFrameIndex) {
+            loop++;
+        }
+        lastFrameIndex = frameIndex;
+
+        if (frames[frameIndex] == null) {
+            Bitmap frame = bitmapPool.getOrMake(width, height, config);
+            canvas.setBitmap(frame);
+            canvas.drawBitmap(frameBuffer, 0, 0, paint);
+            canvas.setBitmap(null);
+            frames[frameIndex] = frame;
+            cachedCount++;
+        }
+        durations[frameIndex] = duration;
+
+        if (cachedCount == frames.length && isDurationsComplete()) {
+            cursor = frameIndex;
+        }
+    }
+
+    /**
+     * 从缓存中取出下一帧画到帧缓冲区，只能在 {@link #isPlaying()} 为 true 时调用
+     *
+     * @param loopCount 循环次数，0 表示无限循环，每次都要传入最新的值，因为可以随时修改
+     * @return 这一帧的持续时间，-1：所有轮次都播放完了
+     */
+    long renderNextFrame(@NonNull Bitmap frameBuffer, int loopCount) {
+        if (released || cursor < 0 || completed) {
+            return -1;
+        }
+
+        int next = cursor + 1;
+        if (next >= frames.length) {
+            if (loopCount != 0 && loop + 1 >= loopCount) {
+                completed = true;
+                return -1;
+            }
+            next = 0;
+            loop++;
+        }
+        canvas.setBitmap(frameBuffer);
+        canvas.drawBitmap(frames[next], 0, 0, paint);
+        canvas.setBitmap(null);
+        cursor = next;
+        lastFrameIndex = next;
+        return durations[next];
+    }
+
+    /**
+     * 是否正在从缓存中播放
+     */
+    boolean isPlaying() {
+        return !released && cursor >= 0;
+    }
+
+    /**
+     * 当前显示的缓存帧
+     */
+    int getCurrentFrameIndex() {
+        return cursor;
+    }
+
+    /**
+     * 当前是第几轮，从 0 开始
+     */
+    int getCurrentLoop() {
+        return loop;
+    }
+
+    /**
+     * 从缓存中播放时所有轮次是否都播放完了
+     */
+    boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * 解码器的进度被改变了（seek、reset），回到跟随解码器的状态，等解码器再渲染一帧后继续从缓存中播放
+     */
+    void detach() {
+        cursor = -1;
+        lastFrameIndex = -1;
+        completed = false;
+    }
+
+    /**
+     * 解码器回到了第一轮的第一帧
+     */
+    void reset() {
+        detach();
+        loop = 0;
+    }
+
+    /**
+     * 播放速度改变了，已记录的持续时间全部作废，等解码器再渲染一遍后继续从缓存中播放
+     */
+    void invalidateDurations() {
+        cursor = -1;
+        for (int i = 0; i < durations.length; i++) {
+            durations[i] = -1;
+        }
+    }
+
+    /**
+     * 释放所有帧并归还容量
+     */
+    void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        cursor = -1;
+
+        for (int i = 0; i < frames.length; i++) {
+            if (frames[i] != null) {
+                BitmapPoolUtils.freeBitmapToPool(frames[i], bitmapPool);
+                frames[i] = null;
+            }
+        }
+        cachedCount = 0;
+        budget.release(byteCount);
+    }
+
+    int getByteCount() {
+        return released ? 0 : byteCount;
+    }
+
+    private boolean isDurationsComplete() {
+        for (long duration : durations) {
+            if (duration < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
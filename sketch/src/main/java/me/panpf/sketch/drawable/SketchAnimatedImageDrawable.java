@@ -0,0 +1,841 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.drawable;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import me.panpf.sketch.SLog;
+import me.panpf.sketch.cache.BitmapPool;
+import me.panpf.sketch.cache.BitmapPoolUtils;
+import me.panpf.sketch.cache.FrameCacheBudget;
+import me.panpf.sketch.decode.AnimatedImage;
+import me.panpf.sketch.decode.ImageAttrs;
+import me.panpf.sketch.request.ImageFrom;
+import me.panpf.sketch.util.SketchUtils;
+
+/**
+ * 播放动图 webp 和 apng，每一帧都用 {@link android.graphics.BitmapFactory} 解码后合成到画布上，
+ * 画布和帧的 {@link Bitmap} 都来自 {@link BitmapPool}，渲染任务跟 gif 共用同一个渲染线程池
+ * <p>
+ * 实现了 {@link SketchGifDrawable} 接口，因此可以跟 gif 一样走 {@link me.panpf.sketch.decode.GifDecodeResult} 的显示流程，
+ * 也同样不能放入内存缓存
+ */
+public class SketchAnimatedImageDrawable extends Drawable implements SketchGifDrawable {
+    private static final String NAME = "SketchAnimatedImageDrawable";
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    private String key;
+    private String uri;
+    private ImageAttrs imageAttrs;
+    private ImageFrom imageFrom;
+    private BitmapPool bitmapPool;
+    private AnimatedImage image;
+    private ScheduledThreadPoolExecutor executor;
+
+    /**
+     * 保证同一时间只有一个线程在解码和合成帧，合成必须按顺序进行
+     */
+    private final Object renderLock = new Object();
+    /**
+     * 保护前台画布和前后台画布的交换，绘制时持有，合成在后台画布上进行不需要持有，这样主线程绘制时不用等待合成
+     */
+    private final Object bufferLock = new Object();
+    /**
+     * 前台画布，绘制时用的是这个
+     */
+    private Bitmap buffer;
+    private Canvas bufferCanvas;
+    /**
+     * 后台画布，只有渲染线程会在上面合成，合成完毕后跟前台画布交换
+     */
+    private Bitmap backBuffer;
+    private Canvas backBufferCanvas;
+    /**
+     * 渲染线程正在后台画布上合成，此时 recycle 不能释放画布，由渲染线程合成结束后释放
+     */
+    private boolean composing;
+    private Bitmap backup;
+    private Canvas backupCanvas;
+    private Rect tempRect = new Rect();
+    private Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+    private Paint srcPaint;
+    private Paint clearPaint;
+
+    private volatile int frameIndex = -1;
+    private volatile int loopIndex;
+    private volatile int loopCount;
+    private volatile float speed = 1f;
+    private volatile boolean running = true;
+    private volatile boolean recycled;
+    private volatile boolean animationCompleted;
+    private volatile long nextFrameRenderTime = Long.MIN_VALUE;
+    private volatile long renderDeadline = Long.MIN_VALUE;
+    private volatile long droppedFrameCount;
+    private long pausedRemainder = -1;
+    private ScheduledFuture<?> renderTaskSchedule;
+    private List<AnimationListener> listeners = new CopyOnWriteArrayList<>();
+
+    private Runnable renderTask = new Runnable() {
+        @Override
+        public void run() {
+            renderNextFrame();
+        }
+    };
+    private Runnable invalidateTask = new Runnable() {
+        @Override
+        public void run() {
+            invalidateSelf();
+        }
+    };
+
+    SketchAnimatedImageDrawable(@NonNull String key, @NonNull String uri, @NonNull ImageAttrs imageAttrs, @NonNull ImageFrom imageFrom,
+                                @NonNull BitmapPool bitmapPool, @NonNull AnimatedImage image, @NonNull ScheduledThreadPoolExecutor executor) throws IOException {
+        this.key = key;
+        this.uri = uri;
+        this.imageAttrs = imageAttrs;
+        this.imageFrom = imageFrom;
+        this.bitmapPool = bitmapPool;
+        this.image = image;
+        this.executor = executor;
+        this.loopCount = image.getLoopCount();
+
+        this.buffer = bitmapPool.getOrMake(image.getWidth(), image.getHeight(), Bitmap.Config.ARGB_8888);
+        this.buffer.eraseColor(Color.TRANSPARENT);
+        this.bufferCanvas = new Canvas(buffer);
+        this.backBuffer = bitmapPool.getOrMake(image.getWidth(), image.getHeight(), Bitmap.Config.ARGB_8888);
+        this.backBufferCanvas = new Canvas(backBuffer);
+
+        this.srcPaint = new Paint();
+        this.srcPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+        this.clearPaint = new Paint();
+        this.clearPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+
+        // 先同步渲染出第一帧，跟 GifDrawable 一样等到第一次绘制时才开始调度下一帧
+        boolean success;
+        synchronized (renderLock) {
+            success = renderFrame(0);
+        }
+        if (!success) {
+            recycle();
+            throw new IOException("Unable decode first frame");
+        }
+        nextFrameRenderTime = SystemClock.uptimeMillis() + getScaledFrameDuration(0);
+    }
+
+    /**
+     * 在渲染线程中执行，渲染下一帧并安排重绘
+     */
+    private void renderNextFrame() {
+        if (recycled || !running) {
+            return;
+        }
+
+        final long deadline = renderDeadline;
+        int renderedFrameIndex;
+        synchronized (renderLock) {
+            int nextFrameIndex = frameIndex + 1;
+            if (nextFrameIndex >= image.getFrameCount()) {
+                notifyAnimationCompleted(loopIndex);
+                if (loopCount != 0 && loopIndex + 1 >= loopCount) {
+                    animationCompleted = true;
+                    running = false;
+                    nextFrameRenderTime = Long.MIN_VALUE;
+                    renderDeadline = Long.MIN_VALUE;
+                    return;
+                }
+                loopIndex++;
+                nextFrameIndex = 0;
+            }
+
+            if (!renderFrame(nextFrameIndex)) {
+                running = false;
+                nextFrameRenderTime = Long.MIN_VALUE;
+                renderDeadline = Long.MIN_VALUE;
+                return;
+            }
+            renderedFrameIndex = nextFrameIndex;
+        }
+
+        // 跟 gif 的渲染任务一样，迟到不足一帧时缩短下一帧的等待时间，超过一帧时丢弃并从现在重新计时
+        long frameDuration = getScaledFrameDuration(renderedFrameIndex);
+        long now = SystemClock.uptimeMillis();
+        long lateness = deadline != Long.MIN_VALUE ? now - deadline : 0;
+        long frameDelay;
+        if (lateness <= 0) {
+            frameDelay = frameDuration;
+        } else if (lateness < frameDuration) {
+            frameDelay = frameDuration - lateness;
+        } else {
+            droppedFrameCount += frameDuration > 0 ? lateness / frameDuration : 1;
+            frameDelay = frameDuration;
+        }
+        nextFrameRenderTime = now + frameDelay;
+
+        if (isVisible()) {
+            MAIN_HANDLER.removeCallbacks(invalidateTask);
+            MAIN_HANDLER.post(invalidateTask);
+        }
+    }
+
+    /**
+     * 解码并合成指定帧，必须持有 {@link #renderLock}，并且只能是下一帧或第一帧
+     *
+     * @return false：已回收或解码失败
+     */
+    private boolean renderFrame(int index) {
+        Bitmap frameBitmap;
+        try {
+            frameBitmap = image.decodeFrame(index, bitmapPool);
+        } catch (Throwable e) {
+            SLog.e(NAME, "Decode frame failed. frameIndex=%d. %s. %s", index, e.toString(), key);
+            return false;
+        }
+        if (frameBitmap == null) {
+            SLog.e(NAME, "Decode frame failed. frameIndex=%d. %s", index, key);
+            return false;
+        }
+
+        boolean composed = false;
+        try {
+            synchronized (bufferLock) {
+                if (recycled) {
+                    return false;
+                }
+                composing = true;
+            }
+            composeFrame(index, frameBitmap);
+            composed = true;
+        } finally {
+            BitmapPoolUtils.freeBitmapToPool(frameBitmap, bitmapPool);
+            synchronized (bufferLock) {
+                composing = false;
+                if (recycled) {
+                    releaseBuffers();
+                    composed = false;
+                } else if (composed) {
+                    swapBuffers();
+                }
+            }
+        }
+        if (!composed) {
+            return false;
+        }
+        frameIndex = index;
+        return true;
+    }
+
+    /**
+     * 在后台画布上合成，先复制前台画布的内容，再按上一帧的处理方式处理画布，最后把当前帧画到画布上。
+     * 只有渲染线程会写后台画布，前台画布在这里只读，所以不需要持有 {@link #bufferLock}
+     */
+    private void composeFrame(int index, @NonNull Bitmap frameBitmap) {
+        AnimatedImage.Frame frame = image.getFrame(index);
+        Canvas canvas = backBufferCanvas;
+
+        if (index == 0) {
+            backBuffer.eraseColor(Color.TRANSPARENT);
+        } else {
+            canvas.drawBitmap(buffer, 0, 0, srcPaint);
+        }
+
+        if (index != 0 && frameIndex >= 0) {
+            AnimatedImage.Frame previousFrame = image.getFrame(frameIndex);
+            Rect previousRect = getFrameRect(previousFrame);
+            if (previousFrame.getDispose() == AnimatedImage.DISPOSE_BACKGROUND) {
+                canvas.drawRect(previousRect, clearPaint);
+            } else if (previousFrame.getDispose() == AnimatedImage.DISPOSE_PREVIOUS && backup != null) {
+                canvas.drawBitmap(backup, previousRect, previousRect, srcPaint);
+            }
+        }
+
+        if (frame.getDispose() == AnimatedImage.DISPOSE_PREVIOUS) {
+            if (backup == null) {
+                backup = bitmapPool.getOrMake(image.getWidth(), image.getHeight(), Bitmap.Config.ARGB_8888);
+                backupCanvas = new Canvas(backup);
+            }
+            Rect frameRect = getFrameRect(frame);
+            backupCanvas.drawBitmap(backBuffer, frameRect, frameRect, srcPaint);
+        }
+
+        canvas.drawBitmap(frameBitmap, frame.getX(), frame.getY(), frame.isBlend() ? null : srcPaint);
+    }
+
+    /**
+     * 把合成好的后台画布换到前台，必须持有 {@link #bufferLock}
+     */
+    private void swapBuffers() {
+        Bitmap frontBuffer = buffer;
+        Canvas frontBufferCanvas = bufferCanvas;
+        buffer = backBuffer;
+        bufferCanvas = backBufferCanvas;
+        backBuffer = frontBuffer;
+        backBufferCanvas = frontBufferCanvas;
+    }
+
+    /**
+     * 释放所有画布，必须持有 {@link #bufferLock}
+     */
+    private void releaseBuffers() {
+        if (buffer != null) {
+            BitmapPoolUtils.freeBitmapToPool(buffer, bitmapPool);
+            buffer = null;
+            bufferCanvas = null;
+        }
+        if (backBuffer != null) {
+            BitmapPoolUtils.freeBitmapToPool(backBuffer, bitmapPool);
+            backBuffer = null;
+            backBufferCanvas = null;
+        }
+        if (backup != null) {
+            BitmapPoolUtils.freeBitmapToPool(backup, bitmapPool);
+            backup = null;
+            backupCanvas = null;
+        }
+    }
+
+    private Rect getFrameRect(AnimatedImage.Frame frame) {
+        tempRect.set(frame.getX(), frame.getY(), frame.getX() + frame.getWidth(), frame.getY() + frame.getHeight());
+        return tempRect;
+    }
+
+    /**
+     * 从当前帧或第一帧开始按顺序合成到指定帧，必须持有 {@link #renderLock}
+     */
+    private boolean renderTo(int targetFrameIndex) {
+        int startFrameIndex = targetFrameIndex > frameIndex && frameIndex >= 0 ? frameIndex + 1 : 0;
+        for (int index = startFrameIndex; index <= targetFrameIndex; index++) {
+            if (!renderFrame(index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long getScaledFrameDuration(int index) {
+        return (long) (image.getFrame(index).getDuration() / speed);
+    }
+
+    private void scheduleRenderTask(long delay) {
+        cancelPendingRenderTask();
+        renderDeadline = SystemClock.uptimeMillis() + delay;
+        renderTaskSchedule = executor.schedule(renderTask, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelPendingRenderTask() {
+        if (renderTaskSchedule != null) {
+            renderTaskSchedule.cancel(false);
+            renderTaskSchedule = null;
+        }
+        renderDeadline = Long.MIN_VALUE;
+    }
+
+    private void notifyAnimationCompleted(final int loopNumber) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        MAIN_HANDLER.post(new Runnable() {
+            @Override
+            public void run() {
+                for (AnimationListener listener : listeners) {
+                    listener.onAnimationCompleted(loopNumber);
+                }
+            }
+        });
+    }
+
+    /**
+     * 在渲染线程中跳到指定帧，完成后从这一帧开始继续播放
+     */
+    private void seekToFrameInBackground(final int frameIndex) {
+        cancelPendingRenderTask();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (renderLock) {
+                    if (recycled || !renderTo(frameIndex)) {
+                        return;
+                    }
+                }
+                nextFrameRenderTime = SystemClock.uptimeMillis() + getScaledFrameDuration(frameIndex);
+                MAIN_HANDLER.removeCallbacks(invalidateTask);
+                MAIN_HANDLER.post(invalidateTask);
+            }
+        });
+    }
+
+    private int getFrameIndexByPosition(int position) {
+        int frameCount = image.getFrameCount();
+        int elapsed = 0;
+        for (int index = 0; index < frameCount; index++) {
+            elapsed += image.getFrame(index).getDuration();
+            if (position < elapsed) {
+                return index;
+            }
+        }
+        return frameCount - 1;
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        synchronized (bufferLock) {
+            if (recycled || buffer == null) {
+                return;
+            }
+            canvas.drawBitmap(buffer, null, getBounds(), paint);
+        }
+
+        if (running && nextFrameRenderTime != Long.MIN_VALUE) {
+            long renderDelay = Math.max(0, nextFrameRenderTime - SystemClock.uptimeMillis());
+            nextFrameRenderTime = Long.MIN_VALUE;
+            scheduleRenderTask(renderDelay);
+        }
+    }
+
+    @Override
+    public boolean setVisible(boolean visible, boolean restart) {
+        boolean changed = super.setVisible(visible, restart);
+        if (!visible && running && renderTaskSchedule != null) {
+            // 不可见时取消渲染，再次绘制时立即渲染下一帧
+            cancelPendingRenderTask();
+            nextFrameRenderTime = SystemClock.uptimeMillis();
+        }
+        return changed;
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        paint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getAlpha() {
+        return paint.getAlpha();
+    }
+
+    @Override
+    public void setColorFilter(@Nullable ColorFilter colorFilter) {
+        paint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setFilterBitmap(boolean filter) {
+        paint.setFilterBitmap(filter);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setDither(boolean dither) {
+        paint.setDither(dither);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return image.getWidth();
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return image.getHeight();
+    }
+
+    @Override
+    public void start() {
+        if (recycled || running) {
+            return;
+        }
+
+        if (animationCompleted) {
+            animationCompleted = false;
+            loopIndex = 0;
+        }
+        running = true;
+        scheduleRenderTask(Math.max(0, pausedRemainder));
+        pausedRemainder = -1;
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        long deadline = renderDeadline != Long.MIN_VALUE ? renderDeadline : nextFrameRenderTime;
+        pausedRemainder = deadline != Long.MIN_VALUE ? Math.max(0, deadline - SystemClock.uptimeMillis()) : 0;
+        cancelPendingRenderTask();
+        nextFrameRenderTime = Long.MIN_VALUE;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void recycle() {
+        if (recycled) {
+            return;
+        }
+
+        recycled = true;
+        running = false;
+        cancelPendingRenderTask();
+        MAIN_HANDLER.removeCallbacks(invalidateTask);
+        synchronized (bufferLock) {
+            // 正在合成时由渲染线程在合成结束后释放
+            if (!composing) {
+                releaseBuffers();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRecycled() {
+        return recycled;
+    }
+
+    @Override
+    public void reset() {
+        loopIndex = 0;
+        animationCompleted = false;
+        seekToFrameInBackground(0);
+    }
+
+    @Override
+    public String getComment() {
+        return null;
+    }
+
+    @Override
+    public int getLoopCount() {
+        return loopCount;
+    }
+
+    @Override
+    public void setLoopCount(int loopCount) {
+        if (loopCount < 0 || loopCount > Character.MAX_VALUE) {
+            throw new IllegalArgumentException("Loop count of range <0, 65535>");
+        }
+        this.loopCount = loopCount;
+    }
+
+    @Override
+    public int getNumberOfFrames() {
+        return image.getFrameCount();
+    }
+
+    @Override
+    public void setSpeed(float factor) {
+        if (factor <= 0f || Float.isNaN(factor)) {
+            throw new IllegalArgumentException("Speed factor is not positive");
+        }
+        this.speed = factor;
+    }
+
+    @Override
+    public void seekToFrame(int frameIndex) {
+        if (frameIndex < 0) {
+            throw new IllegalArgumentException("frameIndex is not positive");
+        }
+        seekToFrameInBackground(Math.min(frameIndex, image.getFrameCount() - 1));
+    }
+
+    @Override
+    public Bitmap seekToFrameAndGet(int frameIndex) {
+        if (frameIndex < 0) {
+            throw new IndexOutOfBoundsException("Frame index is not positive");
+        }
+        synchronized (renderLock) {
+            renderTo(Math.min(frameIndex, image.getFrameCount() - 1));
+        }
+        invalidateSelf();
+        return getCurrentFrame();
+    }
+
+    @Override
+    public Bitmap seekToPositionAndGet(int position) {
+        if (position < 0) {
+            throw new IndexOutOfBoundsException("Position is not positive");
+        }
+        return seekToFrameAndGet(getFrameIndexByPosition(position));
+    }
+
+    @Override
+    public int getFrameByteCount() {
+        return image.getWidth() * image.getHeight() * 4;
+    }
+
+    @Override
+    public long getAllocationByteCount() {
+        synchronized (bufferLock) {
+            return (buffer != null ? SketchUtils.getByteCount(buffer) : 0) + (backBuffer != null ? SketchUtils.getByteCount(backBuffer) : 0)
+                    + (backup != null ? SketchUtils.getByteCount(backup) : 0);
+        }
+    }
+
+    @Override
+    public long getMetadataAllocationByteCount() {
+        return image.getAllocationByteCount();
+    }
+
+    @Override
+    public long getInputSourceByteCount() {
+        return image.getByteCount();
+    }
+
+    @Override
+    public void getPixels(@NonNull int[] pixels) {
+        synchronized (bufferLock) {
+            if (buffer == null) {
+                throw new IllegalStateException("Can't get pixels from recycled drawable");
+            }
+            buffer.getPixels(pixels, 0, buffer.getWidth(), 0, 0, buffer.getWidth(), buffer.getHeight());
+        }
+    }
+
+    @Override
+    public int getPixel(int x, int y) {
+        if (x < 0 || x >= image.getWidth()) {
+            throw new IllegalArgumentException("x must be >= 0 and < width");
+        }
+        if (y < 0 || y >= image.getHeight()) {
+            throw new IllegalArgumentException("y must be >= 0 and < height");
+        }
+        synchronized (bufferLock) {
+            if (buffer == null) {
+                throw new IllegalStateException("Can't get pixel from recycled drawable");
+            }
+            return buffer.getPixel(x, y);
+        }
+    }
+
+    @NonNull
+    @Override
+    public Paint getPaint() {
+        return paint;
+    }
+
+    @Override
+    public void addAnimationListener(@NonNull AnimationListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public boolean removeAnimationListener(AnimationListener listener) {
+        return listeners.remove(listener);
+    }
+
+    @Override
+    public Bitmap getCurrentFrame() {
+        synchronized (bufferLock) {
+            return buffer != null ? buffer.copy(buffer.getConfig(), buffer.isMutable()) : null;
+        }
+    }
+
+    @Override
+    public int getCurrentFrameIndex() {
+        return recycled ? -1 : frameIndex;
+    }
+
+    @Override
+    public int getCurrentLoop() {
+        return recycled || loopCount == 0 ? 0 : loopIndex;
+    }
+
+    @Override
+    public boolean isAnimationCompleted() {
+        return !recycled && animationCompleted;
+    }
+
+    @Override
+    public int getFrameDuration(int index) {
+        if (index < 0 || index >= image.getFrameCount()) {
+            throw new IndexOutOfBoundsException("Frame index is out of bounds");
+        }
+        return image.getFrame(index).getDuration();
+    }
+
+    @Override
+    public long getDroppedFrameCount() {
+        return droppedFrameCount;
+    }
+
+    /**
+     * 帧本来就是按需解码后合成的，不支持帧缓存
+     *
+     * @return 始终返回 false
+     */
+    @Override
+    public boolean enableFrameCache(@NonNull FrameCacheBudget budget, boolean lowQuality) {
+        return false;
+    }
+
+    @Override
+    public void followPageVisible(boolean userVisible, boolean fromDisplayCompleted) {
+        if (userVisible) {
+            start();
+        } else {
+            if (fromDisplayCompleted) {
+                // 图片加载完了，但是页面还不可见的时候就停留着在第一帧
+                seekToFrame(0);
+                stop();
+            } else {
+                stop();
+            }
+        }
+    }
+
+    @Override
+    public void pause() {
+        stop();
+    }
+
+    @Override
+    public int getDuration() {
+        return image.getDuration();
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        int position = 0;
+        int currentFrameIndex = frameIndex;
+        for (int index = 0; index < currentFrameIndex; index++) {
+            position += image.getFrame(index).getDuration();
+        }
+        return position;
+    }
+
+    @Override
+    public void seekTo(int position) {
+        if (position < 0) {
+            throw new IllegalArgumentException("Position is not positive");
+        }
+        seekToFrameInBackground(getFrameIndexByPosition(position));
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return running;
+    }
+
+    @Override
+    public int getBufferPercentage() {
+        return 100;
+    }
+
+    @Override
+    public boolean canPause() {
+        return true;
+    }
+
+    @Override
+    public boolean canSeekBackward() {
+        return image.getFrameCount() > 1;
+    }
+
+    @Override
+    public boolean canSeekForward() {
+        return image.getFrameCount() > 1;
+    }
+
+    @Override
+    public int getAudioSessionId() {
+        return 0;
+    }
+
+    @Override
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public String getUri() {
+        return uri;
+    }
+
+    @Override
+    public int getOriginWidth() {
+        return imageAttrs.getWidth();
+    }
+
+    @Override
+    public int getOriginHeight() {
+        return imageAttrs.getHeight();
+    }
+
+    @Override
+    public String getMimeType() {
+        return imageAttrs.getMimeType();
+    }
+
+    @Override
+    public int getExifOrientation() {
+        return imageAttrs.getExifOrientation();
+    }
+
+    @Override
+    public int getByteCount() {
+        return (int) getAllocationByteCount();
+    }
+
+    @Override
+    public Bitmap.Config getBitmapConfig() {
+        return Bitmap.Config.ARGB_8888;
+    }
+
+    @Override
+    public ImageFrom getImageFrom() {
+        return imageFrom;
+    }
+
+    @Override
+    public String getInfo() {
+        synchronized (bufferLock) {
+            return SketchUtils.makeImageInfo(NAME, getOriginWidth(), getOriginHeight(), getMimeType(),
+                    getExifOrientation(), buffer, getAllocationByteCount(), null);
+        }
+    }
+}
@@ -17,15 +17,26 @@
 package me.panpf.sketch.drawable;
 
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Rect;
 import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import androidx.annotation.NonNull;
 
+import me.panpf.sketch.cache.BitmapPool;
+import me.panpf.sketch.decode.ImageOrientationCorrector;
 import me.panpf.sketch.request.ImageFrom;
+import me.panpf.sketch.util.ExifInterface;
 
 public class SketchBitmapDrawable extends BitmapDrawable implements SketchRefDrawable {
 
     private SketchRefBitmap refBitmap;
     private ImageFrom imageFrom;
 
+    private Matrix drawMatrix;
+    private Rect drawMatrixBounds;
+
     public SketchBitmapDrawable(SketchRefBitmap refBitmap, ImageFrom imageFrom) {
         super(null, refBitmap.getBitmap());
 
@@ -41,6 +52,70 @@ public class SketchBitmapDrawable extends BitmapDrawable implements SketchRefDra
         setTargetDensity(refBitmap.getBitmap().getDensity());
     }
 
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        if (!hasPendingOrientation()) {
+            super.draw(canvas);
+            return;
+        }
+
+        Bitmap bitmap = getBitmap();
+        Rect bounds = getBounds();
+        if (bitmap == null || bitmap.isRecycled() || bounds.isEmpty()) {
+            return;
+        }
+
+        // 解码时没有纠正方向，在这里纠正后再拉伸充满 bounds
+        if (drawMatrix == null) {
+            drawMatrix = new Matrix();
+            drawMatrixBounds = new Rect();
+        }
+        if (!drawMatrixBounds.equals(bounds)) {
+            int exifOrientation = refBitmap.getPendingExifOrientation();
+            ImageOrientationCorrector.initializeMatrixForExifOrientation(exifOrientation, bitmap.getWidth(), bitmap.getHeight(), drawMatrix);
+            boolean swapSize = ImageOrientationCorrector.isSwapSize(exifOrientation);
+            float imageWidth = swapSize ? bitmap.getHeight() : bitmap.getWidth();
+            float imageHeight = swapSize ? bitmap.getWidth() : bitmap.getHeight();
+            drawMatrix.postScale(bounds.width() / imageWidth, bounds.height() / imageHeight);
+            drawMatrix.postTranslate(bounds.left, bounds.top);
+            drawMatrixBounds.set(bounds);
+        }
+        canvas.drawBitmap(bitmap, drawMatrix, getPaint());
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return swapSize() ? super.getIntrinsicHeight() : super.getIntrinsicWidth();
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return swapSize() ? super.getIntrinsicWidth() : super.getIntrinsicHeight();
+    }
+
+    /**
+     * 获取还没有纠正的图片方向，{@link #draw(Canvas)} 时会通过 Matrix 纠正，但 {@link #getBitmap()} 返回的依然是没有纠正的图片，
+     * 需要纠正好方向的 {@link Bitmap} 时可以通过 {@link me.panpf.sketch.util.SketchUtils#drawableToBitmap(Drawable, boolean, BitmapPool)} 绘制一份
+     *
+     * @return {@link ExifInterface#ORIENTATION_UNDEFINED}：不需要纠正
+     */
+    public int getPendingExifOrientation() {
+        return refBitmap.getPendingExifOrientation();
+    }
+
+    private boolean hasPendingOrientation() {
+        int exifOrientation = refBitmap.getPendingExifOrientation();
+        return exifOrientation != ExifInterface.ORIENTATION_UNDEFINED && exifOrientation != ExifInterface.ORIENTATION_NORMAL;
+    }
+
+    private boolean swapSize() {
+        return hasPendingOrientation() && ImageOrientationCorrector.isSwapSize(refBitmap.getPendingExifOrientation());
+    }
+
+    SketchRefBitmap getRefBitmap() {
+        return refBitmap;
+    }
+
     @Override
     public String getKey() {
         return refBitmap.getKey();
@@ -28,6 +28,8 @@ import android.widget.MediaController;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 
+import me.panpf.sketch.cache.FrameCacheBudget;
+
 public interface SketchGifDrawable extends SketchDrawable, Animatable, MediaController.MediaPlayerControl {
     /**
      * Frees any memory allocated native way.
@@ -235,6 +237,21 @@ public interface SketchGifDrawable extends SketchDrawable, Animatable, MediaCont
      */
     int getFrameDuration(@IntRange(from = 0) final int index);
 
+    /**
+     * 获取因渲染线程繁忙而跳过的帧数
+     */
+    long getDroppedFrameCount();
+
+    /**
+     * 开启帧缓存，第一遍播放时缓存所有帧，之后循环播放时直接使用缓存的帧，不再重复解码。只播放一遍的 gif 不能开启。
+     * 从缓存中播放时 {@link #getCurrentLoop()}、{@link #isAnimationCompleted()} 和 {@link AnimationListener} 依然有效，也会遵守循环次数
+     *
+     * @param budget     帧缓存的全局内存预算，帧所需的内存总和超过单个动图的最大容量或剩余容量不足时无法开启
+     * @param lowQuality 没有透明度的 gif 用 {@link Bitmap.Config#RGB_565} 存储帧
+     * @return true：开启成功
+     */
+    boolean enableFrameCache(@NonNull FrameCacheBudget budget, boolean lowQuality);
+
     /**
      * 跟随页面是否可见停止或播放gif
      *
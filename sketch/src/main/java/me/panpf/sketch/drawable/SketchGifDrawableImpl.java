@@ -31,13 +31,16 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 import me.panpf.sketch.cache.BitmapPool;
 import me.panpf.sketch.cache.BitmapPoolUtils;
+import me.panpf.sketch.cache.FrameCacheBudget;
 import me.panpf.sketch.decode.ImageAttrs;
 import me.panpf.sketch.request.ImageFrom;
 import me.panpf.sketch.util.SketchUtils;
 import pl.droidsonroids.gif.GifDrawable;
+import pl.droidsonroids.gif.GifRenderingExecutor;
 
 /**
  * 增加了从BitmapPool中寻找可复用Bitmap的功能以及图片的信息
@@ -52,6 +55,7 @@ public class SketchGifDrawableImpl extends GifDrawable implements SketchGifDrawa
     private ImageFrom imageFrom;
 
     private BitmapPool bitmapPool;
+    private volatile GifFrameCache frameCache;
 
     private Map<AnimationListener, pl.droidsonroids.gif.AnimationListener> listenerMap;
 
@@ -155,6 +159,20 @@ public class SketchGifDrawableImpl extends GifDrawable implements SketchGifDrawa
         this.bitmapPool = bitmapPool;
     }
 
+    /**
+     * 设置所有 gif 共享的渲染线程数量
+     */
+    static void setRenderingWorkerCount(int workerCount) {
+        GifRenderingExecutor.setWorkerCount(workerCount);
+    }
+
+    /**
+     * 获取所有 gif 共享的渲染线程池，动图 webp 和 apng 也在这里渲染
+     */
+    static ScheduledThreadPoolExecutor getRenderingExecutor() {
+        return GifRenderingExecutor.getInstance();
+    }
+
     @Override
     protected Bitmap makeBitmap(int width, int height, Bitmap.Config config) {
         if (bitmapPool != null) {
@@ -163,8 +181,34 @@ public class SketchGifDrawableImpl extends GifDrawable implements SketchGifDrawa
         return super.makeBitmap(width, height, config);
     }
 
+    @Override
+    protected long renderNextFrame() {
+        // 父类的构造函数里也会调用这个方法，此时 frameCache 还是 null
+        GifFrameCache frameCache = this.frameCache;
+        if (frameCache == null) {
+            return super.renderNextFrame();
+        }
+
+        synchronized (frameCache) {
+            if (frameCache.isPlaying()) {
+                return frameCache.renderNextFrame(mBuffer, getLoopCount());
+            }
+
+            long duration = super.renderNextFrame();
+            frameCache.onFrameDecoded(super.getCurrentFrameIndex(), duration, mBuffer);
+            return duration;
+        }
+    }
+
     @Override
     protected void recycleBitmap() {
+        GifFrameCache frameCache = this.frameCache;
+        if (frameCache != null) {
+            synchronized (frameCache) {
+                frameCache.release();
+            }
+        }
+
         if (mBuffer == null) {
             return;
         }
@@ -219,7 +263,8 @@ public class SketchGifDrawableImpl extends GifDrawable implements SketchGifDrawa
 
     @Override
     public int getByteCount() {
-        return (int) getAllocationByteCount();
+        GifFrameCache frameCache = this.frameCache;
+        return (int) getAllocationByteCount() + (frameCache != null ? frameCache.getByteCount() : 0);
     }
 
     @Override
@@ -254,6 +299,118 @@ public class SketchGifDrawableImpl extends GifDrawable implements SketchGifDrawa
         return animationListener != null && removeAnimationListener(animationListener);
     }
 
+    @Override
+    public boolean enableFrameCache(@NonNull FrameCacheBudget budget, boolean lowQuality) {
+        if (frameCache != null) {
+            return true;
+        }
+        if (bitmapPool == null || isRecycled()) {
+            return false;
+        }
+
+        // 构造时已经渲染了第一帧，但不知道它的持续时间，所以第一帧要等到下一轮解码时才会被缓存
+        frameCache = GifFrameCache.create(budget, bitmapPool, mBuffer, getNumberOfFrames(), getLoopCount(), lowQuality,
+                super.getCurrentFrameIndex(), super.getCurrentLoop());
+        return frameCache != null;
+    }
+
+    @Override
+    public int getCurrentFrameIndex() {
+        GifFrameCache frameCache = this.frameCache;
+        if (frameCache != null) {
+            synchronized (frameCache) {
+                if (frameCache.isPlaying()) {
+                    return frameCache.getCurrentFrameIndex();
+                }
+            }
+        }
+        return super.getCurrentFrameIndex();
+    }
+
+    @Override
+    public int getCurrentLoop() {
+        // 从缓存中播放时解码器不会前进，它记录的轮次已经过时了，和解码器一样无限循环时返回 0
+        GifFrameCache frameCache = this.frameCache;
+        if (frameCache != null) {
+            synchronized (frameCache) {
+                return getLoopCount() != 0 ? frameCache.getCurrentLoop() : 0;
+            }
+        }
+        return super.getCurrentLoop();
+    }
+
+    @Override
+    public boolean isAnimationCompleted() {
+        GifFrameCache frameCache = this.frameCache;
+        if (frameCache != null) {
+            synchronized (frameCache) {
+                if (frameCache.isPlaying()) {
+                    return frameCache.isCompleted();
+                }
+            }
+        }
+        return super.isAnimationCompleted();
+    }
+
+    @Override
+    public void reset() {
+        GifFrameCache frameCache = this.frameCache;
+        if (frameCache != null) {
+            synchronized (frameCache) {
+                frameCache.reset();
+            }
+        }
+        super.reset();
+    }
+
+    @Override
+    public void seekTo(int position) {
+        detachFrameCache();
+        super.seekTo(position);
+    }
+
+    @Override
+    public void seekToFrame(int frameIndex) {
+        detachFrameCache();
+        super.seekToFrame(frameIndex);
+    }
+
+    @Override
+    public Bitmap seekToFrameAndGet(int frameIndex) {
+        detachFrameCache();
+        return super.seekToFrameAndGet(frameIndex);
+    }
+
+    @Override
+    public Bitmap seekToPositionAndGet(int position) {
+        detachFrameCache();
+        return super.seekToPositionAndGet(position);
+    }
+
+    @Override
+    public void setSpeed(float factor) {
+        super.setSpeed(factor);
+
+        GifFrameCache frameCache = this.frameCache;
+        if (frameCache != null) {
+            synchronized (frameCache) {
+                frameCache.invalidateDurations();
+            }
+        }
+    }
+
+    /**
+     * 解码器的进度要被改变了，帧缓存先跟随解码器
+     */
+    private void detachFrameCache() {
+        GifFrameCache frameCache = this.frameCache;
+        if (frameCache != null) {
+            synchronized (frameCache) {
+                frameCache.detach();
+            }
+        }
+    }
+
     @Override
     public void followPageVisible(boolean userVisible, boolean fromDisplayCompleted) {
         if (userVisible) {
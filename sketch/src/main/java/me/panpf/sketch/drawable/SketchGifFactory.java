@@ -29,6 +29,7 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 
 import me.panpf.sketch.cache.BitmapPool;
+import me.panpf.sketch.decode.AnimatedImage;
 import me.panpf.sketch.decode.ImageAttrs;
 import me.panpf.sketch.decode.NotFoundGifLibraryException;
 import me.panpf.sketch.request.ImageFrom;
@@ -60,6 +61,17 @@ public class SketchGifFactory {
         }
     }
 
+    /**
+     * 设置所有 gif 共享的渲染线程数量，默认为 CPU 核数的一半（1 到 4 之间）。多个 gif 同时播放时各自按下一帧的时间排队，线程繁忙时会跳帧而不是越来越慢
+     *
+     * @param workerCount 渲染线程数量，至少为 1
+     */
+    @SuppressWarnings("unused")
+    public static void setRenderingWorkerCount(int workerCount) throws NotFoundGifLibraryException {
+        assetExistGifLibrary();
+        SketchGifDrawableImpl.setRenderingWorkerCount(workerCount);
+    }
+
     @SuppressWarnings("unused")
     public static SketchGifDrawable createGifDrawable(String key, String uri, ImageAttrs imageAttrs, ImageFrom imageFrom,
                                                       BitmapPool bitmapPool, AssetFileDescriptor afd) throws IOException, NotFoundGifLibraryException {
@@ -124,4 +136,13 @@ public class SketchGifFactory {
         assetExistGifLibrary();
         return new SketchGifDrawableImpl(key, uri, imageAttrs, imageFrom, bitmapPool, stream);
     }
+
+    /**
+     * 创建动图 webp 或 apng 的 Drawable，渲染时跟 gif 共用渲染线程，因此也需要集成 sketch-gif
+     */
+    public static SketchGifDrawable createAnimatedImageDrawable(String key, String uri, ImageAttrs imageAttrs, ImageFrom imageFrom,
+                                                                BitmapPool bitmapPool, AnimatedImage image) throws IOException, NotFoundGifLibraryException {
+        assetExistGifLibrary();
+        return new SketchAnimatedImageDrawable(key, uri, imageAttrs, imageFrom, bitmapPool, image, SketchGifDrawableImpl.getRenderingExecutor());
+    }
 }
@@ -17,11 +17,18 @@
 package me.panpf.sketch.drawable;
 
 import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import java.util.Iterator;
+import java.util.LinkedList;
 
 import me.panpf.sketch.SLog;
 import me.panpf.sketch.cache.BitmapPool;
 import me.panpf.sketch.cache.BitmapPoolUtils;
 import me.panpf.sketch.decode.ImageAttrs;
+import me.panpf.sketch.request.ShapeSize;
+import me.panpf.sketch.shaper.ImageShaper;
+import me.panpf.sketch.util.ExifInterface;
 import me.panpf.sketch.util.SketchUtils;
 
 /**
@@ -29,12 +36,15 @@ import me.panpf.sketch.util.SketchUtils;
  */
 public class SketchRefBitmap extends SketchBitmap {
     private static final String NAME = "SketchRefBitmap";
+    private static final int MAX_SHAPE_STATE_COUNT = 4;
 
     private int memoryCacheRefCount;  // 内存缓存引用
     private int displayRefCount;    // 真正显示引用
     private int waitingUseRefCount; // 等待使用引用
 
     private BitmapPool bitmapPool;
+    private LinkedList<SketchShapeBitmapDrawable.ShapeState> shapeStates;
+    private int pendingExifOrientation = ExifInterface.ORIENTATION_UNDEFINED;
 
     public SketchRefBitmap(Bitmap bitmap, String key, String uri, ImageAttrs imageAttrs, BitmapPool bitmapPool) {
         super(bitmap, key, uri, imageAttrs);
@@ -107,6 +117,53 @@ public class SketchRefBitmap extends SketchBitmap {
         }
     }
 
+    /**
+     * 获取 bitmap 还没有纠正的图片方向，{@link SketchBitmapDrawable} 和 {@link SketchShapeBitmapDrawable} 绘制时会通过 Matrix 纠正
+     */
+    public int getPendingExifOrientation() {
+        return pendingExifOrientation;
+    }
+
+    public void setPendingExifOrientation(int pendingExifOrientation) {
+        this.pendingExifOrientation = pendingExifOrientation;
+    }
+
+    /**
+     * 查找可以共用的 {@link SketchShapeBitmapDrawable} 绘制状态
+     */
+    synchronized SketchShapeBitmapDrawable.ShapeState findShapeState(ImageShaper shaper, ShapeSize shapeSize, Rect bounds) {
+        if (shapeStates == null) {
+            return null;
+        }
+        Iterator<SketchShapeBitmapDrawable.ShapeState> iterator = shapeStates.iterator();
+        while (iterator.hasNext()) {
+            SketchShapeBitmapDrawable.ShapeState shapeState = iterator.next();
+            if (shapeState.match(shaper, shapeSize, bounds)) {
+                // 移到最前面，最久没用的会被先丢掉
+                iterator.remove();
+                shapeStates.addFirst(shapeState);
+                return shapeState;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 保存 {@link SketchShapeBitmapDrawable} 绘制状态，最多保存 {@link #MAX_SHAPE_STATE_COUNT} 个
+     */
+    synchronized void putShapeState(SketchShapeBitmapDrawable.ShapeState shapeState) {
+        if (bitmap == null) {
+            return;
+        }
+        if (shapeStates == null) {
+            shapeStates = new LinkedList<>();
+        }
+        shapeStates.addFirst(shapeState);
+        if (shapeStates.size() > MAX_SHAPE_STATE_COUNT) {
+            shapeStates.removeLast();
+        }
+    }
+
     /**
      * 引用变化时执行此方法
      *
@@ -125,6 +182,8 @@ public class SketchRefBitmap extends SketchBitmap {
 
             BitmapPoolUtils.freeBitmapToPool(bitmap, bitmapPool);
             bitmap = null;
+            // BitmapShader 引用着 bitmap，要一起丢掉
+            shapeStates = null;
         } else {
             if (SLog.isLoggable(SLog.LEVEL_DEBUG | SLog.TYPE_CACHE)) {
                 SLog.d(NAME, "Can't free. %s. references(%d,%d,%d). %s",
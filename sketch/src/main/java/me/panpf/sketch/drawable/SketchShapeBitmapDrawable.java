@@ -29,8 +29,11 @@ import android.graphics.Shader;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.widget.ImageView;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import me.panpf.sketch.Sketch;
+import me.panpf.sketch.decode.ImageOrientationCorrector;
 import me.panpf.sketch.decode.ResizeCalculator;
 import me.panpf.sketch.request.ImageFrom;
 import me.panpf.sketch.request.ShapeSize;
@@ -39,6 +42,8 @@ import me.panpf.sketch.util.ExifInterface;
 
 /**
  * 可以改变 {@link BitmapDrawable} 的形状和尺寸
+ * <p>
+ * {@link BitmapShader} 等绘制状态保存在 {@link SketchRefBitmap} 上，同一张图片以同样的形状和尺寸显示在多个地方时共用一份
  */
 public class SketchShapeBitmapDrawable extends Drawable implements SketchRefDrawable {
     private static final int DEFAULT_PAINT_FLAGS = Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG;
@@ -48,11 +53,11 @@ public class SketchShapeBitmapDrawable extends Drawable implements SketchRefDraw
     private ImageShaper shaper;
 
     private Paint paint;
-    private Rect srcRect;
-    private BitmapShader bitmapShader;
+    private ShapeState shapeState;
 
     private SketchRefDrawable refDrawable;
     private SketchDrawable sketchDrawable;
+    private SketchRefBitmap refBitmap;
 
     private ResizeCalculator resizeCalculator;
 
@@ -68,12 +73,8 @@ public class SketchShapeBitmapDrawable extends Drawable implements SketchRefDraw
 
         this.bitmapDrawable = bitmapDrawable;
         this.paint = new Paint(DEFAULT_PAINT_FLAGS);
-        this.srcRect = new Rect();
         this.resizeCalculator = Sketch.with(context).getConfiguration().getResizeCalculator();
 
-        setShapeSize(shapeSize);
-        setShaper(shaper);
-
         if (bitmapDrawable instanceof SketchRefDrawable) {
             this.refDrawable = (SketchRefDrawable) bitmapDrawable;
         }
@@ -81,6 +82,13 @@ public class SketchShapeBitmapDrawable extends Drawable implements SketchRefDraw
         if (bitmapDrawable instanceof SketchDrawable) {
             this.sketchDrawable = (SketchDrawable) bitmapDrawable;
         }
+
+        if (bitmapDrawable instanceof SketchBitmapDrawable) {
+            this.refBitmap = ((SketchBitmapDrawable) bitmapDrawable).getRefBitmap();
+        }
+
+        this.shapeSize = shapeSize;
+        this.shaper = shaper;
     }
 
     @SuppressWarnings("unused")
@@ -101,10 +109,18 @@ public class SketchShapeBitmapDrawable extends Drawable implements SketchRefDraw
             return;
         }
 
-        if (shaper != null && bitmapShader != null) {
+        ShapeState shapeState = this.shapeState;
+        if (shapeState == null) {
+            return;
+        }
+
+        if (shaper != null && shapeState.bitmapShader != null) {
             shaper.draw(canvas, paint, bounds);
+        } else if (shapeState.bitmapShader != null) {
+            // 需要纠正方向时也通过 BitmapShader 绘制
+            canvas.drawRect(bounds, paint);
         } else {
-            canvas.drawBitmap(bitmap, srcRect != null && !srcRect.isEmpty() ? srcRect : null, bounds, paint);
+            canvas.drawBitmap(bitmap, !shapeState.srcRect.isEmpty() ? shapeState.srcRect : null, bounds, paint);
         }
     }
 
@@ -164,40 +180,33 @@ public class SketchShapeBitmapDrawable extends Drawable implements SketchRefDraw
     @Override
     protected void onBoundsChange(Rect bounds) {
         super.onBoundsChange(bounds);
+        updateShapeState();
+    }
 
-        int boundsWidth = bounds.width();
-        int boundsHeight = bounds.height();
-        int bitmapWidth = bitmapDrawable.getBitmap().getWidth();
-        int bitmapHeight = bitmapDrawable.getBitmap().getHeight();
-
-        if (boundsWidth == 0 || boundsHeight == 0 || bitmapWidth == 0 || bitmapHeight == 0) {
-            srcRect.setEmpty();
-        } else if ((float) bitmapWidth / (float) bitmapHeight == (float) boundsWidth / (float) boundsHeight) {
-            srcRect.set(0, 0, bitmapWidth, bitmapHeight);
-        } else {
-            ImageView.ScaleType scaleType = shapeSize != null ? shapeSize.getScaleType() : ImageView.ScaleType.FIT_CENTER;
-            ResizeCalculator.Mapping mapping = resizeCalculator.calculator(bitmapWidth, bitmapHeight, boundsWidth, boundsHeight, scaleType, true);
-            srcRect.set(mapping.srcRect);
+    /**
+     * 找一个可以共用的 {@link ShapeState}，没有的话就创建一个，同一张图片以同样的形状和尺寸显示在多个地方时只会创建一次
+     */
+    private void updateShapeState() {
+        Rect bounds = getBounds();
+        Bitmap bitmap = bitmapDrawable.getBitmap();
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
         }
 
-        if (shaper != null && bitmapShader != null) {
-            float widthScale = (float) boundsWidth / bitmapWidth;
-            float heightScale = (float) boundsHeight / bitmapHeight;
-
-            // 缩放图片充满bounds
-            Matrix shaderMatrix = new Matrix();
-            float scale = Math.max(widthScale, heightScale);
-            shaderMatrix.postScale(scale, scale);
-
-            // 显示图片中间部分
-            if (srcRect != null && !srcRect.isEmpty()) {
-                shaderMatrix.postTranslate(-srcRect.left * scale, -srcRect.top * scale);
+        ShapeState shapeState = this.shapeState;
+        if (shapeState == null || !shapeState.match(shaper, shapeSize, bounds)) {
+            shapeState = refBitmap != null ? refBitmap.findShapeState(shaper, shapeSize, bounds) : null;
+            if (shapeState == null) {
+                int exifOrientation = refBitmap != null ? refBitmap.getPendingExifOrientation() : ExifInterface.ORIENTATION_UNDEFINED;
+                shapeState = new ShapeState(bitmap, exifOrientation, shaper, shapeSize, bounds, resizeCalculator);
+                if (refBitmap != null) {
+                    refBitmap.putShapeState(shapeState);
+                }
             }
-
-            shaper.onUpdateShaderMatrix(shaderMatrix, bounds, bitmapWidth, bitmapHeight, shapeSize, srcRect);
-            bitmapShader.setLocalMatrix(shaderMatrix);
-            paint.setShader(bitmapShader);
+            this.shapeState = shapeState;
         }
+
+        paint.setShader(shapeState.bitmapShader);
     }
 
     @SuppressWarnings("unused")
@@ -205,6 +214,16 @@ public class SketchShapeBitmapDrawable extends Drawable implements SketchRefDraw
         return bitmapDrawable;
     }
 
+    /**
+     * 获取 {@link #getBitmapDrawable()} 中的图片还没有纠正的方向，绘制时会纠正，但直接取出的 {@link Bitmap} 是没有纠正的
+     *
+     * @return {@link ExifInterface#ORIENTATION_UNDEFINED}：不需要纠正
+     */
+    @SuppressWarnings("unused")
+    public int getPendingExifOrientation() {
+        return refBitmap != null ? refBitmap.getPendingExifOrientation() : ExifInterface.ORIENTATION_UNDEFINED;
+    }
+
     @SuppressWarnings("unused")
     public ShapeSize getShapeSize() {
         return shapeSize;
@@ -212,6 +231,7 @@ public class SketchShapeBitmapDrawable extends Drawable implements SketchRefDraw
 
     public void setShapeSize(ShapeSize shapeSize) {
         this.shapeSize = shapeSize;
+        updateShapeState();
         invalidateSelf();
     }
 
@@ -222,19 +242,7 @@ public class SketchShapeBitmapDrawable extends Drawable implements SketchRefDraw
 
     public void setShaper(ImageShaper shaper) {
         this.shaper = shaper;
-
-        if (this.shaper != null) {
-            if (bitmapShader == null) {
-                bitmapShader = new BitmapShader(bitmapDrawable.getBitmap(), Shader.TileMode.REPEAT, Shader.TileMode.REPEAT);
-                paint.setShader(bitmapShader);
-            }
-        } else {
-            if (bitmapShader != null) {
-                bitmapShader = null;
-                paint.setShader(null);
-            }
-        }
-
+        updateShapeState();
         invalidateSelf();
     }
 
@@ -306,4 +314,83 @@ public class SketchShapeBitmapDrawable extends Drawable implements SketchRefDraw
     public boolean isRecycled() {
         return refDrawable == null || refDrawable.isRecycled();
     }
-}
\ No newline at end of file
+
+    /**
+     * 绘制用的不可变状态，包括 {@link BitmapShader} 和它的 {@link Matrix}，显示同一张图片并且形状、尺寸都一样的 {@link SketchShapeBitmapDrawable} 可以共用
+     */
+    static class ShapeState {
+        @Nullable
+        private final ImageShaper shaper;
+        @Nullable
+        private final ShapeSize shapeSize;
+        @NonNull
+        private final Rect bounds;
+        @NonNull
+        private final Rect srcRect = new Rect();
+        @Nullable
+        private final BitmapShader bitmapShader;
+
+        ShapeState(@NonNull Bitmap bitmap, int exifOrientation, @Nullable ImageShaper shaper, @Nullable ShapeSize shapeSize,
+                   @NonNull Rect bounds, @NonNull ResizeCalculator resizeCalculator) {
+            this.shaper = shaper;
+            this.shapeSize = shapeSize;
+            this.bounds = new Rect(bounds);
+
+            int boundsWidth = bounds.width();
+            int boundsHeight = bounds.height();
+            // 还没纠正方向的话按纠正后的尺寸计算
+            boolean rotate = exifOrientation != ExifInterface.ORIENTATION_UNDEFINED && exifOrientation != ExifInterface.ORIENTATION_NORMAL;
+            boolean swapSize = rotate && ImageOrientationCorrector.isSwapSize(exifOrientation);
+            int bitmapWidth = swapSize ? bitmap.getHeight() : bitmap.getWidth();
+            int bitmapHeight = swapSize ? bitmap.getWidth() : bitmap.getHeight();
+
+            if (boundsWidth == 0 || boundsHeight == 0 || bitmapWidth == 0 || bitmapHeight == 0) {
+                srcRect.setEmpty();
+            } else if ((float) bitmapWidth / (float) bitmapHeight == (float) boundsWidth / (float) boundsHeight) {
+                srcRect.set(0, 0, bitmapWidth, bitmapHeight);
+            } else {
+                ImageView.ScaleType scaleType = shapeSize != null ? shapeSize.getScaleType() : ImageView.ScaleType.FIT_CENTER;
+                ResizeCalculator.Mapping mapping = resizeCalculator.calculator(bitmapWidth, bitmapHeight, boundsWidth, boundsHeight, scaleType, true);
+                srcRect.set(mapping.srcRect);
+            }
+
+            if (shaper != null || rotate) {
+                bitmapShader = new BitmapShader(bitmap, Shader.TileMode.REPEAT, Shader.TileMode.REPEAT);
+                if (boundsWidth != 0 && boundsHeight != 0 && bitmapWidth != 0 && bitmapHeight != 0) {
+                    float widthScale = (float) boundsWidth / bitmapWidth;
+                    float heightScale = (float) boundsHeight / bitmapHeight;
+
+                    // 缩放图片充满bounds
+                    Matrix shaderMatrix = new Matrix();
+                    if (rotate) {
+                        ImageOrientationCorrector.initializeMatrixForExifOrientation(exifOrientation, bitmap.getWidth(), bitmap.getHeight(), shaderMatrix);
+                    }
+                    float scale = Math.max(widthScale, heightScale);
+                    shaderMatrix.postScale(scale, scale);
+
+                    // 显示图片中间部分
+                    if (!srcRect.isEmpty()) {
+                        shaderMatrix.postTranslate(-srcRect.left * scale, -srcRect.top * scale);
+                    }
+
+                    if (shaper != null) {
+                        shaper.onUpdateShaderMatrix(shaderMatrix, bounds, bitmapWidth, bitmapHeight, shapeSize, srcRect);
+                    }
+                    bitmapShader.setLocalMatrix(shaderMatrix);
+                }
+            } else {
+                bitmapShader = null;
+            }
+        }
+
+        boolean match(@Nullable ImageShaper shaper, @Nullable ShapeSize shapeSize, @NonNull Rect bounds) {
+            if (this.shaper != shaper || !this.bounds.equals(bounds)) {
+                return false;
+            }
+            if (this.shapeSize == null || shapeSize == null) {
+                return this.shapeSize == shapeSize;
+            }
+            return this.shapeSize.equals(shapeSize) && this.shapeSize.getScaleType() == shapeSize.getScaleType();
+        }
+    }
+}
@@ -62,6 +62,7 @@ public class ImageDownloader {
             diskCacheEditLock = diskCache.getEditLock(diskCacheKey);
         }
         if (diskCacheEditLock != null) {
+            request.setStatus(BaseRequest.Status.WAIT_DISK_CACHE_LOCK);
             diskCacheEditLock.lock();
         }
 
@@ -266,6 +267,7 @@ public class ImageDownloader {
         int completedLength;
         try {
             completedLength = readData(request, inputStream, outputStream, (int) contentLength);
+            request.getTrace().setDownloadBytes(completedLength);
         } catch (IOException e) {
             if (diskCacheEditor != null) {
                 diskCacheEditor.abort();
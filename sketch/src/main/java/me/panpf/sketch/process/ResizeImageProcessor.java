@@ -18,33 +18,53 @@ package me.panpf.sketch.process;
 
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import me.panpf.sketch.Sketch;
 import me.panpf.sketch.cache.BitmapPool;
+import me.panpf.sketch.decode.ImageOrientationCorrector;
 import me.panpf.sketch.decode.ResizeCalculator;
 import me.panpf.sketch.request.Resize;
+import me.panpf.sketch.util.ExifInterface;
 
 public class ResizeImageProcessor implements ImageProcessor {
 
     @NonNull
     @Override
     public Bitmap process(@NonNull Sketch sketch, @NonNull Bitmap bitmap, @Nullable Resize resize, boolean lowQualityImage) {
+        return process(sketch, bitmap, resize, lowQualityImage, ExifInterface.ORIENTATION_UNDEFINED);
+    }
+
+    /**
+     * 修改尺寸的同时纠正图片方向，只需要一次绘制，不用先创建一张纠正方向后的同样大的图片
+     *
+     * @param exifOrientation 还没有纠正的图片方向
+     */
+    @NonNull
+    public Bitmap process(@NonNull Sketch sketch, @NonNull Bitmap bitmap, @Nullable Resize resize, boolean lowQualityImage, int exifOrientation) {
         if (bitmap.isRecycled()) {
             return bitmap;
         }
 
+        ImageOrientationCorrector orientationCorrector = sketch.getConfiguration().getOrientationCorrector();
+        boolean rotate = orientationCorrector.hasRotate(exifOrientation);
+        boolean swapSize = rotate && ImageOrientationCorrector.isSwapSize(exifOrientation);
+        int imageWidth = swapSize ? bitmap.getHeight() : bitmap.getWidth();
+        int imageHeight = swapSize ? bitmap.getWidth() : bitmap.getHeight();
+
         if (resize == null || resize.getWidth() == 0 || resize.getHeight() == 0 ||
-                (bitmap.getWidth() == resize.getWidth() && bitmap.getHeight() == resize.getHeight())) {
-            return bitmap;
+                (imageWidth == resize.getWidth() && imageHeight == resize.getHeight())) {
+            return rotate ? rotate(sketch, bitmap, exifOrientation) : bitmap;
         }
 
         ResizeCalculator resizeCalculator = sketch.getConfiguration().getResizeCalculator();
-        ResizeCalculator.Mapping mapping = resizeCalculator.calculator(bitmap.getWidth(), bitmap.getHeight(),
+        ResizeCalculator.Mapping mapping = resizeCalculator.calculator(imageWidth, imageHeight,
                 resize.getWidth(), resize.getHeight(), resize.getScaleType(), resize.getMode() == Resize.Mode.EXACTLY_SAME);
         if (mapping == null) {
-            return bitmap;
+            return rotate ? rotate(sketch, bitmap, exifOrientation) : bitmap;
         }
 
         Bitmap.Config config = bitmap.getConfig();
@@ -56,11 +76,31 @@ public class ResizeImageProcessor implements ImageProcessor {
         Bitmap resizeBitmap = bitmapPool.getOrMake(mapping.imageWidth, mapping.imageHeight, config);
 
         Canvas canvas = new Canvas(resizeBitmap);
-        canvas.drawBitmap(bitmap, mapping.srcRect, mapping.destRect, null);
+        if (rotate) {
+            // 先纠正方向，再把 srcRect 映射到 destRect
+            Matrix matrix = new Matrix();
+            ImageOrientationCorrector.initializeMatrixForExifOrientation(exifOrientation, bitmap.getWidth(), bitmap.getHeight(), matrix);
+            matrix.postTranslate(-mapping.srcRect.left, -mapping.srcRect.top);
+            matrix.postScale((float) mapping.destRect.width() / mapping.srcRect.width(),
+                    (float) mapping.destRect.height() / mapping.srcRect.height());
+            matrix.postTranslate(mapping.destRect.left, mapping.destRect.top);
+
+            canvas.clipRect(mapping.destRect);
+            canvas.drawBitmap(bitmap, matrix, new Paint(ImageOrientationCorrector.PAINT_FLAGS));
+        } else {
+            canvas.drawBitmap(bitmap, mapping.srcRect, mapping.destRect, null);
+        }
 
         return resizeBitmap;
     }
 
+    @NonNull
+    private Bitmap rotate(@NonNull Sketch sketch, @NonNull Bitmap bitmap, int exifOrientation) {
+        ImageOrientationCorrector orientationCorrector = sketch.getConfiguration().getOrientationCorrector();
+        Bitmap rotateBitmap = orientationCorrector.rotate(bitmap, exifOrientation, sketch.getConfiguration().getBitmapPool());
+        return rotateBitmap != null ? rotateBitmap : bitmap;
+    }
+
     @NonNull
     @Override
     public String toString() {
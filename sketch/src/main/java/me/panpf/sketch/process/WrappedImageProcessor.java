@@ -25,6 +25,7 @@ import me.panpf.sketch.Sketch;
 import me.panpf.sketch.cache.BitmapPool;
 import me.panpf.sketch.cache.BitmapPoolUtils;
 import me.panpf.sketch.request.Resize;
+import me.panpf.sketch.util.ExifInterface;
 
 /**
  * 用于组合两个 {@link ImageProcessor} 一起使用，可以无限嵌套
@@ -39,20 +40,32 @@ public abstract class WrappedImageProcessor extends ResizeImageProcessor {
     @NonNull
     @Override
     public final Bitmap process(@NonNull Sketch sketch, @NonNull Bitmap bitmap, @Nullable Resize resize, boolean lowQualityImage) {
+        return process(sketch, bitmap, resize, lowQualityImage, ExifInterface.ORIENTATION_UNDEFINED);
+    }
+
+    @NonNull
+    @Override
+    public final Bitmap process(@NonNull Sketch sketch, @NonNull Bitmap bitmap, @Nullable Resize resize, boolean lowQualityImage, int exifOrientation) {
         //noinspection ConstantConditions
         if (bitmap == null || bitmap.isRecycled()) {
             return bitmap;
         }
 
-        // resize
+        // resize，顺便纠正方向
         Bitmap newBitmap = bitmap;
+        int wrappedExifOrientation = ExifInterface.ORIENTATION_UNDEFINED;
         if (!isInterceptResize()) {
-            newBitmap = super.process(sketch, bitmap, resize, lowQualityImage);
+            newBitmap = super.process(sketch, bitmap, resize, lowQualityImage, exifOrientation);
+        } else if (wrappedProcessor != null) {
+            // 自己不 resize 就交给被包装的处理器去纠正
+            wrappedExifOrientation = exifOrientation;
+        } else {
+            newBitmap = super.process(sketch, bitmap, null, lowQualityImage, exifOrientation);
         }
 
         // wrapped
         if (wrappedProcessor != null) {
-            Bitmap wrappedBitmap = wrappedProcessor.process(sketch, newBitmap, resize, lowQualityImage);
+            Bitmap wrappedBitmap = wrappedProcessor.process(sketch, newBitmap, resize, lowQualityImage, wrappedExifOrientation);
             if (wrappedBitmap != newBitmap) {
                 if (newBitmap != bitmap) {
                     BitmapPool bitmapPool = sketch.getConfiguration().getBitmapPool();
@@ -35,6 +35,7 @@ public abstract class BaseRequest {
     private Status status;
     private ErrorCause errorCause;
     private CancelCause cancelCause;
+    private final RequestTrace trace = new RequestTrace();
 
     BaseRequest(@NonNull Sketch sketch, @NonNull String uri, @NonNull UriModel uriModel, @NonNull String key) {
         this.sketch = sketch;
@@ -90,6 +91,31 @@ public abstract class BaseRequest {
     public void setStatus(Status status) {
         if (!isFinished()) {
             this.status = status;
+            if (trace.onStatusChanged(status)) {
+                onTraceFinished();
+            }
+        }
+    }
+
+    /**
+     * 获取请求的执行轨迹
+     */
+    @NonNull
+    public RequestTrace getTrace() {
+        return trace;
+    }
+
+    private void onTraceFinished() {
+        Configuration configuration = getConfiguration();
+        configuration.getRequestMetrics().record(trace);
+
+        RequestMetricsListener listener = configuration.getRequestMetricsListener();
+        if (listener != null) {
+            try {
+                listener.onRequestFinished(this, trace);
+            } catch (Throwable e) {
+                SLog.e(getLogName(), e, String.format("RequestMetricsListener.onRequestFinished error. %s", getKey()));
+            }
         }
     }
 
@@ -166,8 +192,18 @@ public abstract class BaseRequest {
 
         WAIT_DOWNLOAD(),
 
+        /**
+         * 等待别的相同请求完成，也就是坐顺风车
+         */
+        WAIT_FREE_RIDE(),
+
         START_DOWNLOAD(),
 
+        /**
+         * 等待磁盘缓存编辑锁
+         */
+        WAIT_DISK_CACHE_LOCK(),
+
         CHECK_DISK_CACHE(),
 
         CONNECTING(),
@@ -31,6 +31,7 @@ import me.panpf.sketch.SLog;
 import me.panpf.sketch.Sketch;
 import me.panpf.sketch.SketchView;
 import me.panpf.sketch.cache.BitmapPool;
+import me.panpf.sketch.decode.ExifThumbnailDecodeHelper;
 import me.panpf.sketch.decode.ImageSizeCalculator;
 import me.panpf.sketch.decode.ImageType;
 import me.panpf.sketch.decode.ProcessedResultCacheProcessor;
@@ -162,6 +163,18 @@ public class DisplayHelper {
         return this;
     }
 
+    /**
+     * 缓存循环播放的 gif 的所有帧，循环播放时不再重复解码
+     *
+     * @return {@link DisplayHelper}. 为了支持链式调用
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public DisplayHelper cacheGifFrames() {
+        displayOptions.setCacheGifFrames(true);
+        return this;
+    }
+
     /**
      * 设置最大尺寸，用于计算 inSimpleSize 缩小图片
      *
@@ -290,6 +303,18 @@ public class DisplayHelper {
         return this;
     }
 
+    /**
+     * 开启 EXIF 缩略图模式，目标尺寸不超过 jpeg 图片 EXIF 中内嵌的缩略图并且宽高比一致时直接解码内嵌的缩略图，参考 {@link ExifThumbnailDecodeHelper}
+     *
+     * @return {@link DisplayHelper}. 为了支持链式调用
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public DisplayHelper exifThumbnailMode() {
+        displayOptions.setExifThumbnailMode(true);
+        return this;
+    }
+
     /**
      * 为了加快速度，将经过 {@link #processor(ImageProcessor)}、{@link #resize(Resize)} 或 {@link #thumbnailMode()}，下次就直接读取，参考 {@link ProcessedResultCacheProcessor}
      *
@@ -597,7 +622,7 @@ public class DisplayHelper {
         Resize resize = displayOptions.getResize();
         if (resize instanceof Resize.ByViewFixedSizeResize) {
             if (fixedSize != null) {
-                resize = new Resize(fixedSize.getWidth(), fixedSize.getHeight(), viewInfo.getScaleType(), resize.getMode());
+                resize = imageSizeCalculator.calculateImageResize(sketchView, fixedSize, viewInfo.getScaleType(), resize.getMode());
                 displayOptions.setResize(resize);
             } else {
                 throw new IllegalStateException("ImageView's width and height are not fixed," +
@@ -31,5 +31,11 @@ public interface DisplayListener extends Listener {
     @Override
     void onStarted();
 
+    /**
+     * 显示完成
+     *
+     * @param drawable 只显示不处理时 {@link me.panpf.sketch.drawable.SketchBitmapDrawable} 中的图片可能还没有纠正方向，
+     *                 直接取 getBitmap() 使用前请先检查 getPendingExifOrientation()
+     */
     void onCompleted(@NonNull Drawable drawable, @NonNull ImageFrom imageFrom, @NonNull ImageAttrs imageAttrs);
 }
\ No newline at end of file
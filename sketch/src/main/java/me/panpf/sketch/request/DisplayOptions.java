@@ -150,6 +150,15 @@ public class DisplayOptions extends LoadOptions {
         return (DisplayOptions) super.setDecodeGifImage(decodeGifImage);
     }
 
+    /**
+     * @return {@link DisplayOptions}. 为了支持链式调用
+     */
+    @NonNull
+    @Override
+    public DisplayOptions setCacheGifFrames(boolean cacheGifFrames) {
+        return (DisplayOptions) super.setCacheGifFrames(cacheGifFrames);
+    }
+
     /**
      * @return {@link DisplayOptions}. 为了支持链式调用
      */
@@ -195,6 +204,15 @@ public class DisplayOptions extends LoadOptions {
         return (DisplayOptions) super.setThumbnailMode(thumbnailMode);
     }
 
+    /**
+     * @return {@link DisplayOptions}. 为了支持链式调用
+     */
+    @NonNull
+    @Override
+    public DisplayOptions setExifThumbnailMode(boolean exifThumbnailMode) {
+        return (DisplayOptions) super.setExifThumbnailMode(exifThumbnailMode);
+    }
+
     /**
      * @return {@link DisplayOptions}. 为了支持链式调用
      */
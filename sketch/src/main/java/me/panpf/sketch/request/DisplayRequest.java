@@ -178,6 +178,7 @@ public class DisplayRequest extends LoadRequest {
 
             BitmapPool bitmapPool = getConfiguration().getBitmapPool();
             SketchRefBitmap refBitmap = new SketchRefBitmap(bitmap, getKey(), getUri(), loadResult.getImageAttrs(), bitmapPool);
+            refBitmap.setPendingExifOrientation(loadResult.getPendingExifOrientation());
 
             // 立马标记等待使用，防止刚放入内存缓存就被挤出去回收掉
             refBitmap.setIsWaitingUse(String.format("%s:waitingUse:new", getLogName()), true);
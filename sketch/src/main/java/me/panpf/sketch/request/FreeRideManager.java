@@ -131,6 +131,10 @@ public class FreeRideManager {
                 return false;
             }
 
+            // 在锁里更新状态，保证一定在顺风车主回调之前
+            if (childFreeRide instanceof BaseRequest) {
+                ((BaseRequest) childFreeRide).setStatus(BaseRequest.Status.WAIT_FREE_RIDE);
+            }
             freeRideProvider.byDisplayFreeRide(childFreeRide);
 
             if (SLog.isLoggable(SLog.LEVEL_DEBUG | SLog.TYPE_FLOW)) {
@@ -234,6 +238,10 @@ public class FreeRideManager {
                 return false;
             }
 
+            // 在锁里更新状态，保证一定在顺风车主回调之前
+            if (childFreeRide instanceof BaseRequest) {
+                ((BaseRequest) childFreeRide).setStatus(BaseRequest.Status.WAIT_FREE_RIDE);
+            }
             freeRideProvider.byDownloadFreeRide(childFreeRide);
 
             if (SLog.isLoggable(SLog.LEVEL_DEBUG | SLog.TYPE_FLOW)) {
@@ -26,6 +26,7 @@ import me.panpf.sketch.Configuration;
 import me.panpf.sketch.SLog;
 import me.panpf.sketch.Sketch;
 import me.panpf.sketch.cache.BitmapPool;
+import me.panpf.sketch.decode.ExifThumbnailDecodeHelper;
 import me.panpf.sketch.decode.ImageType;
 import me.panpf.sketch.decode.ProcessedResultCacheProcessor;
 import me.panpf.sketch.decode.ThumbnailModeDecodeHelper;
@@ -107,6 +108,18 @@ public class LoadHelper {
         return this;
     }
 
+    /**
+     * 缓存循环播放的 gif 的所有帧，循环播放时不再重复解码
+     *
+     * @return {@link LoadHelper}. 为了支持链式调用
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public LoadHelper cacheGifFrames() {
+        loadOptions.setCacheGifFrames(true);
+        return this;
+    }
+
     /**
      * 设置最大尺寸，用于计算 inSimpleSize 缩小图片
      *
@@ -235,6 +248,18 @@ public class LoadHelper {
         return this;
     }
 
+    /**
+     * 开启 EXIF 缩略图模式，目标尺寸不超过 jpeg 图片 EXIF 中内嵌的缩略图并且宽高比一致时直接解码内嵌的缩略图，参考 {@link ExifThumbnailDecodeHelper}
+     *
+     * @return {@link LoadHelper}. 为了支持链式调用
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public LoadHelper exifThumbnailMode() {
+        loadOptions.setExifThumbnailMode(true);
+        return this;
+    }
+
     /**
      * 为了加快速度，将经过 {@link #processor(ImageProcessor)}、{@link #resize(Resize)} 或 {@link #thumbnailMode()} 处理过的图片保存到磁盘缓存中，下次就直接读取，参考 {@link ProcessedResultCacheProcessor}
      *
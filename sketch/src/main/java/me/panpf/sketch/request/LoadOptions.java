@@ -24,9 +24,12 @@ import android.widget.ImageView;
 
 import me.panpf.sketch.Sketch;
 import me.panpf.sketch.cache.BitmapPool;
+import me.panpf.sketch.cache.FrameCacheBudget;
+import me.panpf.sketch.decode.ExifThumbnailDecodeHelper;
 import me.panpf.sketch.decode.ImageType;
 import me.panpf.sketch.decode.ProcessedResultCacheProcessor;
 import me.panpf.sketch.decode.ThumbnailModeDecodeHelper;
+import me.panpf.sketch.drawable.SketchGifDrawable;
 import me.panpf.sketch.process.ImageProcessor;
 import me.panpf.sketch.util.SketchUtils;
 
@@ -34,6 +37,16 @@ import me.panpf.sketch.util.SketchUtils;
  * 加载选项，适用于 {@link Sketch#load(String, LoadListener)} 方法
  */
 public class LoadOptions extends DownloadOptions {
+    private static final int KEY_STATE_MAX_WIDTH = 0;
+    private static final int KEY_STATE_MAX_HEIGHT = 1;
+    private static final int KEY_STATE_RESIZE_WIDTH = 2;
+    private static final int KEY_STATE_RESIZE_HEIGHT = 3;
+    private static final int KEY_STATE_RESIZE_SCALE_TYPE = 4;
+    private static final int KEY_STATE_RESIZE_MODE = 5;
+    private static final int KEY_STATE_BITMAP_CONFIG = 6;
+    private static final int KEY_STATE_FLAGS = 7;
+    private static final int KEY_STATE_SIZE = 8;
+
     /**
      * 新的尺寸，用于调整图片尺寸
      */
@@ -45,10 +58,15 @@ public class LoadOptions extends DownloadOptions {
     private MaxSize maxSize;
 
     /**
-     * 解码 gif 图片并自动循环播放
+     * 解码 gif 图片（以及动图 webp、apng）并自动循环播放
      */
     private boolean decodeGifImage;
 
+    /**
+     * 缓存循环播放的 gif 的所有帧，循环播放时不再重复解码，参考 {@link SketchGifDrawable#enableFrameCache(FrameCacheBudget, boolean)}
+     */
+    private boolean cacheGifFrames;
+
     /**
      * 在解码或创建 {@link Bitmap} 的时候尽量使用低质量的 {@link Bitmap.Config}，优先级低于 {@link #bitmapConfig}，参考 {@link ImageType#getConfig(boolean)}
      */
@@ -64,6 +82,11 @@ public class LoadOptions extends DownloadOptions {
      */
     private boolean thumbnailMode;
 
+    /**
+     * 开启 EXIF 缩略图模式，目标尺寸不超过 jpeg 图片 EXIF 中内嵌的缩略图并且宽高比一致时直接解码内嵌的缩略图，参考 {@link ExifThumbnailDecodeHelper}
+     */
+    private boolean exifThumbnailMode;
+
     /**
      * 图片处理器，在图片读取到内存后对图片进行修改
      */
@@ -91,6 +114,16 @@ public class LoadOptions extends DownloadOptions {
      */
     private boolean correctImageOrientationDisabled;
 
+    /**
+     * 上次生成的 key 以及生成时参与计算的属性的快照，属性没变就直接返回上次的 key，不再每次都拼接字符串。
+     * 快照是自己校验的，所以 {@link #reset()} 和 {@link #copy(LoadOptions)} 时不用清空，DisplayHelper 这种反复拷贝同样选项的场景也能命中。
+     * {@link ImageProcessor} 只比较引用，所以它的 key 不能变
+     */
+    private final int[] keyState = new int[KEY_STATE_SIZE];
+    private ImageProcessor keyStateProcessor;
+    private String key;
+    private String stateImageKey;
+
 
     public LoadOptions() {
         reset();
@@ -226,14 +259,14 @@ public class LoadOptions extends DownloadOptions {
     }
 
     /**
-     * 是否解码 gif 图片并自动循环播放
+     * 是否解码 gif 图片（以及动图 webp、apng）并自动循环播放
      */
     public boolean isDecodeGifImage() {
         return decodeGifImage;
     }
 
     /**
-     * 设置是否解码 gif 图片并自动循环播放
+     * 设置是否解码 gif 图片（以及动图 webp、apng）并自动循环播放
      *
      * @param decodeGifImage 解码 gif 图片
      * @return {@link LoadOptions}. 为了支持链式调用
@@ -244,6 +277,25 @@ public class LoadOptions extends DownloadOptions {
         return this;
     }
 
+    /**
+     * 是否缓存循环播放的 gif 的所有帧，循环播放时不再重复解码，参考 {@link SketchGifDrawable#enableFrameCache(FrameCacheBudget, boolean)}
+     */
+    public boolean isCacheGifFrames() {
+        return cacheGifFrames;
+    }
+
+    /**
+     * 设置是否缓存循环播放的 gif 的所有帧，循环播放时不再重复解码，适合小尺寸的循环表情，参考 {@link SketchGifDrawable#enableFrameCache(FrameCacheBudget, boolean)}
+     *
+     * @param cacheGifFrames 缓存 gif 的所有帧
+     * @return {@link LoadOptions}. 为了支持链式调用
+     */
+    @NonNull
+    public LoadOptions setCacheGifFrames(boolean cacheGifFrames) {
+        this.cacheGifFrames = cacheGifFrames;
+        return this;
+    }
+
     /**
      * 是否在解码或创建 {@link Bitmap} 的时候尽量使用低质量的 {@link Bitmap.Config}，优先级低于 {@link #setBitmapConfig(Bitmap.Config)}，参考 {@link ImageType#getConfig(boolean)}
      */
@@ -328,6 +380,26 @@ public class LoadOptions extends DownloadOptions {
         return this;
     }
 
+    /**
+     * 是否开启 EXIF 缩略图模式，目标尺寸不超过 jpeg 图片 EXIF 中内嵌的缩略图并且宽高比一致时直接解码内嵌的缩略图，参考 {@link ExifThumbnailDecodeHelper}
+     */
+    public boolean isExifThumbnailMode() {
+        return exifThumbnailMode;
+    }
+
+    /**
+     * 设置是否开启 EXIF 缩略图模式，目标尺寸不超过 jpeg 图片 EXIF 中内嵌的缩略图并且宽高比一致时直接解码内嵌的缩略图，
+     * 适合相册列表这种格子很小的场景，不满足条件时依然按正常流程解码，参考 {@link ExifThumbnailDecodeHelper}
+     *
+     * @param exifThumbnailMode EXIF 缩略图模式
+     * @return {@link LoadOptions}. 为了支持链式调用
+     */
+    @NonNull
+    public LoadOptions setExifThumbnailMode(boolean exifThumbnailMode) {
+        this.exifThumbnailMode = exifThumbnailMode;
+        return this;
+    }
+
     /**
      * 是否为了加快速度，将经过 {@link #setProcessor(ImageProcessor)}、{@link #setResize(Resize)} 或 {@link #setThumbnailMode(boolean)} 处理过的图片保存到磁盘缓存中，下次就直接读取，参考 {@link ProcessedResultCacheProcessor}
      */
@@ -394,9 +466,11 @@ public class LoadOptions extends DownloadOptions {
         lowQualityImage = false;
         processor = null;
         decodeGifImage = false;
+        cacheGifFrames = false;
         bitmapConfig = null;
         inPreferQualityOverSpeed = false;
         thumbnailMode = false;
+        exifThumbnailMode = false;
         cacheProcessedImageInDisk = false;
         bitmapPoolDisabled = false;
         correctImageOrientationDisabled = false;
@@ -420,9 +494,11 @@ public class LoadOptions extends DownloadOptions {
         lowQualityImage = options.lowQualityImage;
         processor = options.processor;
         decodeGifImage = options.decodeGifImage;
+        cacheGifFrames = options.cacheGifFrames;
         bitmapConfig = options.bitmapConfig;
         inPreferQualityOverSpeed = options.inPreferQualityOverSpeed;
         thumbnailMode = options.thumbnailMode;
+        exifThumbnailMode = options.exifThumbnailMode;
         cacheProcessedImageInDisk = options.cacheProcessedImageInDisk;
         bitmapPoolDisabled = options.bitmapPoolDisabled;
         correctImageOrientationDisabled = options.correctImageOrientationDisabled;
@@ -431,6 +507,18 @@ public class LoadOptions extends DownloadOptions {
     @NonNull
     @Override
     public String makeKey() {
+        if (updateKeyState()) {
+            key = null;
+            stateImageKey = null;
+        }
+        if (key == null) {
+            key = buildKey();
+        }
+        return key;
+    }
+
+    @NonNull
+    private String buildKey() {
         StringBuilder builder = new StringBuilder();
         if (maxSize != null) {
             if (builder.length() > 0) builder.append('-');
@@ -444,6 +532,10 @@ public class LoadOptions extends DownloadOptions {
                 builder.append("thumbnailMode");
             }
         }
+        if (exifThumbnailMode) {
+            if (builder.length() > 0) builder.append('-');
+            builder.append("exifThumbnail");
+        }
         if (correctImageOrientationDisabled) {
             if (builder.length() > 0) builder.append('-');
             builder.append("ignoreOrientation");
@@ -478,6 +570,18 @@ public class LoadOptions extends DownloadOptions {
     @NonNull
     @Override
     public String makeStateImageKey() {
+        if (updateKeyState()) {
+            key = null;
+            stateImageKey = null;
+        }
+        if (stateImageKey == null) {
+            stateImageKey = buildStateImageKey();
+        }
+        return stateImageKey;
+    }
+
+    @NonNull
+    private String buildStateImageKey() {
         StringBuilder builder = new StringBuilder();
         if (resize != null) {
             if (builder.length() > 0) builder.append('-');
@@ -497,4 +601,41 @@ public class LoadOptions extends DownloadOptions {
         }
         return builder.toString();
     }
+
+    /**
+     * 用当前的属性更新快照
+     *
+     * @return true：参与生成 key 的属性变了，之前的 key 不能再用
+     */
+    private boolean updateKeyState() {
+        boolean changed = keyStateProcessor != processor;
+        keyStateProcessor = processor;
+
+        changed |= updateKeyState(KEY_STATE_MAX_WIDTH, maxSize != null ? maxSize.getWidth() : -1);
+        changed |= updateKeyState(KEY_STATE_MAX_HEIGHT, maxSize != null ? maxSize.getHeight() : -1);
+        changed |= updateKeyState(KEY_STATE_RESIZE_WIDTH, resize != null ? resize.getWidth() : -1);
+        changed |= updateKeyState(KEY_STATE_RESIZE_HEIGHT, resize != null ? resize.getHeight() : -1);
+        ImageView.ScaleType scaleType = resize != null ? resize.getScaleType() : null;
+        changed |= updateKeyState(KEY_STATE_RESIZE_SCALE_TYPE, scaleType != null ? scaleType.ordinal() + 1 : 0);
+        changed |= updateKeyState(KEY_STATE_RESIZE_MODE, resize != null ? resize.getMode().ordinal() + 1 : 0);
+        changed |= updateKeyState(KEY_STATE_BITMAP_CONFIG, bitmapConfig != null ? bitmapConfig.ordinal() + 1 : 0);
+
+        int flags = 0;
+        if (thumbnailMode) flags |= 1;
+        if (correctImageOrientationDisabled) flags |= 1 << 1;
+        if (lowQualityImage) flags |= 1 << 2;
+        if (inPreferQualityOverSpeed) flags |= 1 << 3;
+        if (decodeGifImage) flags |= 1 << 4;
+        if (exifThumbnailMode) flags |= 1 << 5;
+        changed |= updateKeyState(KEY_STATE_FLAGS, flags);
+        return changed;
+    }
+
+    private boolean updateKeyState(int index, int value) {
+        if (keyState[index] == value) {
+            return false;
+        }
+        keyState[index] = value;
+        return true;
+    }
 }
@@ -22,6 +22,8 @@ import androidx.annotation.NonNull;
 import me.panpf.sketch.SLog;
 import me.panpf.sketch.Sketch;
 import me.panpf.sketch.cache.BitmapPoolUtils;
+import me.panpf.sketch.cache.EncodedMemoryCache;
+import me.panpf.sketch.datasource.ByteArrayDataSource;
 import me.panpf.sketch.datasource.DataSource;
 import me.panpf.sketch.decode.BitmapDecodeResult;
 import me.panpf.sketch.decode.DecodeException;
@@ -42,6 +44,7 @@ public class LoadRequest extends FreeRideDownloadRequest {
     private LoadListener loadListener;
 
     private LoadResult loadResult;
+    private byte[] encodedData;
 
     public LoadRequest(Sketch sketch, String uri, UriModel uriModel, String key, LoadOptions loadOptions,
                        LoadListener loadListener, DownloadProgressListener downloadProgressListener) {
@@ -65,10 +68,28 @@ public class LoadRequest extends FreeRideDownloadRequest {
      */
     @NonNull
     public DataSource getDataSource() throws GetDataSourceException {
+        // 网络图片在分发时就已经查过二级内存缓存了
+        if (encodedData != null || (!getUriModel().isFromNet() && takeEncodedMemoryCache())) {
+            return new ByteArrayDataSource(encodedData, ImageFrom.MEMORY);
+        }
+
         DownloadResult downloadResult = getUriModel().isFromNet() ? getDownloadResult() : null;
         return getUriModel().getDataSource(getContext(), getUri(), downloadResult);
     }
 
+    /**
+     * 从 {@link EncodedMemoryCache} 中取出原始数据，这样就不用再读磁盘缓存了
+     *
+     * @return true：取到了
+     */
+    private boolean takeEncodedMemoryCache() {
+        if (getOptions().isCacheInDiskDisabled() || !EncodedMemoryCache.isSupported(getUriModel())) {
+            return false;
+        }
+        encodedData = getConfiguration().getEncodedMemoryCache().get(getDiskCacheKey());
+        return encodedData != null;
+    }
+
     /**
      * 获取数据源，优先考虑已处理缓存
      */
@@ -137,6 +158,11 @@ public class LoadRequest extends FreeRideDownloadRequest {
                     SLog.d(getLogName(), "Dispatch. Processed disk cache. %s. %s", getThreadName(), getKey());
                 }
                 submitRunLoad();
+            } else if (takeEncodedMemoryCache()) {
+                if (SLog.isLoggable(SLog.LEVEL_DEBUG | SLog.TYPE_FLOW)) {
+                    SLog.d(getLogName(), "Dispatch. Encoded memory cache. %s. %s", getThreadName(), getKey());
+                }
+                submitRunLoad();
             } else {
                 super.runDispatch();
             }
@@ -209,6 +235,10 @@ public class LoadRequest extends FreeRideDownloadRequest {
                 return;
             }
 
+            ImageAttrs imageAttrs = decodeResult.getImageAttrs();
+            getTrace().setImageInfo(imageAttrs.getWidth(), imageAttrs.getHeight(), imageAttrs.getMimeType());
+            getTrace().setResultInfo(bitmap.getWidth(), bitmap.getHeight(), SketchUtils.getByteCount(bitmap));
+
             loadResult = new LoadResult(bitmap, decodeResult);
             loadCompleted();
         } else if (decodeResult instanceof GifDecodeResult) {
@@ -234,6 +264,10 @@ public class LoadRequest extends FreeRideDownloadRequest {
                 return;
             }
 
+            ImageAttrs imageAttrs = decodeResult.getImageAttrs();
+            getTrace().setImageInfo(imageAttrs.getWidth(), imageAttrs.getHeight(), imageAttrs.getMimeType());
+            getTrace().setResultInfo(imageAttrs.getWidth(), imageAttrs.getHeight(), gifDrawable.getByteCount());
+
             loadResult = new LoadResult(gifDrawable, decodeResult);
             loadCompleted();
         } else {
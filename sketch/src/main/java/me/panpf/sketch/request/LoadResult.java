@@ -18,18 +18,24 @@ package me.panpf.sketch.request;
 
 import android.graphics.Bitmap;
 
+import me.panpf.sketch.decode.BitmapDecodeResult;
 import me.panpf.sketch.decode.DecodeResult;
 import me.panpf.sketch.decode.ImageAttrs;
 import me.panpf.sketch.drawable.SketchGifDrawable;
+import me.panpf.sketch.util.ExifInterface;
 
 public class LoadResult {
     private Bitmap bitmap;
     private SketchGifDrawable gifDrawable;
     private ImageFrom imageFrom;
     private ImageAttrs imageAttrs;
+    private int pendingExifOrientation = ExifInterface.ORIENTATION_UNDEFINED;
 
     public LoadResult(Bitmap bitmap, DecodeResult decodeResult) {
         this.bitmap = bitmap;
+        if (decodeResult instanceof BitmapDecodeResult) {
+            this.pendingExifOrientation = ((BitmapDecodeResult) decodeResult).getPendingExifOrientation();
+        }
 
         this.imageAttrs = decodeResult.getImageAttrs();
         this.imageFrom = decodeResult.getImageFrom();
@@ -57,4 +63,11 @@ public class LoadResult {
     public ImageAttrs getImageAttrs() {
         return imageAttrs;
     }
+
+    /**
+     * 获取 bitmap 还没有纠正的图片方向，只有 {@link DisplayRequest} 会出现，显示时通过 {@link me.panpf.sketch.drawable.SketchBitmapDrawable} 纠正
+     */
+    public int getPendingExifOrientation() {
+        return pendingExifOrientation;
+    }
 }
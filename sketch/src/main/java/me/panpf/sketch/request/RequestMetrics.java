@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.request;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 汇总所有请求的 {@link RequestTrace}，按状态统计耗时分布，可以随时查询每个阶段的 p50、p95、p99
+ * <p>
+ * 每个阶段用一个对数分桶的直方图记录，记录时只有几次原子加法，不会加锁也不会创建对象，误差在 12.5% 以内
+ */
+public class RequestMetrics {
+    private static final String NAME = "RequestMetrics";
+
+    private final Histogram[] stageHistograms = new Histogram[RequestTrace.STATUSES.length];
+    private final Histogram totalHistogram = new Histogram();
+    private volatile boolean disabled;
+
+    public RequestMetrics() {
+        for (int i = 0; i < stageHistograms.length; i++) {
+            stageHistograms[i] = new Histogram();
+        }
+    }
+
+    /**
+     * 请求结束时调用，记录各个阶段的耗时
+     */
+    void record(@NonNull RequestTrace trace) {
+        if (disabled) {
+            return;
+        }
+
+        for (BaseRequest.Status status : RequestTrace.STATUSES) {
+            if (trace.getEnterTime(status) != 0 && !isFinalStatus(status)) {
+                stageHistograms[status.ordinal()].record(trace.getDuration(status));
+            }
+        }
+        // 取消和失败的请求的总耗时没有参考意义，只统计成功的
+        if (trace.getFinalStatus() == BaseRequest.Status.COMPLETED) {
+            totalHistogram.record(trace.getTotalDuration());
+        }
+    }
+
+    private static boolean isFinalStatus(@NonNull BaseRequest.Status status) {
+        return status == BaseRequest.Status.COMPLETED || status == BaseRequest.Status.FAILED || status == BaseRequest.Status.CANCELED;
+    }
+
+    /**
+     * 获取指定阶段耗时的百分位数
+     *
+     * @param stage      阶段，也就是请求停留在这个状态的时间
+     * @param percentile 百分位，例如 0.95
+     * @return 耗时，单位毫秒，没有记录时返回 0
+     */
+    public float getStagePercentile(@NonNull BaseRequest.Status stage, float percentile) {
+        return stageHistograms[stage.ordinal()].getPercentile(percentile);
+    }
+
+    /**
+     * 获取指定阶段记录的次数
+     */
+    public long getStageCount(@NonNull BaseRequest.Status stage) {
+        return stageHistograms[stage.ordinal()].getCount();
+    }
+
+    /**
+     * 获取成功的请求从创建到完成的总耗时的百分位数
+     *
+     * @param percentile 百分位，例如 0.95
+     * @return 耗时，单位毫秒，没有记录时返回 0
+     */
+    public float getTotalPercentile(float percentile) {
+        return totalHistogram.getPercentile(percentile);
+    }
+
+    /**
+     * 获取成功的请求的数量
+     */
+    public long getTotalCount() {
+        return totalHistogram.getCount();
+    }
+
+    /**
+     * 清空统计数据
+     */
+    public void reset() {
+        for (Histogram histogram : stageHistograms) {
+            histogram.reset();
+        }
+        totalHistogram.reset();
+    }
+
+    public boolean isDisabled() {
+        return disabled;
+    }
+
+    /**
+     * 设置是否关闭耗时统计，关闭后 {@link RequestMetricsListener} 依然会回调
+     */
+    public void setDisabled(boolean disabled) {
+        this.disabled = disabled;
+    }
+
+    /**
+     * 以 "阶段 次数 p50/p95/p99" 的格式输出所有有记录的阶段，方便打印日志
+     */
+    @NonNull
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        for (BaseRequest.Status status : RequestTrace.STATUSES) {
+            appendHistogram(builder, status.name(), stageHistograms[status.ordinal()]);
+        }
+        appendHistogram(builder, "TOTAL", totalHistogram);
+        return builder.toString();
+    }
+
+    private static void appendHistogram(@NonNull StringBuilder builder, @NonNull String name, @NonNull Histogram histogram) {
+        long count = histogram.getCount();
+        if (count <= 0) {
+            return;
+        }
+        if (builder.length() > 0) {
+            builder.append("\n");
+        }
+        builder.append(name).append(" ").append(count).append(" ")
+                .append(histogram.getPercentile(0.5f)).append("/")
+                .append(histogram.getPercentile(0.95f)).append("/")
+                .append(histogram.getPercentile(0.99f)).append("ms");
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format("%s(disabled=%s)", NAME, disabled);
+    }
+
+    /**
+     * 对数分桶的直方图，以微秒为单位，每个 2 的幂区间再均分成 8 个桶
+     */
+    private static class Histogram {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+        private static final int MAX_EXPONENT = 40;
+        private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+        void record(long durationNanos) {
+            counts.incrementAndGet(indexOf(Math.max(0, durationNanos / 1000)));
+        }
+
+        long getCount() {
+            long count = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                count += counts.get(i);
+            }
+            return count;
+        }
+
+        float getPercentile(float percentile) {
+            long[] snapshot = new long[BUCKET_COUNT];
+            long count = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                snapshot[i] = counts.get(i);
+                count += snapshot[i];
+            }
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(count * (double) percentile));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return upperBoundOf(i) / 1000f;
+                }
+            }
+            return upperBoundOf(BUCKET_COUNT - 1) / 1000f;
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts.set(i, 0);
+            }
+        }
+
+        private static int indexOf(long micros) {
+            if (micros < SUB_BUCKET_COUNT) {
+                return (int) micros;
+            }
+            int exponent = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_EXPONENT);
+            int subBucket = (int) (micros >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+            return SUB_BUCKET_COUNT + (exponent - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + subBucket;
+        }
+
+        private static long upperBoundOf(int index) {
+            if (index < SUB_BUCKET_COUNT) {
+                return index + 1;
+            }
+            int exponent = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT + SUB_BUCKET_BITS;
+            int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+            return (long) (SUB_BUCKET_COUNT + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+        }
+    }
+}
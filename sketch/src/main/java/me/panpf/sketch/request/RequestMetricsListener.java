@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.request;
+
+import androidx.annotation.NonNull;
+
+/**
+ * 请求结束时回调请求的执行轨迹，可以用来上报每个阶段的耗时
+ */
+public interface RequestMetricsListener {
+
+    /**
+     * 请求结束了，完成、失败、取消都会回调。会在结束请求的那个线程中回调，不要做耗时操作
+     *
+     * @param request {@link BaseRequest}
+     * @param trace   {@link RequestTrace}. 请求的执行轨迹
+     */
+    void onRequestFinished(@NonNull BaseRequest request, @NonNull RequestTrace trace);
+}
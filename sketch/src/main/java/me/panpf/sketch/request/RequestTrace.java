@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.request;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * 请求的执行轨迹，记录每一次 {@link BaseRequest.Status} 变化的时间以及下载的字节数、图片尺寸等信息
+ * <p>
+ * 时间都来自 {@link System#nanoTime()}，是单调递增的，只能用来计算时间间隔
+ */
+public class RequestTrace {
+    static final BaseRequest.Status[] STATUSES = BaseRequest.Status.values();
+
+    private final long startTime;
+    private long finishTime;
+    private BaseRequest.Status finalStatus;
+
+    private BaseRequest.Status currentStatus;
+    private long currentStatusTime;
+    /**
+     * 第一次进入每个状态的时间，0 表示没有经过这个状态
+     */
+    private final long[] enterTimes = new long[STATUSES.length];
+    /**
+     * 在每个状态停留的总时间，同一个状态可能会进入多次
+     */
+    private final long[] durations = new long[STATUSES.length];
+
+    private volatile long downloadBytes = -1;
+    private volatile int imageWidth;
+    private volatile int imageHeight;
+    private volatile String imageMimeType;
+    private volatile int resultWidth;
+    private volatile int resultHeight;
+    private volatile int resultByteCount;
+
+    RequestTrace() {
+        this.startTime = System.nanoTime();
+        this.currentStatusTime = startTime;
+    }
+
+    /**
+     * 记录状态变化
+     *
+     * @return true：这次变化结束了请求
+     */
+    synchronized boolean onStatusChanged(@NonNull BaseRequest.Status status) {
+        if (finalStatus != null) {
+            return false;
+        }
+
+        long now = System.nanoTime();
+        if (currentStatus != null) {
+            durations[currentStatus.ordinal()] += now - currentStatusTime;
+        }
+        if (enterTimes[status.ordinal()] == 0) {
+            enterTimes[status.ordinal()] = now;
+        }
+        currentStatus = status;
+        currentStatusTime = now;
+
+        if (status == BaseRequest.Status.COMPLETED || status == BaseRequest.Status.FAILED || status == BaseRequest.Status.CANCELED) {
+            finishTime = now;
+            finalStatus = status;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 获取请求创建的时间，单位纳秒
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * 获取请求结束的时间，单位纳秒，还没结束时返回 0
+     */
+    public synchronized long getFinishTime() {
+        return finishTime;
+    }
+
+    /**
+     * 获取请求从创建到结束的总耗时，单位纳秒，还没结束时返回 -1
+     */
+    public synchronized long getTotalDuration() {
+        return finalStatus != null ? finishTime - startTime : -1;
+    }
+
+    /**
+     * 获取结束时的状态，还没结束时返回 null
+     */
+    @Nullable
+    public synchronized BaseRequest.Status getFinalStatus() {
+        return finalStatus;
+    }
+
+    /**
+     * 获取第一次进入指定状态的时间，单位纳秒，没有经过这个状态返回 0
+     */
+    public synchronized long getEnterTime(@NonNull BaseRequest.Status status) {
+        return enterTimes[status.ordinal()];
+    }
+
+    /**
+     * 获取在指定状态停留的总时间，单位纳秒
+     */
+    public synchronized long getDuration(@NonNull BaseRequest.Status status) {
+        return durations[status.ordinal()];
+    }
+
+    /**
+     * 获取下载的字节数，没有下载返回 -1
+     */
+    public long getDownloadBytes() {
+        return downloadBytes;
+    }
+
+    public void setDownloadBytes(long downloadBytes) {
+        this.downloadBytes = downloadBytes;
+    }
+
+    /**
+     * 获取图片的原始宽，还没解码时返回 0
+     */
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    /**
+     * 获取图片的原始高，还没解码时返回 0
+     */
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    @Nullable
+    public String getImageMimeType() {
+        return imageMimeType;
+    }
+
+    void setImageInfo(int imageWidth, int imageHeight, @Nullable String imageMimeType) {
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        this.imageMimeType = imageMimeType;
+    }
+
+    /**
+     * 获取解码结果的宽，还没解码时返回 0
+     */
+    public int getResultWidth() {
+        return resultWidth;
+    }
+
+    /**
+     * 获取解码结果的高，还没解码时返回 0
+     */
+    public int getResultHeight() {
+        return resultHeight;
+    }
+
+    /**
+     * 获取解码结果占用的内存，还没解码时返回 0
+     */
+    public int getResultByteCount() {
+        return resultByteCount;
+    }
+
+    void setResultInfo(int resultWidth, int resultHeight, int resultByteCount) {
+        this.resultWidth = resultWidth;
+        this.resultHeight = resultHeight;
+        this.resultByteCount = resultByteCount;
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder("RequestTrace(");
+        builder.append("status=").append(finalStatus != null ? finalStatus.name() : currentStatus != null ? currentStatus.name() : "null");
+        if (finalStatus != null) {
+            builder.append(",total=").append(toMillis(finishTime - startTime)).append("ms");
+        }
+        for (BaseRequest.Status status : STATUSES) {
+            long duration = durations[status.ordinal()];
+            if (enterTimes[status.ordinal()] != 0 && duration > 0) {
+                builder.append(",").append(status.name()).append("=").append(toMillis(duration)).append("ms");
+            }
+        }
+        if (downloadBytes >= 0) {
+            builder.append(",downloadBytes=").append(downloadBytes);
+        }
+        if (imageWidth > 0) {
+            builder.append(",image=").append(imageWidth).append("x").append(imageHeight).append(",").append(imageMimeType);
+        }
+        if (resultWidth > 0) {
+            builder.append(",result=").append(resultWidth).append("x").append(resultHeight).append(",").append(resultByteCount);
+        }
+        return builder.append(")").toString();
+    }
+
+    private static String toMillis(long nanos) {
+        return String.valueOf(nanos / 1000000f);
+    }
+}
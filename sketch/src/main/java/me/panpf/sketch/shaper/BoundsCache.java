@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.shaper;
+
+import android.graphics.Rect;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按绘制区域缓存 {@link ImageShaper} 的 {@link android.graphics.Path} 等数据，一个 {@link ImageShaper} 通常会被多个尺寸的 View 共用，
+ * 只缓存一个的话尺寸交替变化时每次都要重新创建
+ */
+class BoundsCache<V> {
+    private static final int DEFAULT_MAX_COUNT = 8;
+
+    private final LinkedHashMap<Rect, V> map;
+
+    BoundsCache() {
+        this.map = new LinkedHashMap<Rect, V>(DEFAULT_MAX_COUNT, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Rect, V> eldest) {
+                return size() > DEFAULT_MAX_COUNT;
+            }
+        };
+    }
+
+    @Nullable
+    V get(@NonNull Rect bounds) {
+        return map.get(bounds);
+    }
+
+    void put(@NonNull Rect bounds, @NonNull V value) {
+        map.put(new Rect(bounds), value);
+    }
+
+    void clear() {
+        map.clear();
+    }
+}
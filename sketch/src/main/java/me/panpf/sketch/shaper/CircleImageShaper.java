@@ -34,8 +34,7 @@ public class CircleImageShaper implements ImageShaper {
     private int strokeColor;
 
     private Paint strokePaint;
-    private Rect boundsBack;
-    private Path path;
+    private BoundsCache<Path> pathCache = new BoundsCache<>();
 
     @SuppressWarnings("unused")
     public int getStrokeColor() {
@@ -72,25 +71,19 @@ public class CircleImageShaper implements ImageShaper {
     @NonNull
     @Override
     public Path getPath(@NonNull Rect bounds) {
-        if (path != null && boundsBack != null && boundsBack.equals(bounds)) {
+        // 按区域缓存，同样尺寸的 View 共用一份
+        Path path = pathCache.get(bounds);
+        if (path != null) {
             return path;
         }
 
-        if (boundsBack == null) {
-            boundsBack = new Rect();
-        }
-        boundsBack.set(bounds);
-
-        if (path == null) {
-            path = new Path();
-        }
-        path.reset();
-
+        path = new Path();
         int centerX = bounds.centerX();
-        int centerY = bounds.centerX();
+        int centerY = bounds.centerY();
         int radius = Math.max(centerX - bounds.left, centerY - bounds.top);
         path.addCircle(centerX, centerY, radius, Path.Direction.CW);
 
+        pathCache.put(bounds, path);
         return path;
     }
 
@@ -33,21 +33,14 @@ import me.panpf.sketch.request.ShapeSize;
 @SuppressWarnings("unused")
 public class RoundRectImageShaper implements ImageShaper {
     private float[] outerRadii;
-    private Rect boundsCached = new Rect();
-
-    private Path bitmapPath = new Path();
-    private Path innerStrokePath;
-    private Path outerStrokePath;
-    private Path clipPath;
 
     private int strokeWidth;
     private int strokeColor;
 
     private Paint strokePaint;
 
-    private Rect boundsBack;
-    private RectF rectF;
-    private Path path;
+    private BoundsCache<Paths> pathsCache = new BoundsCache<>();
+    private RectF rectF = new RectF();
 
     public RoundRectImageShaper(float[] radiis) {
         if (radiis == null || radiis.length < 8) {
@@ -98,19 +91,10 @@ public class RoundRectImageShaper implements ImageShaper {
 
             strokePaint.setColor(strokeColor);
             strokePaint.setStrokeWidth(strokeWidth);
-
-            if (innerStrokePath == null) {
-                innerStrokePath = new Path();
-            }
-
-            if (outerStrokePath == null) {
-                outerStrokePath = new Path();
-            }
-
-            if (clipPath == null) {
-                clipPath = new Path();
-            }
         }
+
+        // 描边变了，缓存的描边 Path 就不能用了
+        pathsCache.clear();
     }
 
     private boolean hasStroke() {
@@ -120,31 +104,43 @@ public class RoundRectImageShaper implements ImageShaper {
     @NonNull
     @Override
     public Path getPath(@NonNull Rect bounds) {
-        if (path != null && boundsBack != null && boundsBack.equals(bounds)) {
-            return path;
-        }
+        return getPaths(bounds).bitmapPath;
+    }
 
-        if (boundsBack == null) {
-            boundsBack = new Rect();
+    /**
+     * 获取指定区域的 Path，按区域缓存，同样尺寸的 View 共用一份
+     */
+    @NonNull
+    private Paths getPaths(@NonNull Rect bounds) {
+        Paths paths = pathsCache.get(bounds);
+        if (paths != null) {
+            return paths;
         }
-        boundsBack.set(bounds);
 
-        if (path == null) {
-            path = new Path();
-        }
-        path.reset();
+        paths = new Paths();
+        rectF.set(bounds);
+        paths.bitmapPath.addRoundRect(rectF, outerRadii, Path.Direction.CW);
 
-        if (rectF == null) {
-            rectF = new RectF();
+        // 假如描边宽度是10，那么会是5个像素在图片外面，5个像素在图片里面
+        // 因为描边会有一半是在图片外面，所以如果图片被紧紧（没有缝隙）包括在Layout中，那么描边就会丢失一半
+        if (hasStroke()) {
+            // 内圈，往图片里面偏移描边宽度的一半，让描边都在图片里面，都在里面导致圆角部分会露出来一些
+            final float offset = strokeWidth / 2f;
+            rectF.set(bounds.left + offset, bounds.top + offset,
+                    bounds.right - offset, bounds.bottom - offset);
+            paths.innerStrokePath = new Path();
+            paths.innerStrokePath.addRoundRect(rectF, outerRadii, Path.Direction.CW);
+
+            // 外圈，主要用来盖住内圈描边无法覆盖导致露出的圆角部分，同时也用来裁掉外圈跑出图片的部分
+            rectF.set(bounds);
+            paths.outerStrokePath = new Path();
+            paths.outerStrokePath.addRoundRect(rectF, outerRadii, Path.Direction.CW);
         }
-        rectF.set(boundsBack);
 
-        path.addRoundRect(rectF, outerRadii, Path.Direction.CW);
-
-        return path;
+        pathsCache.put(bounds, paths);
+        return paths;
     }
 
-
     @Override
     public void onUpdateShaderMatrix(@NonNull Matrix matrix, @NonNull Rect bounds, int bitmapWidth, int bitmapHeight,
                                      @Nullable ShapeSize shapeSize, @NonNull Rect srcRect) {
@@ -153,41 +149,25 @@ public class RoundRectImageShaper implements ImageShaper {
 
     @Override
     public void draw(@NonNull Canvas canvas, @NonNull Paint paint, @NonNull Rect bounds) {
-        if (!boundsCached.equals(bounds)) {
-            RectF rectF = new RectF(bounds);
-
-            bitmapPath.reset();
-            bitmapPath.addRoundRect(rectF, outerRadii, Path.Direction.CW);
-
-            // 假如描边宽度是10，那么会是5个像素在图片外面，5个像素在图片里面
-            // 因为描边会有一半是在图片外面，所以如果图片被紧紧（没有缝隙）包括在Layout中，那么描边就会丢失一半
-            if (hasStroke()) {
-                // 内圈，往图片里面偏移描边宽度的一半，让描边都在图片里面，都在里面导致圆角部分会露出来一些
-                final float offset = strokeWidth / 2f;
-                rectF.set(bounds.left + offset, bounds.top + offset,
-                        bounds.right - offset, bounds.bottom - offset);
-                innerStrokePath.reset();
-                innerStrokePath.addRoundRect(rectF, outerRadii, Path.Direction.CW);
-
-                // 外圈，主要用来盖住内圈描边无法覆盖导致露出的圆角部分
-                outerStrokePath.reset();
-                rectF.set(bounds.left, bounds.top, bounds.right, bounds.bottom);
-                outerStrokePath.addRoundRect(rectF, outerRadii, Path.Direction.CW);
-
-                rectF.set(bounds);
-                clipPath.addRoundRect(rectF, outerRadii, Path.Direction.CW);
-            }
-        }
+        Paths paths = getPaths(bounds);
 
         paint.setAntiAlias(true);
-        canvas.drawPath(bitmapPath, paint);
+        canvas.drawPath(paths.bitmapPath, paint);
 
-        if (hasStroke() && strokePaint != null) {
+        if (hasStroke() && strokePaint != null && paths.innerStrokePath != null && paths.outerStrokePath != null) {
             // 裁掉外圈跑出图片的部分
-            canvas.clipPath(clipPath);
+            canvas.save();
+            canvas.clipPath(paths.outerStrokePath);
 
-            canvas.drawPath(innerStrokePath, strokePaint);
-            canvas.drawPath(outerStrokePath, strokePaint);
+            canvas.drawPath(paths.innerStrokePath, strokePaint);
+            canvas.drawPath(paths.outerStrokePath, strokePaint);
+            canvas.restore();
         }
     }
+
+    private static class Paths {
+        private Path bitmapPath = new Path();
+        private Path innerStrokePath;
+        private Path outerStrokePath;
+    }
 }
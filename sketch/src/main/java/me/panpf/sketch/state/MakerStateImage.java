@@ -26,11 +26,12 @@ import androidx.annotation.Nullable;
 
 import me.panpf.sketch.Configuration;
 import me.panpf.sketch.ErrorTracker;
+import me.panpf.sketch.SLog;
 import me.panpf.sketch.Sketch;
 import me.panpf.sketch.SketchView;
 import me.panpf.sketch.cache.BitmapPool;
 import me.panpf.sketch.cache.BitmapPoolUtils;
-import me.panpf.sketch.cache.MemoryCache;
+import me.panpf.sketch.cache.StateImageCache;
 import me.panpf.sketch.decode.ImageAttrs;
 import me.panpf.sketch.drawable.SketchBitmapDrawable;
 import me.panpf.sketch.drawable.SketchRefBitmap;
@@ -47,10 +48,14 @@ import me.panpf.sketch.util.SketchUtils;
 
 /**
  * 可以使用 Options 中配置的 {@link ImageProcessor} 和 {@link Resize} 修改原图片，同样支持 {@link ShapeSize} 和 {@link ImageShaper}
+ * <p>
+ * 处理后的图片放在 {@link StateImageCache} 中，主线程中没有命中时先显示原图，同时在后台线程中创建
  */
 // TODO: 2017/10/30 重命名为 MakerDrawableStateImage 并像 DrawableStateImage 一样支持 drawable
 @SuppressWarnings("unused")
 public class MakerStateImage implements StateImage {
+    private static final String NAME = "MakerStateImage";
+
     private int resId;
 
     public MakerStateImage(int resId) {
@@ -79,33 +84,66 @@ public class MakerStateImage implements StateImage {
     private Drawable makeDrawable(Sketch sketch, DisplayOptions options) {
         Configuration configuration = sketch.getConfiguration();
 
-        ImageProcessor processor = options.getProcessor();
-        Resize resize = options.getResize();
-        BitmapPool bitmapPool = configuration.getBitmapPool();
-
         // 不需要处理的时候直接取出图片返回
-        if (processor == null && resize == null) {
+        if (options.getProcessor() == null && options.getResize() == null) {
+            //noinspection deprecation
             return configuration.getContext().getResources().getDrawable(resId);
         }
 
-        // 从内存缓存中取
-        String imageUri = DrawableUriModel.makeUri(resId);
-        UriModel uriModel = UriModel.match(sketch, imageUri);
-        String memoryCacheKey = null;
-        if (uriModel != null) {
-            memoryCacheKey = SketchUtils.makeRequestKey(imageUri, uriModel, options.makeStateImageKey());
-        }
-        MemoryCache memoryCache = configuration.getMemoryCache();
-        SketchRefBitmap cachedRefBitmap = null;
-        if (memoryCacheKey != null) {
-            cachedRefBitmap = memoryCache.get(memoryCacheKey);
+        // 从占位图片缓存中取
+        String cacheKey = makeCacheKey(sketch, options);
+        if (cacheKey == null) {
+            //noinspection deprecation
+            return configuration.getContext().getResources().getDrawable(resId);
         }
+        StateImageCache stateImageCache = configuration.getStateImageCache();
+        SketchRefBitmap cachedRefBitmap = stateImageCache.get(cacheKey);
         if (cachedRefBitmap != null) {
-            if (!cachedRefBitmap.isRecycled()) {
-                return new SketchBitmapDrawable(cachedRefBitmap, ImageFrom.MEMORY_CACHE);
-            } else {
-                memoryCache.remove(memoryCacheKey);
-            }
+            return new SketchBitmapDrawable(cachedRefBitmap, ImageFrom.MEMORY_CACHE);
+        }
+
+        // 主线程中不解码也不处理，先用原图顶着，在后台线程中创建好了下次再用
+        if (SketchUtils.isMainThread()) {
+            stateImageCache.prepareResolved(sketch, options);
+            //noinspection deprecation
+            return configuration.getContext().getResources().getDrawable(resId);
+        }
+
+        SketchRefBitmap newRefBitmap = makeBitmap(sketch, options, cacheKey);
+        if (newRefBitmap == null) {
+            //noinspection deprecation
+            return configuration.getContext().getResources().getDrawable(resId);
+        }
+        if (!stateImageCache.put(cacheKey, newRefBitmap)) {
+            SLog.w(NAME, "State image too large to cache. %s. %s", newRefBitmap.getInfo(), cacheKey);
+        }
+        return new SketchBitmapDrawable(newRefBitmap, ImageFrom.LOCAL);
+    }
+
+    /**
+     * 生成处理后的占位图片在 {@link StateImageCache} 中的 key
+     */
+    @Nullable
+    public String makeCacheKey(@NonNull Sketch sketch, @NonNull DisplayOptions options) {
+        String imageUri = DrawableUriModel.makeUri(resId);
+        UriModel uriModel = UriModel.match(sketch, imageUri);
+        return uriModel != null ? SketchUtils.makeRequestKey(imageUri, uriModel, options.makeStateImageKey()) : null;
+    }
+
+    /**
+     * 读取并处理图片，比较耗时，不要在主线程中调用
+     *
+     * @return null：处理失败或者处理器没有创建新的图片，这时直接使用资源里的图片即可
+     */
+    @Nullable
+    public SketchRefBitmap makeBitmap(@NonNull Sketch sketch, @NonNull DisplayOptions options, @NonNull String cacheKey) {
+        Configuration configuration = sketch.getConfiguration();
+
+        ImageProcessor processor = options.getProcessor();
+        Resize resize = options.getResize();
+        BitmapPool bitmapPool = configuration.getBitmapPool();
+        if (processor == null && resize == null) {
+            return null;
         }
 
         // 读取图片
@@ -125,16 +163,15 @@ public class MakerStateImage implements StateImage {
         }
 
         // 处理图片
-        //noinspection ConstantConditions
-        if (processor == null && resize != null) {
-            processor = sketch.getConfiguration().getResizeProcessor();
+        if (processor == null) {
+            processor = configuration.getResizeProcessor();
         }
         Bitmap newBitmap;
         try {
             newBitmap = processor.process(sketch, bitmap, resize, tempLowQualityImage);
         } catch (OutOfMemoryError e) {
             e.printStackTrace();
-            ErrorTracker errorTracker = sketch.getConfiguration().getErrorTracker();
+            ErrorTracker errorTracker = configuration.getErrorTracker();
             errorTracker.onProcessImageError(e, DrawableUriModel.makeUri(resId), processor);
             if (allowRecycle) {
                 BitmapPoolUtils.freeBitmapToPool(bitmap, bitmapPool);
@@ -157,20 +194,17 @@ public class MakerStateImage implements StateImage {
             allowRecycle = true;
         }
 
-        // 允许回收说明是创建了一张新的图片，不能回收说明还是从res中获取的BitmapDrawable可以直接使用
-        if (allowRecycle) {
-            BitmapFactory.Options boundsOptions = new BitmapFactory.Options();
-            boundsOptions.inJustDecodeBounds = true;
-            BitmapFactory.decodeResource(configuration.getContext().getResources(), resId, boundsOptions);
+        // 不能回收说明还是从res中获取的BitmapDrawable，不能交给缓存管理
+        if (!allowRecycle) {
+            return null;
+        }
 
-            String uri = DrawableUriModel.makeUri(resId);
-            ImageAttrs imageAttrs = new ImageAttrs(boundsOptions.outMimeType, boundsOptions.outWidth, boundsOptions.outHeight, 0);
+        BitmapFactory.Options boundsOptions = new BitmapFactory.Options();
+        boundsOptions.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(configuration.getContext().getResources(), resId, boundsOptions);
 
-            SketchRefBitmap newRefBitmap = new SketchRefBitmap(bitmap, memoryCacheKey, uri, imageAttrs, bitmapPool);
-            memoryCache.put(memoryCacheKey, newRefBitmap);
-            return new SketchBitmapDrawable(newRefBitmap, ImageFrom.LOCAL);
-        } else {
-            return drawable;
-        }
+        String uri = DrawableUriModel.makeUri(resId);
+        ImageAttrs imageAttrs = new ImageAttrs(boundsOptions.outMimeType, boundsOptions.outWidth, boundsOptions.outHeight, 0);
+        return new SketchRefBitmap(bitmap, cacheKey, uri, imageAttrs, bitmapPool);
     }
-}
\ No newline at end of file
+}
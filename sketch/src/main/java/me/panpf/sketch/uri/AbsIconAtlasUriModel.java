@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.uri;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import me.panpf.sketch.SLog;
+import me.panpf.sketch.Sketch;
+import me.panpf.sketch.cache.AppIconAtlas;
+import me.panpf.sketch.cache.BitmapPool;
+import me.panpf.sketch.cache.BitmapPoolUtils;
+import me.panpf.sketch.datasource.ByteArrayDataSource;
+import me.panpf.sketch.datasource.DataSource;
+import me.panpf.sketch.request.DownloadResult;
+import me.panpf.sketch.request.ImageFrom;
+
+/**
+ * 为图标类的 UriModel 封装好 getDataSource 部分，图标保存在 {@link AppIconAtlas} 中，不占用 {@link me.panpf.sketch.cache.DiskCache}
+ * <p>
+ * 通过 {@link #prefetch(Context, Collection)} 可以一次读取多个图标，例如在列表显示之前
+ */
+public abstract class AbsIconAtlasUriModel extends UriModel {
+
+    private static final String NAME = "AbsIconAtlasUriModel";
+
+    @NonNull
+    @Override
+    public final DataSource getDataSource(@NonNull Context context, @NonNull String uri, @Nullable DownloadResult downloadResult) throws GetDataSourceException {
+        AppIconAtlas appIconAtlas = Sketch.with(context).getConfiguration().getAppIconAtlas();
+        String key = getDiskCacheKey(uri);
+
+        byte[] data = appIconAtlas.get(key);
+        if (data != null) {
+            return new ByteArrayDataSource(data, ImageFrom.DISK_CACHE);
+        }
+
+        BitmapPool bitmapPool = Sketch.with(context).getConfiguration().getBitmapPool();
+        Bitmap bitmap = getContent(context, uri);
+        try {
+            data = compress(bitmap);
+        } finally {
+            BitmapPoolUtils.freeBitmapToPool(bitmap, bitmapPool);
+        }
+        appIconAtlas.put(key, data);
+        return new ByteArrayDataSource(data, ImageFrom.LOCAL);
+    }
+
+    /**
+     * 一次读取多个图标并保存到 {@link AppIconAtlas} 中，已经保存过的会跳过，不能在主线程中调用
+     *
+     * @param uris 图标 uri，不是图标 uri 的会被忽略
+     * @return 新读取的图标数量
+     */
+    public static int prefetch(@NonNull Context context, @NonNull Collection<String> uris) {
+        Sketch sketch = Sketch.with(context);
+        AppIconAtlas appIconAtlas = sketch.getConfiguration().getAppIconAtlas();
+        BitmapPool bitmapPool = sketch.getConfiguration().getBitmapPool();
+
+        // 按 UriModel 分组，同一种图标一起读
+        Map<AbsIconAtlasUriModel, List<String>> groups = new LinkedHashMap<>();
+        for (String uri : uris) {
+            UriModel uriModel = UriModel.match(sketch, uri);
+            if (!(uriModel instanceof AbsIconAtlasUriModel)) {
+                continue;
+            }
+            AbsIconAtlasUriModel iconUriModel = (AbsIconAtlasUriModel) uriModel;
+            if (appIconAtlas.contains(iconUriModel.getDiskCacheKey(uri))) {
+                continue;
+            }
+            List<String> group = groups.get(iconUriModel);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(iconUriModel, group);
+            }
+            group.add(uri);
+        }
+
+        Map<String, byte[]> icons = new HashMap<>();
+        for (Map.Entry<AbsIconAtlasUriModel, List<String>> group : groups.entrySet()) {
+            AbsIconAtlasUriModel iconUriModel = group.getKey();
+            Map<String, Bitmap> bitmaps = iconUriModel.getContents(context, group.getValue());
+            for (Map.Entry<String, Bitmap> bitmapEntry : bitmaps.entrySet()) {
+                try {
+                    icons.put(iconUriModel.getDiskCacheKey(bitmapEntry.getKey()), compress(bitmapEntry.getValue()));
+                } finally {
+                    BitmapPoolUtils.freeBitmapToPool(bitmapEntry.getValue(), bitmapPool);
+                }
+            }
+        }
+
+        appIconAtlas.putAll(icons);
+        SLog.d(NAME, "prefetch. uris=%d, newIcons=%d", uris.size(), icons.size());
+        return icons.size();
+    }
+
+    @NonNull
+    private static byte[] compress(@NonNull Bitmap bitmap) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(bitmap.getWidth() * bitmap.getHeight());
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * 读取一个图标
+     */
+    @NonNull
+    protected abstract Bitmap getContent(@NonNull Context context, @NonNull String uri) throws GetDataSourceException;
+
+    /**
+     * 一次读取多个图标，默认逐个调用 {@link #getContent(Context, String)}，子类可以改成一次性读取
+     *
+     * @return uri 和图标的对应关系，读取失败的不包含在内
+     */
+    @NonNull
+    protected Map<String, Bitmap> getContents(@NonNull Context context, @NonNull List<String> uris) {
+        Map<String, Bitmap> bitmaps = new HashMap<>(uris.size());
+        for (String uri : uris) {
+            try {
+                bitmaps.put(uri, getContent(context, uri));
+            } catch (GetDataSourceException e) {
+                // getContent 里已经打印了日志
+            }
+        }
+        return bitmaps;
+    }
+}
@@ -26,7 +26,7 @@ import me.panpf.sketch.Sketch;
 import me.panpf.sketch.cache.BitmapPool;
 import me.panpf.sketch.util.SketchUtils;
 
-public class ApkIconUriModel extends AbsBitmapDiskCacheUriModel {
+public class ApkIconUriModel extends AbsIconAtlasUriModel {
 
     public static final String SCHEME = "apk.icon://";
     private static final String NAME = "ApkIconUriModel";
@@ -17,19 +17,26 @@
 package me.panpf.sketch.uri;
 
 import android.content.Context;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
+import android.content.res.Resources;
 import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import androidx.annotation.NonNull;
 import android.text.TextUtils;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import me.panpf.sketch.SLog;
 import me.panpf.sketch.Sketch;
 import me.panpf.sketch.cache.BitmapPool;
 import me.panpf.sketch.util.SketchUtils;
 
-public class AppIconUriModel extends AbsBitmapDiskCacheUriModel {
+public class AppIconUriModel extends AbsIconAtlasUriModel {
 
     public static final String SCHEME = "app.icon://";
     private static final String NAME = "AppIconUriModel";
@@ -50,38 +57,90 @@ public class AppIconUriModel extends AbsBitmapDiskCacheUriModel {
         Uri imageUri = Uri.parse(uri);
 
         String packageName = imageUri.getHost();
+        int versionCode = parseVersionCode(uri, imageUri);
+
+        PackageInfo packageInfo;
+        try {
+            packageInfo = context.getPackageManager().getPackageInfo(packageName, 0);
+        } catch (PackageManager.NameNotFoundException e) {
+            String cause = String.format("Not found PackageInfo by \"%s\". %s", packageName, uri);
+            SLog.e(NAME, e, cause);
+            throw new GetDataSourceException(cause, e);
+        }
+
+        return loadIcon(context, packageInfo, versionCode, uri);
+    }
+
+    /**
+     * 只查询一次已安装的 app 列表，然后逐个读取图标，不再逐个查询 {@link PackageInfo}
+     */
+    @NonNull
+    @Override
+    protected Map<String, Bitmap> getContents(@NonNull Context context, @NonNull List<String> uris) {
+        if (uris.size() == 1) {
+            return super.getContents(context, uris);
+        }
+
+        List<PackageInfo> packageInfoList = context.getPackageManager().getInstalledPackages(0);
+        Map<String, PackageInfo> packageInfoMap = new HashMap<>(packageInfoList.size());
+        for (PackageInfo packageInfo : packageInfoList) {
+            packageInfoMap.put(packageInfo.packageName, packageInfo);
+        }
+
+        Map<String, Bitmap> bitmaps = new HashMap<>(uris.size());
+        for (String uri : uris) {
+            Uri imageUri = Uri.parse(uri);
+            PackageInfo packageInfo = packageInfoMap.get(imageUri.getHost());
+            if (packageInfo == null) {
+                SLog.e(NAME, "Not found PackageInfo by \"%s\". %s", imageUri.getHost(), uri);
+                continue;
+            }
+            try {
+                bitmaps.put(uri, loadIcon(context, packageInfo, parseVersionCode(uri, imageUri), uri));
+            } catch (GetDataSourceException e) {
+                // loadIcon 里已经打印了日志
+            }
+        }
+        return bitmaps;
+    }
+
+    private static int parseVersionCode(@NonNull String uri, @NonNull Uri imageUri) throws GetDataSourceException {
         String path = imageUri.getPath();
         if (path != null && path.startsWith("/")) {
             path = path.substring(1);
         }
-        int versionCode;
         try {
-            versionCode = Integer.valueOf(path);
+            return Integer.valueOf(path);
         } catch (NumberFormatException e) {
             String cause = String.format("Conversion app versionCode failed. %s", uri);
             SLog.e(NAME, e, cause);
             throw new GetDataSourceException(cause, e);
         }
+    }
 
-        PackageInfo packageInfo;
-        try {
-            packageInfo = context.getPackageManager().getPackageInfo(packageName, 0);
-        } catch (PackageManager.NameNotFoundException e) {
-            String cause = String.format("Not found PackageInfo by \"%s\". %s", packageName, uri);
-            SLog.e(NAME, e, cause);
-            throw new GetDataSourceException(cause, e);
-        }
-
+    /**
+     * 直接通过已安装 app 的 {@link ApplicationInfo} 读取图标，不需要再解析一遍 apk 文件
+     */
+    @NonNull
+    private static Bitmap loadIcon(@NonNull Context context, @NonNull PackageInfo packageInfo, int versionCode, @NonNull String uri) throws GetDataSourceException {
         if (packageInfo.versionCode != versionCode) {
             String cause = String.format("App versionCode mismatch, %d != %d. %s", packageInfo.versionCode, versionCode, uri);
             SLog.e(NAME, cause);
             throw new GetDataSourceException(cause);
         }
 
-        String apkFilePath = packageInfo.applicationInfo.sourceDir;
-        BitmapPool bitmapPool = Sketch.with(context).getConfiguration().getBitmapPool();
-        Bitmap iconBitmap = SketchUtils.readApkIcon(context, apkFilePath, false, NAME, bitmapPool);
+        ApplicationInfo applicationInfo = packageInfo.applicationInfo;
+        Drawable drawable;
+        try {
+            drawable = applicationInfo.loadIcon(context.getPackageManager());
+        } catch (Resources.NotFoundException e) {
+            String cause = String.format("Load app icon failed. %s", uri);
+            SLog.e(NAME, e, cause);
+            throw new GetDataSourceException(cause, e);
+        }
 
+        BitmapPool bitmapPool = Sketch.with(context).getConfiguration().getBitmapPool();
+        Bitmap iconBitmap = SketchUtils.drawableToBitmap(drawable, false, bitmapPool);
         if (iconBitmap == null || iconBitmap.isRecycled()) {
             String cause = String.format("App icon bitmap invalid. %s", uri);
             SLog.e(NAME, cause);
@@ -18,15 +18,24 @@ package me.panpf.sketch.uri;
 
 import android.content.Context;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import android.text.TextUtils;
-import android.util.Base64;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
+import me.panpf.sketch.datasource.Base64DataSource;
+import me.panpf.sketch.datasource.DataSource;
+import me.panpf.sketch.request.DownloadResult;
+import me.panpf.sketch.request.ImageFrom;
+import me.panpf.sketch.util.UriIdentityCache;
 
-public class Base64UriModel extends AbsStreamDiskCacheUriModel {
+/**
+ * base64 格式的图片，解码时边读边解码，不会写到磁盘缓存，只缓存解码后的图片
+ */
+public class Base64UriModel extends UriModel {
 
     public static final String SCHEME = "data:image/";
+    private static final String SHORT_URI_PREFIX = "base64://";
+
+    private final UriIdentityCache<String> shortUriCache = new UriIdentityCache<>(16);
 
     @Override
     protected boolean match(@NonNull String uri) {
@@ -42,13 +51,23 @@ public class Base64UriModel extends AbsStreamDiskCacheUriModel {
     @NonNull
     @Override
     public String getUriContent(@NonNull String uri) {
-        return !TextUtils.isEmpty(uri) ? uri.substring(uri.indexOf(";") + ";base64,".length()) : uri;
+        return !TextUtils.isEmpty(uri) ? uri.substring(getContentStart(uri)) : uri;
+    }
+
+    /**
+     * 获取内容部分在 uri 中的起始位置
+     */
+    protected int getContentStart(@NonNull String uri) {
+        return uri.indexOf(";") + ";base64,".length();
     }
 
+    /**
+     * 内容不会写到磁盘缓存，这里只是为了避免对整个 uri 做 md5，返回和 key 一样的短 uri
+     */
     @NonNull
     @Override
     public String getDiskCacheKey(@NonNull String uri) {
-        return getUriContent(uri);
+        return makeShortUri(uri);
     }
 
     @Override
@@ -56,9 +75,35 @@ public class Base64UriModel extends AbsStreamDiskCacheUriModel {
         return true;
     }
 
+    /**
+     * 用两个不同乘数的 64 位多项式滚动哈希计算内容部分的摘要，只遍历一次字符，不需要转成字节数组，比 md5 快很多。
+     * 同一个 uri 对象的结果会缓存起来，绑定时生成请求 key 和加载时生成磁盘缓存 key 只需要计算一次
+     */
+    @NonNull
+    @Override
+    public String makeShortUri(@NonNull String uri) {
+        String shortUri = shortUriCache.get(uri);
+        if (shortUri != null) {
+            return shortUri;
+        }
+
+        long hash1 = 0;
+        long hash2 = 0;
+        int start = getContentStart(uri);
+        int end = uri.length();
+        for (int index = start; index < end; index++) {
+            char c = uri.charAt(index);
+            hash1 = hash1 * 31 + c;
+            hash2 = hash2 * 1099511628211L + c;
+        }
+        shortUri = SHORT_URI_PREFIX + Long.toHexString(hash1) + Long.toHexString(hash2) + "-" + Integer.toHexString(end - start);
+        shortUriCache.put(uri, shortUri);
+        return shortUri;
+    }
+
     @NonNull
     @Override
-    protected InputStream getContent(@NonNull Context context, @NonNull String uri) throws GetDataSourceException {
-        return new ByteArrayInputStream(Base64.decode(getUriContent(uri), Base64.DEFAULT));
+    public DataSource getDataSource(@NonNull Context context, @NonNull String uri, @Nullable DownloadResult downloadResult) throws GetDataSourceException {
+        return new Base64DataSource(uri, getContentStart(uri), ImageFrom.LOCAL);
     }
 }
@@ -24,6 +24,7 @@ import android.text.TextUtils;
 import me.panpf.sketch.Sketch;
 import me.panpf.sketch.datasource.DataSource;
 import me.panpf.sketch.request.DownloadResult;
+import me.panpf.sketch.util.SketchMD5Utils;
 
 /**
  * 负责解析某一特定类型的 uri
@@ -108,4 +109,15 @@ public abstract class UriModel {
     public boolean isConvertShortUriForKey() {
         return false;
     }
+
+    /**
+     * 将 uri 转成短 uri，{@link #isConvertShortUriForKey()} 为 true 时生成 key 会用到，默认使用 md5
+     *
+     * @param uri 图片 uri
+     * @return 短 uri
+     */
+    @NonNull
+    public String makeShortUri(@NonNull String uri) {
+        return SketchMD5Utils.md5(uri);
+    }
 }
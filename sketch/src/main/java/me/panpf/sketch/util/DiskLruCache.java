@@ -48,6 +48,7 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import me.panpf.sketch.SLog;
+import me.panpf.sketch.cache.CacheStats;
 
 /**
  * *****************************************************************************
@@ -158,6 +159,7 @@ public final class DiskLruCache implements Closeable {
     private final LinkedHashMap<String, Entry> lruEntries
             = new LinkedHashMap<String, Entry>(0, 0.75f, true);
     private int redundantOpCount;
+    private CacheStats cacheStats;
 
     /**
      * To differentiate between old and current snapshots, each entry is given
@@ -589,6 +591,13 @@ public final class DiskLruCache implements Closeable {
         return editor;
     }
 
+    /**
+     * Sets the stats that receives put and eviction events, null to disable.
+     */
+    public synchronized void setCacheStats(CacheStats cacheStats) {
+        this.cacheStats = cacheStats;
+    }
+
     /**
      * Returns the directory where this cache stores its data.
      */
@@ -629,6 +638,7 @@ public final class DiskLruCache implements Closeable {
             }
         }
 
+        long putBytes = 0;
         for (int i = 0; i < valueCount; i++) {
             File dirty = entry.getDirtyFile(i);
             if (success) {
@@ -639,11 +649,15 @@ public final class DiskLruCache implements Closeable {
                     long newLength = clean.length();
                     entry.lengths[i] = newLength;
                     size = size - oldLength + newLength;
+                    putBytes += newLength;
                 }
             } else {
                 deleteIfExists(dirty);
             }
         }
+        if (success && cacheStats != null) {
+            cacheStats.recordPut(putBytes);
+        }
 
         redundantOpCount++;
         entry.currentEditor = null;
@@ -682,6 +696,10 @@ public final class DiskLruCache implements Closeable {
      * @return true if an entry was removed.
      */
     public synchronized boolean remove(String key) throws IOException, ClosedException {
+        return remove(key, CacheStats.EVICTION_REMOVE);
+    }
+
+    private synchronized boolean remove(String key, int evictionReason) throws IOException, ClosedException {
         checkNotClosed();
         validateKey(key);
         Entry entry = lruEntries.get(key);
@@ -689,14 +707,19 @@ public final class DiskLruCache implements Closeable {
             return false;
         }
 
+        long removedBytes = 0;
         for (int i = 0; i < valueCount; i++) {
             File file = entry.getCleanFile(i);
             if (file.exists() && !file.delete()) {
                 throw new IOException("failed to delete " + file);
             }
             size -= entry.lengths[i];
+            removedBytes += entry.lengths[i];
             entry.lengths[i] = 0;
         }
+        if (cacheStats != null) {
+            cacheStats.recordEviction(evictionReason, 1, removedBytes);
+        }
 
         redundantOpCount++;
         journalWriter.append(REMOVE + ' ' + key + '\n');
@@ -762,7 +785,7 @@ public final class DiskLruCache implements Closeable {
         while (size > maxSize) {
 //            Map.Entry<String, Entry> toEvict = lruEntries.eldest();
             final Map.Entry<String, Entry> toEvict = lruEntries.entrySet().iterator().next();
-            remove(toEvict.getKey());
+            remove(toEvict.getKey(), CacheStats.EVICTION_CAPACITY);
         }
     }
 
@@ -772,6 +795,11 @@ public final class DiskLruCache implements Closeable {
      * the cache.
      */
     public void delete() throws IOException {
+        synchronized (this) {
+            if (cacheStats != null && journalWriter != null) {
+                cacheStats.recordEviction(CacheStats.EVICTION_CLEAR, lruEntries.size(), size);
+            }
+        }
         close();
         deleteContents(directory);
     }
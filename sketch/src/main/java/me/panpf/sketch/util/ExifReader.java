@@ -0,0 +1,426 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.util;
+
+import androidx.annotation.NonNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 轻量的 JPEG EXIF 读取器，只用来读取解码时需要的几个属性：方向、尺寸以及内嵌缩略图的位置
+ * <p>
+ * 和 {@link ExifInterface} 不同的是不会解析所有属性，也不会读取缩略图数据，只顺序读取到 EXIF 所在的 APP1 段，
+ * 再按需读取 IFD0、Exif IFD 和 IFD1 中需要的条目，读到想要的属性就停止，通常只会读取文件开头的几百个字节
+ */
+public class ExifReader {
+
+    /**
+     * 读取方向
+     */
+    public static final int FLAG_ORIENTATION = 1;
+    /**
+     * 读取尺寸
+     */
+    public static final int FLAG_SIZE = 1 << 1;
+    /**
+     * 读取内嵌缩略图的位置
+     */
+    public static final int FLAG_THUMBNAIL = 1 << 2;
+
+    private static final int MARKER_PREFIX = 0xFF;
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_EOI = 0xD9;
+    private static final int MARKER_APP1 = 0xE1;
+    private static final byte[] EXIF_IDENTIFIER = {'E', 'x', 'i', 'f', 0, 0};
+
+    private static final int TAG_IMAGE_WIDTH = 0x0100;
+    private static final int TAG_IMAGE_LENGTH = 0x0101;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_EXIF_IFD_POINTER = 0x8769;
+    private static final int TAG_PIXEL_X_DIMENSION = 0xA002;
+    private static final int TAG_PIXEL_Y_DIMENSION = 0xA003;
+    private static final int TAG_JPEG_INTERCHANGE_FORMAT = 0x0201;
+    private static final int TAG_JPEG_INTERCHANGE_FORMAT_LENGTH = 0x0202;
+
+    private static final int TYPE_UNSIGNED_SHORT = 3;
+    private static final int TYPE_UNSIGNED_LONG = 4;
+    private static final int IFD_ENTRY_SIZE = 12;
+    private static final int MAX_IFD_ENTRY_COUNT = 1000;
+
+    private int orientation = ExifInterface.ORIENTATION_UNDEFINED;
+    private int imageWidth;
+    private int imageHeight;
+    private int pixelXDimension;
+    private int pixelYDimension;
+    private long thumbnailOffset = -1;
+    private int thumbnailLength;
+
+    private ExifReader() {
+    }
+
+    /**
+     * 读取 EXIF 信息，读取失败或没有 EXIF 信息时返回的属性都是默认值
+     *
+     * @param inputStream JPEG 图片的输入流，只会读取开头的一部分，不会关闭
+     * @param flags       要读取的属性，{@link #FLAG_ORIENTATION}、{@link #FLAG_SIZE}、{@link #FLAG_THUMBNAIL} 的组合
+     */
+    @NonNull
+    public static ExifReader read(@NonNull InputStream inputStream, int flags) throws IOException {
+        ExifReader exifReader = new ExifReader();
+        exifReader.readJpeg(inputStream, flags);
+        return exifReader;
+    }
+
+    /**
+     * 只读取方向
+     *
+     * @param inputStream JPEG 图片的输入流，只会读取开头的一部分，不会关闭
+     * @return 方向，没有时返回 {@link ExifInterface#ORIENTATION_UNDEFINED}
+     */
+    public static int readOrientation(@NonNull InputStream inputStream) throws IOException {
+        return read(inputStream, FLAG_ORIENTATION).getOrientation();
+    }
+
+    private void readJpeg(@NonNull InputStream inputStream, int flags) throws IOException {
+        if (inputStream.read() != MARKER_PREFIX || inputStream.read() != MARKER_SOI) {
+            return;
+        }
+
+        long position = 2;
+        while (true) {
+            int prefix = inputStream.read();
+            if (prefix == -1) {
+                return;
+            }
+            position++;
+            if (prefix != MARKER_PREFIX) {
+                return;
+            }
+
+            // 标记前面可以有任意个填充的 0xFF
+            int marker = inputStream.read();
+            position++;
+            while (marker == MARKER_PREFIX) {
+                marker = inputStream.read();
+                position++;
+            }
+            if (marker == -1 || marker == MARKER_SOS || marker == MARKER_EOI) {
+                return;
+            }
+
+            int high = inputStream.read();
+            int low = inputStream.read();
+            if (high == -1 || low == -1) {
+                return;
+            }
+            position += 2;
+            int length = ((high << 8) | low) - 2;
+            if (length < 0) {
+                return;
+            }
+
+            if (marker == MARKER_APP1 && length >= EXIF_IDENTIFIER.length && readExifIdentifier(inputStream)) {
+                position += EXIF_IDENTIFIER.length;
+                Segment segment = new Segment(inputStream, length - EXIF_IDENTIFIER.length);
+                readTiff(segment, position, flags);
+                return;
+            }
+
+            // 不是 EXIF 的 APP1 段已经读了标识的长度，这里只需要跳过剩下的
+            int skipLength = marker == MARKER_APP1 && length >= EXIF_IDENTIFIER.length ? length - EXIF_IDENTIFIER.length : length;
+            skipFully(inputStream, skipLength);
+            position += length;
+        }
+    }
+
+    private static boolean readExifIdentifier(@NonNull InputStream inputStream) throws IOException {
+        boolean match = true;
+        for (byte identifierByte : EXIF_IDENTIFIER) {
+            int value = inputStream.read();
+            if (value == -1) {
+                throw new EOFException();
+            }
+            if (value != identifierByte) {
+                match = false;
+            }
+        }
+        return match;
+    }
+
+    private static void skipFully(@NonNull InputStream inputStream, long length) throws IOException {
+        while (length > 0) {
+            long skipped = inputStream.skip(length);
+            if (skipped <= 0) {
+                // 有些流 skip 返回 0 但还没读完，用 read 确认一下
+                if (inputStream.read() == -1) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+
+    /**
+     * @param tiffPosition TIFF 头在文件中的位置，EXIF 里的偏移都是相对于这里的
+     */
+    private void readTiff(@NonNull Segment segment, long tiffPosition, int flags) throws IOException {
+        if (!segment.ensure(8)) {
+            return;
+        }
+        int byteOrder = segment.readRawShort(0);
+        if (byteOrder == 0x4949) {
+            segment.littleEndian = true;
+        } else if (byteOrder == 0x4D4D) {
+            segment.littleEndian = false;
+        } else {
+            return;
+        }
+        if (segment.readShort(2) != 42) {
+            return;
+        }
+
+        long ifd0Offset = segment.readInt(4);
+        int exifIfdOffset = 0;
+        int nextIfdOffset = 0;
+        int ifd0EntryCount = segment.ensure(ifd0Offset + 2) ? segment.readShort((int) ifd0Offset) : 0;
+        if (ifd0EntryCount <= 0 || ifd0EntryCount > MAX_IFD_ENTRY_COUNT) {
+            return;
+        }
+
+        int entryStart = (int) ifd0Offset + 2;
+        for (int index = 0; index < ifd0EntryCount; index++) {
+            int entryOffset = entryStart + index * IFD_ENTRY_SIZE;
+            if (!segment.ensure(entryOffset + IFD_ENTRY_SIZE)) {
+                return;
+            }
+            int tag = segment.readShort(entryOffset);
+            if (tag == TAG_ORIENTATION) {
+                orientation = readIntValue(segment, entryOffset, ExifInterface.ORIENTATION_UNDEFINED);
+                if (flags == FLAG_ORIENTATION) {
+                    // 只要方向的话读到就结束
+                    return;
+                }
+            } else if (tag == TAG_IMAGE_WIDTH) {
+                imageWidth = readIntValue(segment, entryOffset, 0);
+            } else if (tag == TAG_IMAGE_LENGTH) {
+                imageHeight = readIntValue(segment, entryOffset, 0);
+            } else if (tag == TAG_EXIF_IFD_POINTER) {
+                exifIfdOffset = readIntValue(segment, entryOffset, 0);
+            }
+        }
+
+        if ((flags & FLAG_THUMBNAIL) != 0) {
+            int nextOffsetPosition = entryStart + ifd0EntryCount * IFD_ENTRY_SIZE;
+            if (segment.ensure(nextOffsetPosition + 4)) {
+                nextIfdOffset = (int) segment.readInt(nextOffsetPosition);
+            }
+        }
+
+        if ((flags & FLAG_SIZE) != 0 && exifIfdOffset > 0) {
+            readExifIfd(segment, exifIfdOffset);
+        }
+
+        if ((flags & FLAG_THUMBNAIL) != 0 && nextIfdOffset > 0) {
+            readIfd1(segment, nextIfdOffset, tiffPosition);
+        }
+    }
+
+    private void readExifIfd(@NonNull Segment segment, int offset) throws IOException {
+        int entryCount = segment.ensure(offset + 2) ? segment.readShort(offset) : 0;
+        if (entryCount <= 0 || entryCount > MAX_IFD_ENTRY_COUNT) {
+            return;
+        }
+        for (int index = 0; index < entryCount; index++) {
+            int entryOffset = offset + 2 + index * IFD_ENTRY_SIZE;
+            if (!segment.ensure(entryOffset + IFD_ENTRY_SIZE)) {
+                return;
+            }
+            int tag = segment.readShort(entryOffset);
+            if (tag == TAG_PIXEL_X_DIMENSION) {
+                pixelXDimension = readIntValue(segment, entryOffset, 0);
+            } else if (tag == TAG_PIXEL_Y_DIMENSION) {
+                pixelYDimension = readIntValue(segment, entryOffset, 0);
+            }
+            if (pixelXDimension > 0 && pixelYDimension > 0) {
+                return;
+            }
+        }
+    }
+
+    private void readIfd1(@NonNull Segment segment, int offset, long tiffPosition) throws IOException {
+        int entryCount = segment.ensure(offset + 2) ? segment.readShort(offset) : 0;
+        if (entryCount <= 0 || entryCount > MAX_IFD_ENTRY_COUNT) {
+            return;
+        }
+        int jpegOffset = 0;
+        int jpegLength = 0;
+        for (int index = 0; index < entryCount; index++) {
+            int entryOffset = offset + 2 + index * IFD_ENTRY_SIZE;
+            if (!segment.ensure(entryOffset + IFD_ENTRY_SIZE)) {
+                return;
+            }
+            int tag = segment.readShort(entryOffset);
+            if (tag == TAG_JPEG_INTERCHANGE_FORMAT) {
+                jpegOffset = readIntValue(segment, entryOffset, 0);
+            } else if (tag == TAG_JPEG_INTERCHANGE_FORMAT_LENGTH) {
+                jpegLength = readIntValue(segment, entryOffset, 0);
+            }
+        }
+
+        // 缩略图必须完整的在 APP1 段里
+        if (jpegOffset > 0 && jpegLength > 0 && (long) jpegOffset + jpegLength <= segment.length) {
+            thumbnailOffset = tiffPosition + jpegOffset;
+            thumbnailLength = jpegLength;
+        }
+    }
+
+    private static int readIntValue(@NonNull Segment segment, int entryOffset, int defaultValue) {
+        int type = segment.readShort(entryOffset + 2);
+        if (type == TYPE_UNSIGNED_SHORT) {
+            return segment.readShort(entryOffset + 8);
+        } else if (type == TYPE_UNSIGNED_LONG) {
+            return (int) segment.readInt(entryOffset + 8);
+        } else {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * 获取方向，没有时返回 {@link ExifInterface#ORIENTATION_UNDEFINED}
+     */
+    public int getOrientation() {
+        return orientation;
+    }
+
+    /**
+     * 获取 EXIF 中记录的宽，优先使用 Exif IFD 中的 PixelXDimension，没有时返回 0，需要 {@link #FLAG_SIZE}
+     */
+    public int getImageWidth() {
+        return pixelXDimension > 0 ? pixelXDimension : imageWidth;
+    }
+
+    /**
+     * 获取 EXIF 中记录的高，优先使用 Exif IFD 中的 PixelYDimension，没有时返回 0，需要 {@link #FLAG_SIZE}
+     */
+    public int getImageHeight() {
+        return pixelYDimension > 0 ? pixelYDimension : imageHeight;
+    }
+
+    /**
+     * 是否有内嵌的 JPEG 缩略图，需要 {@link #FLAG_THUMBNAIL}
+     */
+    public boolean hasThumbnail() {
+        return thumbnailOffset >= 0 && thumbnailLength > 0;
+    }
+
+    /**
+     * 获取内嵌的 JPEG 缩略图在文件中的位置，没有时返回 -1，需要 {@link #FLAG_THUMBNAIL}
+     */
+    public long getThumbnailOffset() {
+        return thumbnailOffset;
+    }
+
+    /**
+     * 获取内嵌的 JPEG 缩略图的长度，需要 {@link #FLAG_THUMBNAIL}
+     */
+    public int getThumbnailLength() {
+        return thumbnailLength;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format("ExifReader(orientation=%d,size=%dx%d,thumbnailOffset=%d,thumbnailLength=%d)",
+                orientation, getImageWidth(), getImageHeight(), thumbnailOffset, thumbnailLength);
+    }
+
+    /**
+     * EXIF 所在的 APP1 段，按需从流中读取，用到哪读到哪
+     */
+    private static class Segment {
+        private static final int INITIAL_BUFFER_SIZE = 512;
+
+        @NonNull
+        private final InputStream inputStream;
+        private final int length;
+        @NonNull
+        private byte[] buffer;
+        private int size;
+        private boolean littleEndian;
+
+        Segment(@NonNull InputStream inputStream, int length) {
+            this.inputStream = inputStream;
+            this.length = length;
+            this.buffer = new byte[Math.min(length, INITIAL_BUFFER_SIZE)];
+        }
+
+        /**
+         * 确保已经读取到 end 位置
+         *
+         * @return false：超出了 APP1 段的范围
+         */
+        boolean ensure(long end) throws IOException {
+            if (end <= size) {
+                return true;
+            }
+            if (end > length) {
+                return false;
+            }
+
+            if (end > buffer.length) {
+                int newLength = buffer.length;
+                while (newLength < end) {
+                    newLength <<= 1;
+                }
+                byte[] newBuffer = new byte[Math.min(newLength, length)];
+                System.arraycopy(buffer, 0, newBuffer, 0, size);
+                buffer = newBuffer;
+            }
+
+            while (size < end) {
+                int readLength = inputStream.read(buffer, size, (int) end - size);
+                if (readLength == -1) {
+                    throw new EOFException();
+                }
+                size += readLength;
+            }
+            return true;
+        }
+
+        int readRawShort(int offset) {
+            return ((buffer[offset] & 0xFF) << 8) | (buffer[offset + 1] & 0xFF);
+        }
+
+        int readShort(int offset) {
+            int b0 = buffer[offset] & 0xFF;
+            int b1 = buffer[offset + 1] & 0xFF;
+            return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+        }
+
+        long readInt(int offset) {
+            long b0 = buffer[offset] & 0xFF;
+            long b1 = buffer[offset + 1] & 0xFF;
+            long b2 = buffer[offset + 2] & 0xFF;
+            long b3 = buffer[offset + 3] & 0xFF;
+            return littleEndian ? (b3 << 24) | (b2 << 16) | (b1 << 8) | b0 : (b0 << 24) | (b1 << 16) | (b2 << 8) | b3;
+        }
+    }
+}
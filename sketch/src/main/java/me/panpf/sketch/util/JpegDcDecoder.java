@@ -0,0 +1,655 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.panpf.sketch.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 只解码 DC 系数的 JPEG 解码器，纯 Java 实现，不依赖 Android
+ * <p>
+ * 每个 8x8 块的 DC 系数就是这个块的平均值，所以只用 DC 系数就可以得到 1/8 大小的图片，不需要 IDCT。
+ * 渐进式 JPEG 的第一批扫描就包含了所有分量的 DC 系数，读完就停止，后面占文件大部分的 AC 扫描都不用读；
+ * 顺序式 JPEG 的 AC 系数和 DC 系数交织在一起，只能边读边跳过，省掉的只有 IDCT 和颜色转换
+ * <p>
+ * 只支持 8 位精度、霍夫曼编码的顺序式和渐进式 JPEG，灰度或 YCbCr（Adobe 标记为 RGB 的也支持），
+ * 其它类型 {@link #readHeader()} 返回 false
+ */
+public class JpegDcDecoder {
+    private static final int MARKER_PREFIX = 0xFF;
+    private static final int MARKER_SOF0 = 0xC0;
+    private static final int MARKER_SOF1 = 0xC1;
+    private static final int MARKER_SOF2 = 0xC2;
+    private static final int MARKER_SOF15 = 0xCF;
+    private static final int MARKER_DHT = 0xC4;
+    private static final int MARKER_JPG = 0xC8;
+    private static final int MARKER_DAC = 0xCC;
+    private static final int MARKER_RST0 = 0xD0;
+    private static final int MARKER_RST7 = 0xD7;
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_EOI = 0xD9;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_DQT = 0xDB;
+    private static final int MARKER_DRI = 0xDD;
+    private static final int MARKER_APP14 = 0xEE;
+
+    @NonNull
+    private final InputStream inputStream;
+
+    private int imageWidth;
+    private int imageHeight;
+    private boolean progressive;
+    private Component[] components;
+    private int maxH;
+    private int maxV;
+    private int mcusPerLine;
+    private int mcusPerColumn;
+    private int restartInterval;
+    private int adobeTransform = -1;
+    private final int[] dcQuantizations = new int[4];
+    private final HuffmanTable[] dcTables = new HuffmanTable[4];
+    private final HuffmanTable[] acTables = new HuffmanTable[4];
+
+    private int bitBuffer;
+    private int bitCount;
+    private int pendingMarker = -1;
+
+    /**
+     * @param inputStream JPEG 图片的输入流，解码器会逐字节读取，最好是带缓冲的，不会关闭
+     */
+    public JpegDcDecoder(@NonNull InputStream inputStream) {
+        this.inputStream = inputStream;
+    }
+
+    /**
+     * 读取到帧头为止，获取尺寸和类型
+     *
+     * @return false：不是 JPEG 或者是不支持的类型
+     */
+    public boolean readHeader() throws IOException {
+        if (readByte() != MARKER_PREFIX || readByte() != MARKER_SOI) {
+            return false;
+        }
+
+        while (true) {
+            int marker = readMarker();
+            if (marker == MARKER_SOF0 || marker == MARKER_SOF1 || marker == MARKER_SOF2) {
+                return readFrame(marker == MARKER_SOF2);
+            } else if (isUnsupportedFrame(marker) || marker == MARKER_SOS || marker == MARKER_EOI) {
+                return false;
+            } else {
+                readSegment(marker);
+            }
+        }
+    }
+
+    /**
+     * 解码，读到所有分量的 DC 系数就停止，需要先调用 {@link #readHeader()}
+     *
+     * @param sampleSize 在 1/8 的基础上再缩小多少倍，缩小时取平均值
+     * @return ARGB 像素，宽高分别是 {@link #getOutputWidth(int)} 和 {@link #getOutputHeight(int)}
+     */
+    @NonNull
+    public int[] decode(int sampleSize) throws IOException {
+        if (components == null) {
+            throw new IllegalStateException("Call readHeader() first");
+        }
+
+        while (!isAllComponentsDecoded()) {
+            int marker = readMarker();
+            if (marker == MARKER_SOS) {
+                readScan();
+            } else if (marker == MARKER_EOI) {
+                throw new EOFException("Missing DC scan");
+            } else {
+                readSegment(marker);
+            }
+        }
+        return toPixels(Math.max(1, sampleSize));
+    }
+
+    /**
+     * 读取帧头并解码，只解码渐进式 JPEG
+     *
+     * @param sampleSize 在 1/8 的基础上再缩小多少倍，缩小时取平均值
+     * @return ARGB 像素，宽高分别是 {@link #getOutputWidth(int)} 和 {@link #getOutputHeight(int)}。
+     * 不是 JPEG、不支持的类型、顺序式 JPEG 以及数据损坏或不完整时返回 null，不会抛出异常
+     */
+    @Nullable
+    public int[] decodeProgressive(int sampleSize) {
+        try {
+            if (!readHeader() || !progressive) {
+                return null;
+            }
+            return decode(sampleSize);
+        } catch (IOException | RuntimeException e) {
+            // 数据损坏时可能抛出越界之类的异常
+            return null;
+        }
+    }
+
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    /**
+     * 是否是渐进式 JPEG
+     */
+    public boolean isProgressive() {
+        return progressive;
+    }
+
+    public int getOutputWidth(int sampleSize) {
+        return (int) Math.ceil(imageWidth / (8f * Math.max(1, sampleSize)));
+    }
+
+    public int getOutputHeight(int sampleSize) {
+        return (int) Math.ceil(imageHeight / (8f * Math.max(1, sampleSize)));
+    }
+
+    private static boolean isUnsupportedFrame(int marker) {
+        // 无损、分层以及算术编码的 JPEG
+        return marker >= MARKER_SOF0 && marker <= MARKER_SOF15
+                && marker != MARKER_DHT && marker != MARKER_JPG && marker != MARKER_DAC;
+    }
+
+    private boolean readFrame(boolean progressive) throws IOException {
+        int length = readUnsignedShort() - 2;
+        int precision = readByte();
+        imageHeight = readUnsignedShort();
+        imageWidth = readUnsignedShort();
+        int componentCount = readByte();
+        length -= 6;
+        if (precision != 8 || imageWidth <= 0 || imageHeight <= 0 || (componentCount != 1 && componentCount != 3)
+                || length < componentCount * 3) {
+            return false;
+        }
+
+        Component[] components = new Component[componentCount];
+        for (int index = 0; index < componentCount; index++) {
+            int id = readByte();
+            int sampling = readByte();
+            int quantizationTableId = readByte();
+            int h = sampling >> 4;
+            int v = sampling & 0x0F;
+            if (h < 1 || h > 4 || v < 1 || v > 4 || quantizationTableId > 3) {
+                return false;
+            }
+            components[index] = new Component(id, h, v, quantizationTableId);
+            maxH = Math.max(maxH, h);
+            maxV = Math.max(maxV, v);
+        }
+        skipFully(length - componentCount * 3);
+
+        mcusPerLine = (int) Math.ceil(imageWidth / (8f * maxH));
+        mcusPerColumn = (int) Math.ceil(imageHeight / (8f * maxV));
+        for (Component component : components) {
+            int componentWidth = (int) Math.ceil((float) imageWidth * component.h / maxH);
+            int componentHeight = (int) Math.ceil((float) imageHeight * component.v / maxV);
+            component.blocksPerLine = (int) Math.ceil(componentWidth / 8f);
+            component.blocksPerColumn = (int) Math.ceil(componentHeight / 8f);
+            component.stride = mcusPerLine * component.h;
+            component.dc = new int[component.stride * mcusPerColumn * component.v];
+        }
+        this.components = components;
+        this.progressive = progressive;
+        return true;
+    }
+
+    private void readSegment(int marker) throws IOException {
+        int length = readUnsignedShort() - 2;
+        if (length < 0) {
+            throw new IOException("Invalid segment length. marker=" + Integer.toHexString(marker));
+        }
+
+        if (marker == MARKER_DQT) {
+            while (length > 0) {
+                int info = readByte();
+                int id = info & 0x0F;
+                boolean sixteenBit = (info >> 4) != 0;
+                if (id > 3) {
+                    throw new IOException("Invalid quantization table id " + id);
+                }
+                // 只需要第一个也就是 DC 的量化值
+                dcQuantizations[id] = sixteenBit ? readUnsignedShort() : readByte();
+                int tableLength = sixteenBit ? 128 : 64;
+                skipFully(tableLength - (sixteenBit ? 2 : 1));
+                length -= 1 + tableLength;
+            }
+        } else if (marker == MARKER_DHT) {
+            while (length > 0) {
+                int info = readByte();
+                int id = info & 0x0F;
+                if (id > 3) {
+                    throw new IOException("Invalid huffman table id " + id);
+                }
+                int[] counts = new int[17];
+                int valueCount = 0;
+                for (int codeLength = 1; codeLength <= 16; codeLength++) {
+                    counts[codeLength] = readByte();
+                    valueCount += counts[codeLength];
+                }
+                int[] values = new int[valueCount];
+                for (int index = 0; index < valueCount; index++) {
+                    values[index] = readByte();
+                }
+                HuffmanTable table = new HuffmanTable(counts, values);
+                if ((info >> 4) == 0) {
+                    dcTables[id] = table;
+                } else {
+                    acTables[id] = table;
+                }
+                length -= 17 + valueCount;
+            }
+        } else if (marker == MARKER_DRI) {
+            restartInterval = readUnsignedShort();
+            length -= 2;
+        } else if (marker == MARKER_APP14 && length >= 12) {
+            byte[] identifier = new byte[5];
+            for (int index = 0; index < identifier.length; index++) {
+                identifier[index] = (byte) readByte();
+            }
+            skipFully(6);
+            int transform = readByte();
+            if ("Adobe".equals(new String(identifier, "US-ASCII"))) {
+                adobeTransform = transform;
+            }
+            length -= 12;
+        }
+
+        if (length < 0) {
+            throw new IOException("Segment overflow. marker=" + Integer.toHexString(marker));
+        }
+        skipFully(length);
+    }
+
+    private void readScan() throws IOException {
+        int length = readUnsignedShort() - 2;
+        int componentCount = readByte();
+        if (componentCount < 1 || componentCount > 4 || length < 1 + componentCount * 2 + 3) {
+            throw new IOException("Invalid scan header");
+        }
+
+        Component[] scanComponents = new Component[componentCount];
+        boolean allDecoded = true;
+        for (int index = 0; index < componentCount; index++) {
+            int id = readByte();
+            int tables = readByte();
+            Component component = findComponent(id);
+            if (component == null) {
+                throw new IOException("Unknown component " + id);
+            }
+            component.dcTableId = tables >> 4;
+            component.acTableId = tables & 0x0F;
+            scanComponents[index] = component;
+            allDecoded &= component.decoded;
+        }
+        int spectralStart = readByte();
+        int spectralEnd = readByte();
+        int approximation = readByte();
+        skipFully(length - 1 - componentCount * 2 - 3);
+
+        int successiveHigh = approximation >> 4;
+        int successiveLow = approximation & 0x0F;
+
+        // 渐进式只要 DC 的第一次扫描，AC 扫描和 DC 的细化扫描都跳过，readMarker() 会跳过熵编码数据
+        if (allDecoded || (progressive && (spectralStart != 0 || successiveHigh != 0))) {
+            return;
+        }
+
+        for (Component component : scanComponents) {
+            if (component.dcTableId > 3 || dcTables[component.dcTableId] == null
+                    || (!progressive && (component.acTableId > 3 || acTables[component.acTableId] == null))) {
+                throw new IOException("Missing huffman table");
+            }
+            component.dcQuantization = dcQuantizations[component.quantizationTableId];
+        }
+
+        decodeScan(scanComponents, progressive ? successiveLow : 0, !progressive && spectralEnd > 0);
+
+        for (Component component : scanComponents) {
+            component.decoded = true;
+        }
+    }
+
+    private void decodeScan(@NonNull Component[] scanComponents, int successiveLow, boolean skipAc) throws IOException {
+        resetDecoder(scanComponents);
+
+        int mcuCount = 0;
+        if (scanComponents.length == 1) {
+            // 只有一个分量的扫描不交织，按这个分量自己的块排列，不包含补齐 MCU 的块
+            Component component = scanComponents[0];
+            for (int blockRow = 0; blockRow < component.blocksPerColumn; blockRow++) {
+                for (int blockColumn = 0; blockColumn < component.blocksPerLine; blockColumn++) {
+                    checkRestart(scanComponents, mcuCount++);
+                    decodeBlock(component, blockRow * component.stride + blockColumn, successiveLow, skipAc);
+                }
+            }
+        } else {
+            for (int mcuRow = 0; mcuRow < mcusPerColumn; mcuRow++) {
+                for (int mcuColumn = 0; mcuColumn < mcusPerLine; mcuColumn++) {
+                    checkRestart(scanComponents, mcuCount++);
+                    for (Component component : scanComponents) {
+                        for (int v = 0; v < component.v; v++) {
+                            int rowOffset = (mcuRow * component.v + v) * component.stride + mcuColumn * component.h;
+                            for (int h = 0; h < component.h; h++) {
+                                decodeBlock(component, rowOffset + h, successiveLow, skipAc);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void decodeBlock(@NonNull Component component, int blockIndex, int successiveLow, boolean skipAc) throws IOException {
+        int size = dcTables[component.dcTableId].decode(this);
+        if (size > 0) {
+            component.prediction += extend(receive(size), size);
+        }
+        component.dc[blockIndex] = component.prediction << successiveLow;
+
+        if (skipAc) {
+            HuffmanTable acTable = acTables[component.acTableId];
+            int k = 1;
+            while (k < 64) {
+                int runSize = acTable.decode(this);
+                int run = runSize >> 4;
+                int acSize = runSize & 0x0F;
+                if (acSize == 0) {
+                    if (run != 15) {
+                        break;
+                    }
+                    k += 16;
+                } else {
+                    receive(acSize);
+                    k += run + 1;
+                }
+            }
+        }
+    }
+
+    private void checkRestart(@NonNull Component[] scanComponents, int mcuIndex) throws IOException {
+        if (restartInterval <= 0 || mcuIndex == 0 || mcuIndex % restartInterval != 0) {
+            return;
+        }
+
+        int marker = pendingMarker != -1 ? pendingMarker : readMarker(true);
+        if (marker < MARKER_RST0 || marker > MARKER_RST7) {
+            throw new IOException("Expected restart marker, found " + Integer.toHexString(marker));
+        }
+        resetDecoder(scanComponents);
+    }
+
+    private void resetDecoder(@NonNull Component[] scanComponents) {
+        bitCount = 0;
+        pendingMarker = -1;
+        for (Component component : scanComponents) {
+            component.prediction = 0;
+        }
+    }
+
+    @NonNull
+    private int[] toPixels(int sampleSize) {
+        int blockWidth = getOutputWidth(1);
+        int blockHeight = getOutputHeight(1);
+        int outputWidth = getOutputWidth(sampleSize);
+        int outputHeight = getOutputHeight(sampleSize);
+        int[] pixels = new int[outputWidth * outputHeight];
+        boolean ycc = components.length == 3 && adobeTransform != 0;
+
+        for (int outputY = 0; outputY < outputHeight; outputY++) {
+            int startY = outputY * sampleSize;
+            int endY = Math.min(startY + sampleSize, blockHeight);
+            for (int outputX = 0; outputX < outputWidth; outputX++) {
+                int startX = outputX * sampleSize;
+                int endX = Math.min(startX + sampleSize, blockWidth);
+                int red = 0;
+                int green = 0;
+                int blue = 0;
+                int count = 0;
+                for (int y = startY; y < endY; y++) {
+                    for (int x = startX; x < endX; x++) {
+                        // 右边和下边的块可能只有一部分在图片里，按实际覆盖的像素数加权
+                        int weight = Math.min(8, imageWidth - x * 8) * Math.min(8, imageHeight - y * 8);
+                        int rgb = blockColor(x, y, ycc);
+                        red += ((rgb >> 16) & 0xFF) * weight;
+                        green += ((rgb >> 8) & 0xFF) * weight;
+                        blue += (rgb & 0xFF) * weight;
+                        count += weight;
+                    }
+                }
+                pixels[outputY * outputWidth + outputX] = 0xFF000000 | ((red / count) << 16) | ((green / count) << 8) | (blue / count);
+            }
+        }
+        return pixels;
+    }
+
+    private int blockColor(int x, int y, boolean ycc) {
+        if (components.length == 1) {
+            int gray = sample(components[0], x, y);
+            return (gray << 16) | (gray << 8) | gray;
+        }
+
+        int c0 = sample(components[0], x, y);
+        int c1 = sample(components[1], x, y);
+        int c2 = sample(components[2], x, y);
+        if (!ycc) {
+            return (c0 << 16) | (c1 << 8) | c2;
+        }
+
+        // JFIF 的 YCbCr 转 RGB
+        int cb = c1 - 128;
+        int cr = c2 - 128;
+        int red = clamp(c0 + Math.round(1.402f * cr));
+        int green = clamp(c0 - Math.round(0.344136f * cb + 0.714136f * cr));
+        int blue = clamp(c0 + Math.round(1.772f * cb));
+        return (red << 16) | (green << 8) | blue;
+    }
+
+    /**
+     * 块的平均值等于反量化后的 DC 系数除以 8 再加上 128
+     */
+    private int sample(@NonNull Component component, int x, int y) {
+        int blockColumn = x * component.h / maxH;
+        int blockRow = y * component.v / maxV;
+        int dc = component.dc[blockRow * component.stride + blockColumn] * component.dcQuantization;
+        return clamp(((dc + 4) >> 3) + 128);
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    private Component findComponent(int id) {
+        for (Component component : components) {
+            if (component.id == id) {
+                return component;
+            }
+        }
+        return null;
+    }
+
+    private boolean isAllComponentsDecoded() {
+        for (Component component : components) {
+            if (!component.decoded) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int readMarker() throws IOException {
+        return readMarker(false);
+    }
+
+    /**
+     * 读取下一个标记，会跳过前面的熵编码数据和填充字节
+     *
+     * @param acceptRestart 是否返回 RST 标记，不返回的话会当成熵编码数据跳过
+     */
+    private int readMarker(boolean acceptRestart) throws IOException {
+        if (pendingMarker != -1) {
+            int marker = pendingMarker;
+            pendingMarker = -1;
+            bitCount = 0;
+            if (acceptRestart || marker < MARKER_RST0 || marker > MARKER_RST7) {
+                return marker;
+            }
+        }
+        bitCount = 0;
+
+        while (true) {
+            int value = readByte();
+            if (value != MARKER_PREFIX) {
+                continue;
+            }
+            int marker = readByte();
+            while (marker == MARKER_PREFIX) {
+                marker = readByte();
+            }
+            if (marker != 0 && (acceptRestart || marker < MARKER_RST0 || marker > MARKER_RST7)) {
+                return marker;
+            }
+        }
+    }
+
+    private int readBit() throws IOException {
+        if (bitCount == 0) {
+            if (pendingMarker != -1) {
+                // 数据不够时和 libjpeg 一样补 0
+                return 0;
+            }
+            int value = readByte();
+            if (value == MARKER_PREFIX) {
+                int next = readByte();
+                while (next == MARKER_PREFIX) {
+                    next = readByte();
+                }
+                if (next != 0) {
+                    pendingMarker = next;
+                    return 0;
+                }
+            }
+            bitBuffer = value;
+            bitCount = 8;
+        }
+        bitCount--;
+        return (bitBuffer >> bitCount) & 1;
+    }
+
+    private int receive(int length) throws IOException {
+        int value = 0;
+        for (int index = 0; index < length; index++) {
+            value = (value << 1) | readBit();
+        }
+        return value;
+    }
+
+    private static int extend(int value, int length) {
+        return value < (1 << (length - 1)) ? value - (1 << length) + 1 : value;
+    }
+
+    private int readByte() throws IOException {
+        int value = inputStream.read();
+        if (value == -1) {
+            throw new EOFException();
+        }
+        return value;
+    }
+
+    private int readUnsignedShort() throws IOException {
+        return (readByte() << 8) | readByte();
+    }
+
+    private void skipFully(long length) throws IOException {
+        while (length > 0) {
+            long skipped = inputStream.skip(length);
+            if (skipped <= 0) {
+                readByte();
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+
+    private static class Component {
+        private final int id;
+        private final int h;
+        private final int v;
+        private final int quantizationTableId;
+        private int blocksPerLine;
+        private int blocksPerColumn;
+        private int stride;
+        private int[] dc;
+        private int dcTableId;
+        private int acTableId;
+        private int dcQuantization;
+        private int prediction;
+        private boolean decoded;
+
+        Component(int id, int h, int v, int quantizationTableId) {
+            this.id = id;
+            this.h = h;
+            this.v = v;
+            this.quantizationTableId = quantizationTableId;
+        }
+    }
+
+    /**
+     * 规范霍夫曼表，按码长逐位比较
+     */
+    private static class HuffmanTable {
+        private final int[] minCodes = new int[17];
+        private final int[] maxCodes = new int[17];
+        private final int[] valueOffsets = new int[17];
+        private final int[] values;
+
+        HuffmanTable(@NonNull int[] counts, @NonNull int[] values) {
+            this.values = values;
+            int code = 0;
+            int valueIndex = 0;
+            for (int length = 1; length <= 16; length++) {
+                valueOffsets[length] = valueIndex;
+                minCodes[length] = code;
+                code += counts[length];
+                valueIndex += counts[length];
+                maxCodes[length] = counts[length] > 0 ? code - 1 : -1;
+                code <<= 1;
+            }
+        }
+
+        int decode(@NonNull JpegDcDecoder decoder) throws IOException {
+            int code = 0;
+            for (int length = 1; length <= 16; length++) {
+                code = (code << 1) | decoder.readBit();
+                if (code <= maxCodes[length]) {
+                    return values[valueOffsets[length] + code - minCodes[length]];
+                }
+            }
+            throw new IOException("Invalid huffman code");
+        }
+    }
+}
@@ -137,6 +137,22 @@ public class LruCache<K, V> {
         return previous;
     }
 
+    /**
+     * Sets the size of the cache.
+     *
+     * @param maxSize The new maximum size.
+     */
+    public void resize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+
+        synchronized (this) {
+            this.maxSize = maxSize;
+        }
+        trimToSize(maxSize);
+    }
+
     /**
      * Remove the eldest entries until the total of remaining entries is at or
      * below the requested size.
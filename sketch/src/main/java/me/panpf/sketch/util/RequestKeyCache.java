@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.panpf.sketch.util;
+
+import androidx.annotation.NonNull;
+import android.text.TextUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import me.panpf.sketch.uri.UriModel;
+
+/**
+ * 缓存最近生成的请求 key，同一个 uri 和选项 key 再次绑定时直接返回上次的结果，不再拼接字符串
+ * <p>
+ * 以 uri 为 key，每个 uri 只记录最后一次的选项 key。数量超过上限时释放最久没有用过的，列表滑动时常用的 uri 不会因为一次整体清空而全部失效。
+ * 需要转成短 uri 的 uri（例如 base64 格式的 uri）可能有好几 MB，不能作为 key 长期持有，也不能每次都比较内容，
+ * 所以用 {@link UriIdentityCache} 按 uri 对象缓存，同一个 uri 对象再次绑定时不用再计算短 uri
+ */
+class RequestKeyCache {
+    private static final int MAX_SIZE = 256;
+    private static final int SHORT_URI_SLOT_COUNT = 32;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(MAX_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+    private final UriIdentityCache<Entry> shortUriEntries = new UriIdentityCache<>(SHORT_URI_SLOT_COUNT);
+
+    @NonNull
+    String get(@NonNull String imageUri, @NonNull UriModel uriModel, @NonNull String optionsKey) {
+        if (uriModel.isConvertShortUriForKey()) {
+            Entry entry = shortUriEntries.get(imageUri);
+            if (entry != null && entry.matches(optionsKey)) {
+                return entry.requestKey;
+            }
+
+            String requestKey = makeRequestKey(uriModel.makeShortUri(imageUri), optionsKey);
+            shortUriEntries.put(imageUri, new Entry(optionsKey, requestKey));
+            return requestKey;
+        }
+
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(imageUri);
+        }
+        if (entry != null && entry.matches(optionsKey)) {
+            return entry.requestKey;
+        }
+
+        String requestKey = makeRequestKey(imageUri, optionsKey);
+        synchronized (entries) {
+            entries.put(imageUri, new Entry(optionsKey, requestKey));
+        }
+        return requestKey;
+    }
+
+    @NonNull
+    private static String makeRequestKey(@NonNull String shortUri, @NonNull String optionsKey) {
+        if (TextUtils.isEmpty(optionsKey)) {
+            return shortUri;
+        }
+
+        // 提前算好长度，拼接过程中不需要扩容
+        StringBuilder builder = new StringBuilder(shortUri.length() + 9 + optionsKey.length());
+        builder.append(shortUri);
+        if (shortUri.lastIndexOf("?") == -1) {
+            builder.append('?');
+        } else {
+            builder.append('&');
+        }
+        builder.append("options");
+        builder.append("=");
+        builder.append(optionsKey);
+        return builder.toString();
+    }
+
+    private static class Entry {
+        @NonNull
+        private final String optionsKey;
+        @NonNull
+        private final String requestKey;
+
+        Entry(@NonNull String optionsKey, @NonNull String requestKey) {
+            this.optionsKey = optionsKey;
+            this.requestKey = requestKey;
+        }
+
+        boolean matches(@NonNull String optionsKey) {
+            // 选项 key 通常是同一个对象，所以先比较引用
+            //noinspection StringEquality
+            return this.optionsKey == optionsKey || this.optionsKey.equals(optionsKey);
+        }
+    }
+}
@@ -91,6 +91,7 @@ import me.panpf.sketch.zoom.block.Block;
 public class SketchUtils {
 
     private static final float[] MATRIX_VALUES = new float[9];
+    private static final RequestKeyCache REQUEST_KEY_CACHE = new RequestKeyCache();
 
     /**
      * Read apk file icon. Although the PackageManager will cache the icon, the bitmap returned by this method every time
@@ -976,7 +977,7 @@ public class SketchUtils {
     }
 
     /**
-     * 生成请求 key
+     * 生成请求 key，最近生成过的 uri 和选项 key 组合会直接返回缓存的结果
      *
      * @param imageUri   图片地址
      * @param optionsKey 选项 key
@@ -985,24 +986,7 @@ public class SketchUtils {
     @SuppressWarnings("unused")
     @NonNull
     public static String makeRequestKey(@NonNull String imageUri, @NonNull UriModel uriModel, @NonNull String optionsKey) {
-        if (uriModel.isConvertShortUriForKey()) {
-            imageUri = SketchMD5Utils.md5(imageUri);
-        }
-
-        if (TextUtils.isEmpty(optionsKey)) {
-            return imageUri;
-        }
-
-        StringBuilder builder = new StringBuilder(imageUri);
-        if (imageUri.lastIndexOf("?") == -1) {
-            builder.append('?');
-        } else {
-            builder.append('&');
-        }
-        builder.append("options");
-        builder.append("=");
-        builder.append(optionsKey);
-        return builder.toString();
+        return REQUEST_KEY_CACHE.get(imageUri, uriModel, optionsKey);
     }
 
     /**
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.panpf.sketch.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * 按 uri 对象本身缓存一个值，适合 base64 格式这种可能有好几 MB 的 uri
+ * <p>
+ * 只比较引用，不计算也不比较 uri 的内容，查找时不分配内存。只弱引用 uri，不会因为缓存而长期持有很长的字符串。
+ * 按 {@link System#identityHashCode(Object)} 直接映射到固定数量的槽位，冲突时直接覆盖，内容相同但不是同一个对象的 uri 会被当作没有缓存
+ */
+public class UriIdentityCache<V> {
+    private final Slot<V>[] slots;
+
+    /**
+     * @param slotCount 槽位数量，会向上取整到 2 的幂
+     */
+    @SuppressWarnings("unchecked")
+    public UriIdentityCache(int slotCount) {
+        int count = Integer.highestOneBit(Math.max(1, slotCount - 1)) << 1;
+        this.slots = new Slot[count];
+    }
+
+    @Nullable
+    public V get(@NonNull String uri) {
+        Slot<V> slot;
+        synchronized (slots) {
+            slot = slots[indexOf(uri)];
+        }
+        return slot != null && slot.uriReference.get() == uri ? slot.value : null;
+    }
+
+    public void put(@NonNull String uri, @NonNull V value) {
+        Slot<V> slot = new Slot<>(uri, value);
+        synchronized (slots) {
+            slots[indexOf(uri)] = slot;
+        }
+    }
+
+    private int indexOf(@NonNull String uri) {
+        return System.identityHashCode(uri) & (slots.length - 1);
+    }
+
+    private static class Slot<V> {
+        @NonNull
+        private final WeakReference<String> uriReference;
+        @NonNull
+        private final V value;
+
+        Slot(@NonNull String uri, @NonNull V value) {
+            this.uriReference = new WeakReference<>(uri);
+            this.value = value;
+        }
+    }
+}
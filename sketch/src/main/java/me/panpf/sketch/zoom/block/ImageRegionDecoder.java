@@ -19,15 +19,14 @@ package me.panpf.sketch.zoom.block;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.BitmapRegionDecoder;
 import android.graphics.Point;
 import android.graphics.Rect;
 
 import java.io.IOException;
-import java.io.InputStream;
 
 import me.panpf.sketch.Configuration;
 import me.panpf.sketch.Sketch;
+import me.panpf.sketch.cache.RegionDecoderCache;
 import me.panpf.sketch.datasource.DataSource;
 import me.panpf.sketch.decode.ImageDecodeUtils;
 import me.panpf.sketch.decode.ImageOrientationCorrector;
@@ -35,7 +34,6 @@ import me.panpf.sketch.decode.ImageType;
 import me.panpf.sketch.uri.GetDataSourceException;
 import me.panpf.sketch.uri.UriModel;
 import me.panpf.sketch.util.ExifInterface;
-import me.panpf.sketch.util.SketchUtils;
 
 /**
  * 图片碎片解码器，支持纠正图片方向
@@ -46,15 +44,17 @@ public class ImageRegionDecoder {
     private Point imageSize;
     private String imageUri;
     private ImageType imageType;
-    private BitmapRegionDecoder regionDecoder;
+    private RegionDecoderCache regionDecoderCache;
+    private RegionDecoderCache.Ref regionDecoderRef;
 
-    ImageRegionDecoder(String imageUri, Point imageSize, ImageType imageType,
-                       int exifOrientation, BitmapRegionDecoder regionDecoder) {
+    ImageRegionDecoder(String imageUri, Point imageSize, ImageType imageType, int exifOrientation,
+                       RegionDecoderCache regionDecoderCache, RegionDecoderCache.Ref regionDecoderRef) {
         this.imageUri = imageUri;
         this.imageSize = imageSize;
         this.imageType = imageType;
         this.exifOrientation = exifOrientation;
-        this.regionDecoder = regionDecoder;
+        this.regionDecoderCache = regionDecoderCache;
+        this.regionDecoderRef = regionDecoderRef;
     }
 
     public static ImageRegionDecoder build(Context context, final String imageUri,
@@ -86,18 +86,14 @@ public class ImageRegionDecoder {
         }
         orientationCorrector.rotateSize(imageSize, exifOrientation);
 
-        InputStream inputStream = null;
-        BitmapRegionDecoder regionDecoder;
-        try {
-            inputStream = dataSource.getInputStream();
-            regionDecoder = BitmapRegionDecoder.newInstance(inputStream, false);
-        } finally {
-            SketchUtils.close(inputStream);
-        }
+        // 和缩略图模式共用已经打开的 BitmapRegionDecoder
+        RegionDecoderCache regionDecoderCache = configuration.getRegionDecoderCache();
+        String key = RegionDecoderCache.makeKey(uriModel.getDiskCacheKey(imageUri), dataSource);
+        RegionDecoderCache.Ref regionDecoderRef = regionDecoderCache.acquire(key, dataSource);
 
         ImageType imageType = ImageType.valueOfMimeType(boundOptions.outMimeType);
 
-        return new ImageRegionDecoder(imageUri, imageSize, imageType, exifOrientation, regionDecoder);
+        return new ImageRegionDecoder(imageUri, imageSize, imageType, exifOrientation, regionDecoderCache, regionDecoderRef);
     }
 
     @SuppressWarnings("unused")
@@ -118,22 +114,33 @@ public class ImageRegionDecoder {
         return exifOrientation;
     }
 
-    public boolean isReady() {
-        return regionDecoder != null && !regionDecoder.isRecycled();
+    public synchronized boolean isReady() {
+        return regionDecoderRef != null && !regionDecoderRef.getRegionDecoder().isRecycled();
     }
 
-    public void recycle() {
-        if (isReady()) {
-            regionDecoder.recycle();
-            regionDecoder = null;
+    /**
+     * 交还给 {@link RegionDecoderCache}，空闲一段时间后才会真正释放
+     */
+    public synchronized void recycle() {
+        if (regionDecoderRef != null) {
+            regionDecoderCache.release(regionDecoderRef);
+            regionDecoderRef = null;
         }
     }
 
     public Bitmap decodeRegion(Rect srcRect, BitmapFactory.Options options) {
-        if (isReady()) {
-            return regionDecoder.decodeRegion(srcRect, options);
-        } else {
+        // 解码时不持有锁，所以要多持有一次引用，否则解码过程中 recycle() 交还后可能会被缓存释放
+        RegionDecoderCache.Ref ref;
+        synchronized (this) {
+            ref = isReady() && regionDecoderCache.retain(regionDecoderRef) ? regionDecoderRef : null;
+        }
+        if (ref == null) {
             return null;
         }
+        try {
+            return ref.getRegionDecoder().decodeRegion(srcRect, options);
+        } finally {
+            regionDecoderCache.release(ref);
+        }
     }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.panpf.sketch.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+
+/**
+ * 进程内的 HTTP 服务器，提供一组固定的 jpg 图片，用来代替真实的图片服务器，让 {@link LoadPipelineBenchmark} 的结果可以复现
+ */
+class ImageServer {
+    private static final int[][] SIZES = {{640, 480}, {1280, 720}, {1920, 1080}, {800, 1200}, {300, 300}};
+
+    private final byte[][] images;
+    private final int delayMillis;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * @param imageCount  图片数量，尺寸在几种常见尺寸中循环
+     * @param delayMillis 每个响应的额外延迟，用来模拟网络耗时
+     */
+    ImageServer(int imageCount, int delayMillis) throws IOException {
+        this.delayMillis = delayMillis;
+        this.images = new byte[imageCount][];
+        Random random = new Random(imageCount);
+        for (int i = 0; i < imageCount; i++) {
+            int[] size = SIZES[i % SIZES.length];
+            images[i] = makeJpeg(size[0], size[1], random);
+        }
+    }
+
+    private static byte[] makeJpeg(int width, int height, Random random) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int base = random.nextInt(0xFFFFFF);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                // 渐变加少量噪点，压缩后的大小接近普通照片
+                image.setRGB(x, y, base + (x * 255 / width << 16) + (y * 255 / height << 8) + random.nextInt(32));
+            }
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, "jpg", outputStream)) {
+            throw new IOException("No jpg writer");
+        }
+        return outputStream.toByteArray();
+    }
+
+    void start(int threadCount) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/image/", new ImageHandler());
+        executor = Executors.newFixedThreadPool(threadCount);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    int getImageCount() {
+        return images.length;
+    }
+
+    long getTotalBytes() {
+        long totalBytes = 0;
+        for (byte[] image : images) {
+            totalBytes += image.length;
+        }
+        return totalBytes;
+    }
+
+    String getUri(int index) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/image/" + index + ".jpg";
+    }
+
+    private class ImageHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                String path = exchange.getRequestURI().getPath();
+                String name = path.substring(path.lastIndexOf('/') + 1);
+                int index;
+                try {
+                    index = Integer.parseInt(name.substring(0, name.indexOf('.')));
+                } catch (RuntimeException e) {
+                    index = -1;
+                }
+                if (index < 0 || index >= images.length) {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+
+                if (delayMillis > 0) {
+                    try {
+                        Thread.sleep(delayMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                byte[] image = images[index];
+                exchange.getResponseHeaders().set("Content-Type", "image/jpeg");
+                exchange.sendResponseHeaders(200, image.length);
+                OutputStream outputStream = exchange.getResponseBody();
+                outputStream.write(image);
+                outputStream.flush();
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.panpf.sketch.benchmark;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.os.Looper;
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import me.panpf.sketch.SLog;
+import me.panpf.sketch.Sketch;
+import me.panpf.sketch.SketchImageView;
+import me.panpf.sketch.cache.LruBitmapPool;
+import me.panpf.sketch.cache.LruDiskCache;
+import me.panpf.sketch.cache.LruMemoryCache;
+import me.panpf.sketch.decode.ImageAttrs;
+import me.panpf.sketch.request.CancelCause;
+import me.panpf.sketch.request.DisplayListener;
+import me.panpf.sketch.request.DisplayOptions;
+import me.panpf.sketch.request.ErrorCause;
+import me.panpf.sketch.request.ImageFrom;
+import me.panpf.sketch.request.RequestMetrics;
+
+/**
+ * 端到端的加载基准测试，在 Robolectric 中通过 {@link Sketch#display(String, me.panpf.sketch.SketchView)} 从进程内的 {@link ImageServer}
+ * 加载图片，完整经过 RequestExecutor、ImageDownloader、LruDiskCache、ImageDecoder 和 LruMemoryCache，统计吞吐量、端到端耗时、
+ * 各阶段耗时（来自 {@link RequestMetrics}）以及内存分配
+ * <p>
+ * 默认跳过，需要通过 -PloadBenchmark 开启，参数见 benchmark/README.md。Robolectric 的 BitmapFactory 不会真正解码像素，
+ * 所以结果适合用来比较调度、下载和缓存的改动，不能代表真机上的解码耗时
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class LoadPipelineBenchmark {
+    private static final String PROPERTY_PREFIX = "loadBenchmark";
+    private static final long NO_PROGRESS_TIMEOUT_MILLIS = 60 * 1000;
+
+    private Context context;
+    private Sketch sketch;
+    private ImageServer server;
+
+    private int requestCount;
+    private int concurrency;
+    private String warmth;
+    private String[] optionsNames;
+    private DisplayOptions[] optionsMix;
+
+    @Before
+    public void setup() throws IOException {
+        Assume.assumeTrue("Load benchmark is disabled, run with -P" + PROPERTY_PREFIX, System.getProperty(PROPERTY_PREFIX) != null);
+
+        SLog.setLevel(SLog.LEVEL_NONE);
+        context = RuntimeEnvironment.application;
+        sketch = Sketch.with(context);
+
+        requestCount = getIntProperty("requests", 2000);
+        concurrency = getIntProperty("concurrency", 16);
+        warmth = getProperty("warmth", "cold");
+        optionsNames = getProperty("options", "default,resize,thumbnail").split(",");
+        optionsMix = new DisplayOptions[optionsNames.length];
+        for (int i = 0; i < optionsNames.length; i++) {
+            optionsMix[i] = makeOptions(optionsNames[i].trim());
+        }
+
+        server = new ImageServer(getIntProperty("images", 50), getIntProperty("serverDelay", 0));
+        server.start(getIntProperty("serverThreads", 8));
+    }
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private static String getProperty(String name, String defaultValue) {
+        String value = System.getProperty(PROPERTY_PREFIX + "." + name);
+        return value != null && value.length() > 0 ? value : defaultValue;
+    }
+
+    private static int getIntProperty(String name, int defaultValue) {
+        return Integer.parseInt(getProperty(name, String.valueOf(defaultValue)));
+    }
+
+    @NonNull
+    private static DisplayOptions makeOptions(@NonNull String name) {
+        DisplayOptions options = new DisplayOptions();
+        if ("default".equals(name)) {
+            return options;
+        } else if ("resize".equals(name)) {
+            return options.setResize(200, 200);
+        } else if ("maxSize".equals(name)) {
+            return options.setMaxSize(400, 400);
+        } else if ("thumbnail".equals(name)) {
+            return options.setResize(300, 300).setThumbnailMode(true);
+        } else if ("lowQuality".equals(name)) {
+            return options.setLowQualityImage(true);
+        } else if ("noMemoryCache".equals(name)) {
+            return options.setCacheInMemoryDisabled(true);
+        } else if ("noCache".equals(name)) {
+            return options.setCacheInMemoryDisabled(true).setCacheInDiskDisabled(true);
+        } else {
+            throw new IllegalArgumentException("Unknown options: " + name
+                    + ", available: default, resize, maxSize, thumbnail, lowQuality, noMemoryCache, noCache");
+        }
+    }
+
+    @Test
+    public void run() throws IOException {
+        // 预热，cold 也要跑一遍，让线程池、类加载以及 JIT 都准备好
+        int[][] warmupPlan = new int[server.getImageCount() * optionsMix.length][];
+        for (int i = 0; i < warmupPlan.length; i++) {
+            warmupPlan[i] = new int[]{i % server.getImageCount(), i / server.getImageCount()};
+        }
+        Result warmupResult = execute(warmupPlan);
+        Assert.assertEquals("Warm-up failed: " + warmupResult.errorCount + " errors", 0, warmupResult.errorCount);
+
+        if ("cold".equals(warmth)) {
+            sketch.getConfiguration().getMemoryCache().clear();
+            sketch.getConfiguration().getDiskCache().clear();
+        } else if ("disk".equals(warmth)) {
+            sketch.getConfiguration().getMemoryCache().clear();
+        } else if (!"memory".equals(warmth)) {
+            throw new IllegalArgumentException("Unknown warmth: " + warmth + ", available: cold, disk, memory");
+        }
+        sketch.getConfiguration().getBitmapPool().clear();
+        RequestMetrics requestMetrics = sketch.getConfiguration().getRequestMetrics();
+        requestMetrics.reset();
+
+        Random random = new Random(requestCount);
+        int[][] plan = new int[requestCount][];
+        for (int i = 0; i < plan.length; i++) {
+            plan[i] = new int[]{random.nextInt(server.getImageCount()), random.nextInt(optionsMix.length)};
+        }
+
+        long allocatedBytes = getAllocatedBytes();
+        long[] gc = getGcCountAndTime();
+        Result result = execute(plan);
+        allocatedBytes = getAllocatedBytes() - allocatedBytes;
+        long[] gcAfter = getGcCountAndTime();
+
+        String report = makeReport(result, requestMetrics, allocatedBytes, gcAfter[0] - gc[0], gcAfter[1] - gc[1]);
+        System.out.println(report);
+        writeReport(report);
+
+        Assert.assertEquals("Some requests failed", 0, result.errorCount);
+    }
+
+    /**
+     * 用 concurrency 个 {@link SketchImageView} 轮流执行请求，一个 view 的请求结束后再给它下一个请求，同时不停地执行主线程上的回调
+     *
+     * @param plan 每个请求的图片序号以及选项序号
+     */
+    @NonNull
+    private Result execute(@NonNull int[][] plan) {
+        final Result result = new Result(plan.length);
+        final Slot[] slots = new Slot[Math.min(concurrency, plan.length)];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot(new SketchImageView(context), result);
+        }
+
+        int nextIndex = 0;
+        long lastProgressTime = System.currentTimeMillis();
+        long startTime = System.nanoTime();
+        while (result.finishedCount < plan.length) {
+            int finishedCount = result.finishedCount;
+            for (Slot slot : slots) {
+                if (!slot.busy && nextIndex < plan.length) {
+                    int[] request = plan[nextIndex++];
+                    slot.start(server.getUri(request[0]), optionsMix[request[1]]);
+                }
+            }
+
+            Shadows.shadowOf(Looper.getMainLooper()).idle();
+
+            if (result.finishedCount != finishedCount) {
+                lastProgressTime = System.currentTimeMillis();
+            } else if (System.currentTimeMillis() - lastProgressTime > NO_PROGRESS_TIMEOUT_MILLIS) {
+                Assert.fail("No request finished in " + NO_PROGRESS_TIMEOUT_MILLIS + "ms, finished " + result.finishedCount + "/" + plan.length);
+            } else {
+                try {
+                    Thread.sleep(0, 200 * 1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    Assert.fail("Interrupted");
+                }
+            }
+        }
+        result.elapsedNanos = System.nanoTime() - startTime;
+        return result;
+    }
+
+    /**
+     * 所有线程分配的字节数，已经结束的线程不会计算在内，所以只能作为参考
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            return 0;
+        }
+        com.sun.management.ThreadMXBean sunThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        long allocatedBytes = 0;
+        for (long bytes : sunThreadMXBean.getThreadAllocatedBytes(threadMXBean.getAllThreadIds())) {
+            if (bytes > 0) {
+                allocatedBytes += bytes;
+            }
+        }
+        return allocatedBytes;
+    }
+
+    private static long[] getGcCountAndTime() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+            time += Math.max(0, bean.getCollectionTime());
+        }
+        return new long[]{count, time};
+    }
+
+    @NonNull
+    private String makeReport(@NonNull Result result, @NonNull RequestMetrics requestMetrics, long allocatedBytes, long gcCount, long gcMillis) {
+        long[] latencies = Arrays.copyOf(result.latencies, result.finishedCount);
+        Arrays.sort(latencies);
+        double seconds = result.elapsedNanos / 1000000000d;
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.US, "requests=%d, concurrency=%d, warmth=%s, options=%s, images=%d(%dKB)%n",
+                latencies.length, concurrency, warmth, Arrays.toString(optionsNames), server.getImageCount(), server.getTotalBytes() / 1024));
+        builder.append(String.format(Locale.US, "throughput: %.1f requests/s in %.2fs, errors=%d, canceled=%d%n",
+                latencies.length / seconds, seconds, result.errorCount, result.canceledCount));
+        builder.append(String.format(Locale.US, "latency: p50=%.2fms, p95=%.2fms, p99=%.2fms, max=%.2fms%n",
+                percentile(latencies, 0.5f), percentile(latencies, 0.95f), percentile(latencies, 0.99f), percentile(latencies, 1f)));
+        builder.append("from: ");
+        for (ImageFrom imageFrom : ImageFrom.values()) {
+            if (result.fromCounts[imageFrom.ordinal()] > 0) {
+                builder.append(imageFrom.name()).append("=").append(result.fromCounts[imageFrom.ordinal()]).append(" ");
+            }
+        }
+        builder.append(String.format(Locale.US, "%nallocations: %dKB, %dB/request, gc=%d(%dms)%n",
+                allocatedBytes / 1024, latencies.length > 0 ? allocatedBytes / latencies.length : 0, gcCount, gcMillis));
+        builder.append("stages (count p50/p95/p99):\n").append(requestMetrics.dump()).append("\n");
+
+        if (sketch.getConfiguration().getMemoryCache() instanceof LruMemoryCache) {
+            builder.append(((LruMemoryCache) sketch.getConfiguration().getMemoryCache()).getStats().snapshot()).append("\n");
+        }
+        if (sketch.getConfiguration().getDiskCache() instanceof LruDiskCache) {
+            builder.append(((LruDiskCache) sketch.getConfiguration().getDiskCache()).getStats().snapshot()).append("\n");
+        }
+        if (sketch.getConfiguration().getBitmapPool() instanceof LruBitmapPool) {
+            builder.append(((LruBitmapPool) sketch.getConfiguration().getBitmapPool()).getStats().snapshot()).append("\n");
+        }
+        return builder.toString();
+    }
+
+    private static float percentile(@NonNull long[] sortedNanos, float percentile) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int index = Math.min(sortedNanos.length - 1, Math.max(0, (int) Math.ceil(sortedNanos.length * percentile) - 1));
+        return sortedNanos[index] / 1000000f;
+    }
+
+    private static void writeReport(@NonNull String report) throws IOException {
+        File dir = new File("build/reports/loadBenchmark");
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Unable create dir: " + dir.getPath());
+        }
+        FileWriter writer = new FileWriter(new File(dir, "result.txt"));
+        try {
+            writer.write(report);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static class Result {
+        private final long[] latencies;
+        private final int[] fromCounts = new int[ImageFrom.values().length];
+        private int finishedCount;
+        private int errorCount;
+        private int canceledCount;
+        private long elapsedNanos;
+
+        Result(int requestCount) {
+            this.latencies = new long[requestCount];
+        }
+
+        void onFinished(long latencyNanos) {
+            latencies[finishedCount++] = latencyNanos;
+        }
+    }
+
+    /**
+     * 一个 view 同一时间只执行一个请求，所有回调都在主线程
+     */
+    private class Slot implements DisplayListener {
+        private final SketchImageView view;
+        private final Result result;
+        private boolean busy;
+        private long startTime;
+
+        Slot(@NonNull SketchImageView view, @NonNull Result result) {
+            this.view = view;
+            this.result = result;
+            view.setDisplayListener(this);
+        }
+
+        void start(@NonNull String uri, @NonNull DisplayOptions options) {
+            // 命中内存缓存时会在 commit 中直接回调 onCompleted，所以要先标记
+            busy = true;
+            startTime = System.nanoTime();
+            sketch.display(uri, view).options(options).commit();
+        }
+
+        private void finish() {
+            if (busy) {
+                busy = false;
+                result.onFinished(System.nanoTime() - startTime);
+            }
+        }
+
+        @Override
+        public void onStarted() {
+
+        }
+
+        @Override
+        public void onCompleted(@NonNull Drawable drawable, @NonNull ImageFrom imageFrom, @NonNull ImageAttrs imageAttrs) {
+            if (busy) {
+                result.fromCounts[imageFrom.ordinal()]++;
+            }
+            finish();
+        }
+
+        @Override
+        public void onError(@NonNull ErrorCause cause) {
+            if (busy) {
+                result.errorCount++;
+            }
+            finish();
+        }
+
+        @Override
+        public void onCanceled(@NonNull CancelCause cause) {
+            if (busy) {
+                result.canceledCount++;
+            }
+            finish();
+        }
+    }
+}
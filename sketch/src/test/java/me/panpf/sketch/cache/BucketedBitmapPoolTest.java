@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.panpf.sketch.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 验证 {@link BucketedBitmapPool} 的桶下限以及放入、取出时选桶的计算
+ */
+public class BucketedBitmapPoolTest {
+
+    @Test
+    public void testLowerBounds() {
+        Assert.assertEquals(4096, BucketedBitmapPool.getBucketLowerBound(0));
+        Assert.assertEquals(5793, BucketedBitmapPool.getBucketLowerBound(1));
+        Assert.assertEquals(8192, BucketedBitmapPool.getBucketLowerBound(2));
+        Assert.assertEquals(11586, BucketedBitmapPool.getBucketLowerBound(3));
+        Assert.assertEquals(4 * 1024 * 1024, BucketedBitmapPool.getBucketLowerBound(20));
+        Assert.assertEquals(5931642, BucketedBitmapPool.getBucketLowerBound(21));
+        Assert.assertEquals(1L << 30, BucketedBitmapPool.getBucketLowerBound(36));
+        // 每个桶的下限都严格递增，相邻两个桶相差约 √2 倍
+        for (int index = 1; index < BucketedBitmapPool.getBucketCount(); index++) {
+            long lowerBound = BucketedBitmapPool.getBucketLowerBound(index);
+            long previousLowerBound = BucketedBitmapPool.getBucketLowerBound(index - 1);
+            Assert.assertTrue("index=" + index, lowerBound > previousLowerBound);
+            double ratio = (double) lowerBound / previousLowerBound;
+            Assert.assertTrue("index=" + index + ", ratio=" + ratio, ratio > 1.41 && ratio < 1.42);
+        }
+        // 最大的桶能放下所有 Bitmap
+        Assert.assertTrue(BucketedBitmapPool.getBucketLowerBound(BucketedBitmapPool.getBucketCount() - 1) > Integer.MAX_VALUE / 2);
+    }
+
+    @Test
+    public void testPutBucketIndex() {
+        for (int byteCount : sampleByteCounts()) {
+            int index = BucketedBitmapPool.getPutBucketIndex(byteCount);
+            if (byteCount < BucketedBitmapPool.getBucketLowerBound(0)) {
+                // 比最小的桶还小，不能放入
+                Assert.assertEquals("byteCount=" + byteCount, -1, index);
+                continue;
+            }
+            // 放入的桶的下限不超过字节数，而且是满足条件的最大的桶
+            Assert.assertTrue("byteCount=" + byteCount, BucketedBitmapPool.getBucketLowerBound(index) <= byteCount);
+            if (index + 1 < BucketedBitmapPool.getBucketCount()) {
+                Assert.assertTrue("byteCount=" + byteCount, BucketedBitmapPool.getBucketLowerBound(index + 1) > byteCount);
+            }
+        }
+    }
+
+    @Test
+    public void testGetBucketIndex() {
+        for (int byteCount : sampleByteCounts()) {
+            int index = BucketedBitmapPool.getGetBucketIndex(byteCount);
+            if (index == BucketedBitmapPool.getBucketCount()) {
+                // 比最大的桶的下限还大，没有一定够用的桶
+                Assert.assertTrue(BucketedBitmapPool.getBucketLowerBound(index - 1) < byteCount);
+                continue;
+            }
+            // 取出的桶的下限不小于所需字节数，而且是满足条件的最小的桶
+            Assert.assertTrue("byteCount=" + byteCount, BucketedBitmapPool.getBucketLowerBound(index) >= byteCount);
+            if (index > 0) {
+                Assert.assertTrue("byteCount=" + byteCount, BucketedBitmapPool.getBucketLowerBound(index - 1) < byteCount);
+            }
+
+            int putIndex = BucketedBitmapPool.getPutBucketIndex(byteCount);
+            Assert.assertTrue("byteCount=" + byteCount, index == putIndex || index == putIndex + 1);
+        }
+    }
+
+    @Test
+    public void testBitmapSizes() {
+        // 常见的 Bitmap 尺寸，同样尺寸的 Bitmap 放进去再取出来要落在同一个桶里
+        int[][] sizes = {{1080, 1920}, {720, 1280}, {100, 100}, {3000, 4000}, {32, 32}, {4096, 4096}};
+        for (int[] size : sizes) {
+            for (int bytesPerPixel : new int[]{2, 4}) {
+                int byteCount = size[0] * size[1] * bytesPerPixel;
+                int putIndex = BucketedBitmapPool.getPutBucketIndex(byteCount);
+                int getIndex = BucketedBitmapPool.getGetBucketIndex(byteCount);
+                if (putIndex == -1) {
+                    // 太小了不放入，取的时候从最小的桶里取
+                    Assert.assertEquals(0, getIndex);
+                } else if (BucketedBitmapPool.getBucketLowerBound(putIndex) == byteCount) {
+                    Assert.assertEquals(putIndex, getIndex);
+                } else {
+                    Assert.assertEquals(putIndex + 1, getIndex);
+                }
+            }
+        }
+    }
+
+    private static int[] sampleByteCounts() {
+        int[] byteCounts = new int[20000 + 30 * 3];
+        int count = 0;
+        for (int byteCount = 1; byteCount <= 20000; byteCount++) {
+            byteCounts[count++] = byteCount;
+        }
+        for (int shift = 1; shift < 31; shift++) {
+            int power = 1 << shift;
+            byteCounts[count++] = power;
+            byteCounts[count++] = power - 1;
+            byteCounts[count++] = power < Integer.MAX_VALUE / 2 ? power + 1 : Integer.MAX_VALUE;
+        }
+        return byteCounts;
+    }
+}
@@ -0,0 +1,504 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.panpf.sketch.cache;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import me.panpf.sketch.Configuration;
+import me.panpf.sketch.Sketch;
+import me.panpf.sketch.uri.UriModelManager;
+
+/**
+ * 验证 {@link EncodedMemoryCache} 的环形日志释放顺序、修整内存以及和 {@link LruDiskCache} 的同步
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class EncodedMemoryCacheTest {
+
+    private Context context;
+    private EncodedMemoryCache cache;
+
+    @Before
+    public void setup() {
+        context = RuntimeEnvironment.application;
+        cache = new EncodedMemoryCache(context, 1000);
+        cache.setMaxEntrySize(400);
+    }
+
+    @After
+    public void tearDown() {
+        cache.close();
+    }
+
+    @Test
+    public void testPutAndGet() {
+        byte[] a = makeData(300, 1);
+        byte[] b = makeData(200, 2);
+        cache.put("a", a, a.length);
+        cache.put("b", b, b.length);
+
+        Assert.assertArrayEquals(a, cache.get("a"));
+        Assert.assertArrayEquals(b, cache.get("b"));
+        Assert.assertNull(cache.get("c"));
+        Assert.assertEquals(500, cache.getSize());
+
+        // 只放入 byteCount 长度的数据
+        byte[] c = makeData(300, 3);
+        cache.put("c", c, 100);
+        Assert.assertArrayEquals(Arrays.copyOf(c, 100), cache.get("c"));
+
+        CacheStats.Snapshot snapshot = cache.getStats().snapshot();
+        Assert.assertEquals(3, snapshot.getHitCount());
+        Assert.assertEquals(1, snapshot.getMissCount());
+        Assert.assertEquals(3, snapshot.getPutCount());
+    }
+
+    @Test
+    public void testRingEviction() {
+        put("a", 300, 1);
+        put("b", 300, 2);
+        put("c", 300, 3);
+        Assert.assertEquals(900, cache.getSize());
+
+        // 末尾只剩 100，放不下就回到开头，只覆盖最旧的 a
+        put("d", 300, 4);
+        assertEntries("b", "c", "d");
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(900, cache.getSize());
+
+        // 接着写在 d 后面，覆盖 b
+        put("e", 300, 5);
+        assertEntries("c", "d", "e");
+        Assert.assertNull(cache.get("b"));
+
+        // 写在 e 后面，覆盖 c
+        put("f", 200, 6);
+        assertEntries("d", "e", "f");
+        Assert.assertNull(cache.get("c"));
+        Assert.assertEquals(800, cache.getSize());
+
+        Assert.assertEquals(3, cache.getStats().snapshot().getEvictionCount(CacheStats.EVICTION_CAPACITY));
+    }
+
+    @Test
+    public void testReject() {
+        put("a", 401, 1);
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(0, cache.getSize());
+
+        // 设置为 0 相当于关闭
+        cache.setMaxEntrySize(0);
+        put("b", 10, 2);
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals(2, cache.getStats().snapshot().getRejectCount());
+    }
+
+    @Test
+    public void testRemove() {
+        put("a", 300, 1);
+        put("b", 300, 2);
+        cache.remove("a");
+        Assert.assertNull(cache.get("a"));
+        assertEntries("b");
+        Assert.assertEquals(300, cache.getSize());
+
+        // 删除不存在的 key 不影响其它数据
+        cache.remove("c");
+        assertEntries("b");
+    }
+
+    @Test
+    public void testTrimMemory() {
+        put("a", 300, 1);
+        put("b", 300, 2);
+
+        // 还在前台时不释放
+        cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertEntries("a", "b");
+
+        // 进入后台时整块共享内存都释放了，不是只删除一部分索引
+        cache.trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        Assert.assertEquals(0, cache.getSize());
+        Assert.assertNull(cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals(2, cache.getStats().snapshot().getEvictionCount(CacheStats.EVICTION_TRIM));
+
+        // 释放后还能继续使用
+        put("c", 300, 3);
+        assertEntries("c");
+    }
+
+    @Test
+    public void testDisabledAndClosed() {
+        put("a", 300, 1);
+        cache.setDisabled(true);
+        Assert.assertNull(cache.get("a"));
+        put("b", 300, 2);
+        Assert.assertEquals(0, cache.getSize());
+
+        cache.setDisabled(false);
+        put("c", 300, 3);
+        assertEntries("c");
+
+        cache.close();
+        Assert.assertTrue(cache.isClosed());
+        Assert.assertNull(cache.get("c"));
+        put("d", 300, 4);
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testConcurrentReadAndWrite() throws InterruptedException {
+        // 读取时不持有对象锁，写入的同时读取，拿到的数据要么完整要么是 null
+        final AtomicReference<String> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int round = 0; round < 2000 && failure.get() == null; round++) {
+                        int index = round % 50;
+                        byte[] data = cache.get(String.valueOf(index));
+                        if (data != null && !Arrays.equals(makeData(dataSize(index), index), data)) {
+                            failure.set("index=" + index);
+                        }
+                    }
+                }
+            });
+            readers.add(thread);
+            thread.start();
+        }
+        for (int round = 0; round < 10; round++) {
+            for (int index = 0; index < 50; index++) {
+                cache.remove(String.valueOf(index));
+                put(String.valueOf(index), dataSize(index), index);
+            }
+        }
+        for (Thread thread : readers) {
+            thread.join();
+        }
+        Assert.assertNull(failure.get(), failure.get());
+    }
+
+    @Test
+    public void testDiskCacheInvalidation() throws Exception {
+        Configuration configuration = Sketch.with(context).getConfiguration();
+        EncodedMemoryCache encodedMemoryCache = configuration.getEncodedMemoryCache();
+        DiskCache diskCache = configuration.getDiskCache();
+        byte[] data = makeData(100, 1);
+
+        // 改写磁盘缓存
+        encodedMemoryCache.put("a", data, data.length);
+        Assert.assertNotNull(encodedMemoryCache.get("a"));
+        DiskCache.Editor editor = diskCache.edit("a");
+        Assert.assertNotNull(editor);
+        Assert.assertNull(encodedMemoryCache.get("a"));
+        OutputStream outputStream = editor.newOutputStream();
+        outputStream.write(data);
+        outputStream.close();
+        editor.commit();
+
+        // 删除磁盘缓存
+        encodedMemoryCache.put("a", data, data.length);
+        Assert.assertNotNull(encodedMemoryCache.get("a"));
+        DiskCache.Entry entry = diskCache.get("a");
+        Assert.assertNotNull(entry);
+        Assert.assertTrue(entry.delete());
+        Assert.assertNull(encodedMemoryCache.get("a"));
+
+        // 清空磁盘缓存
+        encodedMemoryCache.put("b", data, data.length);
+        Assert.assertNotNull(encodedMemoryCache.get("b"));
+        diskCache.clear();
+        Assert.assertNull(encodedMemoryCache.get("b"));
+        Assert.assertEquals(0, encodedMemoryCache.getSize());
+    }
+
+    @Test
+    public void testAdmitFromInjectedDiskCache() throws Exception {
+        // 不依赖 Sketch 单例，数据来自设置进来的 DiskCache
+        FakeDiskCache diskCache = new FakeDiskCache();
+        cache.setDiskCache(diskCache);
+        cache.setUriModelManager(new UriModelManager());
+        String uri = "http://sample.com/a.jpg";
+        byte[] data = makeData(300, 1);
+        diskCache.write(uri, data);
+
+        cache.offer(uri);
+        Assert.assertArrayEquals(data, waitFor(uri));
+
+        // 磁盘缓存里没有的不放入
+        cache.offer("http://sample.com/b.jpg");
+        diskCache.write("http://sample.com/c.jpg", makeData(100, 3));
+        cache.offer("http://sample.com/c.jpg");
+        Assert.assertNotNull(waitFor("http://sample.com/c.jpg"));
+        Assert.assertNull(cache.get("http://sample.com/b.jpg"));
+    }
+
+    @Test
+    public void testRemoveOnlyInvalidatesSameKey() throws Exception {
+        FakeDiskCache diskCache = new FakeDiskCache();
+        cache.setDiskCache(diskCache);
+        cache.setUriModelManager(new UriModelManager());
+        String uriA = "http://sample.com/a.jpg";
+        String uriB = "http://sample.com/b.jpg";
+        String uriC = "http://sample.com/c.jpg";
+        diskCache.write(uriA, makeData(100, 1));
+        diskCache.write(uriB, makeData(100, 2));
+        diskCache.write(uriC, makeData(100, 3));
+
+        // 读取 a 的期间删除其它 key，a 照样放入
+        diskCache.block(uriA);
+        cache.offer(uriA);
+        diskCache.awaitBlocked();
+        cache.remove(uriB);
+        diskCache.release();
+        Assert.assertNotNull(waitFor(uriA));
+
+        // 读取 b 的期间删除 b，读到的是旧数据，不能放入
+        diskCache.block(uriB);
+        cache.offer(uriB);
+        diskCache.awaitBlocked();
+        cache.remove(uriB);
+        diskCache.release();
+        // 后台线程按顺序执行，c 放入了说明 b 已经处理完了
+        cache.offer(uriC);
+        Assert.assertNotNull(waitFor(uriC));
+        Assert.assertNull(cache.get(uriB));
+        Assert.assertNotNull(cache.get(uriA));
+    }
+
+    private byte[] waitFor(String key) throws InterruptedException {
+        long endTime = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < endTime) {
+            byte[] data = cache.get(key);
+            if (data != null) {
+                return data;
+            }
+            Thread.sleep(10);
+        }
+        return null;
+    }
+
+    private void put(String key, int byteCount, int seed) {
+        byte[] data = makeData(byteCount, seed);
+        cache.put(key, data, byteCount);
+    }
+
+    private void assertEntries(String... keys) {
+        long size = 0;
+        for (String key : keys) {
+            byte[] data = cache.get(key);
+            Assert.assertNotNull(key, data);
+            size += data.length;
+        }
+        Assert.assertEquals(size, cache.getSize());
+    }
+
+    private static int dataSize(int index) {
+        return 50 + index * 7;
+    }
+
+    private static byte[] makeData(int byteCount, int seed) {
+        byte[] data = new byte[byteCount];
+        for (int i = 0; i < byteCount; i++) {
+            data[i] = (byte) (seed * 31 + i);
+        }
+        return data;
+    }
+
+    /**
+     * 只实现了 {@link EncodedMemoryCache} 用到的方法，可以让指定 key 的读取停住，模拟读取磁盘缓存期间发生删除
+     */
+    private static class FakeDiskCache implements DiskCache {
+        private final File dir;
+        private final Map<String, File> files = new HashMap<>();
+        private volatile String blockKey;
+        private volatile CountDownLatch blockedLatch;
+        private volatile CountDownLatch releaseLatch;
+
+        FakeDiskCache() throws IOException {
+            dir = File.createTempFile("encoded", "");
+            Assert.assertTrue(dir.delete() && dir.mkdirs());
+            dir.deleteOnExit();
+        }
+
+        void write(String key, byte[] data) throws IOException {
+            File file = new File(dir, String.valueOf(files.size()));
+            file.deleteOnExit();
+            FileOutputStream outputStream = new FileOutputStream(file);
+            try {
+                outputStream.write(data);
+            } finally {
+                outputStream.close();
+            }
+            synchronized (files) {
+                files.put(key, file);
+            }
+        }
+
+        void block(String key) {
+            blockedLatch = new CountDownLatch(1);
+            releaseLatch = new CountDownLatch(1);
+            blockKey = key;
+        }
+
+        void awaitBlocked() throws InterruptedException {
+            Assert.assertTrue(blockedLatch.await(5, TimeUnit.SECONDS));
+        }
+
+        void release() {
+            blockKey = null;
+            releaseLatch.countDown();
+        }
+
+        @Override
+        public boolean exist(@NonNull String key) {
+            synchronized (files) {
+                return files.containsKey(key);
+            }
+        }
+
+        @Override
+        public Entry get(@NonNull final String key) {
+            if (key.equals(blockKey)) {
+                blockedLatch.countDown();
+                try {
+                    releaseLatch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            final File file;
+            synchronized (files) {
+                file = files.get(key);
+            }
+            if (file == null) {
+                return null;
+            }
+            return new Entry() {
+                @NonNull
+                @Override
+                public InputStream newInputStream() throws IOException {
+                    return new FileInputStream(file);
+                }
+
+                @NonNull
+                @Override
+                public File getFile() {
+                    return file;
+                }
+
+                @NonNull
+                @Override
+                public String getKey() {
+                    return key;
+                }
+
+                @Override
+                public boolean delete() {
+                    return false;
+                }
+            };
+        }
+
+        @Override
+        public Editor edit(@NonNull String key) {
+            throw new UnsupportedOperationException();
+        }
+
+        @NonNull
+        @Override
+        public File getCacheDir() {
+            return dir;
+        }
+
+        @Override
+        public long getMaxSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @NonNull
+        @Override
+        public String keyEncode(@NonNull String key) {
+            return key;
+        }
+
+        @Override
+        public long getSize() {
+            return 0;
+        }
+
+        @Override
+        public boolean isDisabled() {
+            return false;
+        }
+
+        @Override
+        public void setDisabled(boolean disabled) {
+        }
+
+        @Override
+        public void clear() {
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @NonNull
+        @Override
+        public ReentrantLock getEditLock(@NonNull String key) {
+            return new ReentrantLock();
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.panpf.sketch.decode;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 拼出动图 webp 的容器结构，验证 {@link AnimatedWebpImage} 的块解析、循环次数、截断数据的处理以及封装出来的帧图片结构
+ */
+public class AnimatedWebpImageTest {
+
+    @Test
+    public void testParse() throws IOException {
+        byte[] data = new WebpBuilder(100, 50, 2)
+                .frame(0, 0, 100, 50, 80, 0, 0, false, 31)
+                .frame(10, 20, 30, 16, 120, 0x01, 0x02, true, 10)
+                .frame(0, 0, 8, 8, 5, 0, 0, false, 7)
+                .build();
+
+        Assert.assertTrue(AnimatedWebpImage.isAnimated(new ByteArrayInputStream(data)));
+
+        AnimatedImage image = AnimatedImage.read(data, ImageType.WEBP);
+        Assert.assertNotNull(image);
+        Assert.assertEquals(100, image.getWidth());
+        Assert.assertEquals(50, image.getHeight());
+        Assert.assertEquals(2, image.getLoopCount());
+        Assert.assertEquals(3, image.getFrameCount());
+        Assert.assertEquals(data.length, image.getByteCount());
+
+        AnimatedImage.Frame frame0 = image.getFrame(0);
+        Assert.assertEquals(0, frame0.getX());
+        Assert.assertEquals(100, frame0.getWidth());
+        Assert.assertEquals(50, frame0.getHeight());
+        Assert.assertEquals(80, frame0.getDuration());
+        Assert.assertEquals(AnimatedImage.DISPOSE_NONE, frame0.getDispose());
+        Assert.assertTrue(frame0.isBlend());
+
+        // 偏移量在文件里存的是一半
+        AnimatedImage.Frame frame1 = image.getFrame(1);
+        Assert.assertEquals(10, frame1.getX());
+        Assert.assertEquals(20, frame1.getY());
+        Assert.assertEquals(30, frame1.getWidth());
+        Assert.assertEquals(16, frame1.getHeight());
+        Assert.assertEquals(120, frame1.getDuration());
+        Assert.assertEquals(AnimatedImage.DISPOSE_BACKGROUND, frame1.getDispose());
+        Assert.assertFalse(frame1.isBlend());
+
+        // 持续时间太短时按默认值处理
+        Assert.assertEquals(100, image.getFrame(2).getDuration());
+        Assert.assertEquals(300, image.getDuration());
+    }
+
+    @Test
+    public void testInfiniteLoop() throws IOException {
+        byte[] data = new WebpBuilder(8, 8, 0)
+                .frame(0, 0, 8, 8, 50, 0, 0, false, 4)
+                .frame(0, 0, 8, 8, 50, 0, 0, false, 4)
+                .build();
+        AnimatedImage image = AnimatedImage.read(data, ImageType.WEBP);
+        Assert.assertNotNull(image);
+        Assert.assertEquals(0, image.getLoopCount());
+    }
+
+    @Test
+    public void testFrameImage() throws IOException {
+        byte[] data = new WebpBuilder(100, 50, 0)
+                .frame(0, 0, 100, 50, 80, 0, 0, true, 31)
+                .frame(10, 20, 30, 16, 120, 0, 0, false, 10)
+                .build();
+        AnimatedImage image = AnimatedImage.read(data, ImageType.WEBP);
+        Assert.assertNotNull(image);
+
+        // 带 ALPH 块的帧要加上 VP8X 并标记透明度
+        AnimatedImage.Frame frame0 = image.getFrame(0);
+        byte[] buffer = new byte[image.getFrameImageLength(frame0)];
+        int length0 = image.makeFrameImage(frame0, buffer);
+        Assert.assertEquals(buffer.length, length0);
+        Assert.assertEquals(12 + 18 + 8 + 2 + 8 + 31 + 1, length0);
+        assertFourCC(buffer, 0, "RIFF");
+        Assert.assertEquals(length0 - 8, readInt32(buffer, 4));
+        assertFourCC(buffer, 8, "WEBP");
+        assertFourCC(buffer, 12, "VP8X");
+        Assert.assertEquals(0x10, buffer[20]);
+        Assert.assertEquals(99, readUInt24(buffer, 24));
+        Assert.assertEquals(49, readUInt24(buffer, 27));
+        assertFourCC(buffer, 30, "ALPH");
+        assertFourCC(buffer, 40, "VP8 ");
+
+        // 共用一个缓冲区，后面的帧更小，长度以返回值为准
+        AnimatedImage.Frame frame1 = image.getFrame(1);
+        int length1 = image.makeFrameImage(frame1, buffer);
+        Assert.assertEquals(image.getFrameImageLength(frame1), length1);
+        Assert.assertEquals(12 + 8 + 10, length1);
+        Assert.assertEquals(length1 - 8, readInt32(buffer, 4));
+        assertFourCC(buffer, 12, "VP8 ");
+        Assert.assertEquals(10, readInt32(buffer, 16));
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        byte[] data = new WebpBuilder(8, 8, 0)
+                .frame(0, 0, 8, 8, 50, 0, 0, false, 20)
+                .frame(0, 0, 8, 8, 50, 0, 0, false, 20)
+                .frame(0, 0, 8, 8, 50, 0, 0, false, 20)
+                .build();
+
+        // 截断在最后一帧里，只剩两帧
+        AnimatedImage image = AnimatedImage.read(Arrays.copyOf(data, data.length - 5), ImageType.WEBP);
+        Assert.assertNotNull(image);
+        Assert.assertEquals(2, image.getFrameCount());
+
+        // 截断后不管剩多少都不能抛异常
+        for (int length = 0; length < data.length; length++) {
+            byte[] truncated = Arrays.copyOf(data, length);
+            AnimatedImage.read(truncated, ImageType.WEBP);
+            AnimatedWebpImage.isAnimated(new ByteArrayInputStream(truncated));
+        }
+        Assert.assertNull(AnimatedImage.read(Arrays.copyOf(data, 30), ImageType.WEBP));
+        Assert.assertFalse(AnimatedWebpImage.isAnimated(new ByteArrayInputStream(Arrays.copyOf(data, 20))));
+    }
+
+    @Test
+    public void testNotAnimated() throws IOException {
+        // 没有动画标记的扩展格式
+        byte[] data = new WebpBuilder(8, 8, 0)
+                .frame(0, 0, 8, 8, 50, 0, 0, false, 4)
+                .frame(0, 0, 8, 8, 50, 0, 0, false, 4)
+                .build();
+        data[20] = 0;
+        Assert.assertFalse(AnimatedWebpImage.isAnimated(new ByteArrayInputStream(data)));
+        Assert.assertNull(AnimatedImage.read(data, ImageType.WEBP));
+
+        // 简单格式
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        outputStream.write(new byte[]{'R', 'I', 'F', 'F', 18, 0, 0, 0, 'W', 'E', 'B', 'P'});
+        WebpBuilder.writeChunk(outputStream, "VP8 ", new byte[10]);
+        byte[] simple = outputStream.toByteArray();
+        Assert.assertFalse(AnimatedWebpImage.isAnimated(new ByteArrayInputStream(simple)));
+        Assert.assertNull(AnimatedImage.read(simple, ImageType.WEBP));
+
+        // 只有一帧的按普通图片处理
+        byte[] single = new WebpBuilder(8, 8, 0).frame(0, 0, 8, 8, 50, 0, 0, false, 4).build();
+        Assert.assertNotNull(AnimatedWebpImage.read(single));
+        Assert.assertNull(AnimatedImage.read(single, ImageType.WEBP));
+    }
+
+    private static void assertFourCC(byte[] data, int offset, String fourCC) {
+        Assert.assertEquals(fourCC, new String(data, offset, 4));
+    }
+
+    private static int readUInt24(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8 | (data[offset + 2] & 0xFF) << 16;
+    }
+
+    private static int readInt32(byte[] data, int offset) {
+        return readUInt24(data, offset) | (data[offset + 3] & 0xFF) << 24;
+    }
+
+    /**
+     * 拼出 RIFF/VP8X/ANIM/ANMF 结构，帧数据用填充字节代替，解析时不会解码
+     */
+    private static class WebpBuilder {
+        private final ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        private final int width;
+        private final int height;
+        private final int loopCount;
+
+        WebpBuilder(int width, int height, int loopCount) {
+            this.width = width;
+            this.height = height;
+            this.loopCount = loopCount;
+        }
+
+        /**
+         * @param dispose   0x01：处理成背景色
+         * @param blend     0x02：不混合
+         * @param alpha     是否带 ALPH 块
+         * @param vp8Length VP8 块数据的长度，奇数时会补一个字节
+         */
+        WebpBuilder frame(int x, int y, int frameWidth, int frameHeight, int duration, int dispose, int blend,
+                          boolean alpha, int vp8Length) throws IOException {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            byte[] header = new byte[16];
+            writeUInt24(header, 0, x / 2);
+            writeUInt24(header, 3, y / 2);
+            writeUInt24(header, 6, frameWidth - 1);
+            writeUInt24(header, 9, frameHeight - 1);
+            writeUInt24(header, 12, duration);
+            header[15] = (byte) (dispose | blend);
+            payload.write(header);
+            if (alpha) {
+                writeChunk(payload, "ALPH", new byte[2]);
+            }
+            byte[] vp8 = new byte[vp8Length];
+            Arrays.fill(vp8, (byte) 0x5A);
+            writeChunk(payload, "VP8 ", vp8);
+            writeChunk(frames, "ANMF", payload.toByteArray());
+            return this;
+        }
+
+        byte[] build() throws IOException {
+            ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+            byte[] vp8x = new byte[10];
+            vp8x[0] = 0x02;
+            writeUInt24(vp8x, 4, width - 1);
+            writeUInt24(vp8x, 7, height - 1);
+            writeChunk(chunks, "VP8X", vp8x);
+            byte[] anim = new byte[6];
+            anim[4] = (byte) (loopCount & 0xFF);
+            anim[5] = (byte) (loopCount >> 8 & 0xFF);
+            writeChunk(chunks, "ANIM", anim);
+            frames.writeTo(chunks);
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            outputStream.write("RIFF".getBytes("US-ASCII"));
+            byte[] riffLength = new byte[4];
+            writeInt32(riffLength, 0, chunks.size() + 4);
+            outputStream.write(riffLength);
+            outputStream.write("WEBP".getBytes("US-ASCII"));
+            chunks.writeTo(outputStream);
+            return outputStream.toByteArray();
+        }
+
+        static void writeChunk(ByteArrayOutputStream outputStream, String fourCC, byte[] payload) throws IOException {
+            outputStream.write(fourCC.getBytes("US-ASCII"));
+            byte[] length = new byte[4];
+            writeInt32(length, 0, payload.length);
+            outputStream.write(length);
+            outputStream.write(payload);
+            if ((payload.length & 1) != 0) {
+                outputStream.write(0);
+            }
+        }
+
+        private static void writeUInt24(byte[] data, int offset, int value) {
+            data[offset] = (byte) (value & 0xFF);
+            data[offset + 1] = (byte) (value >> 8 & 0xFF);
+            data[offset + 2] = (byte) (value >> 16 & 0xFF);
+        }
+
+        private static void writeInt32(byte[] data, int offset, int value) {
+            writeUInt24(data, offset, value);
+            data[offset + 3] = (byte) (value >> 24 & 0xFF);
+        }
+    }
+}
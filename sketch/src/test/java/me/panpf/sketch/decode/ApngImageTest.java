@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.panpf.sketch.decode;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import javax.imageio.ImageIO;
+
+/**
+ * 用 ImageIO 生成的 png 拼出 apng，验证 {@link ApngImage} 的块解析、循环次数、截断数据的处理以及封装出来的帧图片能被正常解码
+ */
+public class ApngImageTest {
+
+    @Test
+    public void testParse() throws IOException {
+        byte[] data = new ApngBuilder(20, 10, 3)
+                .frame(20, 10, 0, 0, 5, 100, 0, 0, 0xFFFF0000, true)
+                .frame(8, 6, 4, 2, 1, 10, 1, 1, 0xFF00FF00, false)
+                .frame(8, 6, 6, 3, 0, 0, 2, 0, 0xFF0000FF, false)
+                .build();
+
+        Assert.assertTrue(ApngImage.isAnimated(new ByteArrayInputStream(data)));
+
+        AnimatedImage image = AnimatedImage.read(data, ImageType.PNG);
+        Assert.assertNotNull(image);
+        Assert.assertEquals(20, image.getWidth());
+        Assert.assertEquals(10, image.getHeight());
+        Assert.assertEquals(3, image.getLoopCount());
+        Assert.assertEquals(3, image.getFrameCount());
+        Assert.assertEquals(data.length, image.getByteCount());
+
+        AnimatedImage.Frame frame0 = image.getFrame(0);
+        Assert.assertEquals(0, frame0.getX());
+        Assert.assertEquals(20, frame0.getWidth());
+        Assert.assertEquals(50, frame0.getDuration());
+        Assert.assertEquals(AnimatedImage.DISPOSE_NONE, frame0.getDispose());
+        Assert.assertFalse(frame0.isBlend());
+
+        AnimatedImage.Frame frame1 = image.getFrame(1);
+        Assert.assertEquals(4, frame1.getX());
+        Assert.assertEquals(2, frame1.getY());
+        Assert.assertEquals(8, frame1.getWidth());
+        Assert.assertEquals(6, frame1.getHeight());
+        Assert.assertEquals(100, frame1.getDuration());
+        Assert.assertEquals(AnimatedImage.DISPOSE_BACKGROUND, frame1.getDispose());
+        Assert.assertTrue(frame1.isBlend());
+
+        // 持续时间为 0 时按默认值处理
+        AnimatedImage.Frame frame2 = image.getFrame(2);
+        Assert.assertEquals(100, frame2.getDuration());
+        Assert.assertEquals(AnimatedImage.DISPOSE_PREVIOUS, frame2.getDispose());
+        Assert.assertEquals(250, image.getDuration());
+    }
+
+    @Test
+    public void testFirstFrameDisposePrevious() throws IOException {
+        byte[] data = new ApngBuilder(4, 4, 0)
+                .frame(4, 4, 0, 0, 1, 10, 2, 0, 0xFFFF0000, true)
+                .frame(4, 4, 0, 0, 1, 10, 2, 0, 0xFF00FF00, false)
+                .build();
+
+        AnimatedImage image = AnimatedImage.read(data, ImageType.PNG);
+        Assert.assertNotNull(image);
+        Assert.assertEquals(0, image.getLoopCount());
+        Assert.assertEquals(AnimatedImage.DISPOSE_BACKGROUND, image.getFrame(0).getDispose());
+        Assert.assertEquals(AnimatedImage.DISPOSE_PREVIOUS, image.getFrame(1).getDispose());
+    }
+
+    @Test
+    public void testDefaultImageNotFrame() throws IOException {
+        // 第一个 fcTL 出现在 IDAT 之后时默认图片不参与播放
+        byte[] data = new ApngBuilder(6, 6, 1)
+                .defaultImage(0xFF000000)
+                .frame(6, 6, 0, 0, 1, 10, 0, 0, 0xFFFF0000, false)
+                .frame(6, 6, 0, 0, 1, 10, 0, 0, 0xFF00FF00, false)
+                .build();
+
+        AnimatedImage image = AnimatedImage.read(data, ImageType.PNG);
+        Assert.assertNotNull(image);
+        Assert.assertEquals(2, image.getFrameCount());
+    }
+
+    @Test
+    public void testFrameImage() throws IOException {
+        byte[] data = new ApngBuilder(20, 10, 0)
+                .frame(20, 10, 0, 0, 1, 10, 0, 0, 0xFFFF0000, true)
+                .frame(8, 6, 4, 2, 1, 10, 0, 0, 0xFF00FF00, false)
+                .build();
+        AnimatedImage image = AnimatedImage.read(data, ImageType.PNG);
+        Assert.assertNotNull(image);
+
+        // 共用一个缓冲区，缓冲区后面残留的数据不能影响结果
+        int frameImageLength0 = image.getFrameImageLength(image.getFrame(0));
+        byte[] buffer = new byte[Math.max(frameImageLength0, image.getFrameImageLength(image.getFrame(1))) + 100];
+        Arrays.fill(buffer, (byte) 0x5A);
+        int length0 = image.makeFrameImage(image.getFrame(0), buffer);
+        Assert.assertEquals(frameImageLength0, length0);
+        assertImage(buffer, length0, 20, 10, 0xFFFF0000);
+
+        int length1 = image.makeFrameImage(image.getFrame(1), buffer);
+        Assert.assertEquals(image.getFrameImageLength(image.getFrame(1)), length1);
+        assertImage(buffer, length1, 8, 6, 0xFF00FF00);
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        byte[] data = new ApngBuilder(6, 6, 0)
+                .frame(6, 6, 0, 0, 1, 10, 0, 0, 0xFFFF0000, true)
+                .frame(6, 6, 0, 0, 1, 10, 0, 0, 0xFF00FF00, false)
+                .frame(6, 6, 0, 0, 1, 10, 0, 0, 0xFF0000FF, false)
+                .build();
+
+        // 截断在最后一帧的数据块里，只剩两帧
+        AnimatedImage image = AnimatedImage.read(Arrays.copyOf(data, data.length - 20), ImageType.PNG);
+        Assert.assertNotNull(image);
+        Assert.assertEquals(2, image.getFrameCount());
+
+        // 截断后不管剩多少都不能抛异常
+        for (int length = 0; length < data.length; length++) {
+            byte[] truncated = Arrays.copyOf(data, length);
+            AnimatedImage.read(truncated, ImageType.PNG);
+            ApngImage.isAnimated(new ByteArrayInputStream(truncated));
+        }
+        Assert.assertNull(AnimatedImage.read(Arrays.copyOf(data, 40), ImageType.PNG));
+        Assert.assertFalse(ApngImage.isAnimated(new ByteArrayInputStream(Arrays.copyOf(data, 20))));
+    }
+
+    @Test
+    public void testNotAnimated() throws IOException {
+        byte[] png = ApngBuilder.png(6, 6, 0xFFFF0000);
+        Assert.assertFalse(ApngImage.isAnimated(new ByteArrayInputStream(png)));
+        Assert.assertNull(ApngImage.read(png));
+        Assert.assertNull(AnimatedImage.read(png, ImageType.PNG));
+
+        // 只有一帧的 apng 按普通图片处理
+        byte[] single = new ApngBuilder(6, 6, 0).frame(6, 6, 0, 0, 1, 10, 0, 0, 0xFFFF0000, true).build();
+        Assert.assertNotNull(ApngImage.read(single));
+        Assert.assertNull(AnimatedImage.read(single, ImageType.PNG));
+    }
+
+    private static void assertImage(byte[] buffer, int length, int width, int height, int color) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(buffer, 0, length));
+        Assert.assertNotNull(image);
+        Assert.assertEquals(width, image.getWidth());
+        Assert.assertEquals(height, image.getHeight());
+        Assert.assertEquals(color, image.getRGB(width / 2, height / 2));
+    }
+
+    /**
+     * 用 ImageIO 生成每一帧的 png，取出 IDAT 拼成 apng
+     */
+    private static class ApngBuilder {
+        private final ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        private final int width;
+        private final int height;
+        private final int loopCount;
+        private int frameCount;
+        private int sequence;
+
+        ApngBuilder(int width, int height, int loopCount) {
+            this.width = width;
+            this.height = height;
+            this.loopCount = loopCount;
+        }
+
+        static byte[] png(int width, int height, int color) throws IOException {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    image.setRGB(x, y, color);
+                }
+            }
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", outputStream);
+            return outputStream.toByteArray();
+        }
+
+        /**
+         * 取出 png 里所有 IDAT 块的数据拼在一起
+         */
+        static byte[] idat(byte[] png) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            int offset = 8;
+            while (offset + 12 <= png.length) {
+                int length = readInt(png, offset);
+                if (readInt(png, offset + 4) == type("IDAT")) {
+                    outputStream.write(png, offset + 8, length);
+                }
+                offset += length + 12;
+            }
+            return outputStream.toByteArray();
+        }
+
+        ApngBuilder defaultImage(int color) throws IOException {
+            chunk("IDAT", idat(png(width, height, color)));
+            return this;
+        }
+
+        /**
+         * @param isDefault 是不是默认图片，默认图片的数据放在 IDAT 里，其它的放在 fdAT 里
+         */
+        ApngBuilder frame(int frameWidth, int frameHeight, int x, int y, int delayNum, int delayDen,
+                          int dispose, int blend, int color, boolean isDefault) throws IOException {
+            ByteArrayOutputStream fctl = new ByteArrayOutputStream();
+            DataOutputStream fctlOutputStream = new DataOutputStream(fctl);
+            fctlOutputStream.writeInt(sequence++);
+            fctlOutputStream.writeInt(frameWidth);
+            fctlOutputStream.writeInt(frameHeight);
+            fctlOutputStream.writeInt(x);
+            fctlOutputStream.writeInt(y);
+            fctlOutputStream.writeShort(delayNum);
+            fctlOutputStream.writeShort(delayDen);
+            fctlOutputStream.writeByte(dispose);
+            fctlOutputStream.writeByte(blend);
+            chunk("fcTL", fctl.toByteArray());
+
+            byte[] idat = idat(png(frameWidth, frameHeight, color));
+            if (isDefault) {
+                chunk("IDAT", idat);
+            } else {
+                ByteArrayOutputStream fdat = new ByteArrayOutputStream();
+                new DataOutputStream(fdat).writeInt(sequence++);
+                fdat.write(idat);
+                chunk("fdAT", fdat.toByteArray());
+            }
+            frameCount++;
+            return this;
+        }
+
+        byte[] build() throws IOException {
+            byte[] png = png(width, height, 0);
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            // 签名和 IHDR 直接用 ImageIO 生成的
+            outputStream.write(png, 0, 8 + 12 + 13);
+
+            ByteArrayOutputStream actl = new ByteArrayOutputStream();
+            DataOutputStream actlOutputStream = new DataOutputStream(actl);
+            actlOutputStream.writeInt(frameCount);
+            actlOutputStream.writeInt(loopCount);
+            writeChunk(outputStream, "acTL", actl.toByteArray());
+
+            chunks.writeTo(outputStream);
+            writeChunk(outputStream, "IEND", new byte[0]);
+            return outputStream.toByteArray();
+        }
+
+        private void chunk(String type, byte[] payload) throws IOException {
+            writeChunk(chunks, type, payload);
+        }
+
+        private static void writeChunk(ByteArrayOutputStream outputStream, String type, byte[] payload) throws IOException {
+            DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+            dataOutputStream.writeInt(payload.length);
+            byte[] typeBytes = type.getBytes("US-ASCII");
+            dataOutputStream.write(typeBytes);
+            dataOutputStream.write(payload);
+            CRC32 crc32 = new CRC32();
+            crc32.update(typeBytes);
+            crc32.update(payload);
+            dataOutputStream.writeInt((int) crc32.getValue());
+        }
+
+        private static int type(String type) {
+            return type.charAt(0) << 24 | type.charAt(1) << 16 | type.charAt(2) << 8 | type.charAt(3);
+        }
+
+        private static int readInt(byte[] data, int offset) {
+            return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16 | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+        }
+    }
+}
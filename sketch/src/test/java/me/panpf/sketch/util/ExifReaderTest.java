@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.panpf.sketch.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * 按 sample 中 ImageOrientationCorrectTestFileGenerator 的方式生成各个方向的测试图片，验证 {@link ExifReader} 读到的方向和
+ * {@link ExifInterface} 一致，另外覆盖 Intel、Motorola 两种字节序、没有 EXIF 以及数据被截断的情况
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ExifReaderTest {
+
+    /**
+     * 和 ImageOrientationCorrectTestFileGenerator 一样的配置：旋转角度、x 轴缩放、方向
+     */
+    private static final int[][] CONFIGS = {
+            {-90, 1, ExifInterface.ORIENTATION_ROTATE_90},
+            {-180, 1, ExifInterface.ORIENTATION_ROTATE_180},
+            {-270, 1, ExifInterface.ORIENTATION_ROTATE_270},
+            {0, -1, ExifInterface.ORIENTATION_FLIP_HORIZONTAL},
+            {-90, -1, ExifInterface.ORIENTATION_TRANSPOSE},
+            {-180, -1, ExifInterface.ORIENTATION_FLIP_VERTICAL},
+            {-270, -1, ExifInterface.ORIENTATION_TRANSVERSE},
+            {0, 1, ExifInterface.ORIENTATION_NORMAL},
+    };
+
+    @Test
+    public void testGeneratedFiles() throws IOException {
+        BufferedImage source = makeSourceImage();
+        for (int[] config : CONFIGS) {
+            byte[] data = writeOrientationByExifInterface(transform(source, config[0], config[1]), config[2]);
+
+            int orientation = config[2];
+            Assert.assertEquals("orientation " + orientation, orientation, readByExifInterface(data));
+            Assert.assertEquals("orientation " + orientation, orientation, ExifReader.readOrientation(new ByteArrayInputStream(data)));
+        }
+    }
+
+    @Test
+    public void testByteOrder() throws IOException {
+        byte[] jpeg = writeJpeg(makeSourceImage());
+        for (int orientation = ExifInterface.ORIENTATION_NORMAL; orientation <= ExifInterface.ORIENTATION_ROTATE_270; orientation++) {
+            for (ByteOrder byteOrder : new ByteOrder[]{ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+                byte[] data = insertApp1(jpeg, makeExif(byteOrder, orientation));
+
+                String message = byteOrder + " orientation " + orientation;
+                Assert.assertEquals(message, orientation, readByExifInterface(data));
+                Assert.assertEquals(message, orientation, ExifReader.readOrientation(new ByteArrayInputStream(data)));
+            }
+        }
+    }
+
+    @Test
+    public void testNoExif() throws IOException {
+        byte[] data = writeJpeg(makeSourceImage());
+
+        Assert.assertEquals(ExifInterface.ORIENTATION_UNDEFINED, readByExifInterface(data));
+        Assert.assertEquals(ExifInterface.ORIENTATION_UNDEFINED, ExifReader.readOrientation(new ByteArrayInputStream(data)));
+
+        // 不是 JPEG
+        byte[] png = new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+        Assert.assertEquals(ExifInterface.ORIENTATION_UNDEFINED, ExifReader.readOrientation(new ByteArrayInputStream(png)));
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        byte[] jpeg = writeJpeg(makeSourceImage());
+        // SOI、APP1 标记和长度、"Exif\0\0"、TIFF 头、条目数以及前三个条目，方向是第三个条目
+        int orientationEnd = 2 + 4 + 6 + 8 + 2 + 3 * 12;
+        for (ByteOrder byteOrder : new ByteOrder[]{ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+            byte[] data = insertApp1(jpeg, makeExif(byteOrder, ExifInterface.ORIENTATION_ROTATE_90));
+            for (int length = 0; length <= data.length; length += length < 300 ? 1 : 97) {
+                byte[] truncated = Arrays.copyOf(data, length);
+                String message = byteOrder + " length " + length;
+
+                // ExifReader 读到方向就停止，所以方向条目完整时就能读到，截断在这之前的不能抛出 IOException 以外的异常
+                int readerOrientation;
+                try {
+                    readerOrientation = ExifReader.readOrientation(new ByteArrayInputStream(truncated));
+                } catch (IOException e) {
+                    readerOrientation = ExifInterface.ORIENTATION_UNDEFINED;
+                }
+                int expected = length >= orientationEnd ? ExifInterface.ORIENTATION_ROTATE_90 : ExifInterface.ORIENTATION_UNDEFINED;
+                Assert.assertEquals(message, expected, readerOrientation);
+
+                // ExifInterface 要读完整个 APP1 段并且数据至少有 5000 字节，能读到的时候两者必须一样
+                int interfaceOrientation = readByExifInterface(truncated);
+                if (interfaceOrientation != ExifInterface.ORIENTATION_UNDEFINED) {
+                    Assert.assertEquals(message, interfaceOrientation, readerOrientation);
+                }
+            }
+        }
+    }
+
+    private static int readByExifInterface(byte[] data) {
+        try {
+            return new ExifInterface(new ByteArrayInputStream(data))
+                    .getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_UNDEFINED);
+        } catch (IOException e) {
+            return ExifInterface.ORIENTATION_UNDEFINED;
+        }
+    }
+
+    /**
+     * 随机像素，保证 JPEG 超过 {@link ExifInterface} 识别格式时要读取的 5000 字节
+     */
+    private static BufferedImage makeSourceImage() {
+        Random random = new Random(0);
+        BufferedImage image = new BufferedImage(160, 120, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt(0xFFFFFF));
+            }
+        }
+        return image;
+    }
+
+    /**
+     * 和 ImageOrientationCorrectTestFileGenerator.transformBitmap() 一样先缩放再旋转
+     */
+    private static BufferedImage transform(BufferedImage source, int degrees, int xScale) {
+        AffineTransform transform = new AffineTransform();
+        transform.rotate(Math.toRadians(degrees));
+        transform.scale(xScale, 1);
+
+        Rectangle2D newRect = transform.createTransformedShape(new Rectangle2D.Float(0, 0, source.getWidth(), source.getHeight())).getBounds2D();
+        AffineTransform translate = AffineTransform.getTranslateInstance(-newRect.getX(), -newRect.getY());
+        translate.concatenate(transform);
+
+        BufferedImage result = new BufferedImage((int) Math.round(newRect.getWidth()), (int) Math.round(newRect.getHeight()), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = result.createGraphics();
+        graphics.drawImage(source, translate, null);
+        graphics.dispose();
+        return result;
+    }
+
+    private static byte[] writeJpeg(BufferedImage image) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Assert.assertTrue(ImageIO.write(image, "jpg", outputStream));
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * 和 ImageOrientationCorrectTestFileGenerator 一样通过 {@link ExifInterface} 写入方向
+     */
+    private static byte[] writeOrientationByExifInterface(BufferedImage image, int orientation) throws IOException {
+        File file = File.createTempFile("ExifReaderTest", ".jpg");
+        try {
+            FileOutputStream outputStream = new FileOutputStream(file);
+            try {
+                outputStream.write(writeJpeg(image));
+            } finally {
+                outputStream.close();
+            }
+
+            ExifInterface exifInterface = new ExifInterface(file.getPath());
+            exifInterface.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(orientation));
+            exifInterface.saveAttributes();
+            return Files.readAllBytes(file.toPath());
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    /**
+     * 拼一个 EXIF，IFD0 里方向前后都有别的条目，还带着 Exif IFD
+     */
+    private static byte[] makeExif(ByteOrder byteOrder, int orientation) {
+        ByteBuffer buffer = ByteBuffer.allocate(6 + 8 + 2 + 4 * 12 + 4 + 2 + 2 * 12 + 4).order(byteOrder);
+        buffer.put(new byte[]{'E', 'x', 'i', 'f', 0, 0});
+        buffer.put(byteOrder == ByteOrder.LITTLE_ENDIAN ? new byte[]{'I', 'I'} : new byte[]{'M', 'M'});
+        buffer.putShort((short) 42);
+        buffer.putInt(8);
+
+        int exifIfdOffset = 8 + 2 + 4 * 12 + 4;
+        buffer.putShort((short) 4);
+        putEntry(buffer, 0x0100, 3, 160);
+        putEntry(buffer, 0x0101, 3, 120);
+        putEntry(buffer, 0x0112, 3, orientation);
+        putEntry(buffer, 0x8769, 4, exifIfdOffset);
+        buffer.putInt(0);
+
+        buffer.putShort((short) 2);
+        putEntry(buffer, 0xA002, 4, 160);
+        putEntry(buffer, 0xA003, 4, 120);
+        buffer.putInt(0);
+        return buffer.array();
+    }
+
+    private static void putEntry(ByteBuffer buffer, int tag, int type, int value) {
+        buffer.putShort((short) tag);
+        buffer.putShort((short) type);
+        buffer.putInt(1);
+        if (type == 3) {
+            buffer.putShort((short) value);
+            buffer.putShort((short) 0);
+        } else {
+            buffer.putInt(value);
+        }
+    }
+
+    /**
+     * 把 APP1 段插到 SOI 后面
+     */
+    private static byte[] insertApp1(byte[] jpeg, byte[] app1Data) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        outputStream.write(jpeg, 0, 2);
+        outputStream.write(0xFF);
+        outputStream.write(0xE1);
+        outputStream.write(((app1Data.length + 2) >> 8) & 0xFF);
+        outputStream.write((app1Data.length + 2) & 0xFF);
+        outputStream.write(app1Data, 0, app1Data.length);
+        outputStream.write(jpeg, 2, jpeg.length - 2);
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.panpf.sketch.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.w3c.dom.NodeList;
+
+/**
+ * 用 ImageIO 生成渐进式和顺序式 JPEG，验证 {@link JpegDcDecoder} 解码出的 1/8 图片和 ImageIO 解码后按 8x8 块取平均的结果一致，
+ * 以及顺序式、损坏和不完整的数据返回 null 而不是抛出异常
+ */
+public class JpegDcDecoderTest {
+
+    private static final String JPEG_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+
+    @Test
+    public void testProgressive() throws IOException {
+        int[][] sizes = {{200, 150}, {203, 157}, {64, 64}, {17, 9}};
+        for (int[] size : sizes) {
+            for (boolean gray : new boolean[]{false, true}) {
+                BufferedImage image = makeImage(size[0], size[1], gray);
+                for (int restartInterval : new int[]{0, 3}) {
+                    for (boolean subsampling : new boolean[]{false, true}) {
+                        byte[] data = writeJpeg(image, true, restartInterval, subsampling);
+                        BufferedImage reference = ImageIO.read(new ByteArrayInputStream(data));
+                        // 2x2 色度抽样时色度只有 16x16 的精度，只和 16x16 的块比较
+                        for (int sampleSize = subsampling && !gray ? 2 : 1; sampleSize <= 2; sampleSize++) {
+                            String message = String.format("%dx%d gray=%s dri=%d subsampling=%s sampleSize=%d",
+                                    size[0], size[1], gray, restartInterval, subsampling, sampleSize);
+
+                            JpegDcDecoder decoder = new JpegDcDecoder(new BufferedInputStream(new ByteArrayInputStream(data)));
+                            int[] pixels = decoder.decodeProgressive(sampleSize);
+                            Assert.assertNotNull(message, pixels);
+                            Assert.assertTrue(message, decoder.isProgressive());
+                            Assert.assertEquals(message, size[0], decoder.getImageWidth());
+                            Assert.assertEquals(message, size[1], decoder.getImageHeight());
+
+                            int outputWidth = decoder.getOutputWidth(sampleSize);
+                            int outputHeight = decoder.getOutputHeight(sampleSize);
+                            Assert.assertEquals(message, (int) Math.ceil(size[0] / (8.0 * sampleSize)), outputWidth);
+                            Assert.assertEquals(message, (int) Math.ceil(size[1] / (8.0 * sampleSize)), outputHeight);
+                            Assert.assertEquals(message, outputWidth * outputHeight, pixels.length);
+
+                            assertSimilar(message, scaleDown(reference, 8 * sampleSize, outputWidth, outputHeight), pixels);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testOnlyReadDcScan() throws IOException {
+        byte[] data = writeJpeg(makeImage(400, 300, false), true, 0, true);
+
+        CountingInputStream inputStream = new CountingInputStream(new BufferedInputStream(new ByteArrayInputStream(data), 512));
+        Assert.assertNotNull(new JpegDcDecoder(inputStream).decodeProgressive(1));
+        Assert.assertTrue(inputStream.count + "/" + data.length, inputStream.count < data.length / 2);
+    }
+
+    @Test
+    public void testBaseline() throws IOException {
+        for (boolean gray : new boolean[]{false, true}) {
+            byte[] data = writeJpeg(makeImage(200, 150, gray), false, 0, true);
+
+            JpegDcDecoder decoder = new JpegDcDecoder(new ByteArrayInputStream(data));
+            Assert.assertNull(decoder.decodeProgressive(1));
+            Assert.assertFalse(decoder.isProgressive());
+            Assert.assertEquals(200, decoder.getImageWidth());
+        }
+    }
+
+    @Test
+    public void testNotJpeg() {
+        Assert.assertNull(new JpegDcDecoder(new ByteArrayInputStream(new byte[0])).decodeProgressive(1));
+        byte[] png = new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+        Assert.assertNull(new JpegDcDecoder(new ByteArrayInputStream(png)).decodeProgressive(1));
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        byte[] data = writeJpeg(makeImage(200, 150, false), true, 0, true);
+
+        // 读完 DC 扫描需要的长度，比这短的都必须返回 null
+        CountingInputStream countingInputStream = new CountingInputStream(new ByteArrayInputStream(data));
+        Assert.assertNotNull(new JpegDcDecoder(countingInputStream).decodeProgressive(1));
+        int dcLength = (int) countingInputStream.count;
+
+        for (int length = 0; length <= dcLength + 16; length++) {
+            int[] pixels = new JpegDcDecoder(new ByteArrayInputStream(Arrays.copyOf(data, length))).decodeProgressive(1);
+            if (length < dcLength) {
+                Assert.assertNull("length " + length, pixels);
+            } else {
+                Assert.assertNotNull("length " + length, pixels);
+            }
+        }
+    }
+
+    @Test
+    public void testCorrupt() throws IOException {
+        byte[] data = writeJpeg(makeImage(200, 150, false), true, 2, true);
+        int scanStart = findMarker(data, 0xDA);
+        Assert.assertTrue(scanStart > 0);
+
+        Random random = new Random(0);
+        for (int time = 0; time < 500; time++) {
+            byte[] corrupt = data.clone();
+            // 头部或扫描数据中随机改几个字节，返回 null 或者尺寸正确的像素都可以，但不能抛出异常
+            int count = 1 + random.nextInt(8);
+            for (int index = 0; index < count; index++) {
+                int position = time % 2 == 0 ? 2 + random.nextInt(scanStart - 2) : scanStart + random.nextInt(corrupt.length - scanStart);
+                corrupt[position] = (byte) random.nextInt(256);
+            }
+
+            JpegDcDecoder decoder = new JpegDcDecoder(new ByteArrayInputStream(corrupt));
+            int[] pixels = decoder.decodeProgressive(1);
+            if (pixels != null) {
+                Assert.assertEquals(decoder.getOutputWidth(1) * decoder.getOutputHeight(1), pixels.length);
+            }
+        }
+    }
+
+    /**
+     * 平滑的渐变，变化的快慢和尺寸无关，这样小图片补齐 MCU 的部分造成的误差也可以忽略
+     */
+    private static BufferedImage makeImage(int width, int height, boolean gray) {
+        BufferedImage image = new BufferedImage(width, height, gray ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int red = (int) (127 + 100 * Math.sin(x / 30.0));
+                int green = (int) (127 + 100 * Math.cos(y / 25.0));
+                int blue = (int) (127 + 100 * Math.sin((x + y) / 40.0));
+                image.setRGB(x, y, (red << 16) | (green << 8) | blue);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * @param subsampling false：不做色度抽样，所有分量都是 1x1
+     */
+    private static byte[] writeJpeg(BufferedImage image, boolean progressive, int restartInterval, boolean subsampling) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (progressive) {
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        } else {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(0.9f);
+        }
+
+        IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image), param);
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(JPEG_METADATA_FORMAT);
+        if (restartInterval > 0) {
+            IIOMetadataNode markerSequence = (IIOMetadataNode) root.getElementsByTagName("markerSequence").item(0);
+            IIOMetadataNode dri = new IIOMetadataNode("dri");
+            dri.setAttribute("interval", String.valueOf(restartInterval));
+            markerSequence.insertBefore(dri, markerSequence.getFirstChild());
+        }
+        if (!subsampling) {
+            NodeList componentSpecs = root.getElementsByTagName("componentSpec");
+            for (int index = 0; index < componentSpecs.getLength(); index++) {
+                IIOMetadataNode componentSpec = (IIOMetadataNode) componentSpecs.item(index);
+                componentSpec.setAttribute("HsamplingFactor", "1");
+                componentSpec.setAttribute("VsamplingFactor", "1");
+            }
+        }
+        metadata.setFromTree(JPEG_METADATA_FORMAT, root);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageOutputStream imageOutputStream = ImageIO.createImageOutputStream(outputStream);
+        try {
+            writer.setOutput(imageOutputStream);
+            writer.write(null, new IIOImage(image, null, metadata), param);
+        } finally {
+            imageOutputStream.close();
+            writer.dispose();
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * 按块取平均值缩小，和 DC 系数的含义一样
+     */
+    private static int[] scaleDown(BufferedImage image, int blockSize, int outputWidth, int outputHeight) {
+        boolean gray = image.getType() == BufferedImage.TYPE_BYTE_GRAY;
+        int[] pixels = new int[outputWidth * outputHeight];
+        for (int outY = 0; outY < outputHeight; outY++) {
+            for (int outX = 0; outX < outputWidth; outX++) {
+                long red = 0, green = 0, blue = 0;
+                int count = 0;
+                for (int y = outY * blockSize; y < Math.min(image.getHeight(), (outY + 1) * blockSize); y++) {
+                    for (int x = outX * blockSize; x < Math.min(image.getWidth(), (outX + 1) * blockSize); x++) {
+                        int color = gray ? image.getRaster().getSample(x, y, 0) * 0x010101 : image.getRGB(x, y);
+                        red += (color >> 16) & 0xFF;
+                        green += (color >> 8) & 0xFF;
+                        blue += color & 0xFF;
+                        count++;
+                    }
+                }
+                pixels[outY * outputWidth + outX] = (int) ((red / count) << 16 | (green / count) << 8 | (blue / count));
+            }
+        }
+        return pixels;
+    }
+
+    private static void assertSimilar(String message, int[] expected, int[] actual) {
+        Assert.assertEquals(message, expected.length, actual.length);
+        long sum = 0;
+        int max = 0;
+        for (int index = 0; index < expected.length; index++) {
+            for (int shift = 0; shift <= 16; shift += 8) {
+                int diff = Math.abs(((expected[index] >> shift) & 0xFF) - ((actual[index] >> shift) & 0xFF));
+                sum += diff;
+                max = Math.max(max, diff);
+            }
+        }
+        double mean = sum / (3.0 * expected.length);
+        Assert.assertTrue(message + " mean=" + mean, mean <= 2);
+        Assert.assertTrue(message + " max=" + max, max <= 12);
+    }
+
+    private static int findMarker(byte[] data, int marker) {
+        for (int index = 2; index < data.length - 1; index++) {
+            if ((data[index] & 0xFF) == 0xFF && (data[index + 1] & 0xFF) == marker) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream inputStream) {
+            super(inputStream);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                count++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int readLength = super.read(buffer, offset, length);
+            if (readLength > 0) {
+                count += readLength;
+            }
+            return readLength;
+        }
+
+        @Override
+        public long skip(long length) throws IOException {
+            long skipped = super.skip(length);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2017 Peng fei Pan <sky@panpf.me>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package me.panpf.sketch.util;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import me.panpf.sketch.datasource.DataSource;
+import me.panpf.sketch.request.DownloadResult;
+import me.panpf.sketch.uri.Base64UriModel;
+import me.panpf.sketch.uri.UriModel;
+
+/**
+ * 验证 {@link RequestKeyCache} 对需要转成短 uri 的 uri 的缓存，同一个 uri 对象再次绑定时不再计算短 uri
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class RequestKeyCacheTest {
+
+    @Test
+    public void testRepeatBindDoesNotMakeShortUri() {
+        RequestKeyCache cache = new RequestKeyCache();
+        CountingUriModel uriModel = new CountingUriModel();
+        String uri = makeLongUri('a');
+        String optionsKey = "Resize(100x100)";
+
+        String requestKey = cache.get(uri, uriModel, optionsKey);
+        Assert.assertEquals(1, uriModel.makeShortUriCount);
+        Assert.assertEquals("short-" + uri.length() + "?options=" + optionsKey, requestKey);
+
+        // 同一个 uri 对象、同样的选项 key 直接返回上次的结果
+        for (int i = 0; i < 10; i++) {
+            Assert.assertSame(requestKey, cache.get(uri, uriModel, optionsKey));
+            Assert.assertSame(requestKey, cache.get(uri, uriModel, new String(optionsKey)));
+        }
+        Assert.assertEquals(1, uriModel.makeShortUriCount);
+
+        // 选项变了要重新生成
+        Assert.assertEquals("short-" + uri.length() + "?options=Resize(200x200)", cache.get(uri, uriModel, "Resize(200x200)"));
+        Assert.assertEquals(2, uriModel.makeShortUriCount);
+
+        // 内容相同但不是同一个对象时重新计算，结果不变
+        Assert.assertEquals(requestKey, cache.get(new String(uri), uriModel, optionsKey));
+        Assert.assertEquals(3, uriModel.makeShortUriCount);
+    }
+
+    @Test
+    public void testNormalUri() {
+        RequestKeyCache cache = new RequestKeyCache();
+        CountingUriModel uriModel = new CountingUriModel();
+        uriModel.convertShortUri = false;
+
+        Assert.assertEquals("http://sample.com/a.jpg", cache.get("http://sample.com/a.jpg", uriModel, ""));
+        Assert.assertEquals("http://sample.com/a.jpg?options=Resize", cache.get("http://sample.com/a.jpg", uriModel, "Resize"));
+        Assert.assertEquals("http://sample.com/a.jpg?id=1&options=Resize", cache.get("http://sample.com/a.jpg?id=1", uriModel, "Resize"));
+        Assert.assertEquals(0, uriModel.makeShortUriCount);
+    }
+
+    @Test
+    public void testBase64ShortUri() {
+        Base64UriModel uriModel = new Base64UriModel();
+        String uri = makeLongUri('a');
+
+        String shortUri = uriModel.makeShortUri(uri);
+        Assert.assertTrue(shortUri, shortUri.startsWith("base64://"));
+        Assert.assertSame(shortUri, uriModel.makeShortUri(uri));
+        Assert.assertEquals(shortUri, uriModel.getDiskCacheKey(uri));
+
+        // 不是同一个对象时重新计算，内容相同结果就相同
+        Assert.assertEquals(shortUri, uriModel.makeShortUri(new String(uri)));
+        // 只差一个字符也不一样
+        Assert.assertNotEquals(shortUri, uriModel.makeShortUri(makeLongUri('b')));
+    }
+
+    @NonNull
+    private static String makeLongUri(char last) {
+        StringBuilder builder = new StringBuilder("data:image/jpeg;base64,");
+        for (int i = 0; i < 100000; i++) {
+            builder.append((char) ('A' + i % 26));
+        }
+        builder.append(last);
+        return builder.toString();
+    }
+
+    private static class CountingUriModel extends UriModel {
+        private int makeShortUriCount;
+        private boolean convertShortUri = true;
+
+        @Override
+        protected boolean match(@NonNull String uri) {
+            return true;
+        }
+
+        @NonNull
+        @Override
+        public DataSource getDataSource(@NonNull Context context, @NonNull String uri, @Nullable DownloadResult downloadResult) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isConvertShortUriForKey() {
+            return convertShortUri;
+        }
+
+        @NonNull
+        @Override
+        public String makeShortUri(@NonNull String uri) {
+            makeShortUriCount++;
+            return "short-" + uri.length();
+        }
+    }
+}